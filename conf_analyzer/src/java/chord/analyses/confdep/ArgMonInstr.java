@@ -1,8 +1,13 @@
 package chord.analyses.confdep;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import javassist.*;
 import javassist.expr.*;
+import chord.analyses.confdep.rels.RelAPIMethod;
+import chord.analyses.confdep.rels.RelReadOnlyAPICall;
+import chord.analyses.logging.RelLogStmts;
 import chord.instr.Instrumentor;
 import chord.project.Config;
 import chord.util.Utils;
@@ -10,11 +15,16 @@ import chord.util.Utils;
 /**
  * Code to insert calls to DynConfDepRuntime and similar.
  *
+ * Each call site is classified here, when it is instrumented, as a
+ * configuration read, a call to an API method, a logging call, or none of
+ * these, and gets only the calls to DynConfDepRuntime that its kind needs.
+ * Those calls pass the site id and the receiver and reference-typed arguments
+ * one by one; only configuration reads, which are rare, pass the arguments
+ * as an array.
  */
 public class ArgMonInstr extends Instrumentor {
 
-	protected final String methodCallAftEventCallSuper;
-	protected final String methodCallBefEventCallSuper;
+	protected final String rtClassName;
 
 	boolean HANDLE_EXCEPTIONS = false;
 
@@ -26,32 +36,17 @@ public class ArgMonInstr extends Instrumentor {
       System.err.println("ArgMonInstr expected load and store events");
       System.exit(-1);
     }*/
-		String rtClassName = eventHandlerClassName;
-		rtClassName = DynConfDepRuntime.class.getCanonicalName();
-		methodCallAftEventCallSuper = rtClassName + ".afterMethodCall(";
-		methodCallBefEventCallSuper = rtClassName + ".beforeMethodCall(";
+		rtClassName = DynConfDepRuntime.class.getCanonicalName() + ".";
 
 		HANDLE_EXCEPTIONS = Utils.buildBoolProperty("confdep.dyn.catchexceptions", false);
 	}
 
 	/*
-	 * I think this is actually just for nested ctor calls, and therefore almost useless
-	 *   --asr
+	 * Nested constructor calls (super() and this()) return nothing and have
+	 * no receiver the runtime could taint, so they are left alone.
 	 */
 	@Override
 	public void edit(ConstructorCall c)  {
-		//    System.out.println("editing a constructor call, class is " + c.getClassName());
-		try {
-			String aftInstr = "";
-			int iId =  set(Imap, c) ;
-			String o =  "$0" ;
-
-
-			aftInstr += methodCallAftEventCallSuper +iId + ",\""+c.getClassName()+"\",\"<init>\",($w)$_,null,$args);";        
-			c.replace("{ $_ = $proceed($$); " +  aftInstr + " }");
-		} catch (CannotCompileException ex) {
-			throw new RuntimeException(ex);
-		} 
 	}
 
 	/*
@@ -59,56 +54,21 @@ public class ArgMonInstr extends Instrumentor {
 	 */
 	@Override
 	public void edit(NewExpr e) throws CannotCompileException {
-		int iId = set(Imap, e); //.indexOfOriginalBytecode() 
-
-	//Not usually a major problem, so ignore	
-//		if(iId == -2)
-//			System.out.println("ArgMonInstr.edit(NewExpr) couldn't find iId for call to " +
-//					e.getClassName() + " <init>");
-	
-		String befInstr = "";
-		befInstr += methodCallBefEventCallSuper + iId+",\""+e.getClassName()+"\",\"<init>\",$0,$args);"; 
-
-		e.replace("{" + befInstr + " $_ = $proceed($$); " + methodCallAftEventCallSuper +
-				iId +",\""+ 
-				e.getClassName()+"\",\"<init>\",($w)$_,null,$args); }");
+		int iId = set(Imap, e); //.indexOfOriginalBytecode()
+
+		String code = makeCallCode(iId, e.getClassName(), "<init>", e.getSignature(), false, true);
+		if(code != null)
+			e.replace(code);
 	}
 
 	public void edit(MethodCall e) {
 		try {
-			String aftInstr = "";
-			String exRet = "";
-			String befInstr = "";
 			int iId =  set(Imap, e) ;
-
-			if(Modifier.isStatic(e.getMethod().getModifiers())) { 
-				befInstr += methodCallBefEventCallSuper + iId + ",\""+e.getClassName()+"\",\""+ 
-				e.getMethodName() + "\",null,$args);";
-
-				aftInstr += methodCallAftEventCallSuper +iId + ",\""+e.getClassName()+"\",\""+ 
-				e.getMethodName() + "\",($w)$_,null,$args);";
-
-				exRet += methodCallAftEventCallSuper +iId + ",\""+e.getClassName()+"\",\""+ 
-				e.getMethodName() + "\",null,null,$args);";
-
-			} else {
-				befInstr += methodCallBefEventCallSuper + iId+",\""+e.getClassName()+"\",\""+ 
-				e.getMethodName() + "\",$0,$args);"; 
-
-				aftInstr += methodCallAftEventCallSuper + iId+",\""+e.getClassName()+"\",\""+ 
-				e.getMethodName() + "\",($w)$_,$0,$args);"; 
-
-				exRet += methodCallAftEventCallSuper + iId+",\""+e.getClassName()+"\",\""+ 
-				e.getMethodName() + "\",null,$0,$args);";
-			}
-
-			if(HANDLE_EXCEPTIONS)
-				e.replace(" { "+ befInstr+ " try { $_ = $proceed($$); " +aftInstr + " } catch (java.lang.Throwable ex) { " +
-						exRet +  " throw ex;} }");
-			else
-				e.replace("{ " + befInstr+  "  $_ = $proceed($$); " +  aftInstr + " }"); 
-
-			return;
+			boolean hasThis = !Modifier.isStatic(e.getMethod().getModifiers());
+			String code = makeCallCode(iId, e.getClassName(), e.getMethodName(), e.getSignature(),
+				hasThis, false);
+			if(code != null)
+				e.replace(code);
 		} catch (CannotCompileException ex) {
 			ex.printStackTrace();
 			//      throw new RuntimeException(ex);
@@ -117,4 +77,106 @@ public class ArgMonInstr extends Instrumentor {
 			//      throw new RuntimeException(ex);
 		}
 	}
+
+	/*
+	 * Provides the code replacing the call at site iId to method mname of class
+	 * cname with descriptor desc, or null if the call needs no instrumentation.
+	 * Argument 0 is the receiver if hasThis; otherwise, argument 0 is the first
+	 * parameter.
+	 */
+	private String makeCallCode(int iId, String cname, String mname, String desc,
+			boolean hasThis, boolean isNew) {
+		List<String> refArgs = new ArrayList<String>(); // receiver and reference-typed arguments
+		List<Integer> refArgIdxs = new ArrayList<Integer>();
+		if(hasThis) {
+			refArgs.add("$0");
+			refArgIdxs.add(0);
+		}
+		boolean[] isRefParam = getRefParams(desc);
+		for(int k = 1; k <= isRefParam.length; ++k) {
+			if(isRefParam[k - 1]) {
+				refArgs.add("$" + k);
+				refArgIdxs.add(hasThis ? k : k - 1);
+			}
+		}
+		char retType = desc.charAt(desc.indexOf(')') + 1);
+		boolean isRefRet = isNew || retType == 'L' || retType == '[';
+		boolean isVoid = !isNew && retType == 'V';
+
+		boolean isConf = ConfDefines.isConf(cname, mname);
+		boolean isAPI = !isConf && RelAPIMethod.isAPI(cname, mname);
+		boolean updatesThis = isAPI && hasThis && !RelReadOnlyAPICall.isReadOnly(cname, mname);
+		boolean isLog = !isConf && RelLogStmts.isLogStmt(cname, mname);
+		if(refArgs.isEmpty() && !isConf && !(isAPI && isRefRet))
+			return null;
+
+		StringBuilder befInstr = new StringBuilder();
+		if(isAPI)
+			befInstr.append("int _t = 0; ");
+		for(int i = 0; i < refArgs.size(); ++i) {
+			if(isAPI)
+				befInstr.append("_t = ");
+			befInstr.append(rtClassName + "use(" + iId + "," + refArgIdxs.get(i) + "," +
+				refArgs.get(i) + "," + (isAPI ? "_t" : "0") + "); ");
+		}
+
+		StringBuilder aftInstr = new StringBuilder();
+		StringBuilder exInstr = new StringBuilder();
+		if(isConf) {
+			String prefix = "\"" + escape(ConfDefines.optionPrefixByName(cname, mname)) + "\"";
+			befInstr.append(rtClassName + "beforeConfRead(" + iId + "," + prefix + ",$args); ");
+			aftInstr.append(rtClassName + "afterConfRead(" + iId + "," + prefix + "," +
+				(isVoid ? "null" : "($w)$_") + ",$args); ");
+			exInstr.append(rtClassName + "afterConfRead(" + iId + "," + prefix + ",null,$args); ");
+		} else {
+			if(isLog) {
+				for(int i = 0; i < refArgs.size(); ++i) {
+					if(!refArgs.get(i).equals("$0"))
+						aftInstr.append(rtClassName + "logArg(" + iId + "," + refArgs.get(i) + "); ");
+				}
+			}
+			if(isAPI) {
+				if(isRefRet) {
+					aftInstr.append(rtClassName + "apiReturn(" + iId + ",$_,_t); ");
+					exInstr.append(rtClassName + "apiReturn(" + iId + ",null,_t); ");
+				}
+				if(updatesThis) {
+					aftInstr.append(rtClassName + "apiUpdate($0,_t); ");
+					exInstr.append(rtClassName + "apiUpdate($0,_t); ");
+				}
+			}
+		}
+
+		if(HANDLE_EXCEPTIONS && exInstr.length() > 0)
+			return "{ " + befInstr + "try { $_ = $proceed($$); " + aftInstr +
+				"} catch (java.lang.Throwable ex) { " + exInstr + "throw ex; } }";
+		else
+			return "{ " + befInstr + "$_ = $proceed($$); " + aftInstr + "}";
+	}
+
+	// provides, for each parameter in method descriptor desc, whether it is of reference type
+	private static boolean[] getRefParams(String desc) {
+		List<Boolean> isRef = new ArrayList<Boolean>();
+		int i = desc.indexOf('(') + 1;
+		while(desc.charAt(i) != ')') {
+			char c = desc.charAt(i);
+			if(c == 'L' || c == '[') {
+				while(desc.charAt(i) == '[')
+					i++;
+				if(desc.charAt(i) == 'L')
+					i = desc.indexOf(';', i);
+				isRef.add(true);
+			} else
+				isRef.add(false);
+			i++;
+		}
+		boolean[] ret = new boolean[isRef.size()];
+		for(int k = 0; k < ret.length; ++k)
+			ret[k] = isRef.get(k);
+		return ret;
+	}
+
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
 }
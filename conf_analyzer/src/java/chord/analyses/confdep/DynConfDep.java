@@ -11,10 +11,10 @@ import chord.project.analyses.*;
 import chord.util.Utils;
 import chord.util.tuple.object.Pair;
 import java.io.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import joeq.Compiler.Quad.Quad;
 import joeq.Compiler.Quad.RegisterFactory;
 import joeq.Compiler.Quad.Operator.Invoke;
@@ -35,11 +35,68 @@ public class DynConfDep extends BasicDynamicAnalysis {
   //Config.workDirName, 
   static File results = new File("dyn_cdep.temp");
   static final String SCHEME_FILE= "dynconfdep.instr";
-  
-  static final Pattern readPat = Pattern.compile("([0-9]*) calling .* returns option (.*)-([0-9]+) value=(.*)");
-  static final Pattern taintlessCall = Pattern.compile("([0-9]*) calling .*");
-  static final Pattern usePat = Pattern.compile("([0-9]*) invoking .* ([0-9]+)=(.+)");
-  static final Pattern nullVPat = Pattern.compile("([0-9]*) returns null");
+
+  /**
+   * The records written by DynConfDepRuntime to file results; see there for the format.
+   */
+  static class Results {
+    final List<String> labels = new ArrayList<String>(); //label id -> label
+    final Map<Integer, int[]> sets = new HashMap<Integer, int[]>(); //set id -> label ids
+    final List<int[]> reads = new ArrayList<int[]>(); //site, label id, value kind
+    final List<int[]> uses = new ArrayList<int[]>(); //site, argument, set id
+    final List<Integer> nullSites = new ArrayList<Integer>();
+
+    Results(File f) throws IOException {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+      try {
+        int kind;
+        while( (kind = in.read()) != -1) {
+          switch(kind) {
+          case DynConfDepRuntime.LABEL:
+            int id = in.readInt();
+            assert id == labels.size();
+            labels.add(in.readUTF());
+            break;
+          case DynConfDepRuntime.TAINT_SET:
+            int t = in.readInt();
+            int[] set = new int[in.readInt()];
+            for(int i = 0; i < set.length; ++i)
+              set[i] = in.readInt();
+            sets.put(t, set);
+            break;
+          case DynConfDepRuntime.CONF_READ:
+            int[] read = { in.readInt(), in.readInt(), in.readByte() };
+            if(read[2] == DynConfDepRuntime.VALUE)
+              in.readUTF();
+            reads.add(read);
+            break;
+          case DynConfDepRuntime.USE:
+            uses.add(new int[] { in.readInt(), in.readInt(), in.readInt() });
+            break;
+          case DynConfDepRuntime.RET_NULL:
+            nullSites.add(in.readInt());
+            break;
+          case DynConfDepRuntime.LOG:
+            in.readInt();
+            in.readUTF();
+            break;
+          default:
+            throw new IOException(f + ": bad record kind " + kind);
+          }
+        }
+      } catch(EOFException e) {
+        System.err.println("WARN: " + f + " is truncated; ignoring its last record");
+      } finally {
+        in.close();
+      }
+    }
+
+    //the option name of a label, which is the name followed by "-" and a site id
+    String optName(int label) {
+      String s = labels.get(label);
+      return s.substring(0, s.lastIndexOf('-'));
+    }
+  }
   
   @Override
   public Map<String, String> getInstrumentorArgs() {
@@ -105,8 +162,8 @@ public class DynConfDep extends BasicDynamicAnalysis {
 
 
     try {
-      
-      DomOpts domOpts = buildDomOpts(domI);
+      Results res = new Results(results);
+      DomOpts domOpts = buildDomOpts(domI, res);
       
       ProgramRel relConf = (ProgramRel) project.getTrgt("OptNames"); //opt, i
       ProgramRel relUse = (ProgramRel) project.getTrgt("dynCUse");
@@ -119,72 +176,51 @@ public class DynConfDep extends BasicDynamicAnalysis {
       relNullC.zero();
       relNullI.zero();
       relConfM.zero();
-    
-      BufferedReader br = new BufferedReader(new FileReader(results));
-      
-      String s = null;
-      while( (s = br.readLine()) != null) {
-      	if(s.startsWith("//"))
-      		continue;
-      	
-        Matcher m = readPat.matcher(s);
-        if(m.matches()) {
-          int iId = Integer.parseInt(m.group(1));
-          Quad q = (Quad) domI.get(iId);
-          
-          String cst = m.group(2);
-          int cstID = domOpts.getOrAdd(cst);
+
+      for(int[] read: res.reads) {
+        int iId = read[0];
+        Quad q = (Quad) domI.get(iId);
+
+        String cst = res.optName(read[1]);
+        int cstID = domOpts.getOrAdd(cst);
+        if(cstID == -1) {
+          cstID = 0;
+          System.err.println("UNKNOWN OPTION " + cst);
+        }
+
+        RegisterFactory.Register targ = Invoke.getDest(q).getRegister();
+        int vID = domV.indexOf(targ);
+
+        if(iId > -1 ) {
+          relConf.add(cstID, iId);
+          if(vID >-1 && read[2] == DynConfDepRuntime.NULL) //vID will be null for prim-typed options
+            relNullC.add(vID,cstID);
+        }
+      }
+
+      for(int[] use: res.uses) {
+        int iId = use[0];
+        int zId = use[1];
+        for(int label: res.sets.get(use[2])) {
+          String optName = res.optName(label);
+
+          int cstID = domOpts.indexOf(optName);
           if(cstID == -1) {
+            System.out.println("WARN: found use of option " + optName + " without ever having seen a read");
             cstID = 0;
-            System.err.println("UNKNOWN OPTION " + cst);
-          }
-//           else System.out.println("Found option " + cst + " at idx " + cstID);
-          
-          RegisterFactory.Register targ = Invoke.getDest(q).getRegister();
-          int vID = domV.indexOf(targ);
-          
-          String value = m.group(4);
-
-          if(iId > -1 ) {
-            relConf.add(cstID, iId);
-            if(vID >-1 && "null".equals(value)) //vID will be null for prim-typed options
-              relNullC.add(vID,cstID); 
-          }
-        } else {
-          m = usePat.matcher(s);
-          if(m.matches()) {
-            int iId = Integer.parseInt(m.group(1));
-            int zId = Integer.parseInt(m.group(2));
-            String cstList = m.group(3);
-            String[] confDeps = cstList.split("\\|");
-            for(String dep: confDeps) {
-              int i = dep.lastIndexOf('-');
-              String optName = dep.substring(0, i); //ConfDefines.pruneName(dep.substring(0, i));
-              
-              int cstID = domOpts.indexOf(optName);
-              if(cstID == -1) {
-                System.out.println("WARN: found use of option " + optName + " without ever having seen a read");
-                cstID = 0;
-              }
-
-              relUse.add(iId, zId, cstID);
-            }
-          } else {
-            m = nullVPat.matcher(s);
-            if(m.matches()) {
-              int i = Integer.parseInt(m.group(1));
-              Quad u = (Quad) domI.get(i);
-              if(u != null && (u.getOperator() instanceof Invoke) && Invoke.getDest(u) != null) {
-                relNullI.add(i);
-              }
-            } else
-              if(!s.contains("without taint"))
-                System.err.println("NO MATCH FOR LINE: " + s);
           }
+
+          relUse.add(iId, zId, cstID);
         }
       }
-      
-      br.close();
+
+      for(int i: res.nullSites) {
+        Quad u = (Quad) domI.get(i);
+        if(u != null && (u.getOperator() instanceof Invoke) && Invoke.getDest(u) != null) {
+          relNullI.add(i);
+        }
+      }
+
 //      domOpts.save();
       relConf.save();
       relUse.save();
@@ -198,33 +234,26 @@ public class DynConfDep extends BasicDynamicAnalysis {
     
   }
 
-  private DomOpts buildDomOpts(DomI domI) throws IOException {
+  private DomOpts buildDomOpts(DomI domI, Results res) throws IOException {
     ClassicProject project = ClassicProject.g();
     
     DomOpts domOpts =  (DomOpts)  project.getTrgt("Opt");
     domOpts.addPt(domI.get(0), DomOpts.NONE);
-//    System.out.println("in buildDomOpts, filename is " + results);
-    BufferedReader br = new BufferedReader(new FileReader(results));
-    String s;
-    while( (s = br.readLine()) != null) {
-      Matcher m = readPat.matcher(s);
-      if(m.matches()) {
-        int iId = Integer.parseInt(m.group(1));
-        
-        String cst = m.group(2);
-//        String prefix = ConfDefines.optionPrefix(domI.get(iId))
-        if(domOpts.contains(cst))
-        	continue;
-        
-        int cstID = domOpts.addPt(domI.get(iId), cst);
-        if(cstID == -1) {
-          cstID = 0;
-          System.err.println("UNKNOWN OPTION " + cst);
-        } else
-          System.out.println("Found and added option " + cst + " at idx " + cstID);
-       }
+    for(int[] read: res.reads) {
+      int iId = read[0];
+      
+      String cst = res.optName(read[1]);
+//      String prefix = ConfDefines.optionPrefix(domI.get(iId))
+      if(domOpts.contains(cst))
+      	continue;
+      
+      int cstID = domOpts.addPt(domI.get(iId), cst);
+      if(cstID == -1) {
+        cstID = 0;
+        System.err.println("UNKNOWN OPTION " + cst);
+      } else
+        System.out.println("Found and added option " + cst + " at idx " + cstID);
     }
-    br.close();
     domOpts.save();
     return domOpts;
   }
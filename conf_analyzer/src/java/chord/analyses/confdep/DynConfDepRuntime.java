@@ -1,77 +1,85 @@
 package chord.analyses.confdep;
 
-import chord.analyses.confdep.rels.RelAPIMethod;
-import chord.analyses.confdep.rels.RelReadOnlyAPICall;
-import chord.analyses.logging.RelLogStmts;
-import chord.analyses.type.RelScopeExcludedT;
-import chord.project.Config;
-import chord.util.IndexMap;
-import chord.util.Utils;
-import chord.util.WeakIdentityHashMap;
 import java.io.*;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.*;
 
+/**
+ * Event handler for the calls inserted by ArgMonInstr.
+ *
+ * Each object carrying configuration taints is mapped to the id of its taint
+ * set in a weak identity map made of independently locked stripes.  Taint sets
+ * are interned and immutable: id 0 is the empty set, and the union of two sets
+ * is memoized.  The entry points on the common path take an integer call site
+ * id and the objects involved, and allocate nothing unless a taint changes or a
+ * new record is written; until the first configuration option is read, they
+ * return right away.
+ *
+ * Results are written in binary to DynConfDep.results as a sequence of records,
+ * each a kind byte followed by its operands:
+ *   LABEL      label id (int), label (UTF)
+ *   TAINT_SET  set id (int), number of labels (int), label ids (ints)
+ *   CONF_READ  site id (int), label id (int), value kind (byte)[, value (UTF) if VALUE]
+ *   USE        site id (int), argument index (int), set id (int)
+ *   RET_NULL   site id (int)
+ *   LOG        site id (int), message (UTF)
+ * A label is an option name followed by "-" and the id of the site reading it,
+ * and a USE record means that the given argument of the call at the given site
+ * (0 being the receiver of instance methods) carried the given taints.  Labels
+ * and sets are written before the records referring to them, and USE, RET_NULL,
+ * and CONF_READ records are written once each.
+ */
 public class DynConfDepRuntime {
-	//extends DynamicAnalysis
+	public static final byte LABEL = 1;
+	public static final byte TAINT_SET = 2;
+	public static final byte CONF_READ = 3;
+	public static final byte USE = 4;
+	public static final byte RET_NULL = 5;
+	public static final byte LOG = 6;
+
+	// kinds of values in CONF_READ records
+	public static final byte PENDING = 0;
+	public static final byte NULL = 1;
+	public static final byte VALUE = 2;
+
+	private static DataOutputStream out;
+
+	// set once some object is tainted; until then, there is nothing to look up
+	private static volatile boolean anyTainted;
+
+	private static final TaintMap taints = new TaintMap();
+
+	// The tables below are guarded by the lock of DynConfDepRuntime.class,
+	// which is taken only when labels or sets are created or records written.
+	private static final HashMap<String, Integer> labelIds = new HashMap<String, Integer>();
+	private static int[][] sets = new int[64][];	// set id -> sorted label ids
+	private static boolean[] isSetWritten = new boolean[64];
+	private static int numSets = 1;
+	private static final HashMap<SetKey, Integer> setIds = new HashMap<SetKey, Integer>();
+	private static final LongIntMap unions = new LongIntMap();
+	private static final HashSet<String> confReadsWritten = new HashSet<String>();
+
+	// written USE and RET_NULL records, by stripe
+	private static final int NUM_STRIPES = 64;
+	private static final Written[] written = new Written[NUM_STRIPES];
 
-	static PrintStream out;
-	public static boolean FULL = true;
-	protected static WeakIdentityHashMap labels;
-
-	static class TaintList {
-		static IndexMap<String> names = new IndexMap<String>();
-		BitSet taints = new BitSet();
-
-		public int size() {
-			return taints.size();
-		}
-
-		public void add(String s) {
-
-			int idx = names.getOrAdd(s);
-			taints.set(idx);
-		}
-
-		public void addAll(TaintList t) {
-			taints.or(t.taints);
-		}
-
-		public String toString() {
-			StringBuilder sb = new StringBuilder();
-
-			for (int i = taints.nextSetBit(0); i >= 0; i = taints.nextSetBit(i+1)) {
-				sb.append(names.get(i));
-				sb.append("|");
-			}
-			if(sb.length() > 0)
-				sb.deleteCharAt(sb.length() -1);
-			return sb.toString();
-		}
-
-		public TaintList copy() {
-			TaintList t = new TaintList();
-			t.addAll(this);
-			return t;
-		}
-	}
-
-	static TaintList EMPTY_TLIST = new TaintList();
-	String[] scopeExcludeList; //a hack: explicitly copied into child.
 	static {
+		sets[0] = new int[0];
+		setIds.put(new SetKey(sets[0]), 0);
+		for (int i = 0; i < NUM_STRIPES; i++)
+			written[i] = new Written();
 		try {
-
-			out = new PrintStream(new FileOutputStream(DynConfDep.results));
-			labels = new WeakIdentityHashMap();
-			
-			//args(chord.scopeExclude)
-//			scopeExcludeList = Utils.toArray(Config.scopeExcludeStr);
-
+			out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(DynConfDep.results), 1 << 16));
 		} catch(IOException e) {
 			e.printStackTrace();
 		}
-		out.println("// runtime event handler alive "  + new Date());
-		
-		out.flush();
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				done();
+			}
+		});
 	}
 
 	public static String reformatArray(Object s) {
@@ -83,7 +91,7 @@ public class DynConfDepRuntime {
 			for(Object a : arr) {
 				if(a != null)
 					sb.append(a.toString());
-				else 
+				else
 					sb.append("null");
 				sb.append(",");
 			}
@@ -96,247 +104,454 @@ public class DynConfDepRuntime {
 		}
 	}
 
-	static HashSet<String> linesPrinted = new HashSet<String>(); //uniqueify
-
-	public static void printOnce(String s) {
-		if(linesPrinted.add(s))
-			out.println(s);
-	}
-	
-
-	public static String confOptAtSite(String cname, String mname, int iIdx, Object[] args) {
-
-		boolean isConf = ConfDefines.isConf(cname, mname);
+	public static String confOptAtSite(String prefix, int iIdx, Object[] args) {
 		int cOpt = 0;
 		for(; cOpt < args.length; ++cOpt)
 			if(args[cOpt] instanceof String)
 				break;
-		if(isConf && cOpt < args.length) {
-			String confOpt = ConfDefines.optionPrefixByName(cname, mname) + (String) args[cOpt] +"-" +iIdx;
+		if(cOpt < args.length) {
+			String confOpt = prefix + (String) args[cOpt] +"-" +iIdx;
 			return confOpt;
 		}
 		return null;
 	}
-	
+
 	public static void init(String s) {
-		
-	}
-	
-	public static void done() {
-		
+
 	}
 
-	public synchronized static void beforeMethodCall(int iIdx, String cname, String mname,
-			Object tref, Object[] args) {
-		String optName = confOptAtSite(cname, mname, iIdx, args);
-		if(optName != null) {
-			printOnce(iIdx +" calling " + cname + " " + mname + " returns option " + optName + " value=PENDING.");
-		}
-		
-		String thisT = taintStr(tref);
-		if(thisT.length() > 0) {
-			printOnce(iIdx + " invoking " + cname + " " + mname + " 0=" + thisT);
-		}
-		
-		boolean noTaintedArgs = true;
-		for(int i= 0; i < args.length; ++i) {  //then all taints from other args
-			String tStr = taintStr(args[i]);
-			if(tStr.length() > 0) {
-				noTaintedArgs = false;
-				if(tref == null)//no this; static method
-					printOnce(iIdx + " invoking " + cname + " " + mname + " " + (i) + "=" + tStr);
-				else //instance method
-					printOnce(iIdx + " invoking " + cname + " " + mname + " " + (i+1) + "=" + tStr);
-			}
+	public synchronized static void done() {
+		try {
+			if(out != null)
+				out.flush();
+		} catch(IOException e) {
+			e.printStackTrace();
 		}
-		if(noTaintedArgs)
-			out.println("// " + iIdx +" calling " + cname + " " + mname + " without taint");
 	}
 
-	public synchronized static void afterMethodCall(int iIdx, String cname, String mname, Object ret,
-			Object tref, Object[] args) {
-
-		//find the first string option; treat that as option name.
-		String optName = confOptAtSite(cname, mname, iIdx, args);
-		if(optName != null) {
-
-			if(ret != null) {
-				String prettyRet;
-				if(ret.getClass().isArray())
-					prettyRet = reformatArray(ret);
-				else 
-					prettyRet = ret.toString();
-				printOnce(iIdx +" calling " + cname + " " + mname + " returns option " + optName + " value=" + prettyRet);
-				addLabel(ret,  optName);
-			}
-			else
-				printOnce(iIdx +" calling " + cname + " " + mname + " returns option " + optName + " value=null");
-		} else {
-			boolean taintedCall = false;
-			TaintList returnTaints = new TaintList();
-			returnTaints.addAll(taintlist(tref)); // start by adding all taints from this
-
-			if(RelLogStmts.isLogStmt(cname, mname)) {
-				for(int i= 0; i < args.length; ++i)
-					if(args[i] != null && args[i] instanceof String)
-						out.println("LOG " + mname +" " + args[i]);
-			}
+	/*
+	 * Called before the arguments of a call are passed: records the taints of
+	 * argument o, which is argument z of the call at site iIdx, and provides
+	 * their union with acc.
+	 */
+	public static int use(int iIdx, int z, Object o, int acc) {
+		if(!anyTainted || o == null)
+			return acc;
+		int t = taints.get(o);
+		if(t == 0)
+			return acc;
+		if(writeOnce(iIdx, t, z))
+			writeUse(iIdx, z, t);
+		return union(acc, t);
+	}
 
-			String thisT = taintStr(tref);
-			if(thisT.length() > 0) {
-//				printOnce(iIdx + " invoking " + cname + " " + mname + " 0=" + thisT);
-				taintedCall = true;
-			}
+	/*
+	 * Called after an API method call at site iIdx returns ret: ret gets the
+	 * taints of the receiver and arguments.
+	 */
+	public static void apiReturn(int iIdx, Object ret, int t) {
+		if(ret == null) {
+			if(writeOnce(iIdx, -1, 0))
+				writeRetNull(iIdx);
+		} else
+			setTaints(ret, t);
+	}
 
-			for(int i= 0; i < args.length; ++i) {  //then all taints from other args
-				TaintList tList = taintlist(args[i]);
-				returnTaints.addAll(tList);
-				if(tList.size() > 0) {
-					String tStr = tList.toString();
-
-					if(tref == null)
-						printOnce("// " + iIdx + " invoked " + cname + " " + mname + " " + (i) + "=" + tStr);
-					else
-						printOnce("// " + iIdx + " invoked " + cname + " " + mname + " " + (i+1) + "=" + tStr);
-					taintedCall = true;
-				}
-			}
+	/*
+	 * Called after an API method call that may update its receiver: tref gets
+	 * the taints of the receiver and arguments.
+	 */
+	public static void apiUpdate(Object tref, int t) {
+		setTaints(tref, t);
+	}
 
-			if(!taintedCall && FULL) {
-				out.println("//  call to "+ cname + " " + mname  + " without taint at " + iIdx);
-			}
+	public static void logArg(int iIdx, Object a) {
+		if(a instanceof String)
+			writeLog(iIdx, (String) a);
+	}
 
+	public static void beforeConfRead(int iIdx, String prefix, Object[] args) {
+		String optName = confOptAtSite(prefix, iIdx, args);
+		if(optName != null)
+			writeConfRead(iIdx, optName, PENDING, null);
+	}
 
-			if(RelAPIMethod.isAPI(cname, mname) ) {
-				if(ret == null) {
-					printOnce(iIdx + " returns null");
-						
-				} else {
-					setTaints(ret, returnTaints); //mark return value
-				}
-				//potentially this regardless of whether we returned null
-				//Ctors should reach this point
-				if(!RelReadOnlyAPICall.isReadOnly(cname, mname))
-					setTaints(tref, returnTaints.copy());   //and add taints to this
-				
-				//DEBUG
-			}
-			if(cname.equals("org.apache.hadoop.fs.Path") && mname.equals("<init>")) {
-				out.println("// Found call to Path <init>, afterwards, tref taints = " + taintStr(tref) + 
-						" and returnTaints itself is " + returnTaints.toString());
-				if(RelAPIMethod.isAPI(cname, mname))
-					out.println("// <init> is an API method");
-				if(RelReadOnlyAPICall.isReadOnly(cname, mname))
-					out.println("// also a read only API method");
-				if(RelScopeExcludedT.isExcluded(cname))
-					out.println("// class is excluded from scope");
-				else
-					out.println("// class is NOT excluded from scope");
-			}
+	public static void afterConfRead(int iIdx, String prefix, Object ret, Object[] args) {
+		String optName = confOptAtSite(prefix, iIdx, args);
+		if(optName == null)
+			return;
+		if(ret != null) {
+			String prettyRet;
+			if(ret.getClass().isArray())
+				prettyRet = reformatArray(ret);
+			else
+				prettyRet = ret.toString();
+			int label = writeConfRead(iIdx, optName, VALUE, prettyRet);
+			taints.addTaints(ret, singleton(label));
+			anyTainted = true;
+		} else
+			writeConfRead(iIdx, optName, NULL, null);
+	}
+
+	public static void astoreReferenceEvent(int eId,Object array, int iId, Object parm) {
+		if(!anyTainted || array == parm || array == null || parm == null)
+			return;
+		int t = taints.get(parm);
+		if(t != 0)
+			taints.addTaints(array, t);
+	}
+
+	//load from tainted array/object should taint loaded object
+	public static void aloadReferenceEvent(int eId,Object array, int iId, Object result) {
+		if(!anyTainted || array == result || array == null || result == null)
+			return;
+		int t = taints.get(array);
+		if(t != 0)
+			taints.addTaints(result, t);
+	}
 
+	private static void setTaints(Object o, int t) {
+		if(o != null && anyTainted)
+			taints.put(o, t);
+	}
+
+	// Determines whether no record was written yet for argument z and set t at
+	// site iIdx; set -1, which is not a set id, stands for RET_NULL records.
+	private static boolean writeOnce(int iIdx, int t, int z) {
+		long pair = ((long) iIdx << 32) | (t & 0xFFFFFFFFL);
+		int h = (int) (pair ^ (pair >>> 32));
+		h ^= h >>> 16;
+		Written w = written[h & (NUM_STRIPES - 1)];
+		synchronized(w) {
+			int id = w.pairs.get(pair);
+			if(id == 0)
+				w.pairs.put(pair, id = ++w.numPairs);
+			return w.args.put(((long) id << 32) | (z & 0xFFFFFFFFL), 1) == 0;
 		}
-		out.flush();
 	}
 
+	// A stripe of the written records: each (site, set) pair gets an id, and
+	// the records are identified by that id and the argument.
+	private static final class Written {
+		final LongIntMap pairs = new LongIntMap();
+		final LongIntMap args = new LongIntMap();
+		int numPairs;
+	}
 
-	public synchronized static void astoreReferenceEvent(int eId,Object array, int iId, Object parm) {
-		//this message is just for debugging
-		//    out.println("store to array with taints: " + taintStr(parm));
-		if(array == parm)
-			return;
-		TaintList taintlist = taintlist(parm);
-		addTaints(array, taintlist);
+	////// taint sets
+
+	private static synchronized int singleton(int label) {
+		return intern(new int[] { label });
 	}
 
-	//load from tainted array/object should taint loaded object
-	public synchronized static void aloadReferenceEvent(int eId,Object array, int iId, Object result) {
-		//message is just for debugging
-		//    out.println("load from array with taints: " + taintStr(array));
-		//   out.println("(array contents were " + reformatArray(array) +")");
+	// provides the id of the union of sets t1 and t2
+	static int union(int t1, int t2) {
+		if(t1 == t2 || t2 == 0)
+			return t1;
+		if(t1 == 0)
+			return t2;
+		return unionSlow(Math.min(t1, t2), Math.max(t1, t2));
+	}
 
-		if(array == result) //can this happen, if an object points to itself?
-			return;
+	private static synchronized int unionSlow(int t1, int t2) {
+		long key = ((long) t1 << 32) | t2;
+		int t = unions.get(key);
+		if(t != 0)
+			return t;
+		int[] s1 = sets[t1], s2 = sets[t2];
+		int[] tmp = new int[s1.length + s2.length];
+		int n = 0;
+		for(int i = 0, j = 0; i < s1.length || j < s2.length; ) {
+			if(j == s2.length || (i < s1.length && s1[i] < s2[j]))
+				tmp[n++] = s1[i++];
+			else if(i == s1.length || s2[j] < s1[i])
+				tmp[n++] = s2[j++];
+			else {
+				tmp[n++] = s1[i++];
+				j++;
+			}
+		}
+		t = intern(n == tmp.length ? tmp : Arrays.copyOf(tmp, n));
+		unions.put(key, t);
+		return t;
+	}
 
-		TaintList taintlist = taintlist(array);
-		TaintList objTaintlist = taintlist(result);
-		if(taintlist == objTaintlist && taintlist.size() > 0) {
-			//this is probably not an error; sensible way to model
-			//a getArray conf read method
-			
-			
-//			System.out.println("AAARGH somehow same array is used for taintlist of both array and contents. " +
-//					"Array was " + reformatArray(array) + " and content was " + result + 
-//					" Taintlist was '" + taintlist+"', size = "+ taintlist.size());
-		} else {
-			addTaints(result, taintlist);
+	// provides the id of the given sorted set of labels, adding it if needed
+	private static int intern(int[] labels) {
+		SetKey k = new SetKey(labels);
+		Integer id = setIds.get(k);
+		if(id != null)
+			return id;
+		int t = numSets++;
+		if(t == sets.length) {
+			sets = Arrays.copyOf(sets, t * 2);
+			isSetWritten = Arrays.copyOf(isSetWritten, t * 2);
 		}
+		sets[t] = labels;
+		setIds.put(k, t);
+		return t;
 	}
 
-	private static void setTaints(Object o, TaintList newTList) {
-		if(o != null)
-			labels.put(o, newTList);    
+	private static class SetKey {
+		final int[] labels;
+		final int hash;
+		SetKey(int[] labels) {
+			this.labels = labels;
+			this.hash = Arrays.hashCode(labels);
+		}
+		public int hashCode() {
+			return hash;
+		}
+		public boolean equals(Object o) {
+			return (o instanceof SetKey) && Arrays.equals(labels, ((SetKey) o).labels);
+		}
 	}
 
-	//guaranteed to never be null
-	public static TaintList taintlist(Object o) {
-		if(o == null)
-			return EMPTY_TLIST;
-		Object l = labels.get(o);
-		if(l != null) {
-			TaintList l2 = (TaintList) l;
-			return l2;
-		} else {
-			return EMPTY_TLIST;
+	////// output
+
+	private static synchronized int getLabel(String s) throws IOException {
+		Integer id = labelIds.get(s);
+		if(id == null) {
+			id = labelIds.size();
+			labelIds.put(s, id);
+			out.writeByte(LABEL);
+			out.writeInt(id);
+			out.writeUTF(s);
 		}
+		return id;
 	}
 
+	private static synchronized int writeConfRead(int iIdx, String optName, byte kind, String value) {
+		try {
+			int label = getLabel(optName);
+			if(confReadsWritten.add(iIdx + " " + optName + " " + kind + " " + value)) {
+				out.writeByte(CONF_READ);
+				out.writeInt(iIdx);
+				out.writeInt(label);
+				out.writeByte(kind);
+				if(kind == VALUE)
+					out.writeUTF(value.length() > 0xFFFF / 3 ? value.substring(0, 0xFFFF / 3) : value);
+			}
+			return label;
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
 
-	public static String taintStr(Object o) {
-		if(o == null)
-			return "";
-		Object l = labels.get(o);
-		if(l != null) {
-			TaintList l2 = (TaintList) l;
-			return l2.toString();
-		} else {
-			return "";
+	private static synchronized void writeUse(int iIdx, int z, int t) {
+		try {
+			if(!isSetWritten[t]) {
+				isSetWritten[t] = true;
+				int[] labels = sets[t];
+				out.writeByte(TAINT_SET);
+				out.writeInt(t);
+				out.writeInt(labels.length);
+				for(int l : labels)
+					out.writeInt(l);
+			}
+			out.writeByte(USE);
+			out.writeInt(iIdx);
+			out.writeInt(z);
+			out.writeInt(t);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
 		}
 	}
 
-	public static void addLabel(Object o, String label) {
-		if(o == null)
-			return;
-		if(label.length() < 1) {
-			System.out.println("AARGH.  DynConfDep trying to add a zero-length label");
+	private static synchronized void writeRetNull(int iIdx) {
+		try {
+			out.writeByte(RET_NULL);
+			out.writeInt(iIdx);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
 		}
-		Object l = labels.get(o);
-		if(l != null) {
-			((TaintList)l).add(label);
-		} else {
-			TaintList l2 = new TaintList();
-			l2.add(label);
-			labels.put(o, l2);
+	}
+
+	private static synchronized void writeLog(int iIdx, String msg) {
+		try {
+			out.writeByte(LOG);
+			out.writeInt(iIdx);
+			out.writeUTF(msg.length() > 0xFFFF / 3 ? msg.substring(0, 0xFFFF / 3) : msg);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
 		}
 	}
 
+	////// object -> taint set map
+
+	private static final class TaintEntry extends WeakReference<Object> {
+		final int hash;
+		int taint;
+		TaintEntry next;
+		TaintEntry(Object o, ReferenceQueue<Object> queue, int hash, int taint, TaintEntry next) {
+			super(o, queue);
+			this.hash = hash;
+			this.taint = taint;
+			this.next = next;
+		}
+	}
 
-	//adds taints from taintlist to those for object.
-	//taintlist is not modified, assuming taintlist isn't already the taint list for o
-	private static void addTaints(Object o, TaintList taintlist) {
-		if(o == null)
-			return;
+	// Weak identity map from objects to nonzero taint set ids, split into
+	// stripes by identity hash code; each stripe is locked on its own.
+	private static final class TaintMap {
+		private final Stripe[] stripes = new Stripe[NUM_STRIPES];
 
-		Object l = labels.get(o);
-		if(l != null) {
-			((TaintList) l).addAll(taintlist);
-		} else {
-			labels.put(o, taintlist.copy());
-		}		
+		TaintMap() {
+			for (int i = 0; i < NUM_STRIPES; i++)
+				stripes[i] = new Stripe();
+		}
+
+		private static int hash(Object o) {
+			int h = System.identityHashCode(o);
+			return h ^ (h >>> 16);
+		}
+
+		int get(Object o) {
+			int h = hash(o);
+			return stripes[h & (NUM_STRIPES - 1)].get(o, h);
+		}
+
+		void put(Object o, int t) {
+			int h = hash(o);
+			stripes[h & (NUM_STRIPES - 1)].put(o, h, t, false);
+		}
+
+		void addTaints(Object o, int t) {
+			int h = hash(o);
+			stripes[h & (NUM_STRIPES - 1)].put(o, h, t, true);
+		}
 	}
 
-	public static void returnReferenceEvent(int pId, Object o) {
-		if(FULL)
-			out.println("returning " + o + " at " + pId);
+	private static final class Stripe {
+		private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+		private TaintEntry[] table = new TaintEntry[16];
+		private int size;
+
+		private int indexFor(int h) {
+			return (h >>> 6) & (table.length - 1);
+		}
+
+		synchronized int get(Object o, int h) {
+			for(TaintEntry e = table[indexFor(h)]; e != null; e = e.next) {
+				if(e.get() == o)
+					return e.taint;
+			}
+			return 0;
+		}
+
+		// sets the taints of o to t, or adds t to them if add is true
+		synchronized void put(Object o, int h, int t, boolean add) {
+			expungeStaleEntries();
+			int i = indexFor(h);
+			TaintEntry prev = null;
+			for(TaintEntry e = table[i]; e != null; prev = e, e = e.next) {
+				if(e.get() == o) {
+					int newT = add ? union(e.taint, t) : t;
+					if(newT != 0)
+						e.taint = newT;
+					else {
+						if(prev == null)
+							table[i] = e.next;
+						else
+							prev.next = e.next;
+						size--;
+					}
+					return;
+				}
+			}
+			if(t == 0)
+				return;
+			table[i] = new TaintEntry(o, queue, h, t, table[i]);
+			if(++size > table.length * 3 / 4)
+				resize();
+		}
+
+		private void expungeStaleEntries() {
+			for(Object x; (x = queue.poll()) != null; ) {
+				TaintEntry stale = (TaintEntry) x;
+				int i = indexFor(stale.hash);
+				TaintEntry prev = null;
+				for(TaintEntry e = table[i]; e != null; prev = e, e = e.next) {
+					if(e == stale) {
+						if(prev == null)
+							table[i] = e.next;
+						else
+							prev.next = e.next;
+						size--;
+						break;
+					}
+				}
+			}
+		}
+
+		private void resize() {
+			TaintEntry[] oldTable = table;
+			table = new TaintEntry[oldTable.length * 2];
+			for(TaintEntry e : oldTable) {
+				while(e != null) {
+					TaintEntry next = e.next;
+					int i = indexFor(e.hash);
+					e.next = table[i];
+					table[i] = e;
+					e = next;
+				}
+			}
+		}
 	}
 
+	// Open addressing map from nonzero longs to ints, 0 standing for no value.
+	static final class LongIntMap {
+		private long[] keys = new long[16];
+		private int[] vals = new int[16];
+		private int size;
+
+		private static int slot(long key, int mask) {
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h >>> 40) & mask;
+		}
+
+		int get(long key) {
+			int mask = keys.length - 1;
+			for(int i = slot(key, mask); keys[i] != 0; i = (i + 1) & mask) {
+				if(keys[i] == key)
+					return vals[i];
+			}
+			return 0;
+		}
+
+		// provides the previous value
+		int put(long key, int val) {
+			int mask = keys.length - 1;
+			int i = slot(key, mask);
+			for(; keys[i] != 0; i = (i + 1) & mask) {
+				if(keys[i] == key) {
+					int old = vals[i];
+					vals[i] = val;
+					return old;
+				}
+			}
+			keys[i] = key;
+			vals[i] = val;
+			if(++size * 2 > keys.length)
+				rehash();
+			return 0;
+		}
+
+		private void rehash() {
+			long[] oldKeys = keys;
+			int[] oldVals = vals;
+			keys = new long[oldKeys.length * 2];
+			vals = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for(int j = 0; j < oldKeys.length; j++) {
+				if(oldKeys[j] == 0)
+					continue;
+				int i = slot(oldKeys[j], mask);
+				while(keys[i] != 0)
+					i = (i + 1) & mask;
+				keys[i] = oldKeys[j];
+				vals[i] = oldVals[j];
+			}
+		}
+	}
 }
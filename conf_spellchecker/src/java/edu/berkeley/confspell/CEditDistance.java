@@ -176,4 +176,114 @@ public class CEditDistance {
 		return p[n];
 	}
 
+	/**
+	 * <p>
+	 * Find the Levenshtein distance between two Strings if it is less than or
+	 * equal to a given threshold.
+	 * </p>
+	 * 
+	 * <p>
+	 * Only the cells of the distance matrix within <code>threshold</code> of the
+	 * diagonal are computed, and the computation stops as soon as every cell in
+	 * a row exceeds the threshold, so comparing a String against one that is
+	 * much farther away costs little more than a length check.
+	 * </p>
+	 * 
+	 * <pre>
+	 * getLevenshteinDistance("frog", "fog", 1)             = 1
+	 * getLevenshteinDistance("fly", "ant", 2)              = -1
+	 * getLevenshteinDistance("elephant", "hippo", 7)       = 7
+	 * getLevenshteinDistance("elephant", "hippo", 6)       = -1
+	 * getLevenshteinDistance("hello", "hallo", 0)          = -1
+	 * </pre>
+	 * 
+	 * @param s
+	 *          the first String, must not be null
+	 * @param t
+	 *          the second String, must not be null
+	 * @param threshold
+	 *          the largest distance of interest, must not be negative
+	 * @return the distance, or -1 if it is greater than the threshold
+	 * @throws IllegalArgumentException
+	 *           if either String input <code>null</code> or the threshold is
+	 *           negative
+	 */
+	public static int getLevenshteinDistance(CharSequence s, CharSequence t,
+			int threshold) {
+		if (s == null || t == null) {
+			throw new IllegalArgumentException("Strings must not be null");
+		}
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Threshold must not be negative");
+		}
+
+		int n = s.length(); // length of s
+		int m = t.length(); // length of t
+
+		if (n == 0) {
+			return m <= threshold ? m : -1;
+		} else if (m == 0) {
+			return n <= threshold ? n : -1;
+		} else if (Math.abs(n - m) > threshold) {
+			return -1;
+		}
+
+		if (n > m) {
+			// swap the input strings to consume less memory
+			CharSequence tmp = s;
+			s = t;
+			t = tmp;
+			n = m;
+			m = t.length();
+		}
+
+		int p[] = new int[n + 1]; // 'previous' cost array, horizontally
+		int d[] = new int[n + 1]; // cost array, horizontally
+		int _d[]; // placeholder to assist in swapping p and d
+
+		// cells outside the band hold Integer.MAX_VALUE; each cell inside it has a
+		// finite neighbor above or diagonally above, so 1 + min never overflows
+		int boundary = Math.min(n, threshold) + 1;
+		for (int i = 0; i < boundary; i++) {
+			p[i] = i;
+		}
+		java.util.Arrays.fill(p, boundary, p.length, Integer.MAX_VALUE);
+		java.util.Arrays.fill(d, Integer.MAX_VALUE);
+
+		for (int j = 1; j <= m; j++) {
+			char t_j = t.charAt(j - 1); // jth character of t
+			d[0] = j;
+
+			// only the band [j - threshold, j + threshold] can stay in range
+			int min = Math.max(1, j - threshold);
+			int max = j > Integer.MAX_VALUE - threshold ? n : Math.min(n, j
+					+ threshold);
+			if (min > 1) {
+				d[min - 1] = Integer.MAX_VALUE;
+			}
+
+			int rowMin = min == 1 ? j : Integer.MAX_VALUE;
+			for (int i = min; i <= max; i++) {
+				if (s.charAt(i - 1) == t_j) {
+					d[i] = p[i - 1];
+				} else {
+					d[i] = 1 + Math.min(Math.min(d[i - 1], p[i]), p[i - 1]);
+				}
+				if (d[i] < rowMin) {
+					rowMin = d[i];
+				}
+			}
+			if (rowMin > threshold) {
+				return -1; // distances never decrease from one row to the next
+			}
+
+			// copy current distance counts to 'previous row' distance counts
+			_d = p;
+			p = d;
+			d = _d;
+		}
+
+		return p[n] <= threshold ? p[n] : -1;
+	}
+
 }
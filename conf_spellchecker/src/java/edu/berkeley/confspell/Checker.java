@@ -8,6 +8,7 @@ package edu.berkeley.confspell;
 import java.io.File;
 import java.net.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * Responsible for comparing a dictionary with a set of options.
@@ -83,6 +84,15 @@ public class Checker {
 	 * Return result for an option of a type for which no checker exists
 	 */
 	static Res NoCheckerFor = new Res("No checker for type");
+	/**
+	 * Return result for an option that is not in the dictionary
+	 */
+	static Res NotInDict = new Res("may not exist");
+	/**
+	 * Return result for an option that is not in the dictionary, but whose value
+	 * is substituted into another option
+	 */
+	static Res UsedBySubst = new Res("used by substitution");
 
 	/**
 	 * If set to true, this Checker will print the quality score for each guessed
@@ -93,32 +103,16 @@ public class Checker {
 	 * If true, the Checker will print the names and values of verified options.
 	 */
 	public boolean PRINT_OKS = true;
-
-	private OptDictionary dict;
-
 	/**
-	 * A guess as to the option name the user mistyped.
-	 * 
+	 * The number of options checkAll checks at once.
 	 */
-	private class Guess implements Comparable<Guess> {
-		double simMetric;
-		String val;
-
-		public Guess(double d, String s) {
-			simMetric = d;
-			val = s;
-		}
+	public int NUM_THREADS = Runtime.getRuntime().availableProcessors();
+	/**
+	 * The number of guesses made for each option not in the dictionary.
+	 */
+	public int NUM_GUESSES = 3;
 
-		@Override
-		public int compareTo(Guess o) {
-			if (simMetric < o.simMetric)
-				return -1;
-			else if (simMetric == o.simMetric)
-				return 0;
-			else
-				return 1;
-		}
-	}
+	private OptDictionary dict;
 
 	/**
 	 * Returns candidate approximate matches.
@@ -129,7 +123,7 @@ public class Checker {
 	 *          the set of already-set options
 	 * @param count
 	 *          the number of matches to return
-	 * @return A sorted list of candidates
+	 * @return A sorted list of candidates, nearest first
 	 */
 	protected List<String> nearestMatches(String optName, OptionSet conf,
 			int count) {
@@ -139,21 +133,8 @@ public class Checker {
 			l.add(optName);
 			return l;
 		}
-		PriorityQueue<Guess> guesses = new PriorityQueue<Guess>();
-
-		for (String s : dict.names()) {
-			if (!conf.contains(s)) {
-				double m = CEditDistance.getLevenshteinDistance(s, optName);
-				guesses.add(new Guess(m, s));
-			}
-		}
-
-		for (int i = 0; i < count; ++i) {
-			Guess g = guesses.poll();
-			if (g == null)
-				break;
-			l.add(g.val + (PRINT_DIST ? " (" + g.simMetric + ")" : ""));
-		}
+		for (OptIndex.Match g : dict.index().nearest(optName, count, conf))
+			l.add(g.name() + (PRINT_DIST ? " (" + g.distance() + ")" : ""));
 
 		return l;
 	}
@@ -364,6 +345,102 @@ public class Checker {
 		checker.checkConf(conf);
 	}
 
+	/**
+	 * The result of checking one option of an OptionSet.
+	 */
+	public static class Outcome {
+		final String name;
+		final String value;
+		final Res res;
+		final List<String> guesses;
+
+		Outcome(String k, String v, Res r, List<String> g) {
+			name = k;
+			value = v;
+			res = r;
+			guesses = g;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		public String value() {
+			return value;
+		}
+
+		/**
+		 * The result of checking this option: NotInDict or UsedBySubst for an
+		 * option not in the dictionary, and the result of check() otherwise.
+		 */
+		public Res res() {
+			return res;
+		}
+
+		/**
+		 * The nearest dictionary entries to an option that is NotInDict, and null
+		 * otherwise.
+		 */
+		public List<String> guesses() {
+			return guesses;
+		}
+	}
+
+	/**
+	 * Checks every option in a given option set, using NUM_THREADS threads.
+	 * Checking an option can mean looking up a host or opening a socket, and
+	 * guessing at a mistyped name means searching the whole dictionary, so
+	 * options are checked concurrently rather than one after another.
+	 * 
+	 * @param conf
+	 * @return an outcome for each option, in the order conf lists them
+	 */
+	public List<Outcome> checkAll(final OptionSet conf) {
+		dict.index(); // build once here, not in each thread
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+				NUM_THREADS));
+		try {
+			List<Future<Outcome>> futures = new ArrayList<Future<Outcome>>();
+			for (Map.Entry<String, String> opt : conf.entrySet()) {
+				final String k = opt.getKey();
+				final String v = opt.getValue();
+				futures.add(pool.submit(new Callable<Outcome>() {
+					public Outcome call() {
+						return checkOne(conf, k, v);
+					}
+				}));
+			}
+			List<Outcome> outcomes = new ArrayList<Outcome>(futures.size());
+			for (Future<Outcome> f : futures)
+				outcomes.add(f.get());
+			return outcomes;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			else if (cause instanceof Error)
+				throw (Error) cause;
+			else
+				throw new RuntimeException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	private Outcome checkOne(OptionSet conf, String k, String v) {
+		if (!dict.contains(k)) {
+			if (conf.usedBySubst(k))
+				return new Outcome(k, v, UsedBySubst, null);
+			else
+				return new Outcome(k, v, NotInDict, nearestMatches(k, conf,
+						NUM_GUESSES));
+		} else
+			return new Outcome(k, v, check(k, v), null);
+	}
+
 	/**
 	 * Checks a given option set, reporting results via standard out.
 	 * 
@@ -377,33 +454,27 @@ public class Checker {
 		TreeSet<String> noCheckerTypes = new TreeSet<String>(); // this is a set of
 																														// type names
 
-		for (Map.Entry<String, String> opt : conf.entrySet()) {
-			String k = opt.getKey();
-			String v = opt.getValue();
-			if (!dict.contains(k)) {
-				if (conf.usedBySubst(k)) {
-					System.out.println("OK " + k + " used by substitution");
-					continue;
-				} else {
-					System.out
-							.println("WARN: option " + k + " may not exist; val = " + v);
-					printGuesses(this, conf, k);
-				}
-			} else {
-				Checker.Res res = check(k, v);
-				if (res == Checker.OK) {
-					if (PRINT_OKS)
-						System.out.println(res.msg() + " " + k + " [" + dict.getFullname(k)
-								+ "] = " + v);
-				} else if (res == Checker.NoCheckerFor) {
-					noCheckerNames.add(k);
-					String t = dict.get(k);
-					if (t != null)
-						noCheckerTypes.add(t);
-				} else
-					System.out.println("WARN " + k + " [" + dict.getFullname(k) + "] = "
-							+ v + " -- " + res.msg());
-			}
+		for (Outcome o : checkAll(conf)) {
+			String k = o.name;
+			String v = o.value;
+			Checker.Res res = o.res;
+			if (res == UsedBySubst) {
+				System.out.println("OK " + k + " used by substitution");
+			} else if (res == NotInDict) {
+				System.out.println("WARN: option " + k + " may not exist; val = " + v);
+				printGuesses(this, o.guesses);
+			} else if (res == Checker.OK) {
+				if (PRINT_OKS)
+					System.out.println(res.msg() + " " + k + " [" + dict.getFullname(k)
+							+ "] = " + v);
+			} else if (res == Checker.NoCheckerFor) {
+				noCheckerNames.add(k);
+				String t = dict.get(k);
+				if (t != null)
+					noCheckerTypes.add(t);
+			} else
+				System.out.println("WARN " + k + " [" + dict.getFullname(k) + "] = "
+						+ v + " -- " + res.msg());
 		}
 		if (noCheckerNames.size() > 0) {
 			System.out.print("No checker rules for:\t");
@@ -420,8 +491,7 @@ public class Checker {
 		System.out.println();
 	}
 
-	private static void printGuesses(Checker checker, OptionSet conf, String k) {
-		List<String> guesses = checker.nearestMatches(k, conf, 3);
+	private static void printGuesses(Checker checker, List<String> guesses) {
 		System.out.println("Guesses: ");
 		for (String s : guesses) {
 			System.out.println("\t" + s + " " + checker.dict.getFullname(s));
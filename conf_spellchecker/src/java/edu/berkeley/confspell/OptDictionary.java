@@ -40,11 +40,15 @@ public class OptDictionary {
 	TreeMap<String, String> dict = new TreeMap<String, String>();
 	ArrayList<Pattern> regexOpts = new ArrayList<Pattern>();
 	HashMap<String, String> annotations = new HashMap<String, String>();
+	// built on first use and dropped whenever an option is added
+	private OptIndex index;
 
 	public void update(String opt, String ty) {
 		String oldT = dict.get(opt);
-		if (oldT == null)
+		if (oldT == null) {
 			dict.put(opt, ty);
+			dropIndex();
+		}
 		else {
 			if (ty == null || oldT.contains(ty))
 				return;
@@ -128,6 +132,7 @@ public class OptDictionary {
 				annotations.put(opt, parts[2]);
 			}
 		}
+		dropIndex();
 	}
 
 	private String pruneName(String s) {
@@ -233,4 +238,19 @@ public class OptDictionary {
 		return dict.keySet();
 	}
 
+	/**
+	 * Returns an index of the option names, for finding the ones nearest to a
+	 * mistyped name. The index is built on the first call and reused until the
+	 * dictionary changes.
+	 */
+	public synchronized OptIndex index() {
+		if (index == null)
+			index = new OptIndex(dict.keySet());
+		return index;
+	}
+
+	private synchronized void dropIndex() {
+		index = null;
+	}
+
 }
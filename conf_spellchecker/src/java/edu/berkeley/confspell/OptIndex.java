@@ -0,0 +1,216 @@
+/*
+ * Copyright Ari Rabkin (asrabkin@gmail.com)
+ * See the COPYING file for copyright license information.
+ */
+package edu.berkeley.confspell;
+
+import java.util.*;
+
+/**
+ * An index of option names for finding the ones nearest a mistyped name.
+ *
+ * The names are kept in a BK-tree: each child of a node is labeled with its
+ * Levenshtein distance to that node. By the triangle inequality, a search for
+ * names within distance r of a query only needs to visit the children whose
+ * label is within r of the query's distance to their parent. Each comparison
+ * is also bounded, so it gives up as soon as the name is known to be out of
+ * range of every result and of every child worth visiting.
+ *
+ * An index does not change once built, and may be searched from several
+ * threads at once.
+ */
+public class OptIndex {
+
+	/**
+	 * An option name and its distance to the name searched for.
+	 */
+	public static class Match implements Comparable<Match> {
+		final int dist;
+		final String name;
+
+		public Match(int d, String s) {
+			dist = d;
+			name = s;
+		}
+
+		public int distance() {
+			return dist;
+		}
+
+		public String name() {
+			return name;
+		}
+
+		/**
+		 * Orders by distance, breaking ties alphabetically.
+		 */
+		@Override
+		public int compareTo(Match o) {
+			if (dist < o.dist)
+				return -1;
+			else if (dist > o.dist)
+				return 1;
+			else
+				return name.compareTo(o.name);
+		}
+	}
+
+	private static class Node {
+		final String name;
+		Node[] children; // indexed by distance to name; null when a leaf
+
+		Node(String s) {
+			name = s;
+		}
+
+		// the largest distance labeling a child, or 0 for a leaf
+		int maxEdge() {
+			return children == null ? 0 : children.length - 1;
+		}
+	}
+
+	private static class Pending implements Comparable<Pending> {
+		final int bound;
+		final Node node;
+
+		Pending(int b, Node n) {
+			bound = b;
+			node = n;
+		}
+
+		@Override
+		public int compareTo(Pending o) {
+			return bound < o.bound ? -1 : (bound == o.bound ? 0 : 1);
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	public OptIndex(Collection<String> names) {
+		for (String s : names)
+			add(s);
+	}
+
+	private void add(String s) {
+		if (root == null) {
+			root = new Node(s);
+			size++;
+			return;
+		}
+		Node n = root;
+		while (true) {
+			int d = CEditDistance.getLevenshteinDistance(s, n.name);
+			if (d == 0)
+				return; // already present
+			if (n.children == null)
+				n.children = new Node[d + 1];
+			else if (n.children.length <= d) {
+				Node[] grown = new Node[d + 1];
+				System.arraycopy(n.children, 0, grown, 0, n.children.length);
+				n.children = grown;
+			}
+			Node child = n.children[d];
+			if (child == null) {
+				n.children[d] = new Node(s);
+				size++;
+				return;
+			}
+			n = child;
+		}
+	}
+
+	/**
+	 * The number of distinct names in the index.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the names nearest to a given one.
+	 *
+	 * @param optName
+	 *          the name to match approximately
+	 * @param count
+	 *          the number of matches to return
+	 * @param exclude
+	 *          names not to return, or null
+	 * @return up to count matches, nearest first, with ties broken
+	 *         alphabetically
+	 */
+	public List<Match> nearest(String optName, int count, OptionSet exclude) {
+		return nearest(optName, count, Integer.MAX_VALUE, exclude);
+	}
+
+	/**
+	 * Returns the names nearest to a given one, among those within a given
+	 * distance of it.
+	 *
+	 * @param optName
+	 *          the name to match approximately
+	 * @param count
+	 *          the number of matches to return
+	 * @param maxDist
+	 *          the largest distance of a match
+	 * @param exclude
+	 *          names not to return, or null
+	 * @return up to count matches, nearest first, with ties broken
+	 *         alphabetically
+	 */
+	public List<Match> nearest(String optName, int count, int maxDist,
+			OptionSet exclude) {
+		// the worst of the best matches so far is at the head
+		PriorityQueue<Match> best = new PriorityQueue<Match>(count + 1,
+				Collections.reverseOrder());
+		if (root != null && count > 0 && maxDist >= 0) {
+			// subtrees still to visit, by a lower bound on their distance to optName
+			PriorityQueue<Pending> pending = new PriorityQueue<Pending>();
+			pending.add(new Pending(0, root));
+			while (!pending.isEmpty()) {
+				int radius = best.size() < count ? maxDist : best.peek().dist;
+				Pending next = pending.poll();
+				if (next.bound > radius)
+					break; // and so are all the others
+				Node n = next.node;
+
+				// beyond radius + maxEdge, neither n nor any child can be in range
+				int limit = sum(radius, n.maxEdge());
+				int d = limit == Integer.MAX_VALUE ? CEditDistance
+						.getLevenshteinDistance(optName, n.name) : CEditDistance
+						.getLevenshteinDistance(optName, n.name, limit);
+				if (d < 0)
+					continue;
+
+				if (d <= radius && (exclude == null || !exclude.contains(n.name))) {
+					Match m = new Match(d, n.name);
+					if (best.size() < count)
+						best.add(m);
+					else if (m.compareTo(best.peek()) < 0) {
+						best.poll();
+						best.add(m);
+					}
+					if (best.size() == count)
+						radius = best.peek().dist;
+				}
+
+				if (n.children != null) {
+					int lo = Math.max(1, d - radius);
+					int hi = Math.min(n.maxEdge(), sum(d, radius));
+					for (int e = lo; e <= hi; ++e)
+						if (n.children[e] != null)
+							pending.add(new Pending(Math.abs(d - e), n.children[e]));
+				}
+			}
+		}
+
+		ArrayList<Match> l = new ArrayList<Match>(best);
+		Collections.sort(l);
+		return l;
+	}
+
+	// a + b for non-negative a and b, saturating at Integer.MAX_VALUE
+	private static int sum(int a, int b) {
+		return a > Integer.MAX_VALUE - b ? Integer.MAX_VALUE : a + b;
+	}
+}
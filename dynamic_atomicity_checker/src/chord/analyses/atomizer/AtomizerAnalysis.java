@@ -5,12 +5,9 @@
  */
 package chord.analyses.atomizer;
 
-import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIntHashMap;
-import gnu.trove.TIntIterator;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TLongIntHashMap;
-import gnu.trove.TLongObjectHashMap;
 
 import java.util.Stack;
 
@@ -36,9 +33,12 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 	private TIntObjectHashMap<Stack<StackTraceElement[]>> thr2AtomBlkStack;
 	private TIntObjectHashMap<StackTraceElement[]> thr2CommPoint;
 	private StackTraceElement[] violPoint;
-	private TIntObjectHashMap<TIntHashSet> thr2Lcks;
-	private TLongObjectHashMap<TIntHashSet> mem2AccLcks;
-	private TLongObjectHashMap<TIntHashSet> mem2WrtLcks;
+	// locksets are ids in lcksets; a location absent from mem2AccLcks or
+	// mem2WrtLcks is mapped to LocksetTable.ALL
+	private LocksetTable lcksets;
+	private TIntIntHashMap thr2Lcks;
+	private TLongIntHashMap mem2AccLcks;
+	private TLongIntHashMap mem2WrtLcks;
 	private TLongIntHashMap mem2AccState;
 	private TLongIntHashMap mem2OwnerThr;
 	private TIntIntHashMap lck2AccState;
@@ -89,9 +89,10 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		thr2AtomBlkStack = new TIntObjectHashMap<Stack<StackTraceElement[]>>();
 		thr2CommPoint = new TIntObjectHashMap<StackTraceElement[]>();
 		violPoint = null;
-		thr2Lcks = new TIntObjectHashMap<TIntHashSet>();
-		mem2AccLcks = new TLongObjectHashMap<TIntHashSet>();
-		mem2WrtLcks = new TLongObjectHashMap<TIntHashSet>();
+		lcksets = new LocksetTable();
+		thr2Lcks = new TIntIntHashMap();
+		mem2AccLcks = new TLongIntHashMap();
+		mem2WrtLcks = new TLongIntHashMap();
 		mem2AccState = new TLongIntHashMap();
 		mem2OwnerThr = new TLongIntHashMap();
 		lck2AccState = new TIntIntHashMap();
@@ -113,17 +114,17 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		updateMemoryAccessState(t, m, false);
 		
 		if (mem2AccState.get(m) == MemoryAccessState.SHARED_MODIFIED) {			
-			TIntHashSet mwLcks = mem2WrtLcks.get(m);
-			TIntHashSet maLcks = mem2AccLcks.get(m);
-			TIntHashSet thLcks = thr2Lcks.get(t);
-			assert (thLcks != null);
-			if (isIntersectionEmpty(mwLcks, thLcks)) {
-				maLcks = intersect(maLcks, thLcks);
+			int mwLcks = mem2WrtLcks.get(m);
+			int maLcks = mem2AccLcks.get(m);
+			assert (thr2Lcks.containsKey(t));
+			int thLcks = thr2Lcks.get(t);
+			if (lcksets.isIntersectionEmpty(mwLcks, thLcks)) {
+				maLcks = lcksets.intersect(maLcks, thLcks);
 				mem2AccLcks.put(m, maLcks);
 			} else {
 				int state = thr2CommState.get(t);
 				if (state == CommitState.PRE_COMM) {
-					maLcks = intersect(maLcks, thLcks);
+					maLcks = lcksets.intersect(maLcks, thLcks);
 					mem2AccLcks.put(m, maLcks);
 					thr2CommState.put(t, CommitState.POS_COMM);
 				}
@@ -145,21 +146,21 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		updateMemoryAccessState(t, m, true);
 		
 		if (mem2AccState.get(m) == MemoryAccessState.SHARED_MODIFIED) {
-			TIntHashSet mwLcks = mem2WrtLcks.get(m);
-			TIntHashSet maLcks = mem2AccLcks.get(m);
-			TIntHashSet thLcks = thr2Lcks.get(t);
-			assert (thLcks != null);
-			if (isIntersectionEmpty(maLcks, thLcks)) {
-				mwLcks = intersect(mwLcks, thLcks);
+			int mwLcks = mem2WrtLcks.get(m);
+			int maLcks = mem2AccLcks.get(m);
+			assert (thr2Lcks.containsKey(t));
+			int thLcks = thr2Lcks.get(t);
+			if (lcksets.isIntersectionEmpty(maLcks, thLcks)) {
+				mwLcks = lcksets.intersect(mwLcks, thLcks);
 				mem2WrtLcks.put(m, mwLcks);
-				maLcks = intersect(maLcks, thLcks);
+				maLcks = lcksets.intersect(maLcks, thLcks);
 				mem2AccLcks.put(m, maLcks);
 			} else {
 				int state = thr2CommState.get(t); 
 				if (state == CommitState.PRE_COMM) {
-					mwLcks = intersect(mwLcks, thLcks);
+					mwLcks = lcksets.intersect(mwLcks, thLcks);
 					mem2WrtLcks.put(m, mwLcks);
-					maLcks = new TIntHashSet();
+					maLcks = LocksetTable.EMPTY;
 					mem2AccLcks.put(m, maLcks);
 					thr2CommState.put(t, CommitState.POS_COMM);
 				}			
@@ -216,8 +217,8 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		if (ignoreRentrantLock.processAcquireLock(t, o)) {
 			updateLockAccessState(t, o);
 			if (lck2AccState.get(o) == LockAccessState.SHARED_MODIFIED) {
-				TIntHashSet lcks = thr2Lcks.get(t);
-				lcks.add(o);
+				assert (thr2Lcks.containsKey(t));
+				thr2Lcks.put(t, lcksets.add(thr2Lcks.get(t), o));
 				
 				if (thr2CommState.get(t) == CommitState.POS_COMM) {
 					violPoint = Thread.currentThread().getStackTrace();
@@ -239,9 +240,9 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		if (ignoreRentrantLock.processReleaseLock(t, o)) {
 			updateLockAccessState(t, o);
 			if (lck2AccState.get(o) == LockAccessState.SHARED_MODIFIED) {
-				TIntHashSet lcks = thr2Lcks.get(t);
-				assert lcks.contains(o);
-				lcks.remove(o);
+				int lcks = thr2Lcks.get(t);
+				assert lcksets.contains(lcks, o);
+				thr2Lcks.put(t, lcksets.remove(lcks, o));
 				
 				if (thr2CommState.get(t) == CommitState.PRE_COMM) {
 					thr2CommState.put(t, CommitState.POS_COMM);
@@ -324,7 +325,7 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		assert (!thr2CommState.containsKey(t));
 		thr2CommState.put(t, CommitState.OUT_SIDE);
 		assert (!thr2Lcks.containsKey(t));
-		thr2Lcks.put(t, new TIntHashSet());
+		thr2Lcks.put(t, LocksetTable.EMPTY);
 	}
 	
 	public void processThreadStart(int i, int t, int o) {
@@ -338,7 +339,7 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 			thr2CommState.put(o, CommitState.OUT_SIDE);
 		}
 		if (!thr2Lcks.containsKey(o)) {
-			thr2Lcks.put(o, new TIntHashSet());
+			thr2Lcks.put(o, LocksetTable.EMPTY);
 		}		
 	}
 	
@@ -410,45 +411,6 @@ public class AtomizerAnalysis extends DynamicAnalysis {
 		}
 	}
 	
-	private boolean isIntersectionEmpty(TIntHashSet mLcks, TIntHashSet tLcks) {
-		if (mLcks == null) { // "null" represents all locks
-			return tLcks.isEmpty();
-		} else {
-			boolean empty = true;
-			TIntIterator it = mLcks.iterator();
-			while (it.hasNext()) {
-				int lck = it.next();
-				if (tLcks.contains(lck)) {
-					empty = false;
-					break;
-				}
-			}
-			return empty;
-		}
-	}
-	
-	private TIntHashSet intersect(TIntHashSet mLcks, TIntHashSet tLcks) {
-		if (tLcks.isEmpty()) {
-			return new TIntHashSet(); // empty lockset
-		}
-		TIntHashSet tmpLcks = new TIntHashSet();
-		if (mLcks == null) { // tmpLcks := tLcks ("null" represents all locks)
-			TIntIterator it = tLcks.iterator();
-			while (it.hasNext()) {
-				tmpLcks.add(it.next());
-			}
-		} else { // tmpLcks := mLcks \intersect tLcks
-			TIntIterator it = mLcks.iterator();
-			while (it.hasNext()) {
-				int lck = it.next();
-				if (tLcks.contains(lck)) {
-					tmpLcks.add(lck);
-				}
-			}
-		}
-		return tmpLcks;
-	}
-				
 	private void wrongDataRace() {
 		Messages.log("Data race");
 		stopProcess = true;
@@ -0,0 +1,215 @@
+package chord.analyses.atomizer;
+
+import gnu.trove.TLongIntHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Table of interned locksets.
+ * <p>
+ * Each distinct lockset is kept once, as a sorted array, and is denoted by
+ * an int id; locksets are immutable, and the results of adding a lock to,
+ * removing a lock from, and intersecting locksets are memoized by id.  Id
+ * {@link #ALL} denotes the set of all locks and id {@link #EMPTY} the empty
+ * set.
+ */
+public class LocksetTable {
+	public static final int ALL = 0;
+	public static final int EMPTY = 1;
+
+	private static final int[] emptyLcks = new int[0];
+
+	// lockset id => sorted locks; sets[ALL] is unused
+	private int[][] sets = new int[64][];
+	private int numSets = 2;
+	// open addressing hash table of lockset ids, ALL denoting an empty slot
+	private int[] table = new int[128];
+
+	// memoized results of the operations below, plus one, keyed by the
+	// operands (id, lock) or (smaller id, larger id)
+	private final TLongIntHashMap addCache = new TLongIntHashMap();
+	private final TLongIntHashMap removeCache = new TLongIntHashMap();
+	private final TLongIntHashMap intersectCache = new TLongIntHashMap();
+
+	public LocksetTable() {
+		sets[EMPTY] = emptyLcks;
+		table[slot(emptyLcks, 0)] = EMPTY;
+	}
+
+	/**
+	 * Provides the number of distinct locksets other than the set of all
+	 * locks.
+	 */
+	public int size() {
+		return numSets - 1;
+	}
+
+	public boolean isEmpty(int id) {
+		return id == EMPTY;
+	}
+
+	public boolean contains(int id, int lck) {
+		if (id == ALL) {
+			return true;
+		}
+		return Arrays.binarySearch(sets[id], lck) >= 0;
+	}
+
+	/**
+	 * Provides the id of the given lockset with the given lock added.
+	 */
+	public int add(int id, int lck) {
+		if (id == ALL) {
+			return ALL;
+		}
+		long key = ((long) id << 32) | (lck & 0xFFFFFFFFL);
+		int ret = addCache.get(key) - 1;
+		if (ret == -1) {
+			int[] lcks = sets[id];
+			int i = Arrays.binarySearch(lcks, lck);
+			if (i >= 0) {
+				ret = id;
+			} else {
+				i = -i - 1;
+				int[] newLcks = new int[lcks.length + 1];
+				System.arraycopy(lcks, 0, newLcks, 0, i);
+				newLcks[i] = lck;
+				System.arraycopy(lcks, i, newLcks, i + 1, lcks.length - i);
+				ret = intern(newLcks, newLcks.length);
+			}
+			addCache.put(key, ret + 1);
+		}
+		return ret;
+	}
+
+	/**
+	 * Provides the id of the given lockset with the given lock removed.
+	 */
+	public int remove(int id, int lck) {
+		assert (id != ALL);
+		long key = ((long) id << 32) | (lck & 0xFFFFFFFFL);
+		int ret = removeCache.get(key) - 1;
+		if (ret == -1) {
+			int[] lcks = sets[id];
+			int i = Arrays.binarySearch(lcks, lck);
+			if (i < 0) {
+				ret = id;
+			} else {
+				int[] newLcks = new int[lcks.length - 1];
+				System.arraycopy(lcks, 0, newLcks, 0, i);
+				System.arraycopy(lcks, i + 1, newLcks, i, lcks.length - i - 1);
+				ret = intern(newLcks, newLcks.length);
+			}
+			removeCache.put(key, ret + 1);
+		}
+		return ret;
+	}
+
+	/**
+	 * Provides the id of the intersection of the given locksets.
+	 */
+	public int intersect(int id1, int id2) {
+		if (id1 == id2 || id2 == ALL) {
+			return id1;
+		}
+		if (id1 == ALL) {
+			return id2;
+		}
+		if (id1 == EMPTY || id2 == EMPTY) {
+			return EMPTY;
+		}
+		long key = (id1 < id2) ? ((long) id1 << 32) | id2 : ((long) id2 << 32) | id1;
+		int ret = intersectCache.get(key) - 1;
+		if (ret == -1) {
+			int[] lcks1 = sets[id1];
+			int[] lcks2 = sets[id2];
+			int[] tmpLcks = new int[Math.min(lcks1.length, lcks2.length)];
+			int n = 0;
+			for (int i = 0, j = 0; i < lcks1.length && j < lcks2.length;) {
+				if (lcks1[i] < lcks2[j]) {
+					i++;
+				} else if (lcks1[i] > lcks2[j]) {
+					j++;
+				} else {
+					tmpLcks[n++] = lcks1[i];
+					i++;
+					j++;
+				}
+			}
+			ret = intern(tmpLcks, n);
+			intersectCache.put(key, ret + 1);
+		}
+		return ret;
+	}
+
+	public boolean isIntersectionEmpty(int id1, int id2) {
+		return intersect(id1, id2) == EMPTY;
+	}
+
+	// provides the id of the lockset of the first n locks in lcks, which are
+	// sorted, adding it if needed
+	private int intern(int[] lcks, int n) {
+		int s = slot(lcks, n);
+		int id = table[s];
+		if (id != ALL) {
+			return id;
+		}
+		id = numSets++;
+		if (id == sets.length) {
+			sets = Arrays.copyOf(sets, id * 2);
+		}
+		sets[id] = (n == lcks.length) ? lcks : Arrays.copyOf(lcks, n);
+		table[s] = id;
+		if (numSets * 2 > table.length) {
+			rehash();
+		}
+		return id;
+	}
+
+	private static int hash(int[] lcks, int n) {
+		int h = n;
+		for (int i = 0; i < n; i++) {
+			h = 31 * h + lcks[i];
+		}
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// the slot holding the given lockset, or the empty slot where it belongs
+	private int slot(int[] lcks, int n) {
+		int mask = table.length - 1;
+		int s = hash(lcks, n) & mask;
+		while (true) {
+			int id = table[s];
+			if (id == ALL || equals(sets[id], lcks, n)) {
+				return s;
+			}
+			s = (s + 1) & mask;
+		}
+	}
+
+	private static boolean equals(int[] lcks1, int[] lcks2, int n) {
+		if (lcks1.length != n) {
+			return false;
+		}
+		for (int i = 0; i < n; i++) {
+			if (lcks1[i] != lcks2[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = EMPTY; id < numSets; id++) {
+			int[] lcks = sets[id];
+			int s = hash(lcks, lcks.length) & mask;
+			while (table[s] != ALL) {
+				s = (s + 1) & mask;
+			}
+			table[s] = id;
+		}
+	}
+}
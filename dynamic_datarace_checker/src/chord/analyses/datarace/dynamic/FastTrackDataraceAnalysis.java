@@ -0,0 +1,540 @@
+/*
+ * Copyright (c) 2008-2010, Intel Corporation.
+ * Copyright (c) 2006-2007, The Trustees of Stanford University.
+ * All rights reserved.
+ * Licensed under the terms of the New BSD License.
+ */
+package chord.analyses.datarace.dynamic;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import gnu.trove.set.hash.TLongHashSet;
+
+import chord.bddbddb.Rel.IntPairIterable;
+import chord.instr.InstrScheme;
+import chord.project.Chord;
+import chord.project.ClassicProject;
+import chord.project.analyses.DynamicAnalysis;
+import chord.project.analyses.ProgramRel;
+import chord.runtime.BasicEventHandler;
+import chord.util.tuple.integer.IntPair;
+
+/**
+ * Dynamic happens-before datarace analysis using vector clocks, along the
+ * lines of FastTrack (Flanagan and Freund, PLDI'09).
+ * <p>
+ * Each thread, lock, and accessed location has a vector clock; the last
+ * write of a location, and its last read while its reads are totally
+ * ordered, are kept as a single epoch <tt>c@t</tt> instead, so that most
+ * accesses take constant time and space.  Vector clocks are int arrays
+ * indexed by a dense numbering of threads, and the state of a location
+ * (static field, instance field, or array element, numbered as by
+ * {@link chord.runtime.BasicEventHandler#getPrimitiveId(int, int)}) is kept
+ * in parallel primitive arrays, so the analysis does not keep a set of
+ * thread pairs or a record per access as dynamic-datarace-java does.
+ * <p>
+ * Happens-before edges come from thread start and join, lock release and
+ * subsequent acquire, and notify/signal and the return of a subsequent
+ * wait/await on the same object.  Since thread join and wait events are
+ * generated before the call, their effect is applied at the next event of
+ * the calling thread.
+ * <p>
+ * Produces relation <tt>hbRacePairs</tt> containing each pair in
+ * <tt>startingRacePairs</tt> whose statements were observed to race.
+ */
+@Chord(
+	name = "fasttrack-datarace-java",
+	consumes = { "startingRacePairs" },
+	produces = { "hbRacePairs" },
+	namesOfSigns = { "hbRacePairs" },
+	signs = { "E0,E1:E0xE1" }
+)
+public class FastTrackDataraceAnalysis extends DynamicAnalysis {
+	private static final long NO_EPOCH = 0;
+	// read state of a location whose reads are not totally ordered
+	private static final long SHARED = -1;
+
+	private InstrScheme instrScheme;
+
+	////// threads //////
+
+	// map from each thread object to its number plus one
+	private TIntIntHashMap thrToTid;
+	private int numThrs;
+	// thread number => its vector clock; entries beyond the length are 0
+	private int[][] thrVC;
+	// thread number => thread it is joining, plus one, or 0
+	private int[] pendingJoin;
+	// thread number => lock it is waiting on, plus one, or 0
+	private int[] pendingWait;
+
+	////// locks //////
+
+	// map from each lock (or condition) object to its number plus one
+	private TIntIntHashMap lockToLid;
+	private int numLocks;
+	// lock number => vector clock of its last release (or notify)
+	private int[][] lockVC;
+
+	////// locations //////
+
+	// map from each location to its number plus one
+	private TLongIntHashMap locToSlot;
+	private int numSlots;
+	// epoch and statement of the last write of each location
+	private long[] wEpoch;
+	private int[] wE;
+	// epoch and statement of the last read of each location, or SHARED
+	private long[] rEpoch;
+	private int[] rE;
+	// for a SHARED location: its read vector clock and the statement of the
+	// last read by each thread
+	private int[][] rVC;
+	private int[][] rVE;
+
+	// each racing pair of statements (e1,e2) with e1 <= e2, as (e1 << 32) | e2
+	private TLongHashSet races;
+	private int numRaces;
+
+	@Override
+	public InstrScheme getInstrScheme() {
+		if (instrScheme != null)
+			return instrScheme;
+		instrScheme = new InstrScheme();
+		instrScheme.setEnterMainMethodEvent(true);
+		instrScheme.setThreadStartEvent(false, true, true);
+		instrScheme.setThreadJoinEvent(false, true, true);
+		instrScheme.setAcquireLockEvent(false, true, true);
+		instrScheme.setReleaseLockEvent(false, true, true);
+		instrScheme.setWaitEvent(false, true, true);
+		instrScheme.setNotifyAnyEvent(false, true, true);
+		instrScheme.setNotifyAllEvent(false, true, true);
+		instrScheme.setGetstaticPrimitiveEvent(true, true, false, true);
+		instrScheme.setGetstaticReferenceEvent(true, true, false, true, false);
+		instrScheme.setPutstaticPrimitiveEvent(true, true, false, true);
+		instrScheme.setPutstaticReferenceEvent(true, true, false, true, false);
+		instrScheme.setGetfieldPrimitiveEvent(true, true, true, true);
+		instrScheme.setGetfieldReferenceEvent(true, true, true, true, false);
+		instrScheme.setPutfieldPrimitiveEvent(true, true, true, true);
+		instrScheme.setPutfieldReferenceEvent(true, true, true, true, false);
+		instrScheme.setAloadPrimitiveEvent(true, true, true, true);
+		instrScheme.setAloadReferenceEvent(true, true, true, true, false);
+		instrScheme.setAstorePrimitiveEvent(true, true, true, true);
+		instrScheme.setAstoreReferenceEvent(true, true, true, true, false);
+		return instrScheme;
+	}
+
+	@Override
+	public void initAllPasses() { }
+
+	@Override
+	public void initPass() {
+		ClassicProject.g().runTask("E");
+		thrToTid = new TIntIntHashMap();
+		numThrs = 0;
+		thrVC = new int[16][];
+		pendingJoin = new int[16];
+		pendingWait = new int[16];
+		lockToLid = new TIntIntHashMap();
+		numLocks = 0;
+		lockVC = new int[64][];
+		locToSlot = new TLongIntHashMap();
+		numSlots = 0;
+		wEpoch = new long[1024];
+		wE = new int[1024];
+		rEpoch = new long[1024];
+		rE = new int[1024];
+		rVC = new int[1024][];
+		rVE = new int[1024][];
+		races = new TLongHashSet();
+		numRaces = 0;
+	}
+
+	@Override
+	public void donePass() {
+		System.out.println("number of racing accesses: " + numRaces);
+		System.out.println("number of racing pairs of statements: " + races.size());
+		System.out.println("number of threads: " + numThrs + " locks: " + numLocks +
+			" locations: " + numSlots);
+		ProgramRel relStartingRacePairs =
+			(ProgramRel) ClassicProject.g().getTrgt("startingRacePairs");
+		ProgramRel relHBRacePairs =
+			(ProgramRel) ClassicProject.g().getTrgt("hbRacePairs");
+		relStartingRacePairs.load();
+		relHBRacePairs.zero();
+		IntPairIterable startingRacePairs = relStartingRacePairs.getAry2IntTuples();
+		for (IntPair p : startingRacePairs) {
+			int e1 = p.idx0;
+			int e2 = p.idx1;
+			if (races.contains(pair(e1, e2)))
+				relHBRacePairs.add(e1, e2);
+		}
+		relStartingRacePairs.close();
+		relHBRacePairs.save();
+	}
+
+	@Override
+	public void doneAllPasses() { }
+
+	@Override
+	public void processEnterMainMethod(int t) {
+		getTid(t);
+	}
+
+	@Override
+	public void processThreadStart(int i, int t, int o) {
+		if (o == 0) return;
+		int tid = sync(t);
+		int cid = getTid(o);
+		join(cid, thrVC[tid]);
+		tick(tid);
+	}
+
+	@Override
+	public void processThreadJoin(int i, int t, int o) {
+		if (o == 0) return;
+		int tid = sync(t);
+		pendingJoin[tid] = getTid(o) + 1;
+	}
+
+	@Override
+	public void processAcquireLock(int l, int t, int o) {
+		if (o == 0) return;
+		int tid = sync(t);
+		int lid = lockToLid.get(o) - 1;
+		if (lid != -1)
+			join(tid, lockVC[lid]);
+	}
+
+	@Override
+	public void processReleaseLock(int r, int t, int o) {
+		if (o == 0) return;
+		int tid = sync(t);
+		int lid = getLid(o);
+		int[] c = thrVC[tid];
+		int[] v = lockVC[lid];
+		if (v == null || v.length < c.length)
+			lockVC[lid] = v = new int[c.length];
+		System.arraycopy(c, 0, v, 0, c.length);
+		Arrays.fill(v, c.length, v.length, 0);
+		tick(tid);
+	}
+
+	@Override
+	public void processWait(int i, int t, int o) {
+		if (o == 0) return;
+		int tid = sync(t);
+		// a wait on a monitor releases it; its reacquisition, which also
+		// orders the wait after the notify waking it up, happens when the
+		// thread resumes
+		int lid = getLid(o);
+		joinLock(lid, thrVC[tid]);
+		tick(tid);
+		pendingWait[tid] = lid + 1;
+	}
+
+	@Override
+	public void processNotifyAny(int i, int t, int o) {
+		processNotify(t, o);
+	}
+
+	@Override
+	public void processNotifyAll(int i, int t, int o) {
+		processNotify(t, o);
+	}
+
+	private void processNotify(int t, int o) {
+		if (o == 0) return;
+		int tid = sync(t);
+		int lid = getLid(o);
+		joinLock(lid, thrVC[tid]);
+		tick(tid);
+	}
+
+	@Override
+	public void processGetstaticPrimitive(int e, int t, int b, int f) {
+		if (f >= 0) processRead(e, t, BasicEventHandler.getPrimitiveId(0, f));
+	}
+
+	@Override
+	public void processGetstaticReference(int e, int t, int b, int f, int o) {
+		if (f >= 0) processRead(e, t, BasicEventHandler.getPrimitiveId(0, f));
+	}
+
+	@Override
+	public void processPutstaticPrimitive(int e, int t, int b, int f) {
+		if (f >= 0) processWrite(e, t, BasicEventHandler.getPrimitiveId(0, f));
+	}
+
+	@Override
+	public void processPutstaticReference(int e, int t, int b, int f, int o) {
+		if (f >= 0) processWrite(e, t, BasicEventHandler.getPrimitiveId(0, f));
+	}
+
+	@Override
+	public void processGetfieldPrimitive(int e, int t, int b, int f) {
+		if (b != 0 && f >= 0) processRead(e, t, BasicEventHandler.getPrimitiveId(b, f));
+	}
+
+	@Override
+	public void processGetfieldReference(int e, int t, int b, int f, int o) {
+		if (b != 0 && f >= 0) processRead(e, t, BasicEventHandler.getPrimitiveId(b, f));
+	}
+
+	@Override
+	public void processPutfieldPrimitive(int e, int t, int b, int f) {
+		if (b != 0 && f >= 0) processWrite(e, t, BasicEventHandler.getPrimitiveId(b, f));
+	}
+
+	@Override
+	public void processPutfieldReference(int e, int t, int b, int f, int o) {
+		if (b != 0 && f >= 0) processWrite(e, t, BasicEventHandler.getPrimitiveId(b, f));
+	}
+
+	@Override
+	public void processAloadPrimitive(int e, int t, int b, int i) {
+		if (b != 0) processRead(e, t, BasicEventHandler.getPrimitiveId(b, i));
+	}
+
+	@Override
+	public void processAloadReference(int e, int t, int b, int i, int o) {
+		if (b != 0) processRead(e, t, BasicEventHandler.getPrimitiveId(b, i));
+	}
+
+	@Override
+	public void processAstorePrimitive(int e, int t, int b, int i) {
+		if (b != 0) processWrite(e, t, BasicEventHandler.getPrimitiveId(b, i));
+	}
+
+	@Override
+	public void processAstoreReference(int e, int t, int b, int i, int o) {
+		if (b != 0) processWrite(e, t, BasicEventHandler.getPrimitiveId(b, i));
+	}
+
+	private void processRead(int e, int t, long loc) {
+		int tid = sync(t);
+		int x = getSlot(loc);
+		int[] c = thrVC[tid];
+		int clk = c[tid];
+		long epoch = epoch(clk, tid);
+		long r = rEpoch[x];
+		// same epoch
+		if (r == epoch)
+			return;
+		if (r == SHARED) {
+			int[] v = rVC[x];
+			if (tid < v.length && v[tid] == clk) {
+				rVE[x][tid] = e;
+				return;
+			}
+		}
+		// write-read race?
+		long w = wEpoch[x];
+		if (!leq(w, c))
+			race(wE[x], e);
+		if (r == SHARED) {
+			setSharedRead(x, tid, clk, e);
+		} else if (r == NO_EPOCH || leq(r, c)) {
+			// exclusive read
+			rEpoch[x] = epoch;
+			rE[x] = e;
+		} else {
+			// inflate to a read vector clock
+			int u = tidOf(r);
+			int n = Math.max(u, tid) + 1;
+			if (rVC[x] == null || rVC[x].length < n) {
+				rVC[x] = new int[Math.max(n, numThrs)];
+				rVE[x] = new int[rVC[x].length];
+			} else {
+				Arrays.fill(rVC[x], 0);
+			}
+			rVC[x][u] = clockOf(r);
+			rVE[x][u] = rE[x];
+			rEpoch[x] = SHARED;
+			setSharedRead(x, tid, clk, e);
+		}
+	}
+
+	private void processWrite(int e, int t, long loc) {
+		int tid = sync(t);
+		int x = getSlot(loc);
+		int[] c = thrVC[tid];
+		long epoch = epoch(c[tid], tid);
+		long w = wEpoch[x];
+		// same epoch
+		if (w == epoch)
+			return;
+		// write-write race?
+		if (!leq(w, c))
+			race(wE[x], e);
+		long r = rEpoch[x];
+		if (r == SHARED) {
+			// shared-write race?
+			int[] v = rVC[x];
+			int[] ve = rVE[x];
+			for (int u = 0; u < v.length; u++) {
+				if (v[u] > get(c, u))
+					race(ve[u], e);
+			}
+			rEpoch[x] = NO_EPOCH;
+		} else if (!leq(r, c)) {
+			// exclusive read-write race
+			race(rE[x], e);
+		}
+		wEpoch[x] = epoch;
+		wE[x] = e;
+	}
+
+	private void setSharedRead(int x, int tid, int clk, int e) {
+		int[] v = rVC[x];
+		if (tid >= v.length) {
+			int n = Math.max(tid + 1, numThrs);
+			rVC[x] = v = Arrays.copyOf(v, n);
+			rVE[x] = Arrays.copyOf(rVE[x], n);
+		}
+		v[tid] = clk;
+		rVE[x][tid] = e;
+	}
+
+	private void race(int e1, int e2) {
+		numRaces++;
+		if (e1 >= 0 && e2 >= 0)
+			races.add(pair(e1, e2));
+	}
+
+	private static long pair(int e1, int e2) {
+		if (e1 > e2) {
+			int tmp = e1;
+			e1 = e2;
+			e2 = tmp;
+		}
+		return ((long) e1 << 32) | e2;
+	}
+
+	////// epochs and vector clocks //////
+
+	// epoch c@t; clocks start at 1 so no epoch is NO_EPOCH or SHARED
+	private static long epoch(int clk, int tid) {
+		return ((long) clk << 32) | tid;
+	}
+
+	private static int clockOf(long epoch) {
+		return (int) (epoch >>> 32);
+	}
+
+	private static int tidOf(long epoch) {
+		return (int) epoch;
+	}
+
+	private static int get(int[] vc, int tid) {
+		return tid < vc.length ? vc[tid] : 0;
+	}
+
+	// whether epoch c@u happens before vector clock vc
+	private static boolean leq(long epoch, int[] vc) {
+		return clockOf(epoch) <= get(vc, tidOf(epoch));
+	}
+
+	// C_tid := C_tid join vc
+	private void join(int tid, int[] vc) {
+		if (vc == null)
+			return;
+		int[] c = thrVC[tid];
+		if (c.length < vc.length)
+			thrVC[tid] = c = Arrays.copyOf(c, vc.length);
+		for (int u = 0; u < vc.length; u++) {
+			if (vc[u] > c[u])
+				c[u] = vc[u];
+		}
+	}
+
+	// L_lid := L_lid join vc
+	private void joinLock(int lid, int[] vc) {
+		int[] v = lockVC[lid];
+		if (v == null) {
+			lockVC[lid] = vc.clone();
+			return;
+		}
+		if (v.length < vc.length)
+			lockVC[lid] = v = Arrays.copyOf(v, vc.length);
+		for (int u = 0; u < vc.length; u++) {
+			if (vc[u] > v[u])
+				v[u] = vc[u];
+		}
+	}
+
+	private void tick(int tid) {
+		thrVC[tid][tid]++;
+	}
+
+	////// numbering of threads, locks, and locations //////
+
+	private int getTid(int t) {
+		int tid = thrToTid.get(t) - 1;
+		if (tid != -1)
+			return tid;
+		tid = numThrs++;
+		if (tid == thrVC.length) {
+			int n = tid * 2;
+			thrVC = Arrays.copyOf(thrVC, n);
+			pendingJoin = Arrays.copyOf(pendingJoin, n);
+			pendingWait = Arrays.copyOf(pendingWait, n);
+		}
+		int[] c = new int[tid + 1];
+		c[tid] = 1;
+		thrVC[tid] = c;
+		thrToTid.put(t, tid + 1);
+		return tid;
+	}
+
+	// gets the number of a thread about to execute an event, after applying
+	// the effect of the join or wait it last executed, if any
+	private int sync(int t) {
+		int tid = getTid(t);
+		int u = pendingJoin[tid];
+		if (u != 0) {
+			pendingJoin[tid] = 0;
+			join(tid, thrVC[u - 1]);
+			tick(u - 1);
+		}
+		int lid = pendingWait[tid];
+		if (lid != 0) {
+			pendingWait[tid] = 0;
+			join(tid, lockVC[lid - 1]);
+		}
+		return tid;
+	}
+
+	private int getLid(int o) {
+		int lid = lockToLid.get(o) - 1;
+		if (lid != -1)
+			return lid;
+		lid = numLocks++;
+		if (lid == lockVC.length)
+			lockVC = Arrays.copyOf(lockVC, lid * 2);
+		lockToLid.put(o, lid + 1);
+		return lid;
+	}
+
+	private int getSlot(long loc) {
+		int x = locToSlot.get(loc) - 1;
+		if (x != -1)
+			return x;
+		x = numSlots++;
+		if (x == wEpoch.length) {
+			int n = x * 2;
+			wEpoch = Arrays.copyOf(wEpoch, n);
+			wE = Arrays.copyOf(wE, n);
+			rEpoch = Arrays.copyOf(rEpoch, n);
+			rE = Arrays.copyOf(rE, n);
+			rVC = Arrays.copyOf(rVC, n);
+			rVE = Arrays.copyOf(rVE, n);
+		}
+		wE[x] = -1;
+		rE[x] = -1;
+		locToSlot.put(loc, x + 1);
+		return x;
+	}
+}
@@ -1,8 +1,6 @@
 package waitnotify;
 
 import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 import java.util.HashMap;
 import java.util.Map;
@@ -110,38 +108,25 @@ public abstract class ConditionAnnotation {
 	private void logCondForWaitOrNotify(boolean isWait, int lockId){
 		int tId = BasicEventHandler.getObjectId(Thread.currentThread());
 		boolean val = isConditionTrue();
-		List<String> instrs = new LinkedList<String>();
 		
-		String tabs = WNLogger.getStringWithTabs(tId);
-		String instr1 = tabs + "if (c" + conditionId + ") { ";
-		instrs.add(instr1);
 		WNLogger.condIds.add(conditionId);
-		WNLogger.addInstr(instr1, tId, WNLogger.T_OTHER, WNLogger.LID_NA);
-		
-		WNLogger.incNumTabs(tId);
+		WNLogger.log.log(tId, WNEventLog.COND_IF, conditionId);
 		
 		if (!val) {
 			if(isWait){
-				tabs = WNLogger.getStringWithTabs(tId);
-				String instr2 = tabs + "synchronized (l" +lockId + ") { l" + lockId + ".wait(); }";
-				instrs.add(instr2);
 				WNLogger.lockIds.add(lockId);
-				WNLogger.addInstr(instr2, tId, WNLogger.T_WAIT, lockId);
+				WNLogger.lockIdsInWaits.add(lockId);
+				WNLogger.log.log(tId, WNEventLog.COND_WAIT, lockId);
 			}
 			else{
-				tabs = WNLogger.getStringWithTabs(tId);
-				String instr2 = tabs + "synchronized (l" +lockId + ") { l" + lockId + ".notify(); }";
-				instrs.add(instr2);
-				WNLogger.addInstr(instr2, tId, WNLogger.T_NOTF_OR_NOTFALL, lockId);
+				WNLogger.log.log(tId, WNEventLog.COND_NOTIFY, lockId);
 			}
 		}
 	}
 	
 	private void logCondEndForWaitOrNotify(){
 		int tId = BasicEventHandler.getObjectId(Thread.currentThread());
-		WNLogger.decNumTabs(tId);
-		String instr = WNLogger.getStringWithTabs(tId) + "}";
-		WNLogger.addInstr(instr, tId, WNLogger.T_OTHER, WNLogger.LID_NA);
+		WNLogger.log.log(tId, WNEventLog.COND_END);
 	}
 	
 	public void notifyBegin(Object lock) {
@@ -162,26 +147,22 @@ public abstract class ConditionAnnotation {
 			curVal = isConditionTrue();	
 			
 			int tId = BasicEventHandler.getObjectId(Thread.currentThread());
-			String tabs = WNLogger.getStringWithTabs(tId);
-			String instr = tabs + "c" + conditionId + " = " + curVal + ";";
 			WNLogger.condIds.add(conditionId);
-			WNLogger.addInstr(instr, tId, WNLogger.T_OTHER, WNLogger.LID_NA);
+			WNLogger.log.log(tId, WNEventLog.COND_VAL, conditionId, curVal ? 1 : 0);
 		}
 	}
 	
-	public String logChange(String iidDescr) {
+	// kind is WNEventLog.COND_CHANGE_E or WNEventLog.COND_CHANGE_I, telling
+	// whether iid is in domain E or domain I
+	public void logChange(int tId, byte kind, int iid) {
 		synchronized (globalLock) {
 			boolean newVal = isConditionTrue();
 			if (newVal != curVal) {
-				int tId = BasicEventHandler.getObjectId(Thread.currentThread());
-				String tabs = WNLogger.getStringWithTabs(tId);
-				String instr = tabs + "c" + conditionId + " = " + newVal + ";" + " //"+iidDescr;
 				curVal = newVal;
 				
 				WNLogger.condIds.add(conditionId);
-				return instr;
+				WNLogger.log.log(tId, kind, conditionId, newVal ? 1 : 0, iid);
 			}
-			return null;
 		}
 	}
 	
@@ -189,36 +170,25 @@ public abstract class ConditionAnnotation {
 		synchronized (globalLock) {
 			boolean newVal = isConditionTrue();
 			int tId = BasicEventHandler.getObjectId(Thread.currentThread());
-			String tabs = WNLogger.getStringWithTabs(tId);
-			String instr = tabs + "c" + conditionId + " = " + newVal + ";";
 			if (newVal != curVal)
 				curVal = newVal;
 			
 			WNLogger.condIds.add(conditionId);
-			WNLogger.addInstr(instr, tId, WNLogger.T_OTHER, WNLogger.LID_NA);
-			
+			WNLogger.log.log(tId, WNEventLog.COND_VAL, conditionId, newVal ? 1 : 0);
 		}
 	}
 	
 	// to be called after every write to a field of o
 	// astorePrimitive, astoreReference, putfieldPrimitive, putfieldReference, putstaticPrimitive,
 	// putstaticReference, afterMethodCall)
-	public static List<String> checkForCondChanges(int objId, String iidDescr) {
-		List<String> instrs = new LinkedList<String>();
+	public static void checkForCondChanges(int objId, int tId, byte kind, int iid) {
 		synchronized (globalLock) {
 			Set<ConditionAnnotation> conditions = (Set<ConditionAnnotation>)objects.get(objId);
 			if (conditions == null)
-				return null;
+				return;
 			for (ConditionAnnotation condition : conditions) {
-				String instr = condition.logChange(iidDescr);
-				if(instr != null){
-					instrs.add(instr);
-				}
-			}
-			if(instrs.size() == 0){
-				return null;
+				condition.logChange(tId, kind, iid);
 			}
-			return instrs;
 		}
 	}
 	
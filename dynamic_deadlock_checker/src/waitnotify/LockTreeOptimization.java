@@ -1,135 +1,83 @@
 package waitnotify;
 
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.TreeMap;
 
-public class LockTreeOptimization {
-	Map<Integer, List<StringIntIntTuple>> thrToInstrs;
+/**
+ * Merges the nested synchronized blocks of a thread between two of its
+ * other instructions into a tree, so that repeated acquisitions of the same
+ * locks in the same order are emitted once. Instructions of one thread are
+ * processed one at a time with process(), followed by finish(), and the
+ * resulting instructions are passed to emit() as they are produced.
+ */
+public abstract class LockTreeOptimization {
+	private final LockStack ls = new LockStack();
+	private final LockTree lt = new LockTree();
 	
-	public LockTreeOptimization(Map<Integer, List<StringIntIntTuple>> tToInstrs){
-		thrToInstrs = tToInstrs;
-	}
+	//instructions since the lock stack was last empty or the last instruction of type T_OTHER
+	private final List<String> pendingInstrs = new ArrayList<String>();
 	
-	private int lastIndx = -1;
-	private int curIndxOfInstr = -1;
+	protected abstract void emit(String instr);
 	
-	public Map<Integer, List<String>> getInstrsAfterOptimization(){
-		Map<Integer, List<String>> optimInstrs = new TreeMap<Integer, List<String>>();
+	public void process(StringIntIntTuple instrTypeLId){
+		String instr = instrTypeLId.fst;
+		int type = instrTypeLId.snd;
+		int lId = instrTypeLId.thrd;
 		
-		for(Map.Entry<Integer, List<StringIntIntTuple>> mEntry : thrToInstrs.entrySet()){
-			Integer tId = mEntry.getKey();
-			List<StringIntIntTuple> instrs = mEntry.getValue();
-			List<String> newInstrs = new LinkedList<String>();
-			
-			LockStack ls = new LockStack();
-			LockTree lt = new LockTree();
-			
-			lastIndx = -1;
-			boolean waitingForLSToBeEmpty = false;
-			
-			curIndxOfInstr = -1;
-			for(StringIntIntTuple instrTypeLId : instrs){
-				String instr = instrTypeLId.fst;
-				int type = instrTypeLId.snd;
-				int lId = instrTypeLId.thrd;
-
-				curIndxOfInstr++;
-
-				if(type == WNLogger.T_SYNC_BEGIN){
-					processSYNCBEGIN(instr, lId, waitingForLSToBeEmpty, newInstrs, ls, lt);
-				}
-				if(type == WNLogger.T_SYNC_END){
-					processSYNCEND(instr, lId, waitingForLSToBeEmpty, newInstrs, ls, lt);
-				}
-				if(type == WNLogger.T_OTHER){
-					processOTHER(instr, lId, waitingForLSToBeEmpty, newInstrs, ls, lt, instrs);
-				}
-			}
-			addStmtsFromLT(newInstrs, lt);
-			optimInstrs.put(tId, newInstrs);	
-			
+		pendingInstrs.add(instr);
+		if(type == WNLogger.T_SYNC_BEGIN){
+			processSYNCBEGIN(instr, lId);
 		}
-		removeEmptyThreads(optimInstrs);
-		return optimInstrs;
+		if(type == WNLogger.T_SYNC_END){
+			processSYNCEND();
+		}
+		if(type == WNLogger.T_OTHER){
+			processOTHER();
+		}
+	}
+	
+	public void finish(){
+		emitStmtsFromLT();
+		pendingInstrs.clear();
 	}
 	
-	private void processSYNCBEGIN(String instr, int lId, boolean waitingForLSToBeEmpty, 
-			List<String> newInstrs, LockStack ls, LockTree lt){
+	private void processSYNCBEGIN(String instr, int lId){
 		String locId = getLocId(instr);
 		boolean wasLocked = ls.lock(lId);
-		if(waitingForLSToBeEmpty){
-			newInstrs.add(instr);
-		}
-		else{
-			if(wasLocked){
-				lt.addChildToCurNode(lId, locId);
-			}
+		if(wasLocked){
+			lt.addChildToCurNode(lId, locId);
 		}
 	}
 	
-	private void processSYNCEND(String instr, int lId, boolean waitingForLSToBeEmpty, 
-			List<String> newInstrs, LockStack ls, LockTree lt){
+	private void processSYNCEND(){
 		boolean wasLockRel = ls.unLock();
-		if(waitingForLSToBeEmpty){
-			newInstrs.add(instr);
-			if(ls.isEmpty()){
-				waitingForLSToBeEmpty = false;
-				lastIndx = curIndxOfInstr;
-			}
+		if(wasLockRel){
+			lt.moveUp();
 		}
-		else{
-			if(wasLockRel){
-				lt.moveUp();
-			}
-			if(ls.isEmpty()){
-				lt.resetNewlyAddedNodes();
-				lastIndx = curIndxOfInstr;
-			}
+		if(ls.isEmpty()){
+			lt.resetNewlyAddedNodes();
+			pendingInstrs.clear();
 		}
 	}
 	
-	private void processOTHER(String instr, int lId, boolean waitingForLSToBeEmpty, 
-			List<String> newInstrs, LockStack ls, LockTree lt, List<StringIntIntTuple> origInstrs){
-		if(waitingForLSToBeEmpty == false){
-			addStmtsFromLT(newInstrs, lt);
-			for(int j = lastIndx+1; j <= curIndxOfInstr; j++){
-				newInstrs.add((origInstrs.get(j)).fst);
-			}
-			lastIndx = curIndxOfInstr;
-			lt.reset();
-			if(!ls.isEmpty()){
-				waitingForLSToBeEmpty = true;
-			}
-		}
-		else{
-			newInstrs.add(instr);
+	private void processOTHER(){
+		emitStmtsFromLT();
+		for(String instr : pendingInstrs){
+			emit(instr);
 		}
+		pendingInstrs.clear();
+		lt.reset();
 	}
 	
-	private static void addStmtsFromLT(List<String> newInstrs, LockTree lt){
+	private void emitStmtsFromLT(){
 		List<String> instrsFromLT = lt.dumpToStmts();
-		if(!instrsFromLT.isEmpty()){
-			newInstrs.addAll(instrsFromLT);
+		for(String instr : instrsFromLT){
+			emit(instr);
 		}
 	}	
 	
-	/***
-	private static int getLId(String instr){
-		assert(instr.contains("synchronized"));
-		StringTokenizer st = new StringTokenizer(instr,"l)");
-		st.nextToken();
-		String idStr = st.nextToken();
-		int id = Integer.parseInt(idStr);
-		return id;
-	}
-	***/
-	
 	private static String getLocId(String instr){
 		assert(instr.contains("synchronized"));
 		StringTokenizer st = new StringTokenizer(instr,"{");
@@ -138,36 +86,7 @@ public class LockTreeOptimization {
 		return locStr;
 	}
 	
-	
-
-	private static void removeEmptyThreads(Map<Integer, List<String>> thrToInstrs){
-		Set<Integer> thrsWEmptyBodies = new HashSet<Integer>();
-		for(Map.Entry<Integer, List<String>> entry : thrToInstrs.entrySet()){
-			if(entry.getValue().isEmpty()){
-				thrsWEmptyBodies.add(entry.getKey());
-			}
-		}
-		
-		for(Integer tId : thrsWEmptyBodies){
-			thrToInstrs.remove(tId);
-		}
-		
-		Set<Integer> thrsWOEmptyBodies = thrToInstrs.keySet();
-
-		for(Map.Entry<Integer, List<String>> entry : thrToInstrs.entrySet()){
-			List<String> instrs = entry.getValue();
-			Iterator<String> instrsItr = instrs.iterator();
-			while(instrsItr.hasNext()){
-				String instr = instrsItr.next();
-				if(doesInstrStartThrWEmptyBody(instr, thrsWOEmptyBodies)){
-					instrsItr.remove();
-				}
-			}
-		}
-
-	}
-	
-	private static boolean doesInstrStartThrWEmptyBody(String instr, Set<Integer> tIdsWOEmptyBodies){
+	public static boolean doesInstrStartThrWEmptyBody(String instr, Set<Integer> tIdsWOEmptyBodies){
 		if(instr.contains(".start()")){
 			StringTokenizer st = new StringTokenizer(instr, "\tt.");
 			String tIdStr = st.nextToken();
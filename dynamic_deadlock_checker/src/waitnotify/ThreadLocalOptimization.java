@@ -1,53 +1,41 @@
 package waitnotify;
 
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+/**
+ * Drops the synchronization instructions on locks that only one thread
+ * acquires and that no thread waits on. The locks to keep are known once the
+ * execution is over, so instructions can be filtered one at a time as the
+ * logs of the threads are read.
+ */
 public class ThreadLocalOptimization {
-	//do not modify thrToInstrs and thrToLockIds
-	protected Map<Integer, List<StringIntIntTuple>> thrToInstrs;
+	//do not modify thrToLockIds and lIdsInWaits
 	protected Map<Integer, Set<Integer>> thrToLockIds;
 	
 	private Set<Integer> sharedLocks;
 	private Set<Integer> lIdsInWaits;
 	
-	public ThreadLocalOptimization(Map<Integer, List<StringIntIntTuple>> tToInstrs, 
-			Map<Integer, Set<Integer>> tToLIds){
-		thrToInstrs = tToInstrs;
+	public ThreadLocalOptimization(Map<Integer, Set<Integer>> tToLIds, Set<Integer> lIdsInWs){
 		thrToLockIds = tToLIds;
+		lIdsInWaits = lIdsInWs;
+		computeThreadSharedLocks();
 	}
 	
 	private void computeThreadSharedLocks(){
 		sharedLocks = new HashSet<Integer>();
-		List<Set<Integer>> locksForThrds = new LinkedList<Set<Integer>>();
-		for(Map.Entry<Integer, Set<Integer>> entry : thrToLockIds.entrySet()){
-			locksForThrds.add(entry.getValue());
-		}
-		int size = locksForThrds.size();
-		for(int i = 0; i < size-1; i++){
-			Set<Integer> lIdsSet1 = locksForThrds.get(i);
-			for(int j = i+1; j < size; j++){
-				Set<Integer> lIdsSet2 = locksForThrds.get(j);
-				Set<Integer> lIdsSet1Copy = new HashSet<Integer>(lIdsSet1);
-				lIdsSet1Copy.retainAll(lIdsSet2);
-				sharedLocks.addAll(lIdsSet1Copy);
-			}
-		}
-	}
-	
-	private void computeLIdsInWaits(){
-		lIdsInWaits = new HashSet<Integer>();
-		for(Map.Entry<Integer, List<StringIntIntTuple>> mEntry : thrToInstrs.entrySet()){
-			List<StringIntIntTuple> instrs = mEntry.getValue();
-			for(StringIntIntTuple instr : instrs){
-				int type = instr.snd;
-				if(type == WNLogger.T_WAIT){
-					int lId = instr.thrd;
-					lIdsInWaits.add(lId);
+		Map<Integer, Integer> lIdToNumThrs = new HashMap<Integer, Integer>();
+		for(Set<Integer> lIds : thrToLockIds.values()){
+			for(Integer lId : lIds){
+				Integer n = lIdToNumThrs.get(lId);
+				if(n == null){
+					lIdToNumThrs.put(lId, 1);
+				}
+				else{
+					lIdToNumThrs.put(lId, n+1);
+					sharedLocks.add(lId);
 				}
 			}
 		}
@@ -59,22 +47,14 @@ public class ThreadLocalOptimization {
 		return lIds;
 	}
 	
-	protected void optimizeInstrs(){
-		computeThreadSharedLocks();
-		computeLIdsInWaits();
-		for(Map.Entry<Integer, List<StringIntIntTuple>> mEntry : thrToInstrs.entrySet()){
-			List<StringIntIntTuple> instrs = mEntry.getValue();
-			Iterator<StringIntIntTuple> instrsItr = instrs.iterator();
-			while(instrsItr.hasNext()){
-				StringIntIntTuple instr = (StringIntIntTuple)instrsItr.next();
-				int type = instr.snd;
-				if(type != WNLogger.T_OTHER){
-					int lId = instr.thrd;
-					if(!sharedLocks.contains(lId) && !lIdsInWaits.contains(lId)){
-						instrsItr.remove();
-					}
-				}
+	public boolean keepInstr(StringIntIntTuple instr){
+		int type = instr.snd;
+		if(type != WNLogger.T_OTHER){
+			int lId = instr.thrd;
+			if(!sharedLocks.contains(lId) && !lIdsInWaits.contains(lId)){
+				return false;
 			}
 		}
+		return true;
 	}
 }
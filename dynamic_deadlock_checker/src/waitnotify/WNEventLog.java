@@ -0,0 +1,182 @@
+package waitnotify;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Binary per-thread logs of the events recorded by WNLogger.
+ *
+ * The events of each thread go to their own file in the log directory, in
+ * the order the thread executes them. An event is a kind byte followed by
+ * the int operands of that kind: lock, thread, and condition ids, and
+ * locations as indices into the E, I, L, and R location lists written by
+ * WNLogger.initAllPasses(), so no string is built while the program runs.
+ *
+ * At most MAX_OPEN logs are open at a time: when another thread logs an
+ * event, the least recently used log is closed, and reopened for appending
+ * if its thread logs again.
+ */
+public class WNEventLog {
+	// event kinds and their operands
+	public static final byte SYNC_BEGIN = 1;	// lock, L location
+	public static final byte SYNC_END = 2;		// lock, R location
+	public static final byte START = 3;			// thread, I location
+	public static final byte JOIN = 4;			// thread, I location
+	public static final byte WAIT = 5;			// lock, I location
+	public static final byte NOTIFY = 6;		// lock, I location
+	public static final byte NOTIFY_ALL = 7;	// lock, I location
+	public static final byte COND_CHANGE_E = 8;	// condition, value, E location
+	public static final byte COND_CHANGE_I = 9;	// condition, value, I location
+	public static final byte COND_VAL = 10;		// condition, value
+	public static final byte COND_IF = 11;		// condition
+	public static final byte COND_WAIT = 12;	// lock
+	public static final byte COND_NOTIFY = 13;	// lock
+	public static final byte COND_END = 14;		// none
+
+	private static final int[] numOperands = { 0, 2, 2, 2, 2, 2, 2, 2, 3, 3, 2, 1, 1, 1, 0 };
+
+	private static final int MAX_OPEN = 64;
+
+	private final File dir;
+	private final Set<Integer> threads = new TreeSet<Integer>();
+	private final Map<Integer, DataOutputStream> thrToOut =
+		new LinkedHashMap<Integer, DataOutputStream>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(Map.Entry<Integer, DataOutputStream> eldest) {
+				if (size() <= MAX_OPEN)
+					return false;
+				try {
+					eldest.getValue().close();
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+				return true;
+			}
+		};
+
+	public WNEventLog(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+		for (File f : dir.listFiles()) {
+			if (f.getName().endsWith(".wnlog"))
+				f.delete();
+		}
+	}
+
+	private File getFile(int tId) {
+		return new File(dir, "t" + tId + ".wnlog");
+	}
+
+	private DataOutputStream getOut(int tId) throws IOException {
+		DataOutputStream out = thrToOut.get(tId);
+		if (out == null) {
+			// append to what the thread logged before its log was last closed
+			boolean append = !threads.add(tId);
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(getFile(tId), append)));
+			thrToOut.put(tId, out);
+		}
+		return out;
+	}
+
+	public void log(int tId, byte kind) {
+		log(tId, kind, 0, 0, 0);
+	}
+
+	public void log(int tId, byte kind, int a) {
+		log(tId, kind, a, 0, 0);
+	}
+
+	public void log(int tId, byte kind, int a, int b) {
+		log(tId, kind, a, b, 0);
+	}
+
+	public void log(int tId, byte kind, int a, int b, int c) {
+		try {
+			DataOutputStream out = getOut(tId);
+			out.writeByte(kind);
+			int n = numOperands[kind];
+			if (n > 0) out.writeInt(a);
+			if (n > 1) out.writeInt(b);
+			if (n > 2) out.writeInt(c);
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Flushes and closes the logs; no event may be logged afterwards.
+	 */
+	public void close() {
+		try {
+			for (DataOutputStream out : thrToOut.values())
+				out.close();
+			thrToOut.clear();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Provides the ids of the threads that logged events, in increasing order.
+	 */
+	public Set<Integer> getThreads() {
+		return threads;
+	}
+
+	public Reader open(int tId) {
+		try {
+			return new Reader(new DataInputStream(new BufferedInputStream(new FileInputStream(getFile(tId)))));
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Reads the events of a thread one at a time; the current event is in
+	 * the public fields, which are overwritten by next().
+	 */
+	public static class Reader {
+		private final DataInputStream in;
+		public byte kind;
+		public int a;
+		public int b;
+		public int c;
+
+		private Reader(DataInputStream in) {
+			this.in = in;
+		}
+
+		/**
+		 * Reads the next event, and closes the log if there is none.
+		 */
+		public boolean next() {
+			try {
+				int k = in.read();
+				if (k == -1) {
+					in.close();
+					return false;
+				}
+				kind = (byte) k;
+				int n = numOperands[kind];
+				a = (n > 0) ? in.readInt() : 0;
+				b = (n > 1) ? in.readInt() : 0;
+				c = (n > 2) ? in.readInt() : 0;
+				return true;
+			} catch (EOFException e) {
+				throw new RuntimeException("Truncated event log", e);
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
+}
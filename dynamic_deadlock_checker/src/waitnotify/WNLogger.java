@@ -4,10 +4,9 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.HashMap;
 import java.util.Set;
 import java.util.TreeMap;
-import java.util.Collections;
+import java.util.TreeSet;
 
 import joeq.Class.jq_Class;
 import joeq.Class.jq_Method;
@@ -19,12 +18,10 @@ import chord.project.analyses.ProgramDom;
 import chord.project.analyses.DynamicAnalysis;
 import chord.program.MethodElem;
 import chord.program.Program;
-import chord.util.IndexMap;
-
-import chord.util.tuple.object.Pair;
 import chord.util.Utils;
 import chord.project.Config;
 
+import java.io.File;
 import java.io.PrintWriter;
 
 @Chord(
@@ -34,10 +31,11 @@ public class WNLogger extends DynamicAnalysis {
 
     protected InstrScheme instrScheme;
 
-    protected static Map<Integer, List<StringIntIntTuple>> thrToInstrs = new TreeMap<Integer, List<StringIntIntTuple>>();
-    protected static Map<Integer, List<String>> thrToSimplifiedInstrs = new TreeMap<Integer, List<String>>();
+    // the events of each thread, see WNEventLog
+    protected static WNEventLog log;
     protected static Set<Integer> thrIds = new HashSet<Integer>();
     protected static Set<Integer> lockIds = new HashSet<Integer>();
+    protected static Set<Integer> lockIdsInWaits = new HashSet<Integer>();
     protected static Set<Integer> condIds = new HashSet<Integer>();
     protected static Map<Integer, Set<Integer>> thrToLockIds = new TreeMap<Integer, Set<Integer>>();
   
@@ -49,10 +47,6 @@ public class WNLogger extends DynamicAnalysis {
     
     protected static final int LID_NA = -1;
     
-    
-    //for indentation
-    protected static Map<Integer, Integer> thrToNumTabs = new TreeMap<Integer, Integer>();
-    
 	@Override
     public Class getEventHandlerClass() {
 		return WNLoggerObserver.class;
@@ -109,61 +103,37 @@ public class WNLogger extends DynamicAnalysis {
 	}
 
 	public static void doPutstaticPrimitive(int eId, int tId, int bId,  int fId) {
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(bId, iidToLoc(eId, WNLoggerObserver.Elist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(bId, tId, WNEventLog.COND_CHANGE_E, eId);
 	}
 	
 	public static void doPutfieldPrimitive(int eId, int tId, int bId, int fId) {
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(bId, iidToLoc(eId, WNLoggerObserver.Elist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(bId, tId, WNEventLog.COND_CHANGE_E, eId);
 	}
 	
 	public static void doAstorePrimitive(int eId, int tId, int bId, int iId) {
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(bId, iidToLoc(eId, WNLoggerObserver.Elist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(bId, tId, WNEventLog.COND_CHANGE_E, eId);
 	}
 	
 	public static void doPutstaticReference(int eId, int tId, int bId, int fId, int oId) {
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(bId, iidToLoc(eId, WNLoggerObserver.Elist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(bId, tId, WNEventLog.COND_CHANGE_E, eId);
 	}
 	
 	public static void doPutfieldReference(int eId, int tId, int bId, int fId, int oId) { 
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(bId, iidToLoc(eId, WNLoggerObserver.Elist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(bId, tId, WNEventLog.COND_CHANGE_E, eId);
 	}
 	
 	public static void doAstoreReference(int eId, int tId, int bId, int iId, int oId) {
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(bId, iidToLoc(eId, WNLoggerObserver.Elist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(bId, tId, WNEventLog.COND_CHANGE_E, eId);
 	}
 
 	//oId would be zero for static method calls
 	public static void doMethodCallAft(int iId, int tId, int oId){
-		List<String> instrs = ConditionAnnotation.checkForCondChanges(oId, iidToLoc(iId, WNLoggerObserver.Ilist));
-		if(instrs != null){
-			addInstrs(instrs, tId, T_OTHER, LID_NA);
-		}
+		ConditionAnnotation.checkForCondChanges(oId, tId, WNEventLog.COND_CHANGE_I, iId);
 	}
 
 	public static void doAcquireLock(int pId, int tId, int lId) {
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "synchronized(l"+lId+"){ //"+iidToLoc(pId, WNLoggerObserver.Llist);
-		addInstr(instr, tId, T_SYNC_BEGIN, lId);
+		log.log(tId, WNEventLog.SYNC_BEGIN, lId, pId);
 		lockIds.add(lId);
-		incNumTabs(tId);
 		Set<Integer> lockIdsForTId = thrToLockIds.get(tId);
 	        if(lockIdsForTId == null){
 			lockIdsForTId = new HashSet<Integer>();
@@ -173,51 +143,37 @@ public class WNLogger extends DynamicAnalysis {
 	}
 
 	public static void doReleaseLock(int pId, int tId, int lId) {	
-		decNumTabs(tId);
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "} //"+iidToLoc(pId, WNLoggerObserver.Rlist);
-		addInstr(instr, tId, T_SYNC_END, lId);
+		log.log(tId, WNEventLog.SYNC_END, lId, pId);
 	}
 	
 	public static void doThreadStart(int pId, int tId, int oId) { 
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "t"+oId+".start(); //"+iidToLoc(pId, WNLoggerObserver.Ilist);
-		addInstr(instr, tId, T_OTHER, LID_NA);
+		log.log(tId, WNEventLog.START, oId, pId);
 		thrIds.add(oId);
 	}
 	
 	public static void doThreadJoin(int pId, int tId, int oId) {
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "t"+oId+".join(); //"+iidToLoc(pId, WNLoggerObserver.Ilist);
-		addInstr(instr, tId, T_OTHER, LID_NA);
+		log.log(tId, WNEventLog.JOIN, oId, pId);
 		thrIds.add(oId);
 	}
 	
 	public static void doWait(int pId, int tId, int lId) { 
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "l"+lId+".wait(); //"+iidToLoc(pId, WNLoggerObserver.Ilist);
-		addInstr(instr, tId, T_WAIT, lId);
+		log.log(tId, WNEventLog.WAIT, lId, pId);
 		lockIds.add(lId);
+		lockIdsInWaits.add(lId);
 	}
 	
 	public static void doNotify(int pId, int tId, int lId) { 
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "l"+lId+".notify(); //"+iidToLoc(pId, WNLoggerObserver.Ilist);
-		addInstr(instr, tId, T_NOTF_OR_NOTFALL, lId);
+		log.log(tId, WNEventLog.NOTIFY, lId, pId);
 		lockIds.add(lId);
 	}
 
 	public static void doNotifyAll(int pId, int tId, int lId) { 
-		String tabs = getStringWithTabs(tId);
-		String instr = tabs + "l"+lId+".notifyAll(); //"+iidToLoc(pId, WNLoggerObserver.Ilist);
-		addInstr(instr, tId, T_NOTF_OR_NOTFALL, lId);
+		log.log(tId, WNEventLog.NOTIFY_ALL, lId, pId);
 		lockIds.add(lId);
 	}
 
-	public static String getStringWithTabs(int tId){
-		Integer numTabs = getNumTabs(tId);
-		String tabs = getStringWithTabsGivenNumTabs(numTabs);
-		return tabs;
+	public static void openLog(String outDirName) {
+		log = new WNEventLog(new File(outDirName, "wn_logs"));
 	}
 
 	public static String getStringWithTabsGivenNumTabs(int nTabs){
@@ -228,26 +184,6 @@ public class WNLogger extends DynamicAnalysis {
 		return tabs;
 	}
 
-	public static void incNumTabs(int tId){
-		Integer numTabs = getNumTabs(tId);
-		thrToNumTabs.put(tId, numTabs+1);
-	}
-
-	public static void decNumTabs(int tId){
-		Integer numTabs = getNumTabs(tId);
-		if(numTabs > 0)
-			thrToNumTabs.put(tId, numTabs-1);
-	}
-
-	private static Integer getNumTabs(int tId){
-		Integer numTabs = thrToNumTabs.get(tId);
-		if(numTabs == null){
-			numTabs = new Integer(0);
-			thrToNumTabs.put(tId, numTabs);
-		}
-		return numTabs;
-	}
-	
 	public static String iidToString(int iid, ProgramDom dom, boolean isLmapOrRmap) {
 		String s;
 		String res = "";
@@ -277,52 +213,133 @@ public class WNLogger extends DynamicAnalysis {
 		return loc;
 	}
 	
-	public static void addInstr(String instr, int tId, int type, int lId){
-		List<StringIntIntTuple> instrsForTId = thrToInstrs.get(tId);
-		if(instrsForTId == null){
-			instrsForTId = new LinkedList<StringIntIntTuple>();
-			thrToInstrs.put(tId, instrsForTId);
-		}
-		instrsForTId.add(new StringIntIntTuple(instr, type, lId));
-	}
-	
-	public static void addInstrs(List<String> instrs, int tId, int type, int lId){
-		List<StringIntIntTuple> instrsForTId = thrToInstrs.get(tId);
-		if(instrsForTId == null){
-			instrsForTId = new LinkedList<StringIntIntTuple>();
-			thrToInstrs.put(tId, instrsForTId);
-		}
-		List<StringIntIntTuple> instrsToBeAdded = new LinkedList<StringIntIntTuple>();
-		for(String s : instrs){
-			instrsToBeAdded.add(new StringIntIntTuple(s, type, lId));
+	/**
+	 * Replays the log of a thread as the instructions of the reproducer,
+	 * indented by their nesting, passing those kept by the thread-local
+	 * optimization to the lock tree optimization.
+	 *
+	 * @return the nesting at the end of the thread
+	 */
+	private static int replayThread(int tId, ThreadLocalOptimization thrLocalOptim, LockTreeOptimization lTreeOptim){
+		WNEventLog.Reader r = log.open(tId);
+		StringIntIntTuple instr = new StringIntIntTuple(null, T_OTHER, LID_NA);
+		int nTabs = 0;
+		while(r.next()){
+			int type = T_OTHER;
+			int lId = LID_NA;
+			String s;
+			switch(r.kind){
+			case WNEventLog.SYNC_BEGIN:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "synchronized(l"+r.a+"){ //"+iidToLoc(r.b, WNLoggerObserver.Llist);
+				type = T_SYNC_BEGIN;
+				lId = r.a;
+				nTabs++;
+				break;
+			case WNEventLog.SYNC_END:
+				if(nTabs > 0)
+					nTabs--;
+				s = getStringWithTabsGivenNumTabs(nTabs) + "} //"+iidToLoc(r.b, WNLoggerObserver.Rlist);
+				type = T_SYNC_END;
+				lId = r.a;
+				break;
+			case WNEventLog.START:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "t"+r.a+".start(); //"+iidToLoc(r.b, WNLoggerObserver.Ilist);
+				break;
+			case WNEventLog.JOIN:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "t"+r.a+".join(); //"+iidToLoc(r.b, WNLoggerObserver.Ilist);
+				break;
+			case WNEventLog.WAIT:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "l"+r.a+".wait(); //"+iidToLoc(r.b, WNLoggerObserver.Ilist);
+				type = T_WAIT;
+				lId = r.a;
+				break;
+			case WNEventLog.NOTIFY:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "l"+r.a+".notify(); //"+iidToLoc(r.b, WNLoggerObserver.Ilist);
+				type = T_NOTF_OR_NOTFALL;
+				lId = r.a;
+				break;
+			case WNEventLog.NOTIFY_ALL:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "l"+r.a+".notifyAll(); //"+iidToLoc(r.b, WNLoggerObserver.Ilist);
+				type = T_NOTF_OR_NOTFALL;
+				lId = r.a;
+				break;
+			case WNEventLog.COND_CHANGE_E:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "c"+r.a+" = "+(r.b != 0)+"; //"+iidToLoc(r.c, WNLoggerObserver.Elist);
+				break;
+			case WNEventLog.COND_CHANGE_I:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "c"+r.a+" = "+(r.b != 0)+"; //"+iidToLoc(r.c, WNLoggerObserver.Ilist);
+				break;
+			case WNEventLog.COND_VAL:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "c"+r.a+" = "+(r.b != 0)+";";
+				break;
+			case WNEventLog.COND_IF:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "if (c"+r.a+") { ";
+				nTabs++;
+				break;
+			case WNEventLog.COND_WAIT:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "synchronized (l"+r.a+") { l"+r.a+".wait(); }";
+				type = T_WAIT;
+				lId = r.a;
+				break;
+			case WNEventLog.COND_NOTIFY:
+				s = getStringWithTabsGivenNumTabs(nTabs) + "synchronized (l"+r.a+") { l"+r.a+".notify(); }";
+				type = T_NOTF_OR_NOTFALL;
+				lId = r.a;
+				break;
+			case WNEventLog.COND_END:
+				if(nTabs > 0)
+					nTabs--;
+				s = getStringWithTabsGivenNumTabs(nTabs) + "}";
+				break;
+			default:
+				throw new RuntimeException("Unknown event kind " + r.kind + " in log of thread " + tId);
+			}
+			instr.fst = s;
+			instr.snd = type;
+			instr.thrd = lId;
+			if(thrLocalOptim.keepInstr(instr)){
+				lTreeOptim.process(instr);
+			}
 		}
-		instrsForTId.addAll(instrsToBeAdded);
+		lTreeOptim.finish();
+		return nTabs;
 	}
-	
-	private static Set<Integer> thrsWEmptyBodies = null;
 
-	protected static void createJavaCode(PrintWriter out){
+	protected static void createJavaCode(final PrintWriter out){
 		try{
-			ThreadLocalOptimization thrLocalOptim = new ThreadLocalOptimization(thrToInstrs, thrToLockIds);
-			thrLocalOptim.optimizeInstrs();
+			log.close();
+			ThreadLocalOptimization thrLocalOptim = new ThreadLocalOptimization(thrToLockIds, lockIdsInWaits);
 			
 			Set<Integer> thrSharedLocksOrLocksInWaits = thrLocalOptim.getLIdsAfterOptim();
 			out.println("public class Test {");
 			initLocks(out, thrSharedLocksOrLocksInWaits);
 			initConds(out);
 			
-			LockTreeOptimization lTreeOptim = new LockTreeOptimization(thrToInstrs);
-			Map<Integer, List<String>> thrToInstrsAfterLockTreeOptim = lTreeOptim.getInstrsAfterOptimization();	
+			//first pass over the logs: find the threads whose bodies are not empty after the optimizations
+			final Set<Integer> thrds = new TreeSet<Integer>();
+			for(Integer tId : log.getThreads()){
+				final int[] numInstrs = new int[1];
+				replayThread(tId, thrLocalOptim, new LockTreeOptimization(){
+					protected void emit(String instr){
+						numInstrs[0]++;
+					}
+				});
+				if(numInstrs[0] > 0){
+					thrds.add(tId);
+				}
+			}
 		
-			initThreads(out, thrToInstrsAfterLockTreeOptim);
+			//second pass: write the bodies of those threads, not starting threads with empty bodies
+			for(Integer tId : thrds){
+				initThread(out, tId, thrLocalOptim, thrds);
+			}
 		
 			out.println("\t public static void main(String[] args){");
 		
-			Set<Integer> thrds = thrToInstrsAfterLockTreeOptim.keySet();
 			//mainThrs has all the tIds for which we did not see a tId.start()
 			//This should only happen for the main thread
 			//We generate code to start all such threads 
-			Set<Integer> mainThrs = new HashSet<Integer>(thrds);
+			Set<Integer> mainThrs = new TreeSet<Integer>(thrds);
 			mainThrs.removeAll(thrIds);
 			
 			for(Integer tId : mainThrs){
@@ -350,34 +367,30 @@ public class WNLogger extends DynamicAnalysis {
 		}
 	}
 
-	private static void initThreads(PrintWriter out, Map<Integer, List<String>> tToInstrs){
-		for(Map.Entry<Integer, List<String>> instrsForT : tToInstrs.entrySet()){
-			Integer tId = instrsForT.getKey();
-			List<String> instrs = instrsForT.getValue();
-			
-			out.println("\t public static Thread t"+tId+" = new Thread(){");
-			out.println("\t\t public void run(){");
-			out.println("\t\t\t try{");
-		
-			if(instrs != null){
-				for(String instr : instrs){
+	private static void initThread(final PrintWriter out, int tId, ThreadLocalOptimization thrLocalOptim, final Set<Integer> thrsWOEmptyBodies){
+		out.println("\t public static Thread t"+tId+" = new Thread(){");
+		out.println("\t\t public void run(){");
+		out.println("\t\t\t try{");
+	
+		int nTabs = replayThread(tId, thrLocalOptim, new LockTreeOptimization(){
+			protected void emit(String instr){
+				if(!doesInstrStartThrWEmptyBody(instr, thrsWOEmptyBodies)){
 					out.println("\t\t\t\t"+instr);
 				}
 			}
-		
-			printEnclosingBraces(tId, out);
-			out.println("\t\t\t}");
-			out.println("\t\t\tcatch(Exception e){");
-			out.println("\t\t\t\t System.out.println(\"Exception caught in run\");");
-			out.println("\t\t\t\t e.printStackTrace();");
-			out.println("\t\t\t}");
-			out.println("\t\t}");
-			out.println("\t};");
-		}
+		});
+	
+		printEnclosingBraces(nTabs, out);
+		out.println("\t\t\t}");
+		out.println("\t\t\tcatch(Exception e){");
+		out.println("\t\t\t\t System.out.println(\"Exception caught in run\");");
+		out.println("\t\t\t\t e.printStackTrace();");
+		out.println("\t\t\t}");
+		out.println("\t\t}");
+		out.println("\t};");
 	}
 
-	private static void printEnclosingBraces(int tId, PrintWriter out){
-		int nTabs = getNumTabs(tId);
+	private static void printEnclosingBraces(int nTabs, PrintWriter out){
 		for(int i = nTabs; i > 0; i--){
                     String tabs = getStringWithTabsGivenNumTabs(i-1);
 		    out.println("\t\t\t\t"+tabs+"}");		    
@@ -159,6 +159,7 @@ public class WNLoggerObserver extends BasicEventHandler {
 		 Ilist = Utils.readFileToList(new File(outDirName, "Ilocs.dynamic.txt"));
 		 Llist = Utils.readFileToList(new File(outDirName, "Llocs.dynamic.txt"));
 		 Rlist = Utils.readFileToList(new File(outDirName, "Rlocs.dynamic.txt"));
+		 WNLogger.openLog(outDirName);
 		 BasicEventHandler.init(args);
 	 }
 
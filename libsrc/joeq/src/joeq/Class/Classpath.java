@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.io.DataInput;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -21,7 +22,11 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
-import java.util.zip.ZipFile;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 import joeq.ClassLib.ClassLibInterface;
 import joeq.Main.jq;
 import joeq.UTF.Utf8;
@@ -39,16 +44,46 @@ public class Classpath {
     private final List<ClasspathElement> classpathList = new ArrayList<ClasspathElement>();
     private Set duplicates = new HashSet(); // don't add duplicates.
 
+    // Maps each resource name to the first element of the classpath that
+    // contains it, so that lookups need not search the elements linearly.
+    // Built lazily, from the entries of each element in classpath order.
+    private final Map<String, ClasspathElement> index = new HashMap<String, ClasspathElement>();
+    private int numIndexed; // number of elements of classpathList in index
+
+    // Contents of class files read ahead of their use by prefetch(); a
+    // PENDING value denotes a read that has been scheduled but not done.
+    private static final Object PENDING = new Object();
+    private static final long MAX_PREFETCHED_BYTES = 64L << 20;
+    private final ConcurrentHashMap<String, Object> prefetched = new ConcurrentHashMap<String, Object>();
+    private final AtomicLong numPrefetchedBytes = new AtomicLong();
+    private ExecutorService prefetcher;
+
 	public List<ClasspathElement> getClasspathElements() {
 		return classpathList;
 	}
 
 	public void addFullClasspath() {
-		addToClasspath(System.getProperty("sun.boot.class.path"));
+		addBootClasspath();
 		addExtClasspath();
 		addToClasspath(System.getProperty("java.class.path"));
 	}
 
+	/** Adds the boot classpath of the running JVM, or its run-time image
+	 *  if it has none (JDK 9 or later). */
+	public void addBootClasspath() {
+		String bootClasspath = System.getProperty("sun.boot.class.path");
+		if (bootClasspath != null) {
+			addToClasspath(bootClasspath);
+			return;
+		}
+		if (duplicates.add(JrtElement.NAME)) {
+			try {
+				if (TRACE) System.out.println("Adding "+JrtElement.NAME+" to classpath");
+				classpathList.add(new JrtElement());
+			} catch (Exception ex) { /* no run-time image, then. */ }
+		}
+	}
+
 	public void addExtClasspath() {
         String javaHomeDir = System.getProperty("java.home");
         assert (javaHomeDir != null);
@@ -78,7 +113,7 @@ public class Classpath {
 				if (path.toLowerCase().endsWith(".zip") || path.toLowerCase().endsWith(".jar")) {
 					try {
 						if (TRACE) System.out.println("Adding zip file "+path+" to classpath");
-						classpathList.add(new ZipFileElement(new ZipFile(path)));
+						classpathList.add(new ZipFileElement(path));
 					} catch (IOException ex) { /* skip this zip file, then. */ }
 				} else {
 					if (TRACE) System.out.println("Adding path "+path+" to classpath");
@@ -164,13 +199,27 @@ public class Classpath {
         return classname.replace('.', '/') + ".class";
     }
 
-    public String getResourcePath(String name) {
-        for (ClasspathElement cpe : classpathList) {
-            if (cpe.containsResource(name))
-                return cpe.toString();
+    /** Returns the first element of the classpath containing the given
+     *  resource, or <code>null</code> if there is none. */
+    public synchronized ClasspathElement getResourceElement(String name) {
+        int n = classpathList.size();
+        // index the entries of elements added since the last lookup; an
+        // element never shadows entries of elements preceding it
+        for (; numIndexed < n; ++numIndexed) {
+            ClasspathElement cpe = classpathList.get(numIndexed);
+            for (String entry : cpe.getEntries()) {
+                if (!index.containsKey(entry))
+                    index.put(entry, cpe);
+            }
         }
-        // Couldn't find resource.
-        return null;
+        if (name.length() > 0 && name.charAt(0) == '/') name = name.substring(1);
+        return index.get(name);
+    }
+
+    public String getResourcePath(String name) {
+        ClasspathElement cpe = getResourceElement(name);
+        // Couldn't find resource if null.
+        return (cpe == null)?null:cpe.toString();
     }
 
     public String getPackagePath(String name) {
@@ -189,14 +238,15 @@ public class Classpath {
      * @param name The filename of the resource to locate.
      */
     public InputStream getResourceAsStream(String name) {
-        for (ClasspathElement cpe : classpathList) {
-            InputStream is = cpe.getResourceAsStream(name);
-            if (is != null) {
-                return is; // return stream if found.
-            }
+        Object o = prefetched.remove(name);
+        if (o instanceof byte[]) {
+            byte[] b = (byte[]) o;
+            numPrefetchedBytes.addAndGet(-b.length);
+            return new ByteArrayInputStream(b);
         }
-        // Couldn't find resource.
-        return null;
+        ClasspathElement cpe = getResourceElement(name);
+        // Couldn't find resource if null.
+        return (cpe == null)?null:cpe.getResourceAsStream(name);
     }
     
     public DataInputStream getClassFileStream(Utf8 descriptor) throws IOException {
@@ -205,4 +255,57 @@ public class Classpath {
         if (is == null) return null;
         return new DataInputStream(is);
     }
+
+    /** Sets the number of threads reading class files ahead of their use
+     *  by prefetch(); 0 (the default) disables prefetching. */
+    public synchronized void setPrefetchThreads(int n) {
+        if (prefetcher != null) {
+            prefetcher.shutdown();
+            prefetcher = null;
+        }
+        if (n > 0) {
+            prefetcher = Executors.newFixedThreadPool(n, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "classpath-prefetch");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    /** Hints that the class file of the given class is likely to be read
+     *  soon, so that it is read (and decompressed) in the background if
+     *  prefetching is enabled.  The first getResourceAsStream() of the
+     *  class file then returns the prefetched contents. */
+    public void prefetch(Utf8 descriptor) {
+        ExecutorService p = prefetcher;
+        if (p == null || numPrefetchedBytes.get() >= MAX_PREFETCHED_BYTES)
+            return;
+        final String name = descriptorToResource(descriptor.toString());
+        if (prefetched.containsKey(name))
+            return;
+        final ClasspathElement cpe = getResourceElement(name);
+        if (cpe == null || prefetched.put(name, PENDING) != null)
+            return;
+        try {
+            p.execute(new Runnable() {
+                public void run() {
+                    if (prefetched.get(name) != PENDING)
+                        return; // already consumed
+                    byte[] b = cpe.getResourceBytes(name);
+                    if (b == null) {
+                        prefetched.remove(name);
+                        return;
+                    }
+                    numPrefetchedBytes.addAndGet(b.length);
+                    // store only if not consumed in the meantime
+                    if (!prefetched.replace(name, PENDING, b))
+                        numPrefetchedBytes.addAndGet(-b.length);
+                }
+            });
+        } catch (java.util.concurrent.RejectedExecutionException ex) {
+            prefetched.remove(name);
+        }
+    }
 }
@@ -14,6 +14,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.File;
@@ -37,6 +38,23 @@ public abstract class ClasspathElement {
 	/** Open a stream to read the given resource, or return
 	 *  <code>null</code> if resource cannot be found. */
 	public abstract InputStream getResourceAsStream(String resourcename);
+	/** Read the given resource fully, or return <code>null</code> if
+	 *  resource cannot be found. */
+	public byte[] getResourceBytes(String resourcename) {
+		InputStream in = getResourceAsStream(resourcename);
+		if (in == null) return null;
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buf = new byte[8192];
+			for (int n; (n = in.read(buf)) != -1; )
+				out.write(buf, 0, n);
+			return out.toByteArray();
+		} catch (IOException e) {
+			return null;
+		} finally {
+			try { in.close(); } catch (IOException _) { }
+		}
+	}
 	public abstract boolean containsResource(String name);
 	/** Iterate over all classes in the given package. */
 	public Iterator listPackage(String packagename) {
@@ -0,0 +1,122 @@
+// Licensed under the terms of the GNU LGPL; see COPYING for details.
+package joeq.Class;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import jwutil.collections.Filter;
+import jwutil.collections.FilterIterator;
+
+/**
+ * The run-time image ({@code jrt:/}) of a JDK 9 or later, which has no
+ * boot class path; see {@link Classpath#addBootClasspath()}.
+ *
+ * The image is walked once to map each resource name (e.g.
+ * {@code java/lang/Object.class}) to its location within the module that
+ * contains it.  Only referenced when running on such a JDK.
+ */
+public class JrtElement extends ClasspathElement {
+	public static final String NAME = "jrt:/";
+
+	private final FileSystem fs;
+	private volatile Map<String, Path> entries;
+
+	public JrtElement() throws IOException {
+		fs = FileSystems.getFileSystem(URI.create(NAME));
+	}
+
+	private synchronized void initializeEntryMap() {
+		if (entries != null) return;
+		final Map<String, Path> map = new HashMap<String, Path>();
+		try {
+			DirectoryStream<Path> modules = Files.newDirectoryStream(fs.getPath("/modules"));
+			try {
+				for (Path module : modules) {
+					final Path root = module;
+					Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+							String name = root.relativize(file).toString();
+							// the first module containing a resource wins
+							if (!map.containsKey(name))
+								map.put(name, file);
+							return FileVisitResult.CONTINUE;
+						}
+					});
+				}
+			} finally {
+				modules.close();
+			}
+		} catch (IOException e) {
+			// leave the entries read so far
+		}
+		entries = map;
+		if (TRACE) System.out.println(this+" contains: "+entries.keySet());
+	}
+
+	public String toString() { return NAME; }
+
+	public Set<String> getEntries() {
+		if (entries == null) initializeEntryMap();
+		return entries.keySet();
+	}
+
+	public InputStream getResourceAsStream(String name) {
+		byte[] b = getResourceBytes(name);
+		return (b==null)?null:new ByteArrayInputStream(b);
+	}
+
+	public byte[] getResourceBytes(String name) {
+		if (TRACE) System.out.println("Getting resource for "+name+" in "+NAME);
+		if (entries == null) initializeEntryMap();
+		if (name.charAt(0) == '/') name = name.substring(1);
+		Path p = entries.get(name);
+		if (p == null) return null;
+		try {
+			return Files.readAllBytes(p);
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	public boolean containsResource(String name) {
+		if (entries == null) initializeEntryMap();
+		return entries.containsKey(name);
+	}
+
+	public Iterator listPackage(final String pathname, final boolean recursive) {
+		if (entries == null) initializeEntryMap();
+		return new FilterIterator(entries.keySet().iterator(), new Filter() {
+			public boolean isElement(Object o) {
+				String name = (String) o;
+				return name.startsWith(pathname) && name.endsWith(".class") &&
+					(recursive || name.lastIndexOf('/')==(pathname.length()-1));
+			}
+		});
+	}
+
+	public Iterator listPackages() {
+		if (entries == null) initializeEntryMap();
+		LinkedHashSet result = new LinkedHashSet();
+		for (String name : entries.keySet()) {
+			if (name.endsWith(".class")) {
+				int index = name.lastIndexOf('/');
+				result.add(name.substring(0, index+1));
+			}
+		}
+		return result.iterator();
+	}
+}
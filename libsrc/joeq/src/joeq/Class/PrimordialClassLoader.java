@@ -156,9 +156,9 @@ public class PrimordialClassLoader extends ClassLoader implements jq_ClassFileCo
 
 	public Classpath getClasspath() { return classpath; }
 
-    public jq_Type[] getAllTypes() { return allTypes; }
+    public synchronized jq_Type[] getAllTypes() { return allTypes; }
     
-    public int getNumTypes() { return numTypes; }
+    public synchronized int getNumTypes() { return numTypes; }
     
     public final Set/*<jq_Class>*/ getClassesThatReference(jq_Member m) {
         HashSet s = new HashSet();
@@ -180,11 +180,13 @@ public class PrimordialClassLoader extends ClassLoader implements jq_ClassFileCo
     }
 
     public final jq_Type getBSType(String desc) { return getBSType(Utf8.get(desc)); }
-    public final jq_Type getBSType(Utf8 desc) {
+    // The type tables are guarded by this loader's lock so that types can be
+    // looked up and created by concurrent CFG builders.
+    public final synchronized jq_Type getBSType(Utf8 desc) {
         return (jq_Type)bs_desc2type.get(desc);
     }
     public final jq_Type getOrCreateBSType(String desc) { return getOrCreateBSType(Utf8.get(desc)); }
-    public final jq_Type getOrCreateBSType(Utf8 desc) {
+    public final synchronized jq_Type getOrCreateBSType(Utf8 desc) {
         if (jq.RunningNative)
             return ClassLibInterface.DEFAULT.getOrCreateType(this, desc);
         jq_Type t = (jq_Type)bs_desc2type.get(desc);
@@ -266,7 +268,7 @@ public class PrimordialClassLoader extends ClassLoader implements jq_ClassFileCo
         }
     }
     
-    public void unloadBSType(jq_Type t) {
+    public synchronized void unloadBSType(jq_Type t) {
         bs_desc2type.remove(t.getDesc());
         for (int i = 0; ; ++i) {
             if (allTypes[i] == t) {
@@ -12,8 +12,11 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.io.ByteArrayInputStream;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.File;
@@ -22,6 +25,10 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import joeq.ClassLib.ClassLibInterface;
 import joeq.Main.jq;
 import joeq.UTF.Utf8;
@@ -32,28 +39,173 @@ import jwutil.collections.UnmodifiableIterator;
 import jwutil.util.Assert;
 import java.io.Serializable;
 
-/** A .zip or .jar file in the CLASSPATH. */
+/**
+ * A .zip or .jar file in the CLASSPATH.
+ *
+ * The file is memory-mapped and its central directory is parsed once;
+ * entries are then read (and inflated, if compressed) straight from the
+ * mapped file, without going through a ZipFile.  Files that cannot be
+ * handled this way (e.g. zip64 archives, or archives using compression
+ * methods other than stored and deflated) are read using a ZipFile.
+ */
 public class ZipFileElement extends ClasspathElement {
+	private static final int LOCSIG = 0x04034b50;
+	private static final int CENSIG = 0x02014b50;
+	private static final int ENDSIG = 0x06054b50;
+	private static final int LOCHDR = 30;
+	private static final int CENHDR = 46;
+	private static final int ENDHDR = 22;
+	private static final int STORED = 0;
+	private static final int DEFLATED = 8;
+
+	/** An entry of the zip file: either a location in the mapped file or
+	 *  a ZipEntry of the ZipFile. */
+	private static class Entry {
+		final String name;
+		final int locOffset;
+		final int csize;
+		final int size;
+		final int method;
+		final ZipEntry ze;
+		Entry(String name, int locOffset, int csize, int size, int method) {
+			this.name = name;
+			this.locOffset = locOffset;
+			this.csize = csize;
+			this.size = size;
+			this.method = method;
+			this.ze = null;
+		}
+		Entry(ZipEntry ze) {
+			this.name = ze.getName();
+			this.locOffset = -1;
+			this.csize = -1;
+			this.size = -1;
+			this.method = -1;
+			this.ze = ze;
+		}
+		boolean isDirectory() { return name.endsWith("/"); }
+	}
+
+	private final String name;
 	private ZipFile zf;
-	private Map<String, ZipEntry> entries;
+	private ByteBuffer buf;
+	private volatile Map<String, Entry> entries;
 
 	public ZipFileElement(ZipFile zf) {
+		this.name = zf.getName();
 		this.zf = zf;
 	}
 
-	private void initializeEntryMap() {
-		int size = zf.size();
-		entries = new HashMap<String, ZipEntry>(size + (size >> 1));
-		if (size > 0) {
-			for (Enumeration e = zf.entries(); e.hasMoreElements(); ) {
-				ZipEntry ze = (ZipEntry) e.nextElement();
-				entries.put(ze.getName(), ze);
+	/** Opens the given .zip or .jar file, memory-mapping it if possible. */
+	public ZipFileElement(String path) throws IOException {
+		this.name = path;
+		File file = new File(path);
+		if (!file.isFile())
+			throw new FileNotFoundException(path);
+		long length = file.length();
+		if (length > Integer.MAX_VALUE) {
+			zf = new ZipFile(path);
+			return;
+		}
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel fc = raf.getChannel();
+			buf = fc.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			buf.order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			raf.close(); // the mapping remains valid
+		}
+		if (findEnd() < 0) {
+			// not a plain zip file; let ZipFile sort it out
+			buf = null;
+			zf = new ZipFile(path);
+		}
+	}
+
+	/** Returns the offset of the end of central directory record, or -1
+	 *  if there is none. */
+	private int findEnd() {
+		int len = buf.limit();
+		int min = Math.max(0, len - ENDHDR - 0xFFFF);
+		for (int i = len - ENDHDR; i >= min; --i) {
+			if (buf.getInt(i) == ENDSIG)
+				return i;
+		}
+		return -1;
+	}
+
+	private synchronized void initializeEntryMap() {
+		if (entries != null) return;
+		Map<String, Entry> map = null;
+		if (buf != null) {
+			map = readCentralDirectory();
+			if (map == null) {
+				// zip64 or unsupported compression method
+				buf = null;
+				try {
+					zf = new ZipFile(name);
+				} catch (IOException e) {
+					map = Collections.emptyMap();
+				}
+			}
+		}
+		if (map == null) {
+			int size = zf.size();
+			map = new HashMap<String, Entry>(size + (size >> 1));
+			if (size > 0) {
+				for (Enumeration e = zf.entries(); e.hasMoreElements(); ) {
+					ZipEntry ze = (ZipEntry) e.nextElement();
+					map.put(ze.getName(), new Entry(ze));
+				}
 			}
 		}
+		entries = map;
 		if (TRACE) System.out.println(this+" contains: "+entries.keySet());
 	}
 
-	public String toString() { return zf.getName(); }
+	/** Parses the central directory of the mapped file, or returns null if
+	 *  it cannot be read from the mapped file. */
+	private Map<String, Entry> readCentralDirectory() {
+		int end = findEnd();
+		if (end < 0) return null;
+		int total = buf.getShort(end + 10) & 0xFFFF;
+		long cenOffset = buf.getInt(end + 16) & 0xFFFFFFFFL;
+		if (total == 0xFFFF || cenOffset == 0xFFFFFFFFL)
+			return null; // zip64
+		Map<String, Entry> map = new HashMap<String, Entry>(total + (total >> 1));
+		int pos = (int) cenOffset;
+		byte[] nameBytes = new byte[256];
+		try {
+			for (int i = 0; i < total; ++i) {
+				if (buf.getInt(pos) != CENSIG) return null;
+				int method = buf.getShort(pos + 10) & 0xFFFF;
+				long csize = buf.getInt(pos + 20) & 0xFFFFFFFFL;
+				long size = buf.getInt(pos + 24) & 0xFFFFFFFFL;
+				int nameLen = buf.getShort(pos + 28) & 0xFFFF;
+				int extraLen = buf.getShort(pos + 30) & 0xFFFF;
+				int commentLen = buf.getShort(pos + 32) & 0xFFFF;
+				long locOffset = buf.getInt(pos + 42) & 0xFFFFFFFFL;
+				if (csize == 0xFFFFFFFFL || size == 0xFFFFFFFFL || locOffset == 0xFFFFFFFFL)
+					return null; // zip64
+				if (method != STORED && method != DEFLATED)
+					return null;
+				if (nameLen > nameBytes.length) nameBytes = new byte[nameLen];
+				ByteBuffer b = buf.duplicate();
+				b.position(pos + CENHDR);
+				b.get(nameBytes, 0, nameLen);
+				String s = new String(nameBytes, 0, nameLen, "UTF-8");
+				map.put(s, new Entry(s, (int) locOffset, (int) csize, (int) size, method));
+				pos += CENHDR + nameLen + extraLen + commentLen;
+			}
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		} catch (IOException e) {
+			return null;
+		}
+		return map;
+	}
+
+	public String toString() { return name; }
 
 	public Set<String> getEntries() {
 		if (entries == null) initializeEntryMap();
@@ -61,49 +213,104 @@ public class ZipFileElement extends ClasspathElement {
 	}
 
 	public InputStream getResourceAsStream(String name) {
-		if (TRACE) System.out.println("Getting resource for "+name+" in zip file "+zf.getName());
+		if (TRACE) System.out.println("Getting resource for "+name+" in zip file "+this.name);
+		if (entries == null) initializeEntryMap();
+		if (name.charAt(0) == '/') name = name.substring(1);
+		Entry e = entries.get(name);
+		if (e == null) return null;
+		if (e.ze != null) {
+			try { // look for name in zipfile, return null if something goes wrong.
+				return zf.getInputStream(e.ze);
+			} catch (IOException x) { return null; }
+		}
+		byte[] b = read(e);
+		return (b==null)?null:new ByteArrayInputStream(b);
+	}
+
+	public byte[] getResourceBytes(String name) {
 		if (entries == null) initializeEntryMap();
 		if (name.charAt(0) == '/') name = name.substring(1);
-		ZipEntry ze = entries.get(name);
-		try { // look for name in zipfile, return null if something goes wrong.
-			return (ze==null)?null:zf.getInputStream(ze);
-		} catch (IOException e) { return null; }
+		Entry e = entries.get(name);
+		if (e == null) return null;
+		if (e.ze != null) return super.getResourceBytes(name);
+		return read(e);
+	}
+
+	/** Reads the given entry from the mapped file; safe to call
+	 *  concurrently. */
+	private byte[] read(Entry e) {
+		try {
+			ByteBuffer b = buf.duplicate();
+			b.order(ByteOrder.LITTLE_ENDIAN);
+			if (b.getInt(e.locOffset) != LOCSIG) return null;
+			int nameLen = b.getShort(e.locOffset + 26) & 0xFFFF;
+			int extraLen = b.getShort(e.locOffset + 28) & 0xFFFF;
+			b.position(e.locOffset + LOCHDR + nameLen + extraLen);
+			byte[] data = new byte[e.size];
+			if (e.method == STORED) {
+				b.get(data);
+				return data;
+			}
+			// inflating with nowrap requires an extra dummy input byte
+			byte[] cdata = new byte[e.csize + 1];
+			b.get(cdata, 0, e.csize);
+			Inflater inf = new Inflater(true);
+			try {
+				inf.setInput(cdata);
+				int n = 0;
+				while (n < data.length) {
+					int k = inf.inflate(data, n, data.length - n);
+					if (k == 0 && (inf.finished() || inf.needsInput() || inf.needsDictionary()))
+						break;
+					n += k;
+				}
+				return (n == data.length)?data:null;
+			} finally {
+				inf.end();
+			}
+		} catch (DataFormatException x) {
+			return null;
+		} catch (IndexOutOfBoundsException x) {
+			return null;
+		} catch (java.nio.BufferUnderflowException x) {
+			return null;
+		}
 	}
 
 	public boolean containsResource(String name) {
-		if (TRACE) System.out.println("Searching for "+name+" in zip file "+zf.getName());
+		if (TRACE) System.out.println("Searching for "+name+" in zip file "+this.name);
 		if (entries == null) initializeEntryMap();
 		return entries.containsKey(name);
 	}
 
 	public Iterator listPackage(final String pathname, final boolean recursive) {
-		if (TRACE) System.out.println("Listing package "+pathname+" of zip file "+zf.getName());
+		if (TRACE) System.out.println("Listing package "+pathname+" of zip file "+name);
 		// look for directory name first
 		if (entries == null) initializeEntryMap();
 		final String filesep   = "/";
 		return new FilterIterator(entries.values().iterator(), new Filter() {
 			public boolean isElement(Object o) {
-				ZipEntry zze = (ZipEntry) o;
-				String name = zze.getName();
+				Entry zze = (Entry) o;
+				String name = zze.name;
 				if (TRACE) System.out.println("Checking if zipentry "+name+" is in package "+pathname);
 				return (!zze.isDirectory()) && name.startsWith(pathname) &&
 					name.endsWith(".class") &&
 					(recursive || name.lastIndexOf(filesep)==(pathname.length()-1));
 			}
 			public Object map(Object o) {
-				return ((ZipEntry)o).getName();
+				return ((Entry)o).name;
 			}
 		});
 	}
 
 	public Iterator listPackages() {
-		if (TRACE) System.out.println("Listing packages of zip file "+zf.getName());
+		if (TRACE) System.out.println("Listing packages of zip file "+name);
 		if (entries == null) initializeEntryMap();
 		LinkedHashSet result = new LinkedHashSet();
 		for (Iterator i=entries.values().iterator(); i.hasNext(); ) {
-			ZipEntry zze = (ZipEntry) i.next();
+			Entry zze = (Entry) i.next();
 			if (zze.isDirectory()) continue;
-			String name = zze.getName();
+			String name = zze.name;
 			if (name.endsWith(".class")) {
 				int index = name.lastIndexOf('/');
 				result.add(name.substring(0, index+1));
@@ -5,6 +5,7 @@ package joeq.Class;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -507,8 +508,11 @@ public final class jq_Class extends jq_Reference implements jq_ClassFileConstant
         if (sf != null) return sf;
         return createStaticField(nd);
     }
-    jq_StaticField createStaticField(jq_NameAndDesc nd) {
-        Assert._assert(getDeclaredMember(nd) == null);
+    synchronized jq_StaticField createStaticField(jq_NameAndDesc nd) {
+        // another thread may have created it since the caller checked
+        jq_Member m = getDeclaredMember(nd);
+        if (m instanceof jq_StaticField) return (jq_StaticField)m;
+        Assert._assert(m == null);
         jq_StaticField f = jq_StaticField.newStaticField(this, nd);
         addDeclaredMember(nd, f);
         return f;
@@ -525,8 +529,11 @@ public final class jq_Class extends jq_Reference implements jq_ClassFileConstant
         if (sf != null) return sf;
         return createInstanceField(nd);
     }
-    jq_InstanceField createInstanceField(jq_NameAndDesc nd) {
-        Assert._assert(getDeclaredMember(nd) == null);
+    synchronized jq_InstanceField createInstanceField(jq_NameAndDesc nd) {
+        // another thread may have created it since the caller checked
+        jq_Member m = getDeclaredMember(nd);
+        if (m instanceof jq_InstanceField) return (jq_InstanceField)m;
+        Assert._assert(m == null);
         jq_InstanceField f = jq_InstanceField.newInstanceField(this, nd);
         addDeclaredMember(nd, f);
         return f;
@@ -543,8 +550,11 @@ public final class jq_Class extends jq_Reference implements jq_ClassFileConstant
         if (sf != null) return sf;
         return createStaticMethod(nd);
     }
-    jq_StaticMethod createStaticMethod(jq_NameAndDesc nd) {
-        Assert._assert(getDeclaredMember(nd) == null);
+    synchronized jq_StaticMethod createStaticMethod(jq_NameAndDesc nd) {
+        // another thread may have created it since the caller checked
+        jq_Member m = getDeclaredMember(nd);
+        if (m instanceof jq_StaticMethod) return (jq_StaticMethod)m;
+        Assert._assert(m == null);
         jq_StaticMethod f;
         if (nd.getName() == Utf8.get("<clinit>") &&
             nd.getDesc() == Utf8.get("()V")) {
@@ -567,8 +577,11 @@ public final class jq_Class extends jq_Reference implements jq_ClassFileConstant
         if (sf != null) return sf;
         return createInstanceMethod(nd);
     }
-    jq_InstanceMethod createInstanceMethod(jq_NameAndDesc nd) {
-        Assert._assert(getDeclaredMember(nd) == null);
+    synchronized jq_InstanceMethod createInstanceMethod(jq_NameAndDesc nd) {
+        // another thread may have created it since the caller checked
+        jq_Member m = getDeclaredMember(nd);
+        if (m instanceof jq_InstanceMethod) return (jq_InstanceMethod)m;
+        Assert._assert(m == null);
         jq_InstanceMethod f;
         if (nd.getName() == Utf8.get("<init>")) {
             f = jq_Initializer.newInitializer(this, nd);
@@ -798,7 +811,8 @@ public final class jq_Class extends jq_Reference implements jq_ClassFileConstant
         super(desc, class_loader);
         this.subclasses = new jq_Class[0];
         this.subinterfaces = new jq_Class[0];
-        this.members = new HashMap();
+        // synchronized as members may be created by concurrent CFG construction
+        this.members = Collections.synchronizedMap(new HashMap());
     }
     // ONLY TO BE CALLED BY ClassLoader!!!
     public static jq_Class newClass(ClassLoader classLoader, Utf8 desc) {
@@ -875,6 +889,17 @@ public final class jq_Class extends jq_Reference implements jq_ClassFileConstant
                 } catch (NoSuchFieldError x) {
                     throw new NoSuchFieldError("In class "+this+": "+x.getMessage());
                 }
+                // most classes referenced by this one are loaded soon after
+                // it, so read their class files ahead if enabled
+                if (class_loader == PrimordialClassLoader.loader) {
+                    Classpath cp = PrimordialClassLoader.loader.getClasspath();
+                    for (char i = 1; i < constant_pool_count; ++i) {
+                        if (const_pool.getTag(i) != CONSTANT_ResolvedClass) continue;
+                        jq_Type t = const_pool.getAsType(i);
+                        if (t instanceof jq_Class && !t.isLoaded())
+                            cp.prefetch(t.getDesc());
+                    }
+                }
                 
                 access_flags = (char)in.readUnsignedShort();
                 state = STATE_LOADING2;
@@ -229,7 +229,7 @@ public class jq_ConstantPool implements jq_ClassFileConstants, Serializable {
         if (TRACE) Debug.writeln("Resolved class "+constant_pool[i]+", cp idx "+(int)i);
     }
 
-    public final void set(char index, Object o, byte tag) {
+    public final synchronized void set(char index, Object o, byte tag) {
         constant_pool[index] = o;
         constant_pool_tags[index] = tag;
     }
@@ -280,14 +280,14 @@ public class jq_ConstantPool implements jq_ClassFileConstants, Serializable {
         }
         return o;
     }
-    public final jq_Member getAsMember(char index) {
+    public final synchronized jq_Member getAsMember(char index) {
         Assert._assert(constant_pool_tags[index] == CONSTANT_ResolvedSFieldRef ||
                   constant_pool_tags[index] == CONSTANT_ResolvedIFieldRef ||
                   constant_pool_tags[index] == CONSTANT_ResolvedSMethodRef ||
                   constant_pool_tags[index] == CONSTANT_ResolvedIMethodRef);
         return (jq_Member)constant_pool[index];
     }
-    public final jq_StaticField getAsStaticField(char index) {
+    public final synchronized jq_StaticField getAsStaticField(char index) {
         if (constant_pool_tags[index] == CONSTANT_ResolvedSFieldRef)
             return (jq_StaticField)constant_pool[index];
         if (constant_pool_tags[index] != CONSTANT_FieldRef)
@@ -321,7 +321,7 @@ public class jq_ConstantPool implements jq_ClassFileConstants, Serializable {
         }
         return f;
     }
-    public final jq_InstanceField getAsInstanceField(char index) {
+    public final synchronized jq_InstanceField getAsInstanceField(char index) {
         if (constant_pool_tags[index] == CONSTANT_ResolvedIFieldRef)
             return (jq_InstanceField)constant_pool[index];
         if (constant_pool_tags[index] != CONSTANT_FieldRef)
@@ -355,7 +355,7 @@ public class jq_ConstantPool implements jq_ClassFileConstants, Serializable {
         }
         return f;
     }
-    public final jq_StaticMethod getAsStaticMethod(char index) {
+    public final synchronized jq_StaticMethod getAsStaticMethod(char index) {
         if (constant_pool_tags[index] == CONSTANT_ResolvedSMethodRef)
             return (jq_StaticMethod)constant_pool[index];
         if (constant_pool_tags[index] != CONSTANT_MethodRef)
@@ -389,7 +389,7 @@ public class jq_ConstantPool implements jq_ClassFileConstants, Serializable {
         }
         return f;
     }
-    public final jq_InstanceMethod getAsInstanceMethod(char index) {
+    public final synchronized jq_InstanceMethod getAsInstanceMethod(char index) {
         if (constant_pool_tags[index] == CONSTANT_ResolvedIMethodRef)
             return (jq_InstanceMethod)constant_pool[index];
         if (constant_pool_tags[index] != CONSTANT_MethodRef &&
@@ -38,6 +38,7 @@ import joeq.Compiler.Quad.SSA.EnterSSA;
 import joeq.Compiler.Quad.RegisterFactory.Register;
 import joeq.Compiler.Quad.Operand;
 import joeq.Compiler.Quad.ICFGBuilder;
+import joeq.Compiler.Quad.ICFGCache;
 
 /*
  * @author  John Whaley <jwhaley@alum.mit.edu>
@@ -51,6 +52,7 @@ public abstract class jq_Method extends jq_Member {
 	private static boolean verbose;
 	private static String[] scopeExcludedPrefixes = new String[0];
 	private static Map<String, String> nativeCFGBuildersMap = Collections.EMPTY_MAP;
+	private static ICFGCache cfgCache;
 
 	public static void doSSA(boolean hasPhi, boolean noMove) {
 		if (hasPhi) {
@@ -66,6 +68,9 @@ public abstract class jq_Method extends jq_Member {
 	public static void exclude(String[] a) {
 		scopeExcludedPrefixes = a;
 	}
+	public static void setCFGCache(ICFGCache cache) {
+		cfgCache = cache;
+	}
 
     // Available after loading
     protected char max_stack;
@@ -523,8 +528,11 @@ public abstract class jq_Method extends jq_Member {
 	}
 
 	private ControlFlowGraph cfg;
+	// set only after cfg is fully built (including SSA conversion); a volatile
+	// write so that threads reading cfg without this method's lock see it whole
+	private volatile boolean hasCFG;
 	private Map<Quad, Integer> bcMap;
-	private boolean hasBCmap;
+	private volatile boolean hasBCmap;
 
 	public boolean isExcluded() {
 		String cName = getDeclaringClass().getName();
@@ -535,10 +543,24 @@ public abstract class jq_Method extends jq_Member {
 		return false;
 	}
 
+	/**
+	 * Provides the CFG of this method, building it on first request.
+	 * Safe to call concurrently for the same or for different methods.
+	 */
 	public ControlFlowGraph getCFG() {
         assert (!isAbstract());
-        if (cfg != null)
+        if (hasCFG)
 			return cfg;
+		synchronized (this) {
+			if (!hasCFG) {
+				buildCFG();
+				hasCFG = true;
+			}
+		}
+		return cfg;
+	}
+
+	private void buildCFG() {
 		String sign = getName().toString() + ":" + getDesc().toString() +
 			"@" + getDeclaringClass().getName();
 		String clsName = nativeCFGBuildersMap.get(sign);
@@ -574,6 +596,15 @@ public abstract class jq_Method extends jq_Member {
 				System.out.println("WARN: Regarding CFG of method " + this + " as no-op.");
 			buildEmptyCFG();
 		} else {
+			if (cfgCache != null) {
+				ICFGCache.Entry entry = cfgCache.load(this);
+				if (entry != null) {
+					cfg = entry.cfg;
+					bcMap = entry.bcMap;
+					hasBCmap = true;
+					return;
+				}
+			}
 			try {
 				cfg = CodeCache.getCode(this);
 				switch (ssaKind) {
@@ -599,6 +630,8 @@ public abstract class jq_Method extends jq_Member {
 					break;
 				}
 				assert (cfg != null);
+				if (cfgCache != null)
+					cfgCache.store(this, cfg, getBCMap());
 			} catch (Throwable ex) {
 				System.err.println("WARN: Failed to get CFG of method " +
 					this + "; setting it to no-op.  Error follows.");
@@ -606,7 +639,6 @@ public abstract class jq_Method extends jq_Member {
 				buildEmptyCFG();
 			}
 		}
-        return cfg;
 	}
 
 	private void removePhis() {
@@ -719,14 +751,18 @@ public abstract class jq_Method extends jq_Member {
 	public Map<Quad, Integer> getBCMap() {
 		if (hasBCmap)
 			return bcMap;
-		Map<Quad, Integer> map;
-		if (getBytecode() == null)
-			map = null;
-		else
-			map = CodeCache.getBCMap(this);
-		bcMap = map;
-		hasBCmap = true;
-		return map;
+		synchronized (this) {
+			if (hasBCmap)
+				return bcMap;
+			Map<Quad, Integer> map;
+			if (getBytecode() == null)
+				map = null;
+			else
+				map = CodeCache.getBCMap(this);
+			bcMap = map;
+			hasBCmap = true;
+			return map;
+		}
 	}
 
 	public Quad getQuad(int bci) {
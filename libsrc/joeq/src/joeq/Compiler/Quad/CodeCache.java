@@ -21,10 +21,12 @@ public class CodeCache {
     protected Map map = new HashMap();
     protected Map bcmap = new HashMap();
 
-	public void setMap(jq_Method m, ControlFlowGraph cfg) {
+	// Both maps are guarded by this cache's lock; quads are generated outside
+	// the lock so that CFGs of different methods can be built concurrently.
+	public synchronized void setMap(jq_Method m, ControlFlowGraph cfg) {
 		map.put(m, cfg);
 	}
-	public void setBCMap(jq_Method m, Map bcm) {
+	public synchronized void setBCMap(jq_Method m, Map bcm) {
 		bcmap.put(m, bcm);
 	}
 
@@ -53,16 +55,23 @@ public class CodeCache {
     }
     
     protected ControlFlowGraph _get(jq_Method m) {
-		if (map.containsKey(m))
-			return (ControlFlowGraph) map.get(m);
+		synchronized (this) {
+			if (map.containsKey(m))
+				return (ControlFlowGraph) map.get(m);
+		}
 		// if (m.getBytecode() == null)
 		//	return null;
 		if (TRACE) System.out.println("Generating quads for "+m);
 		BytecodeToQuad b2q = new BytecodeToQuad(m);
 		ControlFlowGraph cfg = b2q.convert();
-		map.put(m, cfg);
-		if (AlwaysMap)
-			bcmap.put(m, b2q.getQuadToBytecodeMap());
+		synchronized (this) {
+			// another thread may have generated quads for m meanwhile
+			if (map.containsKey(m))
+				return (ControlFlowGraph) map.get(m);
+			map.put(m, cfg);
+			if (AlwaysMap)
+				bcmap.put(m, b2q.getQuadToBytecodeMap());
+		}
 		for (java.util.Iterator i = passes.iterator(); i.hasNext(); ) {
 			ControlFlowGraphVisitor v = (ControlFlowGraphVisitor)i.next();
 			v.visitCFG(cfg);
@@ -71,23 +80,29 @@ public class CodeCache {
     }
 
     protected java.util.Map _getmap(jq_Method m) {
-		if (bcmap.containsKey(m))
-			return (Map) bcmap.get(m);
+		synchronized (this) {
+			if (bcmap.containsKey(m))
+				return (Map) bcmap.get(m);
+		}
 		if (TRACE) System.out.println("Generating quads for "+m);
 		BytecodeToQuad b2q = new BytecodeToQuad(m);
 		ControlFlowGraph cfg = b2q.convert();
-		map.put(m, cfg);
 		Map result = b2q.getQuadToBytecodeMap();
-		bcmap.put(m, result);
+		synchronized (this) {
+			if (bcmap.containsKey(m))
+				return (Map) bcmap.get(m);
+			map.put(m, cfg);
+			bcmap.put(m, result);
+		}
         return result;
     }
     
-    protected void _delete(jq_Method m) {
+    protected synchronized void _delete(jq_Method m) {
         map.remove(m);
         bcmap.remove(m);
     }
     
-    public void invalidateCache() {
+    public synchronized void invalidateCache() {
         map.clear();
         bcmap.clear();
     }
@@ -100,7 +115,7 @@ public class CodeCache {
         cache._invalidateBCMap(m);        
     }
 
-    private void _invalidateBCMap(jq_Method m) {
+    private synchronized void _invalidateBCMap(jq_Method m) {
         if(bcmap.get(m) != null) {
             // System.err.println("Replacing " + m);
         }
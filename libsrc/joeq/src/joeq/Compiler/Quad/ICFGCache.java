@@ -0,0 +1,32 @@
+package joeq.Compiler.Quad;
+
+import java.util.Map;
+
+import joeq.Class.jq_Method;
+
+/**
+ * A store of CFGs that outlives a single run, consulted by
+ * {@link joeq.Class.jq_Method#getCFG()} before building a method's CFG
+ * from its bytecode.
+ */
+public interface ICFGCache {
+	/**
+	 * Provides the CFG of the given method, along with its quad-to-bytecode
+	 * map, stored by an earlier run, or null if there is no valid entry.
+	 */
+	public Entry load(jq_Method m);
+	/**
+	 * Stores the given CFG of the given method, built from its bytecode
+	 * (including any SSA conversion), along with its quad-to-bytecode map.
+	 */
+	public void store(jq_Method m, ControlFlowGraph cfg, Map<Quad, Integer> bcMap);
+
+	public static class Entry {
+		public final ControlFlowGraph cfg;
+		public final Map<Quad, Integer> bcMap;
+		public Entry(ControlFlowGraph cfg, Map<Quad, Integer> bcMap) {
+			this.cfg = cfg;
+			this.bcMap = bcMap;
+		}
+	}
+}
@@ -43,17 +43,19 @@ public class Utf8 implements jq_ClassFileConstants, Serializable {
         return get(toUtf8(s));
     }
 
-    public static Utf8 get(byte[] b) {
+    // The interning table is guarded by the Utf8 class lock so that class
+    // files can be parsed by concurrent CFG builders.
+    public static synchronized Utf8 get(byte[] b) {
         int id = getID(b);
         return table[id];
     }
     
-    public static Utf8 get(byte[] b, int startIndex, int endIndex) {
+    public static synchronized Utf8 get(byte[] b, int startIndex, int endIndex) {
         int id = getID(b, startIndex, endIndex);
         return table[id];
     }
     
-    public static int getID(byte[] b) {
+    public static synchronized int getID(byte[] b) {
         int hash = hashCode(b);
         int chain_index = Math.abs(hash) % chains.length;
         int[] chain = chains[chain_index];
@@ -82,7 +84,7 @@ public class Utf8 implements jq_ClassFileConstants, Serializable {
         // todo: rehash when the table gets too full...
     }
     
-    public static int getID(byte[] b, int startIndex, int endIndex) {
+    public static synchronized int getID(byte[] b, int startIndex, int endIndex) {
         int hash = hashCode(b, startIndex, endIndex);
         int chain_index = Math.abs(hash) % chains.length;
         int[] chain = chains[chain_index];
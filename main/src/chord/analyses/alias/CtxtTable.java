@@ -0,0 +1,149 @@
+package chord.analyses.alias;
+
+import java.util.Arrays;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+import joeq.Compiler.Quad.Quad;
+import chord.util.IndexMap;
+
+/**
+ * Table of abstract contexts, each numbered by a non-negative int.
+ * <p>
+ * The contexts form a trie: context <tt>[e1,...,en]</tt> is the child of context <tt>[e2,...,en]</tt> labeled
+ * <tt>e1</tt>, and the root is the context <tt>epsilon</tt>, numbered {@link #EPSILON}.  Extending a context with
+ * a more significant statement is thus a single hash lookup, and a context takes a few ints whatever its length.
+ * Contexts are materialized as {@link chord.analyses.alias.Ctxt} objects only on demand.
+ */
+public class CtxtTable {
+    public static final int EPSILON = 0;
+
+    // statements occurring in contexts
+    private final IndexMap<Quad> elems = new IndexMap<Quad>();
+    // (context, statement) => child of the context labeled by the statement
+    private final TLongIntHashMap children = new TLongIntHashMap();
+    // indexed by context
+    private int[] parent = new int[1024];
+    private int[] elem = new int[1024];
+    private int[] depth = new int[1024];
+    // context with its least significant statement dropped, plus one; 0 if not yet computed
+    private int[] shortened = new int[1024];
+    private int size = 1;
+
+    /**
+     * Provides the number of contexts in this table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Provides the context <tt>[q,e1,...,en]</tt> for a given context <tt>[e1,...,en]</tt>, adding it if needed.
+     */
+    public int prepend(int ctxt, Quad q) {
+        int e = elems.getOrAdd(q);
+        long key = ((long) ctxt << 32) | e;
+        int c = children.get(key);
+        if (c != 0)
+            return c;
+        c = size++;
+        if (c == parent.length) {
+            int n = c * 2;
+            parent = Arrays.copyOf(parent, n);
+            elem = Arrays.copyOf(elem, n);
+            depth = Arrays.copyOf(depth, n);
+            shortened = Arrays.copyOf(shortened, n);
+        }
+        parent[c] = ctxt;
+        elem[c] = e;
+        depth[c] = depth[ctxt] + 1;
+        children.put(key, c);
+        return c;
+    }
+
+    /**
+     * Provides the context <tt>[q,e1,...,ej]</tt> where <tt>[e1,...,en]</tt> is the given context and
+     * <tt>j = min(k-1,n)</tt>, or <tt>epsilon</tt> if <tt>k</tt> is 0.
+     */
+    public int combine(int k, Quad q, int ctxt) {
+        if (k <= 0)
+            return EPSILON;
+        return prepend(truncate(ctxt, k - 1), q);
+    }
+
+    /**
+     * Provides the given context truncated to its <tt>len</tt> most significant statements.
+     */
+    public int truncate(int ctxt, int len) {
+        while (depth[ctxt] > len)
+            ctxt = shorten(ctxt);
+        return ctxt;
+    }
+
+    // drops the least significant statement
+    private int shorten(int ctxt) {
+        int s = shortened[ctxt];
+        if (s != 0)
+            return s - 1;
+        if (depth[ctxt] == 1)
+            s = EPSILON;
+        else
+            s = prepend(shorten(parent[ctxt]), elems.get(elem[ctxt]));
+        shortened[ctxt] = s + 1;
+        return s;
+    }
+
+    /**
+     * Provides the context with the given statements, in decreasing order of significance, if it is in this table,
+     * and -1 otherwise.
+     */
+    public int indexOf(Quad[] ctxtElems) {
+        int c = EPSILON;
+        for (int i = ctxtElems.length - 1; i >= 0; i--) {
+            int e = elems.indexOf(ctxtElems[i]);
+            if (e == -1)
+                return -1;
+            c = children.get(((long) c << 32) | e);
+            if (c == 0)
+                return -1;
+        }
+        return c;
+    }
+
+    /**
+     * Provides the context with the given statements, in decreasing order of significance, adding it if needed.
+     */
+    public int getOrAdd(Quad[] ctxtElems) {
+        int c = EPSILON;
+        for (int i = ctxtElems.length - 1; i >= 0; i--)
+            c = prepend(c, ctxtElems[i]);
+        return c;
+    }
+
+    public int length(int ctxt) {
+        return depth[ctxt];
+    }
+
+    /**
+     * Provides the most significant statement of a given context other than <tt>epsilon</tt>.
+     */
+    public Quad head(int ctxt) {
+        return elems.get(elem[ctxt]);
+    }
+
+    /**
+     * Provides the given context with its most significant statement dropped.
+     */
+    public int tail(int ctxt) {
+        return parent[ctxt];
+    }
+
+    public Quad[] getElems(int ctxt) {
+        Quad[] ret = new Quad[depth[ctxt]];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = elems.get(elem[ctxt]);
+            ctxt = parent[ctxt];
+        }
+        return ret;
+    }
+}
@@ -6,6 +6,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -15,6 +16,7 @@ import java.util.Random;
 import java.util.Set;
 
 import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.set.hash.TIntHashSet;
 
 import joeq.Class.jq_ClassInitializer;
 import joeq.Class.jq_Type;
@@ -44,7 +46,6 @@ import chord.project.Messages;
 import chord.project.OutDirUtils;
 import chord.project.analyses.JavaAnalysis;
 import chord.project.analyses.ProgramRel;
-import chord.util.ArraySet;
 import chord.util.graph.IGraph;
 import chord.util.graph.MutableGraph;
 
@@ -96,18 +97,17 @@ import chord.util.graph.MutableGraph;
        types = { DomC.class }
 )
 public class CtxtsAnalysis extends JavaAnalysis {
-    private static final Set<Ctxt> emptyCtxtSet = Collections.emptySet();
+    private static final int[] emptyCtxtSet = new int[0];
+    private static final int[] epsilonCtxtSet = new int[] { CtxtTable.EPSILON };
     private static final Set<jq_Method> emptyMethSet = Collections.emptySet();
-    private static final Quad[] emptyElems = new Quad[0];
 
     // includes all methods in domain
-    private Set<Ctxt>[] methToCtxts;
+    // each entry is a sorted array of contexts in the table of domC
+    private int[][] methToCtxts;
     
     private TIntArrayList[] methToClrSites;  // ctxt kind is KCFASEN
     private TIntArrayList[] methToRcvSites;  // ctxt kind is KOBJSEN
     private Set<jq_Method>[] methToClrMeths; // ctxt kind is CTXTCPY
-    
-    private Set<Ctxt> epsilonCtxtSet;
 
     public static final int CTXTINS = 0;  // abbr ci; must be 0
     public static final int KOBJSEN = 1;  // abbr co
@@ -133,6 +133,7 @@ public class CtxtsAnalysis extends JavaAnalysis {
     private DomI domI;
     private DomH domH;
     private DomC domC;
+    private CtxtTable ctxtTable;
 
     private ProgramRel relIM;
     private ProgramRel relVH;
@@ -294,11 +295,10 @@ public class CtxtsAnalysis extends JavaAnalysis {
         relIM.load();
         relVH.load();
 
-        Ctxt epsilon = domC.setCtxt(emptyElems);
-        epsilonCtxtSet = new ArraySet<Ctxt>(1);
-        epsilonCtxtSet.add(epsilon);
+        ctxtTable = domC.getTable();
+        domC.getOrAddCtxt(CtxtTable.EPSILON);
 
-        methToCtxts = new Set[numM];
+        methToCtxts = new int[numM][];
 
         methToClrSites = new TIntArrayList[numM];
         methToRcvSites = new TIntArrayList[numM];
@@ -315,24 +315,22 @@ public class CtxtsAnalysis extends JavaAnalysis {
             Quad invk = (Quad) domI.get(iIdx);
             jq_Method meth = invk.getMethod();
             int mIdx = domM.indexOf(meth);
-            Set<Ctxt> ctxts = methToCtxts[mIdx];
+            int[] ctxts = methToCtxts[mIdx];
             int k = kcfaValue[iIdx];
-            for (Ctxt oldCtxt : ctxts) {
-                Quad[] oldElems = oldCtxt.getElems();
-                Quad[] newElems = combine(k, invk, oldElems);
-                domC.setCtxt(newElems);
+            for (int oldCtxt : ctxts) {
+                int newCtxt = ctxtTable.combine(k, invk, oldCtxt);
+                domC.getOrAddCtxt(newCtxt);
             }
         }
         for (int hIdx = 1; hIdx < numA; hIdx++) {
             Quad inst = (Quad) domH.get(hIdx);
             jq_Method meth = inst.getMethod();
             int mIdx = domM.indexOf(meth);
-            Set<Ctxt> ctxts = methToCtxts[mIdx];
+            int[] ctxts = methToCtxts[mIdx];
             int k = kobjValue[hIdx];
-            for (Ctxt oldCtxt : ctxts) {
-                Quad[] oldElems = oldCtxt.getElems();
-                Quad[] newElems = combine(k, inst, oldElems);
-                domC.setCtxt(newElems);
+            for (int oldCtxt : ctxts) {
+                int newCtxt = ctxtTable.combine(k, inst, oldCtxt);
+                domC.getOrAddCtxt(newCtxt);
             }
         }
         domC.save();
@@ -344,14 +342,14 @@ public class CtxtsAnalysis extends JavaAnalysis {
         for (int iIdx = 0; iIdx < numI; iIdx++) {
             Quad invk = (Quad) domI.get(iIdx);
             jq_Method meth = invk.getMethod();
-            Set<Ctxt> ctxts = methToCtxts[domM.indexOf(meth)];
+            int[] ctxts = methToCtxts[domM.indexOf(meth)];
             int k = kcfaValue[iIdx];
-            for (Ctxt oldCtxt : ctxts) {
-                Quad[] oldElems = oldCtxt.getElems();
-                Quad[] newElems = combine(k, invk, oldElems);
-                Ctxt newCtxt = domC.setCtxt(newElems);
-                relCC.add(oldCtxt, newCtxt);
-                relCI.add(newCtxt, invk);
+            for (int oldCtxt : ctxts) {
+                int newCtxt = ctxtTable.combine(k, invk, oldCtxt);
+                int oldCIdx = domC.indexOfCtxt(oldCtxt);
+                int newCIdx = domC.indexOfCtxt(newCtxt);
+                relCC.add(oldCIdx, newCIdx);
+                relCI.add(newCIdx, iIdx);
             }
         }
         relCI.save();
@@ -363,14 +361,14 @@ public class CtxtsAnalysis extends JavaAnalysis {
             Quad inst = (Quad) domH.get(hIdx);
             jq_Method meth = inst.getMethod();
             int mIdx = domM.indexOf(meth);
-            Set<Ctxt> ctxts = methToCtxts[mIdx];
+            int[] ctxts = methToCtxts[mIdx];
             int k = kobjValue[hIdx];
-            for (Ctxt oldCtxt : ctxts) {
-                Quad[] oldElems = oldCtxt.getElems();
-                Quad[] newElems = combine(k, inst, oldElems);
-                Ctxt newCtxt = domC.setCtxt(newElems);
-                relCC.add(oldCtxt, newCtxt);
-                relCH.add(newCtxt, inst);
+            for (int oldCtxt : ctxts) {
+                int newCtxt = ctxtTable.combine(k, inst, oldCtxt);
+                int oldCIdx = domC.indexOfCtxt(oldCtxt);
+                int newCIdx = domC.indexOfCtxt(newCtxt);
+                relCC.add(oldCIdx, newCIdx);
+                relCH.add(newCIdx, hIdx);
             }
         }
         relCH.save();
@@ -539,19 +537,11 @@ public class CtxtsAnalysis extends JavaAnalysis {
                 changed = false;
                 for (jq_Method cle : scc) { // For each node (method) in SCC
                     int mIdx = domM.indexOf(cle);
-                    Set<Ctxt> newCtxts = getNewCtxts(mIdx);
+                    int[] newCtxts = getNewCtxts(mIdx);
                     if (!changed) {
-                        Set<Ctxt> oldCtxts = methToCtxts[mIdx];
-                        if (newCtxts.size() > oldCtxts.size())
+                        int[] oldCtxts = methToCtxts[mIdx];
+                        if (newCtxts.length > oldCtxts.length || !isSubset(newCtxts, oldCtxts))
                             changed = true;
-                        else {
-                            for (Ctxt ctxt : newCtxts) {
-                                if (!oldCtxts.contains(ctxt)) {
-                                    changed = true;
-                                    break;
-                                }
-                            }
-                        }
                     }
                     methToCtxts[mIdx] = newCtxts;
                 }
@@ -571,18 +561,21 @@ public class CtxtsAnalysis extends JavaAnalysis {
         return view.getAry1ValTuples();
     }
 
-    private Quad[] combine(int k, Quad inst, Quad[] elems) {
-        int oldLen = elems.length;
-        int newLen = Math.min(k - 1, oldLen) + 1;
-        Quad[] newElems = new Quad[newLen];
-        if (newLen > 0) newElems[0] = inst;
-        if (newLen > 1)
-            System.arraycopy(elems, 0, newElems, 1, newLen - 1);
-        return newElems;
+    // whether sorted array a is a subset of sorted array b
+    private static boolean isSubset(int[] a, int[] b) {
+        int j = 0;
+        for (int x : a) {
+            while (j < b.length && b[j] < x)
+                j++;
+            if (j == b.length || b[j] != x)
+                return false;
+            j++;
+        }
+        return true;
     }
 
-    private Set<Ctxt> getNewCtxts(int cleIdx) { // Update contexts for this method (callee)
-        final Set<Ctxt> newCtxts = new HashSet<Ctxt>();
+    private int[] getNewCtxts(int cleIdx) { // Update contexts for this method (callee)
+        final TIntHashSet newCtxts = new TIntHashSet();
         int kind = methKind[cleIdx];
         switch (kind) {
         case KCFASEN:
@@ -594,12 +587,11 @@ public class CtxtsAnalysis extends JavaAnalysis {
                 Quad invk = ItoQ[iIdx];
                 int k = kcfaValue[iIdx];
                 int clrIdx = ItoM[iIdx];
-                Set<Ctxt> clrCtxts = methToCtxts[clrIdx]; // method of caller
-                for (Ctxt oldCtxt : clrCtxts) {
-                    Quad[] oldElems = oldCtxt.getElems();
-                    Quad[] newElems = combine(k, invk, oldElems); // Append
-                    Ctxt newCtxt = domC.setCtxt(newElems);
-                    newCtxts.add(newCtxt);
+                int[] clrCtxts = methToCtxts[clrIdx]; // method of caller
+                for (int oldCtxt : clrCtxts) {
+                    int newCtxt = ctxtTable.combine(k, invk, oldCtxt); // Append
+                    if (newCtxts.add(newCtxt))
+                        domC.getOrAddCtxt(newCtxt);
                 }
             }
             break;
@@ -613,12 +605,11 @@ public class CtxtsAnalysis extends JavaAnalysis {
                 Quad rcv = HtoQ[hIdx];
                 int k = kobjValue[hIdx];
                 int clrIdx = HtoM[hIdx];
-                Set<Ctxt> rcvCtxts = methToCtxts[clrIdx];
-                for (Ctxt oldCtxt : rcvCtxts) {
-                    Quad[] oldElems = oldCtxt.getElems();
-                    Quad[] newElems = combine(k, rcv, oldElems);
-                    Ctxt newCtxt = domC.setCtxt(newElems);
-                    newCtxts.add(newCtxt);
+                int[] rcvCtxts = methToCtxts[clrIdx];
+                for (int oldCtxt : rcvCtxts) {
+                    int newCtxt = ctxtTable.combine(k, rcv, oldCtxt);
+                    if (newCtxts.add(newCtxt))
+                        domC.getOrAddCtxt(newCtxt);
                 }
             }
             break;
@@ -628,7 +619,7 @@ public class CtxtsAnalysis extends JavaAnalysis {
             Set<jq_Method> clrs = methToClrMeths[cleIdx];
             for (jq_Method clr : clrs) {
                 int clrIdx = domM.indexOf(clr);
-                Set<Ctxt> clrCtxts = methToCtxts[clrIdx];
+                int[] clrCtxts = methToCtxts[clrIdx];
                 newCtxts.addAll(clrCtxts);
             }
             break;
@@ -636,7 +627,9 @@ public class CtxtsAnalysis extends JavaAnalysis {
         default:
             assert false;
         }
-        return newCtxts;
+        int[] ret = newCtxts.toArray();
+        Arrays.sort(ret);
+        return ret;
     }
 
     public static String getCspaKind() {
@@ -1,5 +1,10 @@
 package chord.analyses.alias;
 
+import java.util.Arrays;
+import java.util.Iterator;
+
+import gnu.trove.list.array.TIntArrayList;
+
 import joeq.Compiler.Quad.Operator;
 import joeq.Compiler.Quad.Quad;
 import joeq.Compiler.Quad.Operator.Invoke;
@@ -16,6 +21,10 @@ import chord.analyses.invk.DomI;
  * <p>
  * The 0th element in this domain denotes the distinguished abstract context <tt>epsilon</tt>
  * (see {@link chord.analyses.alias.Ctxt}).
+ * <p>
+ * The contexts are kept in a {@link chord.analyses.alias.CtxtTable} and each element is a context of that
+ * table; the corresponding {@link chord.analyses.alias.Ctxt} object is only created when {@link #get(int)}
+ * is called on the element, so that analyses computing contexts need not create one per context.
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
@@ -23,15 +32,142 @@ public class DomC extends ProgramDom<Ctxt> {
     private DomH domH;
     private DomI domI;
 
+    private CtxtTable table = new CtxtTable();
+    // index in this domain => context in table
+    private TIntArrayList idxToCtxt = new TIntArrayList();
+    // context in table => index in this domain plus one, or 0 if it is not in this domain
+    private int[] ctxtToIdx = new int[1024];
+    // index in this domain => materialized context, or null if not yet materialized
+    private Ctxt[] idxToVal = new Ctxt[1024];
+
+    /**
+     * Provides the table of the contexts in this domain.
+     */
+    public CtxtTable getTable() {
+        return table;
+    }
+
+    /**
+     * Adds a given context of the table of this domain, unless it already exists.
+     * 
+     * @param ctxt A context in the table of this domain.
+     * 
+     * @return The index of the given context in this domain.
+     */
+    public int getOrAddCtxt(int ctxt) {
+        if (ctxt < ctxtToIdx.length) {
+            int idx = ctxtToIdx[ctxt];
+            if (idx != 0)
+                return idx - 1;
+        } else
+            ctxtToIdx = Arrays.copyOf(ctxtToIdx, Math.max(ctxtToIdx.length * 2, ctxt + 1));
+        int idx = idxToCtxt.size();
+        idxToCtxt.add(ctxt);
+        ctxtToIdx[ctxt] = idx + 1;
+        return idx;
+    }
+
+    /**
+     * Provides the index of a given context of the table of this domain, if it is in this domain, and -1 otherwise.
+     */
+    public int indexOfCtxt(int ctxt) {
+        if (ctxt < 0 || ctxt >= ctxtToIdx.length)
+            return -1;
+        return ctxtToIdx[ctxt] - 1;
+    }
+
+    /**
+     * Provides the context in the table of this domain of the element at a given index.
+     */
+    public int getCtxt(int idx) {
+        return idxToCtxt.get(idx);
+    }
+
     public Ctxt setCtxt(Quad[] elems) {
-        Ctxt cVal = new Ctxt(elems);
-        int cIdx = indexOf(cVal);
-        if (cIdx != -1)
-            return (Ctxt) get(cIdx);
-        getOrAdd(cVal);
+        return get(getOrAddCtxt(table.getOrAdd(elems)));
+    }
+
+    @Override
+    public int size() {
+        return idxToCtxt.size();
+    }
+
+    @Override
+    public Ctxt get(int idx) {
+        int n = idxToCtxt.size();
+        if (idx < 0 || idx >= n)
+            throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + n);
+        if (idx >= idxToVal.length)
+            idxToVal = Arrays.copyOf(idxToVal, Math.max(idxToVal.length * 2, n));
+        Ctxt cVal = idxToVal[idx];
+        if (cVal == null) {
+            cVal = new Ctxt(table.getElems(idxToCtxt.get(idx)));
+            idxToVal[idx] = cVal;
+        }
         return cVal;
     }
 
+    @Override
+    public int indexOf(Object val) {
+        if (!(val instanceof Ctxt))
+            return -1;
+        int ctxt = table.indexOf(((Ctxt) val).getElems());
+        return ctxt == -1 ? -1 : indexOfCtxt(ctxt);
+    }
+
+    @Override
+    public boolean contains(Object val) {
+        return indexOf(val) != -1;
+    }
+
+    @Override
+    public int getOrAdd(Ctxt val) {
+        return getOrAddCtxt(table.getOrAdd(val.getElems()));
+    }
+
+    @Override
+    public boolean add(Ctxt val) {
+        int n = idxToCtxt.size();
+        return getOrAdd(val) == n;
+    }
+
+    @Override
+    public void clear() {
+        table = new CtxtTable();
+        idxToCtxt = new TIntArrayList();
+        ctxtToIdx = new int[1024];
+        idxToVal = new Ctxt[1024];
+    }
+
+    @Override
+    public Iterator<Ctxt> iterator() {
+        return new Iterator<Ctxt>() {
+            int cursor = 0;
+            public boolean hasNext() {
+                return cursor != size();
+            }
+            public Ctxt next() {
+                return get(cursor++);
+            }
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    // same as Ctxt.toString() without materializing the context
+    @Override
+    public String toUniqueString(int idx) {
+        StringBuilder buf = new StringBuilder("[");
+        for (int c = idxToCtxt.get(idx); c != CtxtTable.EPSILON; c = table.tail(c)) {
+            Quad q = table.head(c);
+            buf.append(q == null ? "null" : q.toByteLocStr());
+            if (table.length(c) > 1)
+                buf.append(",");
+        }
+        return buf.append("]").toString();
+    }
+
     @Override
     public String toXMLAttrsString(Ctxt cVal) {
         if (domH == null)
@@ -1,30 +1,33 @@
 package chord.analyses.escape.hybrid.full;
 
-import java.util.Arrays;
-
-import chord.util.ArraySet;
+import chord.project.analyses.rhs.Interner;
 
 /**
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
 public class DstNode {
-    public final Obj[] env;
-    public final ArraySet<FldObj> heap;
+    private static final Interner<DstNode> nodes = new Interner<DstNode>();
+    public final Env env;
+    public final Heap heap;
     public final boolean isKill;
     public final boolean isRetn;
-    public DstNode(Obj[] env, ArraySet<FldObj> heap, boolean isKill, boolean isRetn) {
+    private final int hash;
+    public DstNode(Env env, Heap heap, boolean isKill, boolean isRetn) {
         this.env = env;
         this.heap = heap;
         this.isKill = isKill;
         this.isRetn = isRetn;
+        hash = env.hashCode();
+    }
+    /**
+     * Provides the canonical node with the given contents.
+     */
+    public static DstNode get(Env env, Heap heap, boolean isKill, boolean isRetn) {
+        return nodes.intern(new DstNode(env.intern(), heap.intern(), isKill, isRetn));
     }
     public int hashCode() {
-        int i = 5381;
-        for (Obj pts : env) {
-            i = ((i << 5) + i) + pts.hashCode();
-        }
-        return i;
+        return hash;
     }
     public boolean equals(Object o) {
         if (o == this)
@@ -32,7 +35,7 @@ public class DstNode {
         if (!(o instanceof DstNode))
             return false;
         DstNode that = (DstNode) o;
-        return Arrays.equals(this.env, that.env)&&heap.equals(that.heap) && isKill == that.isKill 
+        return env.equals(that.env) && heap.equals(that.heap) && isKill == that.isKill 
                 && isRetn == that.isRetn;
     }
     public String toString() {
@@ -41,4 +44,3 @@ public class DstNode {
              "; k@d=" + isKill + "; r@d: " + isRetn;
     }
 }
-
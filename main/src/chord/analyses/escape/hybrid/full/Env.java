@@ -0,0 +1,158 @@
+package chord.analyses.escape.hybrid.full;
+
+import java.util.Arrays;
+
+import chord.project.analyses.rhs.Interner;
+
+/**
+ * An abstract environment: the abstract object pointed to by each local
+ * variable of a method.
+ * <p>
+ * Each abstract object is packed into 2 bits, namely its ordinal in
+ * {@link Obj}, whose low bit is set iff it includes escaping objects and
+ * whose high bit is set iff it includes local objects.  The join of two
+ * environments is then their word-wise OR, and an environment is subsumed
+ * by another iff it has no bit that the other does not have.
+ * <p>
+ * Environments are immutable.
+ */
+public final class Env {
+    private static final Interner<Env> envs = new Interner<Env>();
+    private static final Obj[] objs = Obj.values();
+    private static final long ESC_BITS = 0x5555555555555555L;
+    private static final long LOC_BITS = 0xAAAAAAAAAAAAAAAAL;
+
+    private final int size;
+    private final long[] bits;
+    private final int hash;
+
+    private Env(int size, long[] bits) {
+        this.size = size;
+        this.bits = bits;
+        this.hash = 31 * Arrays.hashCode(bits) + size;
+    }
+
+    /**
+     * Creates the environment in which the i-th variable points to the
+     * i-th given abstract object.
+     */
+    public Env(Obj[] env) {
+        this(env.length, pack(env));
+    }
+
+    private static long[] pack(Obj[] env) {
+        int n = env.length;
+        long[] bits = new long[(n + 31) >> 5];
+        for (int i = 0; i < n; i++)
+            bits[i >> 5] |= (long) env[i].ordinal() << ((i & 31) << 1);
+        return bits;
+    }
+
+    /**
+     * Provides the canonical instance of this environment.
+     */
+    public Env intern() {
+        return envs.intern(this);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Obj get(int i) {
+        assert (i < size);
+        return objs[(int) (bits[i >> 5] >>> ((i & 31) << 1)) & 3];
+    }
+
+    /**
+     * Provides the environment that is the same as this one except that
+     * the i-th variable points to the given abstract object.
+     */
+    public Env set(int i, Obj o) {
+        assert (i < size);
+        int s = (i & 31) << 1;
+        long w = bits[i >> 5];
+        long w2 = (w & ~(3L << s)) | ((long) o.ordinal() << s);
+        if (w2 == w)
+            return this;
+        long[] bits2 = bits.clone();
+        bits2[i >> 5] = w2;
+        return new Env(size, bits2);
+    }
+
+    /**
+     * Provides the join of this environment and the given one, which is
+     * this environment itself if it subsumes the given one.
+     */
+    public Env join(Env that) {
+        assert (size == that.size);
+        long[] bits2 = null;
+        for (int w = 0; w < bits.length; w++) {
+            long x = bits[w] | that.bits[w];
+            if (x != bits[w]) {
+                if (bits2 == null)
+                    bits2 = bits.clone();
+                bits2[w] = x;
+            }
+        }
+        return (bits2 == null) ? this : new Env(size, bits2);
+    }
+
+    public boolean isSubsumedBy(Env that) {
+        assert (size == that.size);
+        for (int w = 0; w < bits.length; w++) {
+            if ((bits[w] & ~that.bits[w]) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Determines whether any variable may point to a local object, i.e.,
+     * points to ONLY_LOC or BOTH.
+     */
+    public boolean hasLoc() {
+        for (long w : bits) {
+            if ((w & LOC_BITS) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Provides the environment in which each variable that points to any
+     * object in this environment points to ONLY_ESC instead.
+     */
+    public Env reset() {
+        long[] bits2 = null;
+        for (int w = 0; w < bits.length; w++) {
+            long x = (bits[w] | (bits[w] >>> 1)) & ESC_BITS;
+            if (x != bits[w]) {
+                if (bits2 == null)
+                    bits2 = bits.clone();
+                bits2[w] = x;
+            }
+        }
+        return (bits2 == null) ? this : new Env(size, bits2);
+    }
+
+    public Obj[] toArray() {
+        Obj[] a = new Obj[size];
+        for (int i = 0; i < size; i++)
+            a[i] = get(i);
+        return a;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Env))
+            return false;
+        Env that = (Env) o;
+        return hash == that.hash && size == that.size && Arrays.equals(bits, that.bits);
+    }
+}
@@ -0,0 +1,208 @@
+package chord.analyses.escape.hybrid.full;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import joeq.Class.jq_Field;
+import chord.project.analyses.rhs.Interner;
+
+/**
+ * An abstract heap: the abstract object pointed to by each instance field
+ * (or, for field null, by the elements) of local objects.  A field that is
+ * not in the heap points to no object.
+ * <p>
+ * The heap is a sorted array of ints, one per field, each packing the
+ * index of the field (see {@link #getFieldIdx(jq_Field)}) with the 2-bit
+ * encoding of its abstract object (see {@link Env}).  Looking up a field is
+ * a binary search, and the join of two heaps, and checking whether one
+ * heap is subsumed by another, is a single merge of the two arrays.
+ * <p>
+ * Heaps are immutable.
+ */
+public final class Heap {
+    private static final Interner<Heap> heaps = new Interner<Heap>();
+    private static final Map<jq_Field, Integer> fieldToIdx = new HashMap<jq_Field, Integer>();
+    private static final List<jq_Field> idxToField = new ArrayList<jq_Field>();
+    private static final Obj[] objs = Obj.values();
+    public static final Heap EMPTY = new Heap(new int[0]).intern();
+
+    private final int[] facts;
+    private final int hash;
+
+    private Heap(int[] facts) {
+        this.facts = facts;
+        this.hash = Arrays.hashCode(facts);
+    }
+
+    /**
+     * Provides the index of the given field (possibly null) in the order in
+     * which fields are stored in heaps.
+     */
+    public static int getFieldIdx(jq_Field f) {
+        Integer idx = fieldToIdx.get(f);
+        if (idx == null) {
+            idx = idxToField.size();
+            fieldToIdx.put(f, idx);
+            idxToField.add(f);
+        }
+        return idx;
+    }
+
+    /**
+     * Provides the canonical instance of this heap.
+     */
+    public Heap intern() {
+        return heaps.intern(this);
+    }
+
+    public int size() {
+        return facts.length;
+    }
+
+    public boolean isEmpty() {
+        return facts.length == 0;
+    }
+
+    /**
+     * Provides the i-th field of this heap, along with its abstract object.
+     */
+    public FldObj getFldObj(int i) {
+        int x = facts[i];
+        Obj o = objs[x & 3];
+        return new FldObj(idxToField.get(x >>> 2), o == Obj.ONLY_LOC || o == Obj.BOTH,
+            o == Obj.ONLY_ESC || o == Obj.BOTH);
+    }
+
+    private int find(int fIdx) {
+        int lo = 0, hi = facts.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int midIdx = facts[mid] >>> 2;
+            if (midIdx < fIdx)
+                lo = mid + 1;
+            else if (midIdx > fIdx)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -(lo + 1);
+    }
+
+    /**
+     * Provides the abstract object pointed to by the given field, or EMTY if
+     * the field is not in this heap.
+     */
+    public Obj getObj(jq_Field f) {
+        int i = find(getFieldIdx(f));
+        return (i < 0) ? Obj.EMTY : objs[facts[i] & 3];
+    }
+
+    /**
+     * Provides the heap that is the same as this one except that the given
+     * field points to the given abstract object (other than EMTY).
+     */
+    public Heap put(jq_Field f, Obj o) {
+        assert (o != Obj.EMTY);
+        int fIdx = getFieldIdx(f);
+        int x = (fIdx << 2) | o.ordinal();
+        int i = find(fIdx);
+        if (i >= 0) {
+            if (facts[i] == x)
+                return this;
+            int[] facts2 = facts.clone();
+            facts2[i] = x;
+            return new Heap(facts2);
+        }
+        i = -(i + 1);
+        int n = facts.length;
+        int[] facts2 = new int[n + 1];
+        System.arraycopy(facts, 0, facts2, 0, i);
+        facts2[i] = x;
+        System.arraycopy(facts, i, facts2, i + 1, n - i);
+        return new Heap(facts2);
+    }
+
+    /**
+     * Provides the join of this heap and the given one: each field in either
+     * heap points to the join of the abstract objects it points to in the
+     * two heaps.  The join is this heap itself if it subsumes the given one.
+     */
+    public Heap join(Heap that) {
+        int[] a = facts, b = that.facts;
+        int n1 = a.length, n2 = b.length;
+        int[] c = new int[n1 + n2];
+        int i = 0, j = 0, k = 0;
+        boolean changed = false;
+        while (i < n1 && j < n2) {
+            int x = a[i], y = b[j];
+            int fx = x >>> 2, fy = y >>> 2;
+            if (fx < fy) {
+                c[k++] = x;
+                i++;
+            } else if (fx > fy) {
+                c[k++] = y;
+                j++;
+                changed = true;
+            } else {
+                int z = x | y;
+                if (z != x)
+                    changed = true;
+                c[k++] = z;
+                i++;
+                j++;
+            }
+        }
+        while (i < n1)
+            c[k++] = a[i++];
+        if (j < n2) {
+            changed = true;
+            while (j < n2)
+                c[k++] = b[j++];
+        }
+        if (!changed)
+            return this;
+        return new Heap((k == c.length) ? c : Arrays.copyOf(c, k));
+    }
+
+    /**
+     * Determines whether each field in this heap is in the given heap and
+     * points to an abstract object there that includes the one it points to
+     * here.
+     */
+    public boolean isSubsumedBy(Heap that) {
+        int[] a = facts, b = that.facts;
+        int n1 = a.length, n2 = b.length;
+        if (n1 > n2)
+            return false;
+        int j = 0;
+        for (int i = 0; i < n1; i++) {
+            int x = a[i];
+            int fx = x >>> 2;
+            while (j < n2 && (b[j] >>> 2) < fx)
+                j++;
+            if (j == n2)
+                return false;
+            int y = b[j];
+            if ((y >>> 2) != fx || (x & ~y) != 0)
+                return false;
+            j++;
+        }
+        return true;
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object o) {
+        if (o == this)
+            return true;
+        if (!(o instanceof Heap))
+            return false;
+        Heap that = (Heap) o;
+        return hash == that.hash && Arrays.equals(facts, that.facts);
+    }
+}
@@ -1,9 +1,11 @@
 package chord.analyses.escape.hybrid.full;
 
+// the order of the constants must not change: Env and Heap encode each
+// constant as its ordinal, whose low bit denotes escaping objects and whose
+// high bit denotes local objects
 public enum Obj {
     EMTY,
     ONLY_ESC,
     ONLY_LOC,
     BOTH
 }
-
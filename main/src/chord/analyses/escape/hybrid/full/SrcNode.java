@@ -1,31 +1,35 @@
 package chord.analyses.escape.hybrid.full;
 
-import java.util.Arrays;
-import chord.util.ArraySet;
+import chord.project.analyses.rhs.Interner;
 
 /**
  * 
  * @author Mayur Naik (mhn@cs.stanford.edu)
  */
 public class SrcNode {
-    public final Obj[] env;
-    public final ArraySet<FldObj> heap;
-    public SrcNode(Obj[] env, ArraySet<FldObj> heap) {
+    private static final Interner<SrcNode> nodes = new Interner<SrcNode>();
+    public final Env env;
+    public final Heap heap;
+    private final int hash;
+    public SrcNode(Env env, Heap heap) {
         this.env = env;
         this.heap = heap;
+        hash = env.hashCode();
+    }
+    /**
+     * Provides the canonical node with the given env and heap.
+     */
+    public static SrcNode get(Env env, Heap heap) {
+        return nodes.intern(new SrcNode(env.intern(), heap.intern()));
     }
     public int hashCode() {
-        int i = 5381;
-        for (Obj pts : env) {
-            i = ((i << 5) + i) + pts.hashCode();
-        }
-        return i;
+        return hash;
     }
     public boolean equals(Object o) {
         if (o == this) return true;
         if (!(o instanceof SrcNode)) return false;
         SrcNode that = (SrcNode) o;
-        return Arrays.equals(env, that.env) && heap.equals(that.heap);
+        return env.equals(that.env) && heap.equals(that.heap);
     }
     public String toString() {
         return "v@s=" + ThreadEscapeFullAnalysis.toString(env) +
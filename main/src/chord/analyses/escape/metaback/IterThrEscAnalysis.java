@@ -146,7 +146,7 @@ public class IterThrEscAnalysis extends ParallelAnalysis {
 		EscAbsFactory.setDomH(domH);
 		EscQueryFactory.setDomE(domE);
 		
-		if (getMode() == Mode.MASTER)
+		if (getMode() != Mode.WORKER)
 			initMaster();
 		else
 			initWorker();
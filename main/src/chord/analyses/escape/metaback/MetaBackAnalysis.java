@@ -414,7 +414,7 @@ public class MetaBackAnalysis {
 					int cl = vv.getContext();
 					if (0 == cl) {
 						int firstVar = iterAnalysis.methToFstVar(wpe.getInst().getMethod());
-						ret.addLiteral(vv, Value.objToValue(dNode.env[vv.getIdx() - firstVar]));
+						ret.addLiteral(vv, Value.objToValue(dNode.env.get(vv.getIdx() - firstVar)));
 					} else {
 						int stackSize = callStack.size();
 						IWrappedPE<Edge, Edge> uWPE = callStack.get(stackSize - cl);
@@ -423,7 +423,7 @@ public class MetaBackAnalysis {
 							isKill |= callStack.get(stackSize - i).getPE().dstNode.isKill;
 						DstNode uNode = uWPE.getPE().dstNode;
 						int firstVar = iterAnalysis.methToFstVar(uWPE.getInst().getMethod());
-						Value tv = Value.objToValue(uNode.env[vv.getIdx() - firstVar]);
+						Value tv = Value.objToValue(uNode.env.get(vv.getIdx() - firstVar));
 						if (isKill && Value.L().equals(tv))
 							ret.addLiteral(vv, Value.E());
 						else
@@ -447,7 +447,7 @@ public class MetaBackAnalysis {
 		}
 		Set<Integer> doneF = new HashSet<Integer>();
 		for (int i = 0; i < dNode.heap.size(); i++) {
-			FldObj f = dNode.heap.get(i);
+			FldObj f = dNode.heap.getFldObj(i);
 			int fIdx = iterAnalysis.getDomFIdx(f.f);
 			if (!relF.contains(fIdx))
 				continue;
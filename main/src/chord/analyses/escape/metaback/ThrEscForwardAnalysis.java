@@ -32,7 +32,8 @@ import chord.analyses.alias.ICICG;
 import chord.analyses.escape.ThrEscException;
 import chord.analyses.escape.hybrid.full.DstNode;
 import chord.analyses.escape.hybrid.full.Edge;
-import chord.analyses.escape.hybrid.full.FldObj;
+import chord.analyses.escape.hybrid.full.Env;
+import chord.analyses.escape.hybrid.full.Heap;
 import chord.analyses.escape.hybrid.full.Obj;
 import chord.analyses.escape.hybrid.full.SrcNode;
 import chord.program.Loc;
@@ -52,8 +53,8 @@ import chord.util.tuple.object.Pair;
  * 
  */
 public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
-	private static final ArraySet<FldObj> emptyHeap = new ArraySet<FldObj>(0);
-	private static final Obj[] emptyRetEnv = new Obj[] { Obj.EMTY };
+	private static final Heap emptyHeap = Heap.EMPTY;
+	private static final Env emptyRetEnv = new Env(new Obj[] { Obj.EMTY });
 	private static boolean useBOTH = false;
 	private static boolean optimizeSumms = false;
 
@@ -143,8 +144,9 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			// arg of start method of java.lang.Thread escapes
 			env[0] = Obj.ONLY_ESC;
 		}
-		SrcNode srcNode = new SrcNode(env, emptyHeap);
-		DstNode dstNode = new DstNode(env, emptyHeap, false, false);
+		Env env2 = new Env(env);
+		SrcNode srcNode = new SrcNode(env2, emptyHeap);
+		DstNode dstNode = new DstNode(env2, emptyHeap, false, false);
 		Edge pe = new Edge(srcNode, dstNode);
 		return pe;
 	}
@@ -171,7 +173,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			pe2 = getRootPathEdge(m2);
 		} else {
 			DstNode dstNode = pe.dstNode;
-			Obj[] dstEnv = dstNode.env;
+			Env dstEnv = dstNode.env;
 			ParamListOperand args = Invoke.getParamList(q);
 			int numArgs = args.length();
 			int numVars = iterAnalysis.methToNumVars(m2);
@@ -182,7 +184,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				RegisterOperand ao = args.get(i);
 				if (ao.getType().isReferenceType()) {
 					int aIdx = getIdx(ao);
-					Obj aPts = dstEnv[aIdx];
+					Obj aPts = dstEnv.get(aIdx);
 					if (aPts != Obj.EMTY && aPts != Obj.ONLY_ESC)
 						allEsc = false;
 					env[z++] = aPts;
@@ -190,9 +192,10 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			}
 			while (z < numVars)
 				env[z++] = Obj.EMTY;
-			ArraySet<FldObj> dstHeap2 = allEsc ? emptyHeap : dstNode.heap;
-			SrcNode srcNode2 = new SrcNode(env, dstHeap2);
-			DstNode dstNode2 = new DstNode(env, dstHeap2, false, false);
+			Heap dstHeap2 = allEsc ? emptyHeap : dstNode.heap;
+			Env env2 = new Env(env);
+			SrcNode srcNode2 = new SrcNode(env2, dstHeap2);
+			DstNode dstNode2 = new DstNode(env2, dstHeap2, false, false);
 			pe2 = new Edge(srcNode2, dstNode2);
 		}
 		return pe2;
@@ -210,10 +213,10 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 
 	private Edge getForkPathEdge(Quad q, Edge pe) {
 		DstNode dstNode = pe.dstNode;
-		Obj[] iEnv = dstNode.env;
+		Env iEnv = dstNode.env;
 		RegisterOperand ao = Invoke.getParam(q, 0);
 		int aIdx = getIdx(ao);
-		Obj aPts = iEnv[aIdx];
+		Obj aPts = iEnv.get(aIdx);
 		DstNode dstNode2;
 		if (aPts == Obj.ONLY_ESC || aPts == Obj.EMTY)
 			dstNode2 = dstNode;
@@ -254,8 +257,8 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 		}
 		DstNode clrDstNode = clrPE.dstNode;
 		SrcNode tgtSrcNode = tgtSE.srcNode;
-		Obj[] clrDstEnv = clrDstNode.env;
-		Obj[] tgtSrcEnv = tgtSrcNode.env;
+		Env clrDstEnv = clrDstNode.env;
+		Env tgtSrcEnv = tgtSrcNode.env;
 		ParamListOperand args = Invoke.getParamList(q);
 		int numArgs = args.length();
 		boolean allEsc = optimizeSumms ? true : false;
@@ -263,8 +266,8 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			RegisterOperand ao = args.get(i);
 			if (ao.getType().isReferenceType()) {
 				int aIdx = getIdx(ao);
-				Obj aPts = clrDstEnv[aIdx];
-				Obj fPts = tgtSrcEnv[fIdx];
+				Obj aPts = clrDstEnv.get(aIdx);
+				Obj fPts = tgtSrcEnv.get(fIdx);
 				if (aPts != fPts)
 					return null;
 				if (aPts != Obj.EMTY && aPts != Obj.ONLY_ESC)
@@ -272,46 +275,45 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				fIdx++;
 			}
 		}
-		ArraySet<FldObj> clrDstHeap = clrDstNode.heap;
-		ArraySet<FldObj> tgtSrcHeap = tgtSrcNode.heap;
+		Heap clrDstHeap = clrDstNode.heap;
+		Heap tgtSrcHeap = tgtSrcNode.heap;
 		DstNode tgtRetNode = tgtSE.dstNode;
-		ArraySet<FldObj> tgtRetHeap = tgtRetNode.heap;
-		ArraySet<FldObj> clrDstHeap2;
+		Heap tgtRetHeap = tgtRetNode.heap;
+		Heap clrDstHeap2;
 		if (allEsc) {
 			assert (tgtSrcHeap == emptyHeap);
-			clrDstHeap2 = new ArraySet<FldObj>(clrDstHeap);
-			clrDstHeap2.addAll(tgtRetHeap);
+			clrDstHeap2 = clrDstHeap.join(tgtRetHeap);
 		} else {
 			if (!clrDstHeap.equals(tgtSrcHeap))
 				return null;
 			clrDstHeap2 = tgtRetHeap;
 		}
-		int n = clrDstEnv.length;
+		int n = clrDstEnv.size();
 		Obj[] clrDstEnv2 = new Obj[n];
 		RegisterOperand ro = Invoke.getDest(q);
 		int rIdx = -1;
 		if (ro != null && ro.getType().isReferenceType()) {
 			rIdx = getIdx(ro);
-			clrDstEnv2[rIdx] = tgtRetNode.env[0];
+			clrDstEnv2[rIdx] = tgtRetNode.env.get(0);
 		}
 		boolean isKill = tgtRetNode.isKill;
 		if (allEsc || !isKill) {
 			for (int i = 0; i < n; i++) {
 				if (i != rIdx) {
-					clrDstEnv2[i] = clrDstEnv[i];
+					clrDstEnv2[i] = clrDstEnv.get(i);
 				}
 			}
 		} else {
 			for (int i = 0; i < n; i++) {
 				if (i != rIdx) {
-					if (clrDstEnv[i] == Obj.EMTY)
+					if (clrDstEnv.get(i) == Obj.EMTY)
 						clrDstEnv2[i] = Obj.EMTY;
 					else
 						clrDstEnv2[i] = Obj.ONLY_ESC;
 				}
 			}
 		}
-		DstNode clrDstNode2 = new DstNode(clrDstEnv2, clrDstHeap2, isKill
+		DstNode clrDstNode2 = new DstNode(new Env(clrDstEnv2), clrDstHeap2, isKill
 				|| clrDstNode.isKill, false);
 		return new Edge(clrPE.srcNode, clrDstNode2);
 	}
@@ -355,7 +357,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
             int bIdx = getIdx(bo);
             Set<Edge> peSet = pathEdges.get(q);
             for (Edge pe : peSet) {
-                Obj pts = pe.dstNode.env[bIdx];
+                Obj pts = pe.dstNode.env.get(bIdx);
                 if (pts == Obj.ONLY_ESC || pts == Obj.BOTH) {
 					Pair<Inst, Edge> pair = new Pair<Inst, Edge>(q, pe);
                     escEdge = wpeMap.get(pair);
@@ -372,15 +374,15 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 
 		@Override
 		public void visitReturn(Quad q) {
-			Obj[] oEnv = null;
+			Env oEnv = null;
 			if (!(q.getOperator() instanceof THROW_A)) {
 				Operand rx = Return.getSrc(q);
 				if (rx instanceof RegisterOperand) {
 					RegisterOperand ro = (RegisterOperand) rx;
 					if (ro.getType().isReferenceType()) {
 						int rIdx = getIdx(ro);
-						Obj rPts = iDstNode.env[rIdx];
-						oEnv = new Obj[] { rPts };
+						Obj rPts = iDstNode.env.get(rIdx);
+						oEnv = new Env(new Obj[] { rPts });
 					}
 				}
 			}
@@ -400,21 +402,20 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			jq_Type t = lo.getType();
 			if (!t.isReferenceType())
 				return;
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			int lIdx = getIdx(lo);
-			Obj ilPts = iEnv[lIdx];
+			Obj ilPts = iEnv.get(lIdx);
 			Operand rx = Move.getSrc(q);
 			Obj olPts;
 			if (rx instanceof RegisterOperand) {
 				RegisterOperand ro = (RegisterOperand) rx;
 				int rIdx = getIdx(ro);
-				olPts = iEnv[rIdx];
+				olPts = iEnv.get(rIdx);
 			} else
 				olPts = Obj.EMTY;
 			if (olPts == ilPts)
 				return;
-			Obj[] oEnv = copy(iEnv);
-			oEnv[lIdx] = olPts;
+			Env oEnv = iEnv.set(lIdx, olPts);
 			oDstNode = new DstNode(oEnv, iDstNode.heap, iDstNode.isKill, false);
 		}
 
@@ -424,7 +425,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			jq_Type t = lo.getType();
 			if (t == null || !t.isReferenceType())
 				return;
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			ParamListOperand ros = Phi.getSrcs(q);
 			int n = ros.length();
 			Obj olPts = Obj.EMTY;
@@ -432,7 +433,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				RegisterOperand ro = ros.get(i);
 				if (ro != null) {
 					int rIdx = getIdx(ro);
-					Obj rPts = iEnv[rIdx];
+					Obj rPts = iEnv.get(rIdx);
 					olPts = getObj(olPts, rPts);
                     if (!useBOTH && olPts == Obj.BOTH) {
                         oDstNode = reset(iDstNode);
@@ -441,11 +442,10 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				}
 			}
 			int lIdx = getIdx(lo);
-			Obj ilPts = iEnv[lIdx];
+			Obj ilPts = iEnv.get(lIdx);
 			if (olPts == ilPts)
 				return;
-			Obj[] oEnv = copy(iEnv);
-			oEnv[lIdx] = olPts;
+			Env oEnv = iEnv.set(lIdx, olPts);
 			oDstNode = new DstNode(oEnv, iDstNode.heap, iDstNode.isKill, false);
 		}
 
@@ -456,19 +456,18 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			Operator op = q.getOperator();
 			if (!((ALoad) op).getType().isReferenceType())
 				return;
-			Obj[] iEnv = iDstNode.env;
-			ArraySet<FldObj> iHeap = iDstNode.heap;
+			Env iEnv = iDstNode.env;
+			Heap iHeap = iDstNode.heap;
 			RegisterOperand bo = (RegisterOperand) ALoad.getBase(q);
 			int bIdx = getIdx(bo);
-			Obj bPts = iEnv[bIdx];
+			Obj bPts = iEnv.get(bIdx);
 			RegisterOperand lo = ALoad.getDest(q);
 			int lIdx = getIdx(lo);
-			Obj ilPts = iEnv[lIdx];
+			Obj ilPts = iEnv.get(lIdx);
 			Obj olPts = getPtsFromHeap(bPts, null, iHeap);
 			if (olPts == ilPts)
 				return;
-			Obj[] oEnv = copy(iEnv);
-			oEnv[lIdx] = olPts;
+			Env oEnv = iEnv.set(lIdx, olPts);
 			oDstNode = new DstNode(oEnv, iHeap, iDstNode.isKill, false);
 		}
 
@@ -479,24 +478,23 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			jq_Field f = Getfield.getField(q).getField();
 			if (!f.getType().isReferenceType())
 				return;
-			Obj[] iEnv = iDstNode.env;
-			ArraySet<FldObj> iHeap = iDstNode.heap;
+			Env iEnv = iDstNode.env;
+			Heap iHeap = iDstNode.heap;
 			RegisterOperand lo = Getfield.getDest(q);
 			int lIdx = getIdx(lo);
-			Obj ilPts = iEnv[lIdx];
+			Obj ilPts = iEnv.get(lIdx);
 			Operand bx = Getfield.getBase(q);
 			Obj olPts;
 			if (bx instanceof RegisterOperand) {
 				RegisterOperand bo = (RegisterOperand) bx;
 				int bIdx = getIdx(bo);
-				Obj bPts = iEnv[bIdx];
+				Obj bPts = iEnv.get(bIdx);
 				olPts = getPtsFromHeap(bPts, f, iHeap);
 			} else
 				olPts = Obj.EMTY;
 			if (olPts == ilPts)
 				return;
-			Obj[] oEnv = copy(iEnv);
-			oEnv[lIdx] = olPts;
+			Env oEnv = iEnv.set(lIdx, olPts);
 			oDstNode = new DstNode(oEnv, iHeap, iDstNode.isKill, false);
 		}
 
@@ -512,13 +510,13 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				return;
 			RegisterOperand bo = (RegisterOperand) AStore.getBase(q);
 			RegisterOperand ro = (RegisterOperand) rx;
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			int rIdx = getIdx(ro);
-			Obj rPts = iEnv[rIdx];
+			Obj rPts = iEnv.get(rIdx);
 			if (rPts == Obj.EMTY)
 				return;
 			int bIdx = getIdx(bo);
-			Obj bPts = iEnv[bIdx];
+			Obj bPts = iEnv.get(bIdx);
 			if (bPts == Obj.EMTY)
 				return;
 			processWrite(bPts, rPts, null);
@@ -537,15 +535,15 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			Operand bx = Putfield.getBase(q);
 			if (!(bx instanceof RegisterOperand))
 				return;
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			RegisterOperand ro = (RegisterOperand) rx;
 			int rIdx = getIdx(ro);
-			Obj rPts = iEnv[rIdx];
+			Obj rPts = iEnv.get(rIdx);
 			if (rPts == Obj.EMTY)
 				return;
 			RegisterOperand bo = (RegisterOperand) bx;
 			int bIdx = getIdx(bo);
-			Obj bPts = iEnv[bIdx];
+			Obj bPts = iEnv.get(bIdx);
 			if (bPts == Obj.EMTY)
 				return;
 			processWrite(bPts, rPts, f);
@@ -558,41 +556,16 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				return;
 			}
 			if (bPts == Obj.ONLY_LOC || bPts == Obj.BOTH) {
-				ArraySet<FldObj> iHeap = iDstNode.heap;
-				int n = iHeap.size();
-				ArraySet<FldObj> oHeap = null;
-				for (int i = 0; i < n; i++) {
-					FldObj fo = iHeap.get(i);
-					if (fo.f == f) {
-						boolean isLoc = fo.isLoc;
-						boolean isEsc = fo.isEsc;
-						Obj pts1 = getObj(isLoc, isEsc);
-						Obj pts2 = getObj(pts1, rPts);
-						boolean isLoc2 = isLoc(pts2);
-						boolean isEsc2 = isEsc(pts2);
-						if (isLoc == isLoc2 && isEsc == isEsc2)
-							return;
-						if (!useBOTH && pts2 == Obj.BOTH) {
-							oDstNode = reset(iDstNode);
-							return;
-						}
-						oHeap = new ArraySet<FldObj>(n);
-						for (int j = 0; j < i; j++)
-							oHeap.add(iHeap.get(j));
-						FldObj fo2 = new FldObj(f, isLoc2, isEsc2);
-						oHeap.add(fo2);
-						for (int j = i + 1; j < n; j++)
-							oHeap.add(iHeap.get(j));
-						break;
-					}
-				}
-				if (oHeap == null) {
-					oHeap = new ArraySet<FldObj>(iHeap);
-					boolean isLoc = isLoc(rPts);
-					boolean isEsc = isEsc(rPts);
-					FldObj fo = new FldObj(f, isLoc, isEsc);
-					oHeap.add(fo);
+				Heap iHeap = iDstNode.heap;
+				Obj pts1 = iHeap.getObj(f);
+				Obj pts2 = getObj(pts1, rPts);
+				if (pts1 == pts2)
+					return;
+				if (!useBOTH && pts2 == Obj.BOTH && pts1 != Obj.EMTY) {
+					oDstNode = reset(iDstNode);
+					return;
 				}
+				Heap oHeap = iHeap.put(f, pts2);
 				oDstNode = new DstNode(iDstNode.env, oHeap, iDstNode.isKill, false);
 			}
 		}
@@ -605,10 +578,10 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			Operand rx = Putstatic.getSrc(q);
 			if (!(rx instanceof RegisterOperand))
 				return;
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			RegisterOperand ro = (RegisterOperand) rx;
 			int rIdx = getIdx(ro);
-			Obj rPts = iEnv[rIdx];
+			Obj rPts = iEnv.get(rIdx);
 			if (rPts == Obj.ONLY_ESC || rPts == Obj.EMTY)
 				return;
 			oDstNode = reset(iDstNode);
@@ -619,13 +592,12 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			jq_Field f = Getstatic.getField(q).getField();
 			if (!f.getType().isReferenceType())
 				return;
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			RegisterOperand lo = Getstatic.getDest(q);
 			int lIdx = getIdx(lo);
-			if (iEnv[lIdx] == Obj.ONLY_ESC)
+			if (iEnv.get(lIdx) == Obj.ONLY_ESC)
 				return;
-			Obj[] oEnv = copy(iEnv);
-			oEnv[lIdx] = Obj.ONLY_ESC;
+			Env oEnv = iEnv.set(lIdx, Obj.ONLY_ESC);
 			oDstNode = new DstNode(oEnv, iDstNode.heap, iDstNode.isKill, false);
 		}
 
@@ -648,9 +620,9 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 		}
 
 		private void processAlloc(Quad q, RegisterOperand lo) {
-			Obj[] iEnv = iDstNode.env;
+			Env iEnv = iDstNode.env;
 			int lIdx = getIdx(lo);
-			Obj ilPts = iEnv[lIdx];
+			Obj ilPts = iEnv.get(lIdx);
 			Obj olPts;
 			if (!currHs.contains(q)) {
 				olPts = Obj.ONLY_ESC;
@@ -659,8 +631,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 			}
 			if (ilPts == olPts)
 				return;
-			Obj[] oEnv = copy(iEnv);
-			oEnv[lIdx] = olPts;
+			Env oEnv = iEnv.set(lIdx, olPts);
 			oDstNode = new DstNode(oEnv, iDstNode.heap, iDstNode.isKill, false);
 		}
 
@@ -669,7 +640,7 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 				return;
 			RegisterOperand bo = (RegisterOperand) bx;
 			int bIdx = getIdx(bo);
-			Obj pts = iDstNode.env[bIdx];
+			Obj pts = iDstNode.env.get(bIdx);
 			if (pts == Obj.ONLY_ESC || pts == Obj.BOTH) {
 				currLocEs.remove(q);
 				currEscEs.add(q);
@@ -679,19 +650,11 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 		}
 	}
 
-	private static Obj getPtsFromHeap(Obj bPts, jq_Field f, ArraySet<FldObj> heap) {
+	private static Obj getPtsFromHeap(Obj bPts, jq_Field f, Heap heap) {
 		if (bPts == Obj.EMTY || bPts == Obj.ONLY_ESC)
 			return Obj.ONLY_ESC;  // in newest version of forward transfer functions, N.f = E
-		Obj pts = null;
-		int n = heap.size();
-		for (int i = 0; i < n; i++) {
-			FldObj fo = heap.get(i);
-			if (fo.f == f) {
-				pts = getObj(fo.isLoc, fo.isEsc);
-				break;
-			}
-		}
-		if (pts == null) {
+		Obj pts = heap.getObj(f);
+		if (pts == Obj.EMTY) {
 			return (bPts == Obj.ONLY_LOC) ? Obj.EMTY : Obj.ONLY_ESC;
 		} else {
 			return (bPts == Obj.ONLY_LOC) ? pts : getObj(pts, Obj.ONLY_ESC);
@@ -699,29 +662,10 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 	}
 
 	private static DstNode reset(DstNode in) {
-		Obj[] iEnv = in.env;
-		int n = iEnv.length;
-		boolean change = false;
-		for (int i = 0; i < n; i++) {
-			Obj pts = iEnv[i];
-			if (pts != Obj.ONLY_ESC && pts != Obj.EMTY) {
-				change = true;
-				break;
-			}
-		}
-		Obj[] oEnv;
-		if (change) {
-			oEnv = new Obj[n];
-			for (int i = 0; i < n; i++) {
-				Obj pts = iEnv[i];
-				oEnv[i] = (pts == Obj.EMTY) ? Obj.EMTY : Obj.ONLY_ESC;
-			}
-		} else {
-			if (in.isKill && in.heap.isEmpty())
-				return in;
-			oEnv = iEnv;
-		}
-		return new DstNode(oEnv, emptyHeap, true, false);
+		Env iEnv = in.env;
+		if (!iEnv.hasLoc() && in.isKill && in.heap.isEmpty())
+			return in;
+		return new DstNode(iEnv.reset(), emptyHeap, true, false);
 	}
 
 	/*****************************************************************
@@ -732,21 +676,6 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 		return iterAnalysis.getLocalIdx(ro);
 	}
 
-	private static Obj[] copy(Obj[] a) {
-		int n = a.length;
-		Obj[] b = new Obj[n];
-		for (int i = 0; i < n; i++)
-			b[i] = a[i];
-		return b;
-	}
-
-	private static Obj getObj(boolean isLoc, boolean isEsc) {
-		if (isLoc)
-			return isEsc ? Obj.BOTH : Obj.ONLY_LOC;
-		else
-			return isEsc ? Obj.ONLY_ESC : Obj.EMTY;
-	}
-
 	private static Obj getObj(Obj o1, Obj o2) {
 		if (o1 == o2)
 			return o1;
@@ -757,22 +686,14 @@ public class ThrEscForwardAnalysis extends RHSAnalysis<Edge, Edge> {
 		return Obj.BOTH;
 	}
 
-	private static boolean isLoc(Obj pts) {
-		return pts == Obj.ONLY_LOC || pts == Obj.BOTH;
-	}
-
-	private static boolean isEsc(Obj pts) {
-		return pts == Obj.ONLY_ESC || pts == Obj.BOTH;
-	}
-
 	/*****************************************************************
 	 * Printing functions
 	 *****************************************************************/
 
-	public static String toString(Obj[] env) {
+	public static String toString(Env env) {
 		String s = null;
-		for (Obj o : env) {
-			String x = toString(o);
+		for (int i = 0; i < env.size(); i++) {
+			String x = toString(env.get(i));
 			s = (s == null) ? x : (s + "," + x);
 		}
 		if (s == null)
@@ -1,9 +1,9 @@
 package chord.analyses.mustalias.tdbu;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.BasicBlock;
@@ -77,7 +77,7 @@ public class AliasUtilities {
 		return ret;
 	}
 	
-	private static Map<jq_Method, Set<Register>> variableMap = new HashMap<jq_Method,Set<Register>>(); 
+	private static Map<jq_Method, Set<Register>> variableMap = new ConcurrentHashMap<jq_Method,Set<Register>>(); 
 	
 	/**
 	 * Kill the local registers except for the return registers
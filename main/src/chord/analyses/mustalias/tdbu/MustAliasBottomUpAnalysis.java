@@ -37,15 +37,21 @@ import chord.util.tuple.object.Pair;
 
 public class MustAliasBottomUpAnalysis extends
 		BottomUpAnalysis<Edge, Edge, MustAliasBUEdge, MustAliasBUEdge> {
-	private MyQuadVisitor qv;
+	// one visitor per thread, as SCCs may be summarized in parallel
+	private ThreadLocal<MyQuadVisitor> qvs = new ThreadLocal<MyQuadVisitor>() {
+		@Override
+		protected MyQuadVisitor initialValue() {
+			return new MyQuadVisitor();
+		}
+	};
 	
 	public MustAliasBottomUpAnalysis(ICICG callGraph, int bULimit,int bUPELimit, Map<jq_Method, Set<jq_Method>> rmsMap, Set<jq_Method> noTDSEMs) {
 		super(callGraph, bULimit, bUPELimit, rmsMap, noTDSEMs);
-		qv = new MyQuadVisitor();
 	}
 
 	@Override
 	protected Set<MustAliasBUEdge> transfer(MustAliasBUEdge inEdge, Quad q) {
+		MyQuadVisitor qv = qvs.get();
 		qv.identity(inEdge);
 		q.accept(qv);
 		return qv.output;
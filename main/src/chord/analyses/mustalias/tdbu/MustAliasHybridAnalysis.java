@@ -54,6 +54,7 @@ public class MustAliasHybridAnalysis extends JavaAnalysis {
 	private int buLimit;
 	private int bupeLimit;
 	private int trackedSiteNum;
+	private int buThreads;
 	private Set<Quad> trackedSites = new HashSet<Quad>();
 	private boolean init;
 	private boolean autoAdjustBU = false;
@@ -68,6 +69,7 @@ public class MustAliasHybridAnalysis extends JavaAnalysis {
 	public final static int defBuLimit = 1;
 	public final static int defBupeLimit = Integer.MAX_VALUE;
 	public final static int defTrackedSites = Integer.MAX_VALUE;
+	public final static int defBuThreads = 1;
 
 	public MustAliasHybridAnalysis() {
 		init = false;
@@ -83,6 +85,8 @@ public class MustAliasHybridAnalysis extends JavaAnalysis {
 				defBupeLimit);
 		trackedSiteNum = Integer.getInteger("chord.mustalias.trackedsites",
 				defTrackedSites);
+		buThreads = Integer.getInteger("chord.mustalias.buthreads",
+				defBuThreads);
 		statistics = Boolean.getBoolean("chord.mustalias.statistics");
 		autoAdjustBU = Boolean.getBoolean("chord.mustalias.autoadjust");
 		jumpEmpty = Boolean.getBoolean("chord.mustalias.jumpempty");
@@ -147,6 +151,7 @@ public class MustAliasHybridAnalysis extends JavaAnalysis {
 		td.init();
 		bu = new MustAliasBottomUpAnalysis(td.getCallGraph(), buLimit,
 				bupeLimit, reachedFromMM, noTDSEMs);
+		bu.setNumThreads(buThreads);
 		td.setBU(bu);
 	}
 
@@ -232,6 +237,7 @@ public class MustAliasHybridAnalysis extends JavaAnalysis {
 		System.out.println("Statistics: " + statistics);
 		System.out.println("BU run on all methods: " + buAllMethods);
 		System.out.println("Max number of tracked alloc sites: " + trackedSiteNum);
+		System.out.println("BU threads: " + buThreads);
 		td.run();
 		if (statistics) {
 			System.out.println("Times of BU has run: " + bu.getBUTimes());
@@ -9,8 +9,8 @@ import chord.util.tuple.object.Pair;
 
 import chord.project.analyses.provenance.Model;
 import chord.project.analyses.provenance.LookUpRule;
-import chord.project.analyses.provenance.ConstraintItem;
 import chord.project.analyses.provenance.Tuple;
+import chord.project.analyses.provenance.TupleIndex;
 
 public class KCFAModel implements Model {
 	Set<Tuple> tupleSet;
@@ -30,11 +30,13 @@ public class KCFAModel implements Model {
 	public void build(List<LookUpRule> rules) {
 		int x;
 		tupleSet.clear();
+		TupleIndex tuples = TupleIndex.g();
 		for (LookUpRule r : rules) {
-			Iterator<ConstraintItem> iter = r.getAllConstrIterator();
+			if (!r.getHeadRelName().startsWith("reachable"))
+				continue;
+			Iterator<int[]> iter = r.getAllConstrIdIterator();
 			while (iter.hasNext()) {
-				ConstraintItem it = iter.next();
-				Pair<Tuple, Boolean> ht = ptHandler.transform(it.headTuple);
+				Pair<Tuple, Boolean> ht = ptHandler.transform(tuples.get(iter.next()[0]));
 				if (ht != null && isLikelyTrueTuple(ht.val0))
 					tupleSet.add(ht.val0);
 			}
@@ -1,5 +1,6 @@
 package chord.analyses.typestate;
 
+import chord.project.analyses.rhs.Interner;
 import chord.util.ArraySet;
 
 /**
@@ -8,16 +9,18 @@ import chord.util.ArraySet;
  * @author machiry
  */
 public class AbstractState {
+	private static final Interner<AbstractState> states = new Interner<AbstractState>();
+	private static final Interner<ArraySet<AccessPath>> mustSets = new Interner<ArraySet<AccessPath>>();
 	public static final ArraySet<AccessPath> emptyMS;
 	static {
-		emptyMS = new ArraySet<AccessPath>(0);
-		emptyMS.setImmutable();
+		emptyMS = internMS(new ArraySet<AccessPath>(0));
 	}
 
 	public final TypeState ts;
 	public final ArraySet<AccessPath> ms;
 	public final boolean canReturn;
-	public boolean may;
+	public final boolean may;
+	private final int hash;
 
 	public AbstractState(boolean may, TypeState ts, ArraySet<AccessPath> ms) {
 		this(ts, ms, false, may);
@@ -29,11 +32,47 @@ public class AbstractState {
 		this.ms = ms;
 		canReturn = ret;
 		this.may = may;
+		hash = ms.hashCode();
+	}
+
+	/**
+	 * Provides the canonical state with the given contents; the given must
+	 * set may not be mutated afterwards.
+	 */
+	public static AbstractState get(boolean may, TypeState ts, ArraySet<AccessPath> ms) {
+		return get(ts, ms, false, may);
+	}
+
+	/**
+	 * Provides the canonical state with the given contents; the given must
+	 * set may not be mutated afterwards.
+	 */
+	public static AbstractState get(TypeState ts, ArraySet<AccessPath> ms, boolean ret, boolean may) {
+		return states.intern(new AbstractState(ts, internMS(ms), ret, may));
+	}
+
+	/**
+	 * Provides the canonical instance of the given must set, which may not
+	 * be mutated once it is interned.
+	 */
+	public static ArraySet<AccessPath> internMS(ArraySet<AccessPath> ms) {
+		ArraySet<AccessPath> ms2 = mustSets.intern(ms);
+		if (ms2 == ms)
+			ms.setImmutable();
+		return ms2;
+	}
+
+	/**
+	 * Provides the canonical state that is the same as this state except
+	 * that it is a may state.
+	 */
+	public AbstractState toMay() {
+		return may ? this : get(ts, ms, canReturn, true);
 	}
 
 	@Override
 	public int hashCode() {
-		return ms.hashCode();
+		return hash;
 	}
 
 	@Override
@@ -41,7 +80,7 @@ public class AbstractState {
 		if (this == obj) return true;
 		if (obj instanceof AbstractState) {
 			AbstractState that = (AbstractState) obj;
-			return ts == that.ts && canReturn == that.canReturn && ms.equals(that.ms) && may == that.may;
+			return hash == that.hash && ts == that.ts && canReturn == that.canReturn && ms.equals(that.ms) && may == that.may;
 		}
 		return false;
 	}
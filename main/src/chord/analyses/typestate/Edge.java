@@ -66,7 +66,7 @@ public class Edge implements IEdge {
             if (thisTs != thatTs) return -1;
             ArraySet<AccessPath> thisMS = this.dstNode.ms;
             ArraySet<AccessPath> thatMS = that.dstNode.ms;
-            if (!thisMS.containsAll(thatMS) && !thatMS.containsAll(thisMS))
+            if (thisMS != thatMS && !thisMS.containsAll(thatMS) && !thatMS.containsAll(thisMS))
                 return -1;
         }
         return Utils.areEqual(this.srcNode, that.srcNode) ? 0 : -1;
@@ -89,18 +89,18 @@ public class Edge implements IEdge {
         boolean thisMay = this.dstNode.may;
         boolean thatMay = that.dstNode.may;
         
-        if (thatMS.containsAll(thisMS)){
+        if (thatMS == thisMS || thatMS.containsAll(thisMS)){
         	if(thisMay)
         		return false;
-        	else if(!thatMay && thisMS.containsAll(thatMS)){
+        	else if(!thatMay && (thisMS == thatMS || thisMS.containsAll(thatMS))){
         		return false;
         	}else{
-        		this.dstNode.may = true;
+        		this.dstNode = this.dstNode.toMay();
         		return true;
         	}
         }
-        this.dstNode = that.dstNode;
-        this.dstNode.may = true;
+        // states may be shared, so replace rather than mutate them
+        this.dstNode = that.dstNode.toMay();
         return true;
     }
     
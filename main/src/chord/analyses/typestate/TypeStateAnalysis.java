@@ -284,8 +284,8 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             }
         }
 
-        AbstractState newSrc = new AbstractState(oldDst.may, oldDst.ts, newMS);
-		AbstractState newDst = new AbstractState(oldDst.may, newTS, newMS);
+        AbstractState newSrc = AbstractState.get(oldDst.may, oldDst.ts, newMS);
+		AbstractState newDst = AbstractState.get(oldDst.may, newTS, newMS);
         Edge newEdge = new Edge(newSrc, newDst, EdgeKind.FULL, pe.h);
         if (DEBUG) System.out.println("LEAVE getInitPathEdge: " + newEdge);
         return newEdge;
@@ -476,7 +476,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
 //        if(clrPE.type == EdgeKind.NULL && tgtSE.type == EdgeKind.ALLOC && newMS.isEmpty())
 //        	return null;
             
-        AbstractState newDst = new AbstractState(true, tgtSE.dstNode.ts, newMS);
+        AbstractState newDst = AbstractState.get(true, tgtSE.dstNode.ts, newMS);
         EdgeKind newType = (clrPE.type == EdgeKind.NULL) ? EdgeKind.ALLOC : clrPE.type;
         Edge newEdge = new Edge(clrPE.srcNode, newDst, newType, tgtSE.h);
         if (DEBUG) System.out.println("LEAVE getInvkPathEdge: " + newEdge);
@@ -529,7 +529,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 }
             }
             if (newMS != null)
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         @Override
@@ -551,7 +551,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 }
             }
             if (newMS != null)
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         @Override
@@ -563,16 +563,16 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                     Register dstR = New.getDest(q).getRegister();
                     newMS.add(new RegisterAccessPath(dstR));
                     if(Utils.buildBoolProperty("chord.typestate.usemaybit", true))
-                    	ostate = new AbstractState(false, sp.getStartState(), newMS);
+                    	ostate = AbstractState.get(false, sp.getStartState(), newMS);
                     else
-                    	ostate = new AbstractState(true, sp.getStartState(), newMS);
+                    	ostate = AbstractState.get(true, sp.getStartState(), newMS);
                 }
             } else {
                 // edge is ALLOC:<null, h, AS> or FULL:<AS', h, AS>
                 Register dstR = New.getDest(q).getRegister();
                 ArraySet<AccessPath> newMS = Helper.removeReference(istate.ms, dstR);
                 if (newMS != null)
-                    ostate = new AbstractState(istate.may, istate.ts, newMS);
+                    ostate = AbstractState.get(istate.may, istate.ts, newMS);
             }
         }
 
@@ -582,7 +582,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             Register dstR = NewArray.getDest(q).getRegister();
             ArraySet<AccessPath> newMS = Helper.removeReference(istate.ms, dstR);
             if (newMS != null)
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         @Override
@@ -591,7 +591,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             Register dstR = MultiNewArray.getDest(q).getRegister();
             ArraySet<AccessPath> newMS = Helper.removeReference(istate.ms, dstR);
             if (newMS != null)
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
         
         @Override
@@ -600,7 +600,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             Register dstR = ALoad.getDest(q).getRegister();
             ArraySet<AccessPath> newMS = Helper.removeReference(istate.ms, dstR);
             if (newMS != null)
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         @Override
@@ -615,7 +615,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 newMS.add(new RegisterAccessPath(dstR, oldMS.get(i).fields));
             }
             if (newMS != null) 
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         @Override
@@ -632,7 +632,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 }
             }
             if (newMS != null) 
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         /*
@@ -698,13 +698,13 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             }
             if (newMS != null){
             	if(istate.may)
-            		ostate = new AbstractState(true, istate.ts, newMS);
+            		ostate = AbstractState.get(true, istate.ts, newMS);
             	else{	
             		//boolean may = Helper.isAliasMissing(newMS, dstR, dstF, cipa);
             		boolean may = deleteAlias || deleteDepthExceed;
             		if(!may && !deleteSelf)
             			may = Helper.doesAliasExist(dstR, cipa);
-            		ostate = new AbstractState(may, istate.ts, newMS);
+            		ostate = AbstractState.get(may, istate.ts, newMS);
             	}
             }
         }
@@ -727,7 +727,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
                 }
             }
             if (newMS != null)
-                ostate = new AbstractState(istate.may, istate.ts, newMS);
+                ostate = AbstractState.get(istate.may, istate.ts, newMS);
         }
 
         @Override
@@ -739,7 +739,7 @@ public class TypeStateAnalysis extends RHSAnalysis<Edge, Edge> {
             if (Return.getSrc(q) instanceof RegisterOperand) {
                 Register tgtR = ((RegisterOperand) (Return.getSrc(q))).getRegister();
                 if (Helper.getIndexInAP(istate.ms, tgtR) >= 0) {
-                    ostate = new AbstractState(istate.ts, istate.ms, true, istate.may);
+                    ostate = AbstractState.get(istate.ts, istate.ms, true, istate.may);
                 }
             }
         }
@@ -170,7 +170,7 @@ public class IterTypeStateAnalysis extends ParallelAnalysis {
 			checkIncludedI.add(q);
 		relI.close();
 
-		if (getMode() == Mode.MASTER)
+		if (getMode() != Mode.WORKER)
 			initMaster();
 		else
 			initWorker();
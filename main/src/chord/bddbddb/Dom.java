@@ -52,8 +52,7 @@ public class Dom<T> extends IndexMap<T> {
             PrintWriter out = new PrintWriter(file);
             int size = size();
                 for (int i = 0; i < size; i++) {
-                T val = get(i);
-                out.println(toUniqueString(val));
+                out.println(toUniqueString(i));
             }
             out.close();
         }
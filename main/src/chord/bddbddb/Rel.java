@@ -20,6 +20,8 @@ import chord.util.tuple.integer.*;
 
 import chord.util.tuple.object.*;
 
+import gnu.trove.list.array.TIntArrayList;
+
 import net.sf.javabdd.BDD;
 import net.sf.javabdd.BDDDomain;
 import net.sf.javabdd.BDDException;
@@ -84,6 +86,9 @@ public class Rel {
     protected BDDDomain[] domBdds;
     protected BDD bdd;
     protected BDD iterBdd;
+    // if non-null, tuples added to this relation are appended here (as
+    // numDoms indices each) instead of to bdd; see bufferTuples()
+    protected TIntArrayList tupleBuf;
     /**
      * Sets the name of this relation.
      * 
@@ -228,6 +233,44 @@ public class Rel {
         initialize();
         bdd = factory.zero();
     }
+    /**
+     * Makes this relation buffer the tuples subsequently added to it
+     * instead of adding them to a relation in memory, e.g. so that they
+     * can be added concurrently with tuples added to other relations.
+     * <p>
+     * A relation that buffers tuples need not be initialized and supports
+     * no operation other than adding tuples.  The buffered tuples are added
+     * to a relation in memory by calling {@link #addBufferedTuples(Rel)}.
+     */
+    public void bufferTuples() {
+        tupleBuf = new TIntArrayList();
+    }
+    /**
+     * Adds the tuples buffered by the given relation to this relation in
+     * memory, and clears them from the given relation.
+     * 
+     * @param rel A relation with the same signature and domains as this
+     *        relation, that buffers tuples.
+     */
+    public void addBufferedTuples(Rel rel) {
+        if (bdd == null)
+            throw new RuntimeException("");
+        TIntArrayList buf = rel.tupleBuf;
+        int n = buf.size();
+        for (int i = 0; i < n; i += numDoms) {
+            try {
+                BDD b = domBdds[0].ithVar(buf.get(i));
+                for (int j = 1; j < numDoms; j++)
+                    b.andWith(domBdds[j].ithVar(buf.get(i + j)));
+                bdd.orWith(b);
+            } catch (BDDException ex) {
+                for (int j = 0; j < numDoms; j++)
+                    checkRange(buf.get(i + j), j);
+                throw new RuntimeException(ex);
+            }
+        }
+        buf.resetQuick();
+    }
     /**
      * Copies this relation from disk to memory.
      */
@@ -1363,6 +1406,10 @@ public class Rel {
      */
 
     public <T0> void add(T0 val0) {
+        if (tupleBuf != null) {
+            tupleBuf.add(doms[0].indexOf(val0));
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         int idx0 = doms[0].indexOf(val0);
@@ -1374,6 +1421,10 @@ public class Rel {
         }
     }
     public void add(int idx0) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -1436,6 +1487,11 @@ public class Rel {
      */
     
     public <T0,T1> void add(T0 val0, T1 val1) {
+        if (tupleBuf != null) {
+            tupleBuf.add(doms[0].indexOf(val0));
+            tupleBuf.add(doms[1].indexOf(val1));
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         int idx0 = doms[0].indexOf(val0);
@@ -1451,6 +1507,11 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            tupleBuf.add(idx1);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -1535,6 +1596,12 @@ public class Rel {
      */
     
     public <T0,T1,T2> void add(T0 val0, T1 val1, T2 val2) {
+        if (tupleBuf != null) {
+            tupleBuf.add(doms[0].indexOf(val0));
+            tupleBuf.add(doms[1].indexOf(val1));
+            tupleBuf.add(doms[2].indexOf(val2));
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         int idx0 = doms[0].indexOf(val0);
@@ -1553,6 +1620,12 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            tupleBuf.add(idx1);
+            tupleBuf.add(idx2);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -1635,6 +1708,13 @@ public class Rel {
      */
     
     public <T0,T1,T2,T3> void add(T0 val0, T1 val1, T2 val2, T3 val3) {
+        if (tupleBuf != null) {
+            tupleBuf.add(doms[0].indexOf(val0));
+            tupleBuf.add(doms[1].indexOf(val1));
+            tupleBuf.add(doms[2].indexOf(val2));
+            tupleBuf.add(doms[3].indexOf(val3));
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         int idx0 = doms[0].indexOf(val0);
@@ -1656,6 +1736,13 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            tupleBuf.add(idx1);
+            tupleBuf.add(idx2);
+            tupleBuf.add(idx3);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -1746,6 +1833,14 @@ public class Rel {
      */
     
     public <T0,T1,T2,T3,T4> void add(T0 val0, T1 val1, T2 val2, T3 val3, T4 val4) {
+        if (tupleBuf != null) {
+            tupleBuf.add(doms[0].indexOf(val0));
+            tupleBuf.add(doms[1].indexOf(val1));
+            tupleBuf.add(doms[2].indexOf(val2));
+            tupleBuf.add(doms[3].indexOf(val3));
+            tupleBuf.add(doms[4].indexOf(val4));
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         int idx0 = doms[0].indexOf(val0);
@@ -1770,6 +1865,14 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3, int idx4) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            tupleBuf.add(idx1);
+            tupleBuf.add(idx2);
+            tupleBuf.add(idx3);
+            tupleBuf.add(idx4);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -1829,6 +1932,15 @@ public class Rel {
      */
     
     public <T0,T1,T2,T3,T4,T5> void add(T0 val0, T1 val1, T2 val2, T3 val3, T4 val4, T5 val5) {
+        if (tupleBuf != null) {
+            tupleBuf.add(doms[0].indexOf(val0));
+            tupleBuf.add(doms[1].indexOf(val1));
+            tupleBuf.add(doms[2].indexOf(val2));
+            tupleBuf.add(doms[3].indexOf(val3));
+            tupleBuf.add(doms[4].indexOf(val4));
+            tupleBuf.add(doms[5].indexOf(val5));
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         int idx0 = doms[0].indexOf(val0);
@@ -1856,6 +1968,15 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3, int idx4, int idx5) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            tupleBuf.add(idx1);
+            tupleBuf.add(idx2);
+            tupleBuf.add(idx3);
+            tupleBuf.add(idx4);
+            tupleBuf.add(idx5);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -1876,6 +1997,16 @@ public class Rel {
         }
     }
     public void add(int idx0, int idx1, int idx2, int idx3, int idx4, int idx5, int idx6) {
+        if (tupleBuf != null) {
+            tupleBuf.add(idx0);
+            tupleBuf.add(idx1);
+            tupleBuf.add(idx2);
+            tupleBuf.add(idx3);
+            tupleBuf.add(idx4);
+            tupleBuf.add(idx5);
+            tupleBuf.add(idx6);
+            return;
+        }
         if (bdd == null)
             throw new RuntimeException("");
         try {
@@ -0,0 +1,443 @@
+package chord.program;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import joeq.Class.PrimordialClassLoader;
+import joeq.Class.jq_Class;
+import joeq.Class.jq_ClassFileConstants;
+import joeq.Class.jq_ConstantPool;
+import joeq.Class.jq_InstanceField;
+import joeq.Class.jq_InstanceMethod;
+import joeq.Class.jq_Member;
+import joeq.Class.jq_Method;
+import joeq.Class.jq_Reference.jq_NullType;
+import joeq.Class.jq_StaticField;
+import joeq.Class.jq_StaticMethod;
+import joeq.Class.jq_Type;
+import joeq.Compiler.Quad.BytecodeToQuad.jq_ReturnAddressType;
+import joeq.Compiler.Quad.ControlFlowGraph;
+import joeq.Compiler.Quad.ICFGCache;
+import joeq.Compiler.Quad.Operator;
+import joeq.Compiler.Quad.Quad;
+import joeq.UTF.Utf8;
+
+import chord.project.Config;
+
+/**
+ * On-disk cache of the quadcode CFGs of methods, shared by all Chord runs
+ * that use the same cache directory.
+ * <p>
+ * Each entry holds the CFG of a single method (after any SSA conversion)
+ * along with its quad-to-bytecode map, and is loaded lazily when the
+ * method's CFG is first requested.  An entry is keyed by a digest of the
+ * class file declaring the method, the method's name and descriptor, the
+ * SSA kind (property {@code chord.ssa.kind}), and the contents of the
+ * native method stubs file ({@link Config#stubsFileName}); entries
+ * whose key no longer matches are simply never looked up again.
+ * <p>
+ * Translating a method also resolves the members it references, which
+ * depends on other classes: those named in the constant pool of the
+ * declaring class, and the supertypes of these and of the declaring class.
+ * Each entry records a digest of the class file of each such class, and is
+ * treated as a miss, and deleted, if any of them has changed since.
+ * <p>
+ * Types, members and operators referenced by a cached CFG are stored
+ * symbolically and are resolved against the current run's class loader
+ * when the entry is read, so that the loaded CFG shares them with the rest
+ * of the program.  Types that were prepared when the entry was written
+ * are prepared again when it is read, as building the CFG from bytecode
+ * would have done.
+ * <p>
+ * A CFG that cannot be written or read (e.g. due to an I/O error or a
+ * reference to an object that cannot be stored symbolically) is simply
+ * built from bytecode instead.
+ */
+public class CFGCache implements ICFGCache {
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".cfg";
+
+    private final File dir;
+    private final byte[] configDigest;
+    // digest of the class file of each class seen so far, by descriptor;
+    // NO_DIGEST if it has none
+    private final Map<String, byte[]> classDigests = new ConcurrentHashMap<String, byte[]>();
+    private static final byte[] NO_DIGEST = new byte[0];
+    private final AtomicInteger numHits = new AtomicInteger();
+    private final AtomicInteger numMisses = new AtomicInteger();
+
+    /**
+     * Creates a cache of CFGs in the given directory.
+     *
+     * @param dirName The directory containing the cached CFGs.  It is
+     *        created if it does not exist.
+     * @param ssaKind The kind of SSA form of cached CFGs.
+     * @param stubs The contents of the native method stubs file.
+     */
+    public CFGCache(String dirName, String ssaKind, String stubs) {
+        dir = new File(dirName);
+        dir.mkdirs();
+        MessageDigest md = newDigest();
+        md.update(toBytes("v" + FORMAT_VERSION + "\0" + ssaKind + "\0" + stubs));
+        configDigest = md.digest();
+    }
+
+    public int getNumHits() { return numHits.get(); }
+
+    public int getNumMisses() { return numMisses.get(); }
+
+    public Entry load(jq_Method m) {
+        File file = getFile(m);
+        if (file == null || !file.exists()) {
+            numMisses.incrementAndGet();
+            return null;
+        }
+        try {
+            Resolver in = new Resolver(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != FORMAT_VERSION)
+                    throw new IOException("Unknown format");
+                String[] depDescs = (String[]) in.readObject();
+                byte[][] depDigests = (byte[][]) in.readObject();
+                for (int i = 0; i < depDescs.length; i++) {
+                    if (!Arrays.equals(depDigests[i], getClassDigest(depDescs[i])))
+                        throw new IOException("Class " + depDescs[i] + " has changed");
+                }
+                ControlFlowGraph cfg = (ControlFlowGraph) in.readObject();
+                Map<Quad, Integer> bcMap = null;
+                Quad[] quads = (Quad[]) in.readObject();
+                if (quads != null) {
+                    int[] bcis = (int[]) in.readObject();
+                    bcMap = new HashMap<Quad, Integer>(quads.length);
+                    for (int i = 0; i < quads.length; i++)
+                        bcMap.put(quads[i], bcis[i]);
+                }
+                numHits.incrementAndGet();
+                return new Entry(cfg, bcMap);
+            } finally {
+                in.close();
+            }
+        } catch (Throwable ex) {
+            if (Config.verbose >= 2) {
+                System.out.println("WARN: CFGCache: Failed to read CFG of method " + m + " from '" + file + "': " + ex);
+            }
+            file.delete();
+            numMisses.incrementAndGet();
+            return null;
+        }
+    }
+
+    public void store(jq_Method m, ControlFlowGraph cfg, Map<Quad, Integer> bcMap) {
+        File file = getFile(m);
+        if (file == null)
+            return;
+        File tmpFile = null;
+        try {
+            // serialize fully in memory first so that nothing is written
+            // for CFGs that cannot be stored
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            Symbolizer out = new Symbolizer(bytes);
+            out.writeInt(FORMAT_VERSION);
+            Set<String> deps = getDependencies(m.getDeclaringClass());
+            String[] depDescs = deps.toArray(new String[deps.size()]);
+            byte[][] depDigests = new byte[depDescs.length][];
+            for (int i = 0; i < depDescs.length; i++)
+                depDigests[i] = getClassDigest(depDescs[i]);
+            out.writeObject(depDescs);
+            out.writeObject(depDigests);
+            out.writeObject(cfg);
+            if (bcMap == null)
+                out.writeObject(null);
+            else {
+                int n = bcMap.size();
+                Quad[] quads = new Quad[n];
+                int[] bcis = new int[n];
+                int i = 0;
+                for (Map.Entry<Quad, Integer> e : bcMap.entrySet()) {
+                    quads[i] = e.getKey();
+                    bcis[i] = e.getValue();
+                    i++;
+                }
+                out.writeObject(quads);
+                out.writeObject(bcis);
+            }
+            out.close();
+            // write to a temporary file and rename it so that concurrent
+            // runs sharing the cache never see a partial entry
+            tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(tmpFile));
+            try {
+                bytes.writeTo(os);
+            } finally {
+                os.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                file.delete();
+                if (!tmpFile.renameTo(file))
+                    throw new IOException("Failed to rename '" + tmpFile + "'");
+            }
+            tmpFile = null;
+        } catch (Throwable ex) {
+            if (Config.verbose >= 2) {
+                System.out.println("WARN: CFGCache: Failed to write CFG of method " + m + ": " + ex);
+            }
+        } finally {
+            if (tmpFile != null)
+                tmpFile.delete();
+        }
+    }
+
+    private File getFile(jq_Method m) {
+        byte[] classDigest = getClassDigest(m.getDeclaringClass().getDesc().toString());
+        if (classDigest == NO_DIGEST)
+            return null;
+        MessageDigest md = newDigest();
+        md.update(configDigest);
+        md.update(classDigest);
+        md.update(toBytes(m.getName() + ":" + m.getDesc()));
+        byte[] digest = md.digest();
+        StringBuilder sb = new StringBuilder(digest.length * 2 + SUFFIX.length());
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        sb.append(SUFFIX);
+        return new File(dir, sb.toString());
+    }
+
+    private byte[] getClassDigest(String desc) {
+        byte[] digest = classDigests.get(desc);
+        if (digest != null)
+            return digest;
+        digest = NO_DIGEST;
+        try {
+            DataInputStream in = PrimordialClassLoader.loader.getClasspath().getClassFileStream(Utf8.get(desc));
+            if (in != null) {
+                try {
+                    MessageDigest md = newDigest();
+                    byte[] buf = new byte[8192];
+                    for (int n; (n = in.read(buf)) != -1;)
+                        md.update(buf, 0, n);
+                    digest = md.digest();
+                } finally {
+                    in.close();
+                }
+            }
+        } catch (IOException ex) {
+            // leave class uncached
+        }
+        classDigests.put(desc, digest);
+        return digest;
+    }
+
+    /**
+     * Provides the descriptors of the classes whose contents translating a
+     * method of the given class may have depended on: the class itself, each
+     * class named in its constant pool, and all supertypes of these.
+     */
+    private static Set<String> getDependencies(jq_Class c) {
+        Set<jq_Class> classes = new LinkedHashSet<jq_Class>();
+        addSupertypes(c, classes);
+        jq_ConstantPool cp = c.getCP();
+        if (cp != null) {
+            int n = cp.getCount();
+            for (char i = 1; i < n; i++) {
+                if (cp.getTag(i) == jq_ClassFileConstants.CONSTANT_ResolvedClass) {
+                    Object o = cp.get(i);
+                    if (o instanceof jq_Class)
+                        addSupertypes((jq_Class) o, classes);
+                }
+            }
+        }
+        Set<String> descs = new LinkedHashSet<String>(classes.size());
+        for (jq_Class d : classes)
+            descs.add(d.getDesc().toString());
+        return descs;
+    }
+
+    // supertypes of classes not loaded yet cannot have been consulted
+    private static void addSupertypes(jq_Class c, Set<jq_Class> classes) {
+        if (!classes.add(c) || !c.isLoaded())
+            return;
+        jq_Class d = c.getSuperclass();
+        if (d != null)
+            addSupertypes(d, classes);
+        for (jq_Class i : c.getDeclaredInterfaces())
+            addSupertypes(i, classes);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static byte[] toBytes(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /************************************************************************
+     * Symbolic references to objects shared across CFGs
+     ************************************************************************/
+
+    private static final class TypeRef implements Serializable {
+        private static final long serialVersionUID = FORMAT_VERSION;
+        static final int NULL_TYPE = 0, RET_ADDR_TYPE = 1, DESC_TYPE = 2;
+        final int kind;
+        final String desc;
+        final boolean prepared;
+        TypeRef(int kind, String desc, boolean prepared) {
+            this.kind = kind;
+            this.desc = desc;
+            this.prepared = prepared;
+        }
+    }
+
+    private static final class MemberRef implements Serializable {
+        private static final long serialVersionUID = FORMAT_VERSION;
+        static final int STATIC_FIELD = 0, INSTANCE_FIELD = 1, STATIC_METHOD = 2, INSTANCE_METHOD = 3;
+        final int kind;
+        final String cDesc;
+        final String name;
+        final String desc;
+        MemberRef(int kind, String cDesc, String name, String desc) {
+            this.kind = kind;
+            this.cDesc = cDesc;
+            this.name = name;
+            this.desc = desc;
+        }
+    }
+
+    private static final class Utf8Ref implements Serializable {
+        private static final long serialVersionUID = FORMAT_VERSION;
+        final String s;
+        Utf8Ref(String s) { this.s = s; }
+    }
+
+    private static final class OperatorRef implements Serializable {
+        private static final long serialVersionUID = FORMAT_VERSION;
+        final String cName;
+        OperatorRef(String cName) { this.cName = cName; }
+    }
+
+    private static class Symbolizer extends ObjectOutputStream {
+        Symbolizer(OutputStream out) throws IOException {
+            super(out);
+            enableReplaceObject(true);
+        }
+        @Override
+        protected Object replaceObject(Object o) throws IOException {
+            if (o instanceof jq_Type) {
+                if (o == jq_NullType.NULL_TYPE)
+                    return new TypeRef(TypeRef.NULL_TYPE, null, false);
+                if (o instanceof jq_ReturnAddressType) {
+                    // only the shared instance carries no CFG-specific state
+                    if (o != jq_ReturnAddressType.INSTANCE)
+                        throw new NotSerializableException(o.toString());
+                    return new TypeRef(TypeRef.RET_ADDR_TYPE, null, false);
+                }
+                jq_Type t = (jq_Type) o;
+                return new TypeRef(TypeRef.DESC_TYPE, t.getDesc().toString(), t.isPrepared());
+            }
+            if (o instanceof jq_Member) {
+                jq_Member m = (jq_Member) o;
+                int kind;
+                if (m instanceof jq_StaticField)
+                    kind = MemberRef.STATIC_FIELD;
+                else if (m instanceof jq_InstanceField)
+                    kind = MemberRef.INSTANCE_FIELD;
+                else if (m instanceof jq_StaticMethod)
+                    kind = MemberRef.STATIC_METHOD;
+                else if (m instanceof jq_InstanceMethod)
+                    kind = MemberRef.INSTANCE_METHOD;
+                else
+                    throw new NotSerializableException(m.toString());
+                return new MemberRef(kind, m.getDeclaringClass().getDesc().toString(),
+                    m.getName().toString(), m.getDesc().toString());
+            }
+            if (o instanceof Utf8)
+                return new Utf8Ref(o.toString());
+            if (o instanceof Operator)
+                return new OperatorRef(o.getClass().getName());
+            return o;
+        }
+    }
+
+    private static class Resolver extends ObjectInputStream {
+        Resolver(InputStream in) throws IOException {
+            super(in);
+            enableResolveObject(true);
+        }
+        @Override
+        protected Object resolveObject(Object o) throws IOException {
+            if (o instanceof TypeRef) {
+                TypeRef r = (TypeRef) o;
+                switch (r.kind) {
+                case TypeRef.NULL_TYPE:
+                    return jq_NullType.NULL_TYPE;
+                case TypeRef.RET_ADDR_TYPE:
+                    return jq_ReturnAddressType.INSTANCE;
+                default:
+                    jq_Type t = PrimordialClassLoader.loader.getOrCreateBSType(r.desc);
+                    if (r.prepared)
+                        t.prepare();
+                    return t;
+                }
+            }
+            if (o instanceof MemberRef) {
+                MemberRef r = (MemberRef) o;
+                jq_Class c = (jq_Class) PrimordialClassLoader.loader.getOrCreateBSType(r.cDesc);
+                switch (r.kind) {
+                case MemberRef.STATIC_FIELD:
+                    return c.getOrCreateStaticField(r.name, r.desc);
+                case MemberRef.INSTANCE_FIELD:
+                    return c.getOrCreateInstanceField(r.name, r.desc);
+                case MemberRef.STATIC_METHOD:
+                    return c.getOrCreateStaticMethod(r.name, r.desc);
+                default:
+                    return c.getOrCreateInstanceMethod(r.name, r.desc);
+                }
+            }
+            if (o instanceof Utf8Ref)
+                return Utf8.get(((Utf8Ref) o).s);
+            if (o instanceof OperatorRef) {
+                try {
+                    Class<?> c = Class.forName(((OperatorRef) o).cName);
+                    return c.getField("INSTANCE").get(null);
+                } catch (Exception ex) {
+                    throw new IOException(ex.toString());
+                }
+            }
+            if (o instanceof String)
+                return ((String) o).intern();
+            return o;
+        }
+    }
+}
@@ -180,7 +180,7 @@ public class ClassHierarchy {
             dynLoadedTypes.addAll(list);
         }
         Classpath cp = new Classpath();
-        cp.addToClasspath(System.getProperty("sun.boot.class.path"));
+        cp.addBootClasspath();
         cp.addExtClasspath();
         cp.addToClasspath(Config.userClassPathName);
         List<ClasspathElement> cpeList = cp.getClasspathElements();
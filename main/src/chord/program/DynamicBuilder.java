@@ -33,16 +33,13 @@ public class DynamicBuilder implements ScopeBuilder {
         for (String s : classNames) {
             jq_Class c = (jq_Class) program.loadClass(s);
             for (jq_Method m : c.getDeclaredStaticMethods()) {
-                if (!m.isAbstract())
-                    m.getCFG();
                 methods.add(m);
             }
             for (jq_Method m : c.getDeclaredInstanceMethods()) {
-                if (!m.isAbstract())
-                    m.getCFG();
                 methods.add(m);
             }
         }
+        // CFGs are built by Program, possibly in parallel
         return methods;
     }
 
@@ -0,0 +1,117 @@
+package chord.program;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import joeq.Class.jq_Class;
+import joeq.Class.jq_Method;
+import joeq.Class.jq_NameAndDesc;
+import joeq.Class.jq_Reference;
+
+import chord.project.Config;
+import chord.program.reflect.CastBasedStaticReflect;
+
+/**
+ * Worklist-based incremental variant of Rapid Type Analysis (RTA).
+ * <p>
+ * Unlike {@link RTA}, which restarts from the main method and every class
+ * initializer whenever the set of instantiated classes grows, this scope
+ * builder never discards reachable methods or instantiated classes.  The
+ * CFG of each reachable method is walked exactly once.  Each virtual or
+ * interface method invoked so far is recorded against its declaring class
+ * so that, when a new class is deemed instantiated (by a reachable
+ * new/newarray statement or by a resolved reflection site), only that
+ * class is dispatched against the recorded invocations.
+ * <p>
+ * Reflection is resolved as in {@link RTA} (see property
+ * {@code chord.reflect.kind}).  If the static resolver invalidates its
+ * result for a method (as {@link CastBasedStaticReflect} does when it
+ * discovers that a callee returns a reflectively created object), only
+ * the reflection sites of that method are resolved again; its CFG is not
+ * re-walked.
+ * <p>
+ * This scope builder is selected by setting property
+ * {@code chord.scope.kind} to {@code rta_incr}.
+ */
+public class IncrementalRTA extends RTA {
+    // map from each class/interface declaring a method invoked so far at a
+    // reachable invokevirtual/invokeinterface site to the names and
+    // descriptors of all such invoked methods declared in it
+    private final Map<jq_Class, Set<jq_NameAndDesc>> invokedVirtualMethods =
+        new HashMap<jq_Class, Set<jq_NameAndDesc>>();
+
+    // worklist for instantiated classes not yet dispatched against
+    // invokedVirtualMethods
+    private final List<jq_Class> allocClassWorklist = new ArrayList<jq_Class>();
+
+    public IncrementalRTA(String reflectKind) {
+        super(reflectKind);
+    }
+
+    @Override
+    protected void iterate(jq_Class mainClass, jq_Method mainMethod) {
+        visitClinits(mainClass);
+        visitMethod(mainMethod);
+        visitAdditionalEntrypoints(); //called for subclasses
+
+        for (int i = 0; true; i++) {
+            if (Config.verbose >= 1) System.out.println("Round: " + i);
+            while (true) {
+                processMethodWorklist();
+                int k = allocClassWorklist.size();
+                if (k == 0)
+                    break;
+                jq_Class c = allocClassWorklist.remove(k - 1);
+                if (DEBUG) System.out.println("Dispatching on class " + c);
+                processAllocClass(c);
+            }
+            if (!reresolveStaticReflectSites())
+                break;
+        }
+    }
+
+    /**
+     * Adds a newly instantiated class to the dispatch worklist.
+     */
+    @Override
+    protected boolean visitAllocClass(jq_Reference r) {
+        if (!super.visitAllocClass(r))
+            return false;
+        if (r instanceof jq_Class)
+            allocClassWorklist.add((jq_Class) r);
+        return true;
+    }
+
+    /**
+     * Records the invoked method, and dispatches it on the classes
+     * instantiated so far only the first time it is seen; classes
+     * instantiated later are handled by processAllocClass.
+     */
+    @Override
+    protected void dispatchVirtualInvk(jq_Class c, jq_NameAndDesc nd) {
+        Set<jq_NameAndDesc> nds = invokedVirtualMethods.get(c);
+        if (nds == null) {
+            nds = new HashSet<jq_NameAndDesc>();
+            invokedVirtualMethods.put(c, nds);
+        }
+        if (nds.add(nd))
+            super.dispatchVirtualInvk(c, nd);
+    }
+
+    private void processAllocClass(jq_Class d) {
+        assert (!d.isInterface());
+        assert (!d.isAbstract());
+        for (Map.Entry<jq_Class, Set<jq_NameAndDesc>> e : invokedVirtualMethods.entrySet()) {
+            jq_Class c = e.getKey();
+            boolean matches = c.isInterface() ? d.implementsInterface(c) : d.extendsClass(c);
+            if (matches) {
+                for (jq_NameAndDesc nd : e.getValue())
+                    visitVirtualMethod(d, c, nd);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package chord.program;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import joeq.Class.jq_Method;
+
+import chord.project.Config;
+import chord.project.Messages;
+import chord.util.Executor;
+import chord.util.IndexSet;
+import chord.util.Timer;
+
+/**
+ * Builds and caches the quadcode CFGs of a given set of methods using a
+ * pool of worker threads.
+ * <p>
+ * The number of worker threads is specified by property
+ * {@code chord.cfg.threads} (default 1, in which case CFGs are built
+ * serially in the order of the given methods, as before).
+ * <p>
+ * Building CFGs in parallel does not affect the numbering of any domain:
+ * quads, basic blocks and registers are numbered by counters local to
+ * each CFG, and {@link Program} sorts all types (including any created
+ * while building CFGs) by name before numbering them.
+ */
+public class ParallelCFGBuilder {
+    private final jq_Method[] methods;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile Throwable failure;
+
+    private ParallelCFGBuilder(IndexSet<jq_Method> methods) {
+        this.methods = new jq_Method[methods.size()];
+        int i = 0;
+        for (jq_Method m : methods)
+            this.methods[i++] = m;
+    }
+
+    /**
+     * Builds the CFG of each non-abstract method in the given set, unless it
+     * is already built.
+     *
+     * @param methods A set of methods whose classes are already prepared.
+     */
+    public static void run(IndexSet<jq_Method> methods) {
+        run(methods, Config.numCFGThreads);
+    }
+
+    /**
+     * Builds the CFG of each non-abstract method in the given set, unless it
+     * is already built, using the given number of worker threads.
+     *
+     * @param methods A set of methods whose classes are already prepared.
+     * @param numThreads The number of worker threads to use.
+     */
+    public static void run(IndexSet<jq_Method> methods, int numThreads) {
+        new ParallelCFGBuilder(methods).build(numThreads);
+    }
+
+    private void build(int numThreads) {
+        if (numThreads <= 1) {
+            work();
+            return;
+        }
+        if (Config.verbose >= 1) System.out.println("ENTER: ParallelCFGBuilder (" + numThreads + " threads)");
+        Timer timer = new Timer();
+        timer.init();
+        Executor executor = new Executor(false);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work();
+                } catch (Throwable ex) {
+                    failure = ex;
+                }
+            }
+        };
+        for (int i = 0; i < numThreads; i++)
+            executor.execute(task);
+        try {
+            executor.waitForCompletion();
+        } catch (InterruptedException ex) {
+            Messages.fatal(ex);
+        }
+        if (failure != null)
+            Messages.fatal(failure);
+        timer.done();
+        if (Config.verbose >= 1) {
+            System.out.println("LEAVE: ParallelCFGBuilder");
+            System.out.println("Time: " + timer.getInclusiveTimeStr());
+        }
+    }
+
+    private void work() {
+        int n = methods.length;
+        for (int i; (i = next.getAndIncrement()) < n && failure == null;) {
+            jq_Method m = methods[i];
+            if (!m.isAbstract())
+                m.getCFG();
+        }
+    }
+}
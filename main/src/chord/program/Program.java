@@ -77,6 +77,7 @@ public class Program {
     private jq_Method mainMethod;
     private boolean HTMLizedJavaSrcFiles;
     private ClassHierarchy ch;
+    private CFGCache cfgCache;
 
     private Program() {
         if (Config.verbose >= 2)
@@ -91,22 +92,29 @@ public class Program {
 		else if (ssaKind.equals("nomovephi"))
 			jq_Method.doSSA(true, true);
         jq_Method.exclude(Config.scopeExcludeAry);
+        PrimordialClassLoader.loader.getClasspath().setPrefetchThreads(Config.numPrefetchThreads);
         Map<String, String> map = new HashMap<String, String>();
         String stubsFileName = Config.stubsFileName;
         BufferedReader r = Utils.getResourceAsReader(stubsFileName);
         if (r == null)
             Messages.fatal(STUBS_FILE_NOT_FOUND, stubsFileName);
+        StringBuilder stubs = new StringBuilder();
         try {
             String s;
             while ((s = r.readLine()) != null) {
                 String[] a = s.split(" ");
                 assert (a.length == 2);
                 map.put(a[0], a[1]);
+                stubs.append(s).append('\n');
             }
         } catch (IOException ex) {
             Messages.fatal(ex);
         }
         jq_Method.setNativeCFGBuilders(map);
+        if (Config.reuseCFGs) {
+            cfgCache = new CFGCache(Config.cfgsDirName, ssaKind, stubs.toString());
+            jq_Method.setCFGCache(cfgCache);
+        }
     }
 
     /**
@@ -156,6 +164,7 @@ public class Program {
         File reflectFile = new File(Config.reflectFileName);
         if (Config.reuseScope && methodsFile.exists() && reflectFile.exists()) {
             loadMethodsFile(methodsFile);
+            ParallelCFGBuilder.run(methods);
             buildSignToMethodMap();
             loadReflectFile(reflectFile);
         } else {
@@ -163,6 +172,8 @@ public class Program {
             ScopeBuilder b = null;
             if (scopeKind.equals("rta")) {
                 b = new RTA(Config.reflectKind);
+            } else if (scopeKind.equals("rta_incr")) {
+                b = new IncrementalRTA(Config.reflectKind);
             } else if (scopeKind.equals("dynamic")) {
                 b = new DynamicBuilder();
             } else if (scopeKind.equals("cha")) {
@@ -173,17 +184,23 @@ public class Program {
                     b = (ScopeBuilder) scopeBuildClass.newInstance();
                 } catch(Exception e) {
                     System.err.println("didn't recognize scope builder named " + scopeKind +
-                            ". Expected 'rta', 'cha', 'dynamic', or the name of a class implementing ScopeBuilder.");
+                            ". Expected 'rta', 'rta_incr', 'cha', 'dynamic', or the name of a class implementing ScopeBuilder.");
                     System.exit(1);
                 }
             }
             methods = b.getMethods();
             reflect = b.getReflect();
+            // no-op for methods whose CFGs the scope builder already built
+            ParallelCFGBuilder.run(methods);
 
             buildSignToMethodMap();
             saveMethodsFile(methodsFile);
             saveReflectFile(reflectFile);
         }
+        if (cfgCache != null && Config.verbose >= 1) {
+            System.out.println("CFGCache: " + cfgCache.getNumHits() + " hits, " +
+                cfgCache.getNumMisses() + " misses");
+        }
     }
 
     private void buildClasses() {
@@ -226,8 +243,6 @@ public class Program {
             String mDesc = sign.mDesc;
             jq_Method m = (jq_Method) c.getDeclaredMember(mName, mDesc);
             assert (m != null);
-            if (!m.isAbstract())
-                m.getCFG();
             methods.add(m);
         }
     }
@@ -198,7 +198,23 @@ public class RTA implements ScopeBuilder {
             Messages.fatal(MAIN_METHOD_NOT_FOUND, mainClassName);
         
         prepAdditionalEntrypoints(); //called for subclasses
-        
+
+        iterate(mainClass, mainMethod);
+
+        timer.done();
+        if (Config.verbose >= 1) {
+            System.out.println("LEAVE: RTA");
+            System.out.println("Time: " + timer.getInclusiveTimeStr());
+        }
+        staticReflectResolver = null; // no longer in use; stop referencing it
+    }
+
+    /**
+     * Computes the reachable methods and classes, starting from the given
+     * main class and method, once the hosted JVM and the reflection resolver
+     * are set up.  A hook so subclasses can change how the fixpoint is reached.
+     */
+    protected void iterate(jq_Class mainClass, jq_Method mainMethod) {
         for (int i = 0; repeat; i++) {
             if (Config.verbose >= 1) System.out.println("Iteration: " + i);
             repeat = false;
@@ -214,24 +230,47 @@ public class RTA implements ScopeBuilder {
                     visitMethod(m);
                 }
             
-            while (!methodWorklist.isEmpty()) {
-                int n = methodWorklist.size();
-                jq_Method m = methodWorklist.remove(n - 1);
-                if (DEBUG) System.out.println("Processing CFG of " + m);
-                processMethod(m);
-            }
+            processMethodWorklist();
 
             if (staticReflectResolver != null) {
                 staticReflectResolver.startedNewIter();
             }
         }
+    }
 
-        timer.done();
-        if (Config.verbose >= 1) {
-            System.out.println("LEAVE: RTA");
-            System.out.println("Time: " + timer.getInclusiveTimeStr());
+    /**
+     * Processes the CFG of each method on the worklist, until it is empty.
+     */
+    protected void processMethodWorklist() {
+        while (!methodWorklist.isEmpty()) {
+            int n = methodWorklist.size();
+            jq_Method m = methodWorklist.remove(n - 1);
+            if (DEBUG) System.out.println("Processing CFG of " + m);
+            processMethod(m);
         }
-        staticReflectResolver = null; // no longer in use; stop referencing it
+    }
+
+    /**
+     * Resolves again the reflection sites of each reachable method whose
+     * earlier resolution was invalidated by the static reflection resolver.
+     * Does nothing unless reflection is resolved statically.
+     *
+     * @return true iff any method or instantiated class was newly discovered.
+     */
+    protected boolean reresolveStaticReflectSites() {
+        if (staticReflectResolver == null)
+            return false;
+        staticReflectResolver.startedNewIter();
+        int numMethods = methods.size();
+        int numAllocClasses = reachableAllocClasses.size();
+        List<jq_Method> stale = new ArrayList<jq_Method>();
+        for (jq_Method m : methods) {
+            if (!m.isAbstract() && !staticReflectResolved.contains(m))
+                stale.add(m);
+        }
+        for (jq_Method m : stale)
+            resolveStaticReflectSites(m);
+        return methods.size() != numMethods || reachableAllocClasses.size() != numAllocClasses;
     }
 
     /**
@@ -266,6 +305,21 @@ public class RTA implements ScopeBuilder {
         }
     }
 
+    /**
+     * Called whenever RTA deems a class instantiated, by a reachable
+     * new/newarray statement or due to reflection.
+     * Requests another iteration if it hasn't previously been seen.
+     *
+     * @return true iff the class hasn't previously been seen.
+     */
+    protected boolean visitAllocClass(jq_Reference r) {
+        if (reachableAllocClasses.add(r)) {
+            repeat = true;
+            return true;
+        }
+        return false;
+    }
+
     private static boolean isClassDefined(Quad q, jq_Reference r) {
         try {
             r.load(); // triggers NoClassDefFoundError if not found. Do this before adding to reflect.
@@ -294,8 +348,8 @@ public class RTA implements ScopeBuilder {
 
         reflect.addResolvedObjNewInstSite(q, r);
         visitClass(r);
-        if (reachableAllocClasses.add(r) ||
-                (staticReflectResolver != null && staticReflectResolver.needNewIter()))
+        visitAllocClass(r);
+        if (staticReflectResolver != null && staticReflectResolver.needNewIter())
             repeat = true;
         if (r instanceof jq_Class) {
             jq_Class c = (jq_Class) r;
@@ -320,8 +374,7 @@ public class RTA implements ScopeBuilder {
             return;
         reflect.addResolvedAryNewInstSite(q, r);
         visitClass(r);
-        if (reachableAllocClasses.add(r))
-            repeat = true;
+        visitAllocClass(r);
     }
 
     private void processResolvedConNewInstSite(Quad q, jq_Reference r) {
@@ -329,8 +382,7 @@ public class RTA implements ScopeBuilder {
             return;
         reflect.addResolvedConNewInstSite(q, r);
         visitClass(r);
-        if (reachableAllocClasses.add(r))
-            repeat = true;
+        visitAllocClass(r);
         jq_Class c = (jq_Class) r;
         jq_InstanceMethod[] meths = c.getDeclaredInstanceMethods();
         // this is imprecise in that we are visiting all constrs instead of the called one
@@ -344,7 +396,7 @@ public class RTA implements ScopeBuilder {
         }
     }
 
-    private void processMethod(jq_Method m) {
+    private void resolveStaticReflectSites(jq_Method m) {
         if (staticReflectResolved != null && staticReflectResolved.add(m)) {
             staticReflectResolver.run(m);
             Set<Pair<Quad, jq_Reference>> resolvedClsForNameSites =
@@ -356,6 +408,10 @@ public class RTA implements ScopeBuilder {
             for (Pair<Quad, jq_Reference> p : resolvedObjNewInstSites)
                 processResolvedObjNewInstSite(p.val0, p.val1);
         }
+    }
+
+    private void processMethod(jq_Method m) {
+        resolveStaticReflectSites(m);
         ControlFlowGraph cfg = m.getCFG();
         for (BasicBlock bb : cfg.reversePostOrder()) {
             for (Quad q : bb.getQuads()) {
@@ -377,13 +433,11 @@ public class RTA implements ScopeBuilder {
                 } else if (op instanceof New) {
                     jq_Class c = (jq_Class) New.getType(q).getType();
                     visitClass(c);
-                    if (reachableAllocClasses.add(c))
-                        repeat = true;
+                    visitAllocClass(c);
                 } else if (op instanceof NewArray) {
                     jq_Array a = (jq_Array) NewArray.getType(q).getType();
                     visitClass(a);
-                    if (reachableAllocClasses.add(a))
-                        repeat = true;
+                    visitAllocClass(a);
 /*
                 } else if (op instanceof Move) {
                     Operand ro = Move.getSrc(q);
@@ -449,7 +503,15 @@ public class RTA implements ScopeBuilder {
                 }
             }
         }
-        jq_NameAndDesc nd = n.getNameAndDesc();
+        dispatchVirtualInvk(c, n.getNameAndDesc());
+    }
+
+    /**
+     * Called for each reachable invokevirtual/invokeinterface site of a method
+     * nd declared in class/interface c.
+     * Visits the implementation of nd in each class instantiated so far.
+     */
+    protected void dispatchVirtualInvk(jq_Class c, jq_NameAndDesc nd) {
         boolean isInterface = c.isInterface();
         for (jq_Reference r : reachableAllocClasses) {
             if (r instanceof jq_Array)
@@ -458,15 +520,22 @@ public class RTA implements ScopeBuilder {
             assert (!d.isInterface());
             assert (!d.isAbstract());
             boolean matches = isInterface ? d.implementsInterface(c) : d.extendsClass(c);
-            if (matches) {
-                jq_InstanceMethod m2 = d.getVirtualMethod(nd);
-                if (m2 == null) {
-                    Messages.log(METHOD_NOT_FOUND_IN_SUBTYPE,
-                        nd.toString(), d.getName(), c.getName());
-                } else {
-                    visitMethod(m2);
-                }
-            }
+            if (matches)
+                visitVirtualMethod(d, c, nd);
+        }
+    }
+
+    /**
+     * Visits the implementation in class d of method nd invoked on
+     * class/interface c.
+     */
+    protected void visitVirtualMethod(jq_Class d, jq_Class c, jq_NameAndDesc nd) {
+        jq_InstanceMethod m2 = d.getVirtualMethod(nd);
+        if (m2 == null) {
+            Messages.log(METHOD_NOT_FOUND_IN_SUBTYPE,
+                nd.toString(), d.getName(), c.getName());
+        } else {
+            visitMethod(m2);
         }
     }
 
@@ -371,6 +371,7 @@ public class ClassicProject extends Project {
         timer.init();
         timer.pause();
         List<Object> consumedTrgts = taskToConsumedTrgtsMap.get(task);
+        List<ProgramRel> fusedRels = null;
         for (Object trgt : consumedTrgts) {
             if (isTrgtDone(trgt))
                 continue;
@@ -387,8 +388,17 @@ public class ClassicProject extends Project {
                 }
             }
             ITask task2 = getTaskProducingTrgt(trgt);
+            if (Config.fuseRels && isFusable(task2)) {
+                if (fusedRels == null)
+                    fusedRels = new ArrayList<ProgramRel>();
+                if (!fusedRels.contains(task2))
+                    fusedRels.add((ProgramRel) task2);
+                continue;
+            }
             runTask(task2);
         }
+        if (fusedRels != null)
+            runFusedRels(fusedRels);
         timer.resume();
         task.run();
         timer.done();
@@ -404,6 +414,55 @@ public class ClassicProject extends Project {
         }
     }
 
+    // a relation that only consumes domains and is filled by visiting the
+    // program can be filled along with other such relations
+    private boolean isFusable(ITask task) {
+        if (!(task instanceof ProgramRel))
+            return false;
+        ProgramRel rel = (ProgramRel) task;
+        if (!rel.isFilledByVisitor())
+            return false;
+        for (Object trgt : taskToConsumedTrgtsMap.get(task)) {
+            if (!(trgt instanceof ProgramDom))
+                return false;
+        }
+        List<Object> producedTrgts = taskToProducedTrgtsMap.get(task);
+        return producedTrgts.size() == 1 && producedTrgts.get(0) == rel;
+    }
+
+    private void runFusedRels(List<ProgramRel> rels) {
+        List<ProgramRel> todoRels = new ArrayList<ProgramRel>(rels.size());
+        for (ProgramRel rel : rels) {
+            // a task run since the relation was deferred may have produced it
+            if (isTaskDone(rel))
+                continue;
+            for (Object trgt : taskToConsumedTrgtsMap.get(rel)) {
+                if (!isTrgtDone(trgt))
+                    runTask(getTaskProducingTrgt(trgt));
+            }
+            todoRels.add(rel);
+        }
+        if (todoRels.size() <= 1) {
+            for (ProgramRel rel : todoRels)
+                runTask(rel);
+            return;
+        }
+        Timer timer = new Timer("fused rels");
+        if (Config.verbose >= 1)
+            System.out.println("ENTER: fused rels " + todoRels + " at " + (new Date()));
+        timer.init();
+        ProgramRel.fill(todoRels, Config.numFuseThreads);
+        timer.done();
+        if (Config.verbose >= 1) {
+            System.out.println("LEAVE: fused rels " + todoRels);
+            printTimer(timer);
+        }
+        for (ProgramRel rel : todoRels) {
+            setTaskDone(rel);
+            setTrgtDone(rel);
+        }
+    }
+
     private static void printTimer(Timer timer) {
         System.out.println("Exclusive time: " + timer.getExclusiveTimeStr());
         System.out.println("Inclusive time: " + timer.getInclusiveTimeStr());
@@ -35,6 +35,8 @@ public class Config {
     public final static String reflectKind = System.getProperty("chord.reflect.kind", "none");
     public final static String CHkind = System.getProperty("chord.ch.kind", "static");
     public final static String ssaKind = System.getProperty("chord.ssa.kind", "phi");
+    public final static int numCFGThreads = Integer.getInteger("chord.cfg.threads", 1);
+    public final static int numPrefetchThreads = Integer.getInteger("chord.prefetch.threads", 0);
     static {
         check(CHkind, new String[] { "static", "dynamic" }, "chord.ch.kind");
         check(reflectKind, new String[] { "none", "static", "dynamic", "static_cast" }, "chord.reflect.kind");
@@ -82,6 +84,8 @@ public class Config {
     public final static String stdDlogAnalysisPathName = System.getProperty("chord.std.dlog.analysis.path");
     public final static String extDlogAnalysisPathName = System.getProperty("chord.ext.dlog.analysis.path");
     public final static String dlogAnalysisPathName = System.getProperty("chord.dlog.analysis.path");
+    public final static boolean fuseRels = Utils.buildBoolProperty("chord.fuse.rels", false);
+    public final static int numFuseThreads = Integer.getInteger("chord.fuse.rels.threads", 1);
 
     // properties specifying configuration of instrumentation and dynamic analysis
 
@@ -102,6 +106,7 @@ public class Config {
     public final static boolean reuseScope = Utils.buildBoolProperty("chord.reuse.scope", false);
     public final static boolean reuseRels =Utils.buildBoolProperty("chord.reuse.rels", false);
     public final static boolean reuseTraces =Utils.buildBoolProperty("chord.reuse.traces", false);
+    public final static boolean reuseCFGs = Utils.buildBoolProperty("chord.reuse.cfgs", false);
 
     // properties concerning BDDs
 
@@ -122,6 +127,7 @@ public class Config {
     public final static String userClassesDirName = System.getProperty("chord.user.classes.dir", outRel2Abs("user_classes"));
     public final static String instrSchemeFileName = System.getProperty("chord.instr.scheme.file", outRel2Abs("scheme.ser"));
     public final static String traceFileName = System.getProperty("chord.trace.file", outRel2Abs("trace"));
+    public final static String cfgsDirName = System.getProperty("chord.cfgs.dir", outRel2Abs("cfgs"));
 
     static {
         Utils.mkdirs(outDirName);
@@ -179,6 +185,8 @@ public class Config {
         System.out.println("chord.reflect.kind: " + reflectKind);
         System.out.println("chord.ch.kind: " + CHkind);
         System.out.println("chord.ssa: " + ssaKind);
+        System.out.println("chord.cfg.threads: " + numCFGThreads);
+        System.out.println("chord.prefetch.threads: " + numPrefetchThreads);
         System.out.println("chord.std.scope.exclude: " + scopeStdExcludeStr);
         System.out.println("chord.ext.scope.exclude: " + scopeExtExcludeStr);
         System.out.println("chord.scope.exclude: " + scopeExcludeStr);
@@ -201,6 +209,8 @@ public class Config {
         System.out.println("chord.std.dlog.analysis.path: " + stdDlogAnalysisPathName);
         System.out.println("chord.ext.dlog.analysis.path: " + extDlogAnalysisPathName);
         System.out.println("chord.dlog.analysis.path: " + dlogAnalysisPathName);
+        System.out.println("chord.fuse.rels: " + fuseRels);
+        System.out.println("chord.fuse.rels.threads: " + numFuseThreads);
         System.out.println("chord.use.jvmti: " + useJvmti);
         System.out.println("chord.instr.kind: " + instrKind);
         System.out.println("chord.trace.kind: " + traceKind);
@@ -211,6 +221,7 @@ public class Config {
         System.out.println("chord.reuse.scope: " + reuseScope);
         System.out.println("chord.reuse.rels: " + reuseRels);
         System.out.println("chord.reuse.traces: " + reuseTraces);
+        System.out.println("chord.reuse.cfgs: " + reuseCFGs);
         System.out.println("chord.use.buddy: " + useBuddy);
         System.out.println("chord.bddbddb.max.heap: " + bddbddbMaxHeap);
     }
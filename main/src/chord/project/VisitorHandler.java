@@ -2,6 +2,8 @@ package chord.project;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import chord.program.Program;
 import chord.program.visitors.IAcqLockInstVisitor;
@@ -18,6 +20,7 @@ import chord.program.visitors.IRelLockInstVisitor;
 import chord.program.visitors.IReturnInstVisitor;
 import chord.program.visitors.ICastInstVisitor;
 import chord.project.ITask;
+import chord.util.Executor;
 import chord.util.IndexSet;
 
 import joeq.Class.jq_Reference;
@@ -90,15 +93,16 @@ public class VisitorHandler {
                 jq_Method m = (jq_Method) o;
                 if (!reachableMethods.contains(m))
                     continue;
-                for (IMethodVisitor mv : mvs) {
+                for (IMethodVisitor mv : mvs)
                     mv.visit(m);
-                    if (!doCFGs)
-                        continue;
-                    if (m.isAbstract())
-                        continue;
-                    ControlFlowGraph cfg = m.getCFG();
-                    visitInsts(cfg);
-                }
+                // visit the body once for all tasks, each of which has
+                // visited the method above
+                if (!doCFGs)
+                    continue;
+                if (m.isAbstract())
+                    continue;
+                ControlFlowGraph cfg = m.getCFG();
+                visitInsts(cfg);
             }
         }
     }
@@ -164,6 +168,85 @@ public class VisitorHandler {
     private IndexSet<jq_Method> reachableMethods;
 
     public void visitProgram() {
+        init();
+        if (cvs != null) {
+            IndexSet<jq_Reference> classes = Program.g().getClasses();
+            for (jq_Reference r : classes) {
+                if (r instanceof jq_Array)
+                    continue;
+                visitClass((jq_Class) r);
+            }
+        }
+    }
+
+    /**
+     * Visits the program with each of the given handlers on a separate
+     * thread, dividing the classes in the program among them.
+     * <p>
+     * Each class is visited (along with its fields and methods) by exactly
+     * one of the handlers, so a task registered with a handler must not
+     * depend upon visiting all classes itself.  The given handlers must not
+     * share any task.
+     *
+     * @param handlers The handlers to visit the program with.
+     */
+    public static void visitProgram(List<VisitorHandler> handlers) {
+        int n = handlers.size();
+        if (n == 1) {
+            handlers.get(0).visitProgram();
+            return;
+        }
+        Program program = Program.g();
+        // build the program's classes and methods before any thread needs them
+        program.getMethods();
+        IndexSet<jq_Reference> classes = program.getClasses();
+        final List<jq_Class> classList = new ArrayList<jq_Class>(classes.size());
+        for (jq_Reference r : classes) {
+            if (!(r instanceof jq_Array))
+                classList.add((jq_Class) r);
+        }
+        final AtomicInteger next = new AtomicInteger();
+        final Throwable[] failure = new Throwable[1];
+        Executor executor = new Executor(false);
+        for (final VisitorHandler vh : handlers) {
+            vh.init();
+            if (vh.cvs == null)
+                continue;
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        int numClasses = classList.size();
+                        for (int i; (i = next.getAndIncrement()) < numClasses;)
+                            vh.visitClass(classList.get(i));
+                    } catch (Throwable ex) {
+                        synchronized (failure) {
+                            failure[0] = ex;
+                        }
+                    }
+                }
+            });
+        }
+        try {
+            executor.waitForCompletion();
+        } catch (InterruptedException ex) {
+            Messages.fatal(ex);
+        }
+        if (failure[0] != null)
+            Messages.fatal(failure[0]);
+    }
+
+    private void visitClass(jq_Class c) {
+        for (IClassVisitor cv : cvs)
+            cv.visit(c);
+        if (fvs != null)
+            visitFields(c);
+        if (mvs != null)
+            visitMethods(c);
+    }
+
+    private void init() {
+        if (reachableMethods != null)
+            return;
         for (ITask task : tasks) {
             if (task instanceof IClassVisitor) {
                 if (cvs == null)
@@ -231,26 +314,10 @@ public class VisitorHandler {
                 relivs.add((IRelLockInstVisitor) task);
             }
         }
-        Program program = Program.g();
-        reachableMethods = program.getMethods();
+        reachableMethods = Program.g().getMethods();
         doCFGs = (ivs != null) || (hivs != null) ||
             (iivs != null) || (nivs != null) || (mivs != null) ||
             (civs != null) || (pivs != null) || (rivs != null) ||
             (acqivs != null) || (relivs != null);
-        if (cvs != null) {
-            IndexSet<jq_Reference> classes = program.getClasses();
-            for (jq_Reference r : classes) {
-                if (r instanceof jq_Array)
-                    continue;
-                jq_Class c = (jq_Class) r;
-                for (IClassVisitor cv : cvs)
-                    cv.visit(c);
-                if (fvs != null)
-                    visitFields(c);
-                if (mvs != null)
-                    visitMethods(c);
-            }
-        }
-        
     }
 }
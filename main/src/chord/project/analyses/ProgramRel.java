@@ -1,5 +1,6 @@
 package chord.project.analyses;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.io.File;
 
@@ -91,6 +92,86 @@ public class ProgramRel extends Rel implements ITask {
                 "' must override method fill().");
         }
     }
+    /**
+     * Determines whether this relation is filled by visiting the program,
+     * i.e., it is a visitor that overrides neither {@link #run()} nor
+     * {@link #fill()}, so that it can be filled along with other such
+     * relations by {@link #fill(List, int)}.
+     */
+    public boolean isFilledByVisitor() {
+        return (this instanceof IClassVisitor) &&
+            declaresMethod("run") == ProgramRel.class &&
+            declaresMethod("fill") == ProgramRel.class;
+    }
+    private Class<?> declaresMethod(String name) {
+        try {
+            return getClass().getMethod(name).getDeclaringClass();
+        } catch (NoSuchMethodException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+    /**
+     * Fills and saves the given relations in a single traversal of the
+     * program, instead of one traversal per relation.
+     * <p>
+     * If more than one thread is specified, the classes of the program are
+     * divided among the threads, each of which adds tuples to its own
+     * instance of each relation; the tuples are added to the given
+     * relations once all classes are visited.  This requires that the
+     * tuples a relation adds while visiting a class do not depend upon the
+     * classes visited earlier, and is not done if any of the relations
+     * overrides {@link #save()}.
+     *
+     * @param rels The relations to fill, each of which is filled by visiting
+     *        the program (see {@link #isFilledByVisitor()}).
+     * @param numThreads The number of threads to visit the program with.
+     */
+    public static void fill(List<ProgramRel> rels, int numThreads) {
+        for (ProgramRel rel : rels) {
+            if (numThreads > 1 && rel.declaresMethod("save") != ProgramRel.class)
+                numThreads = 1;
+            rel.zero();
+            rel.init();
+        }
+        if (numThreads <= 1) {
+            VisitorHandler vh = new VisitorHandler(new ArrayList<ITask>(rels));
+            vh.visitProgram();
+        } else {
+            int n = rels.size();
+            List<List<ProgramRel>> shards = new ArrayList<List<ProgramRel>>(numThreads);
+            List<VisitorHandler> handlers = new ArrayList<VisitorHandler>(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                List<ProgramRel> shard = new ArrayList<ProgramRel>(n);
+                for (ProgramRel rel : rels)
+                    shard.add(rel.newShard());
+                shards.add(shard);
+                handlers.add(new VisitorHandler(new ArrayList<ITask>(shard)));
+            }
+            VisitorHandler.visitProgram(handlers);
+            for (List<ProgramRel> shard : shards) {
+                for (int j = 0; j < n; j++)
+                    rels.get(j).addBufferedTuples(shard.get(j));
+            }
+        }
+        for (ProgramRel rel : rels)
+            rel.save();
+    }
+    // a fresh instance of this relation that buffers the tuples added to it
+    private ProgramRel newShard() {
+        ProgramRel rel;
+        try {
+            rel = getClass().newInstance();
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+        rel.setName(name);
+        rel.setSign(sign);
+        rel.setDoms(doms);
+        rel.consumes = consumes;
+        rel.bufferTuples();
+        rel.init();
+        return rel;
+    }
     public void print() {
         super.print(Config.outDirName);
     }
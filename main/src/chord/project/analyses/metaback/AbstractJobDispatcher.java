@@ -7,6 +7,7 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,6 +18,7 @@ import chord.project.analyses.metaback.dnf.DNF;
 import chord.project.analyses.parallelizer.JobDispatcher;
 import chord.project.analyses.parallelizer.ParallelAnalysis;
 import chord.project.analyses.parallelizer.Scenario;
+import chord.project.analyses.rhs.MemoCache;
 import chord.util.Execution;
 import chord.util.Timer;
 import chord.util.Utils;
@@ -28,7 +30,10 @@ import chord.util.Utils;
  * 
  */
 public abstract class AbstractJobDispatcher implements JobDispatcher {
+	// ANCs are interned (see DNF.intern()), so queries with equal ANCs share them
 	protected Map<Query, DNF> ancs;
+	// results of anc.intersect(nc) on interned ANCs and NCs
+	private MemoCache<DNF, DNF> intersectCache;
 	protected TObjectIntHashMap<Query> iterMap;
 	protected Map<Abstraction,Set<Query>> provenQs;
 	protected Map<Query, Boolean> processMap;
@@ -71,6 +76,9 @@ public abstract class AbstractJobDispatcher implements JobDispatcher {
 		absFac = getAbsFactory();
 		qFac = getQueryFactory();
 		ancs = this.getInitialANCS();
+		for (Map.Entry<Query, DNF> entry : ancs.entrySet())
+			entry.setValue(entry.getValue().intern());
+		intersectCache = new MemoCache<DNF, DNF>(1024);
 		init = true;
 	}
 	
@@ -128,6 +136,8 @@ public abstract class AbstractJobDispatcher implements JobDispatcher {
 			jobPatchSize = newJobPatchSize;
 		}
 		
+		// queries with the same ANC share it, so build each abstraction once
+		Map<DNF, Abstraction> ancToAbs = new IdentityHashMap<DNF, Abstraction>();
 		for (Map.Entry<Query, DNF> entry : ancs.entrySet()) {
 			DNF anc = entry.getValue();
 			Query q = entry.getKey();
@@ -136,7 +146,11 @@ public abstract class AbstractJobDispatcher implements JobDispatcher {
 				continue;
 			if (anc.isFalse())
 				throw new RuntimeException("Something wrong with NC update!");
-			Abstraction abs = absFac.genAbsFromNC(anc);
+			Abstraction abs = ancToAbs.get(anc);
+			if (abs == null) {
+				abs = absFac.genAbsFromNC(anc);
+				ancToAbs.put(anc, abs);
+			}
 			List<Set<Query>> qq = jobPool.get(abs);
 			if(qq == null){
 				qq = new ArrayList<Set<Query>>();
@@ -192,9 +206,13 @@ public abstract class AbstractJobDispatcher implements JobDispatcher {
 				timedQs.add(q);
 			}
 			if (qr.getResult() == QueryResult.REFINE) {
-				DNF nc = qr.getNC();
+				DNF nc = qr.getNC().intern();
 				DNF anc = ancs.get(q);
-				DNF nanc = anc.intersect(nc);
+				DNF nanc = intersectCache.get(anc, nc);
+				if (nanc == null) {
+					nanc = anc.intersect(nc).intern();
+					intersectCache.put(anc, nc, nanc);
+				}
 				if (nanc.isFalse()) {// Impossible result
 					ancs.remove(q);
 					impossiQs.add(q);
@@ -1,20 +1,49 @@
 package chord.project.analyses.metaback.dnf;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import chord.project.analyses.rhs.Interner;
 import chord.util.Utils;
 
 /**
  * The clause of a DNF, which is a conjunctive clause.
- * 
+ *
+ * Each literal v=d is packed into a long, holding the numbers given to v and
+ * d by a global table in its high and low 32 bits respectively, and the
+ * literals are kept sorted, so a clause has at most one literal per variable
+ * and intersection and containment are merges of two sorted arrays. A 64-bit
+ * signature of the literals rules out most containment checks without
+ * looking at them.
+ *
+ * A clause can be interned (see {@link #intern()}), after which it must not
+ * be changed: DNFs intern the clauses added to them, so equal clauses of all
+ * DNFs share one instance.
+ *
  * @author xin
- * 
+ *
  */
 public class Clause implements Cloneable {
-	private Map<Variable, Domain> literals;
+	private static final Interner<Clause> clauses = new Interner<Clause>();
+	private static final Map<Variable, Integer> varToId = new HashMap<Variable, Integer>();
+	private static final List<Variable> idToVar = new ArrayList<Variable>();
+	private static final Map<Domain, Integer> domToId = new HashMap<Domain, Integer>();
+	private static final List<Domain> idToDom = new ArrayList<Domain>();
+	private static final long[] NO_LITS = new long[0];
+	private static int numInterned = 0;
+
+	private long[] lits;
+	private long sig;
 	private boolean ifTrue;
+	// non-zero iff this clause is interned
+	private int id;
+	private int hash;
+	private Map<Variable, Domain> literals;
 	private static String CSEP = "#AND#";
 	private static String LSEP = "#=#";
 
@@ -22,39 +51,42 @@ public class Clause implements Cloneable {
 	 * Construct a true clause
 	 */
 	public Clause() {
-		literals = new HashMap<Variable, Domain>();
+		lits = NO_LITS;
 		ifTrue = true;
 	}
 
 	public Clause(boolean ifTrue) {
-		literals = new HashMap<Variable, Domain>();
+		lits = NO_LITS;
 		this.ifTrue = ifTrue;
 	}
 
 	public Clause(Map<Variable, Domain> literals) {
-		this.literals = new HashMap<Variable, Domain>(literals);
-		if (literals.size() == 0)
-			ifTrue = true;
-		else
-			ifTrue = false;
+		this(literals, literals.size() == 0);
 	}
 
 	public Clause(Map<Variable, Domain> literals, boolean ifTrue) {
-		this.literals = new HashMap<Variable, Domain>(literals);
+		lits = NO_LITS;
 		this.ifTrue = ifTrue;
+		for (Map.Entry<Variable, Domain> entry : literals.entrySet())
+			put(entry.getKey(), entry.getValue());
 	}
 
 	public Clause(DNFFactory fac, String line) {
 		String tokens[] = Utils.split(line, CSEP, true, true, -1);
 		this.ifTrue = Boolean.parseBoolean(tokens[0]);
-		literals = new HashMap<Variable, Domain>();
+		lits = NO_LITS;
 		for (int i = 1; i < tokens.length; i++) {
 			String[] literal = Utils.split(tokens[i], LSEP, true, true, -1);
-			literals.put(fac.genVarFromStr(literal[0]),
-					fac.genDomainFromStr(literal[1]));
+			put(fac.genVarFromStr(literal[0]), fac.genDomainFromStr(literal[1]));
 		}
 	}
 
+	private Clause(long[] lits, long sig, boolean ifTrue) {
+		this.lits = lits;
+		this.sig = sig;
+		this.ifTrue = ifTrue;
+	}
+
 	public static void setCSEP(String sep) {
 		CSEP = sep;
 	}
@@ -63,44 +95,173 @@ public class Clause implements Cloneable {
 		LSEP = sep;
 	}
 
+	private static synchronized int getVarId(Variable v) {
+		Integer i = varToId.get(v);
+		if (i == null) {
+			i = idToVar.size();
+			varToId.put(v, i);
+			idToVar.add(v);
+		}
+		return i;
+	}
+
+	private static synchronized int getDomId(Domain d) {
+		Integer i = domToId.get(d);
+		if (i == null) {
+			i = idToDom.size();
+			domToId.put(d, i);
+			idToDom.add(d);
+		}
+		return i;
+	}
+
+	private static synchronized Variable getVar(long lit) {
+		return idToVar.get((int) (lit >>> 32));
+	}
+
+	private static synchronized Domain getDom(long lit) {
+		return idToDom.get((int) lit);
+	}
+
+	private static int getVarId(long lit) {
+		return (int) (lit >>> 32);
+	}
+
+	private static long sigBit(long lit) {
+		long h = lit * 0x9E3779B97F4A7C15L;
+		return 1L << (h >>> 58);
+	}
+
+	/**
+	 * Put the literal v=d in the place of the literal of v, if any
+	 */
+	private void put(Variable v, Domain d) {
+		long lit = ((long) getVarId(v) << 32) | getDomId(d);
+		int i = find(getVarId(lit));
+		if (i >= 0) {
+			lits[i] = lit;
+			sig = 0;
+			for (long l : lits)
+				sig |= sigBit(l);
+			return;
+		}
+		insert(-(i + 1), lit);
+	}
+
+	private void insert(int i, long lit) {
+		int n = lits.length;
+		long[] lits2 = new long[n + 1];
+		System.arraycopy(lits, 0, lits2, 0, i);
+		lits2[i] = lit;
+		System.arraycopy(lits, i, lits2, i + 1, n - i);
+		lits = lits2;
+		sig |= sigBit(lit);
+	}
+
+	// binary search for the literal of the given variable
+	private int find(int varId) {
+		int lo = 0, hi = lits.length - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int midId = getVarId(lits[mid]);
+			if (midId < varId)
+				lo = mid + 1;
+			else if (midId > varId)
+				hi = mid - 1;
+			else
+				return mid;
+		}
+		return -(lo + 1);
+	}
+
+	private void checkMutable() {
+		if (id != 0)
+			throw new IllegalStateException("Interned clauses cannot be changed");
+	}
+
+	/**
+	 * Return the canonical instance of this clause, which must not be changed
+	 * afterwards.
+	 *
+	 * @return
+	 */
+	public Clause intern() {
+		if (id != 0)
+			return this;
+		synchronized (clauses) {
+			Clause c = clauses.intern(this);
+			if (c == this) {
+				literals = null;
+				id = ++numInterned;
+			}
+			return c;
+		}
+	}
+
+	/**
+	 * A number identifying this clause among all clauses, given to equal
+	 * clauses in the order in which they are first interned. Comparators can
+	 * use it to order clauses that are otherwise equivalent. Only interned
+	 * clauses have ids, which holds for all the clauses of a DNF.
+	 *
+	 * @return
+	 */
+	public int getId() {
+		if (id == 0)
+			throw new IllegalStateException("Only interned clauses have ids");
+		return id;
+	}
+
 	/**
 	 * Return whether this Clause represents FAlSE. This == FAlSE iff
 	 * literals.size()==0 && ifTrue = false
-	 * 
+	 *
 	 * @return
 	 */
 	public boolean isFalse() {
-		return literals.isEmpty() && ifTrue == false;
+		return lits.length == 0 && ifTrue == false;
 	}
 
 	public boolean isTrue() {
-		return literals.isEmpty() && ifTrue;
+		return lits.length == 0 && ifTrue;
 	}
 
 	/**
 	 * Add o=v to this clause, the effect is like a intersection. It has no
 	 * effect on a false Clause
-	 * 
+	 *
 	 * @param o
 	 * @param v
 	 */
 	public void addLiteral(Variable o, Domain v) {
+		checkMutable();
 		if (this.isFalse())
 			return;
-		Domain existValue = literals.get(o);
-		if (existValue != null)
-			if (existValue.equals(v))
-				return;
-			else {
-				literals.clear();
-				ifTrue = false;
+		literals = null;
+		long lit = ((long) getVarId(o) << 32) | getDomId(v);
+		int i = find(getVarId(lit));
+		if (i >= 0) {
+			if (lits[i] == lit)
 				return;
-			}
-		literals.put(o, v);
+			lits = NO_LITS;
+			sig = 0;
+			ifTrue = false;
+			return;
+		}
+		insert(-(i + 1), lit);
 	}
 
 	public Map<Variable, Domain> getLiterals() {
-		return Collections.unmodifiableMap(literals);
+		Map<Variable, Domain> ret = literals;
+		if (ret == null) {
+			ret = new LinkedHashMap<Variable, Domain>();
+			for (long lit : lits)
+				ret.put(getVar(lit), getDom(lit));
+			ret = Collections.unmodifiableMap(ret);
+			if (id != 0)
+				literals = ret;
+		}
+		return ret;
 	}
 
 	public Clause intersect(Clause other) {
@@ -110,14 +271,28 @@ public class Clause implements Cloneable {
 			return other.clone();
 		if (other.isTrue())
 			return this.clone();
-		Clause ret = this.clone();
-		for (Map.Entry<Variable, Domain> entry : other.literals.entrySet()) {
-			if (ret.isFalse()) {
-				break;
+		long[] a = lits, b = other.lits;
+		int n1 = a.length, n2 = b.length;
+		long[] c = new long[n1 + n2];
+		int i = 0, j = 0, k = 0;
+		while (i < n1 && j < n2) {
+			int v1 = getVarId(a[i]), v2 = getVarId(b[j]);
+			if (v1 < v2)
+				c[k++] = a[i++];
+			else if (v1 > v2)
+				c[k++] = b[j++];
+			else {
+				if (a[i] != b[j])
+					return new Clause(false);
+				c[k++] = a[i++];
+				j++;
 			}
-			ret.addLiteral(entry.getKey(), entry.getValue());
 		}
-		return ret;
+		while (i < n1)
+			c[k++] = a[i++];
+		while (j < n2)
+			c[k++] = b[j++];
+		return new Clause(k == c.length ? c : Arrays.copyOf(c, k), sig | other.sig, ifTrue);
 	}
 
 	public boolean contains(Clause other) {
@@ -132,31 +307,41 @@ public class Clause implements Cloneable {
 			return false;
 		if(other.isFalse())
 			return true;
-		if (this.literals.size() > other.literals.size())
+		if (this == other)
+			return true;
+		long[] a = lits, b = other.lits;
+		int n1 = a.length, n2 = b.length;
+		if (n1 > n2 || (sig & ~other.sig) != 0)
 			return false;
-		else
-			for (Map.Entry<Variable, Domain> entry : literals.entrySet()) {
-				Domain v = other.literals.get(entry.getKey());
-				if (v == null)
-					return false;
-				else if (!entry.getValue().equals(v))
-					return false;
-			}
+		// each literal of this clause must be a literal of other
+		int j = 0;
+		for (int i = 0; i < n1; i++) {
+			long x = a[i];
+			int v = getVarId(x);
+			while (j < n2 && getVarId(b[j]) < v)
+				j++;
+			if (j == n2 || b[j] != x)
+				return false;
+			j++;
+		}
 		return true;
 	}
 
 	public Clause clone() {
-		Clause ret = new Clause(this.literals, this.ifTrue);
-		return ret;
+		return new Clause(lits.clone(), sig, ifTrue);
 	}
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + (ifTrue ? 1231 : 1237);
-		result = prime * result
-				+ ((literals == null) ? 0 : literals.hashCode());
+		int result = hash;
+		if (result == 0) {
+			final int prime = 31;
+			result = 1;
+			result = prime * result + (ifTrue ? 1231 : 1237);
+			result = prime * result + Arrays.hashCode(lits);
+			if (id != 0)
+				hash = result;
+		}
 		return result;
 	}
 
@@ -169,14 +354,13 @@ public class Clause implements Cloneable {
 		if (getClass() != obj.getClass())
 			return false;
 		Clause other = (Clause) obj;
+		if (id != 0 && other.id != 0)
+			return false;
 		if (ifTrue != other.ifTrue)
 			return false;
-		if (literals == null) {
-			if (other.literals != null)
-				return false;
-		} else if (!literals.equals(other.literals))
+		if (sig != other.sig)
 			return false;
-		return true;
+		return Arrays.equals(lits, other.lits);
 	}
 
 	@Override
@@ -187,7 +371,7 @@ public class Clause implements Cloneable {
 			return "false";
 		StringBuffer sb = new StringBuffer();
 		boolean ifFirst = true;
-		for (Map.Entry<Variable, Domain> l : literals.entrySet()) {
+		for (Map.Entry<Variable, Domain> l : getLiterals().entrySet()) {
 			if (ifFirst)
 				ifFirst = false;
 			else
@@ -200,18 +384,18 @@ public class Clause implements Cloneable {
 	}
 
 	public int size() {
-		return literals.size();
+		return lits.length;
 	}
 
 	/**
 	 * Encode current Clause as a String. Format:ifTrueC[SEPVariableLSEPDomain]?
-	 * 
+	 *
 	 * @return
 	 */
 	public String encode() {
 		StringBuffer sb = new StringBuffer();
 		sb.append(ifTrue);
-		for (Map.Entry<Variable, Domain> l : literals.entrySet()) {
+		for (Map.Entry<Variable, Domain> l : getLiterals().entrySet()) {
 			sb.append(CSEP);
 			sb.append(l.getKey().encode());
 			sb.append(LSEP);
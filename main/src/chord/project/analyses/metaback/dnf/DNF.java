@@ -1,23 +1,34 @@
 package chord.project.analyses.metaback.dnf;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Iterator;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
+import chord.project.analyses.rhs.Interner;
 import chord.util.Utils;
 
 /**
  * Represents a disjunctive normal form
  * 
+ * The clauses of a DNF are interned (see {@link Clause#intern()}), so equal
+ * clauses of different DNFs are stored once. A DNF can itself be interned
+ * (see {@link #intern()}), after which it is read-only; clients keeping many
+ * DNFs alive at a time, such as the ANCs of all queries in
+ * {@link chord.project.analyses.metaback.AbstractJobDispatcher}, intern them
+ * so that identical DNFs share storage.
+ * 
  * @author xin
  * 
  */
 public class DNF implements Cloneable {
+	private static final Interner<DNF> dnfs = new Interner<DNF>();
 	private SortedSet<Clause> clauses;
 	private boolean ifTrue;
+	private boolean interned;
+	private int hash;
 	private static String SEP = "#OR#";
 
 	/**
@@ -45,7 +56,7 @@ public class DNF implements Cloneable {
 		ifTrue = false;
 		Clause c = new Clause();
 		c.addLiteral(v, d);
-		clauses.add(c);
+		clauses.add(c.intern());
 	}
 
 	public DNF(Comparator<Clause> cmp, DNFFactory fac, String line) {
@@ -54,7 +65,7 @@ public class DNF implements Cloneable {
 		clauses = new TreeSet<Clause>(cmp);
 		for(int i = 1;i < tokens.length;i++){
 			Clause c = new Clause(fac,tokens[i]);
-			clauses.add(c);
+			clauses.add(c.intern());
 		}
 	}
 
@@ -75,18 +86,43 @@ public class DNF implements Cloneable {
 	}
 
 	public DNF(SortedSet<Clause> clauses, boolean ifTrue) {
-		this.clauses = new TreeSet<Clause>(clauses);
+		this.clauses = copy(clauses);
 		this.ifTrue = ifTrue;
 	}
 
 	public DNF(SortedSet<Clause> clauses) {
-		this.clauses = new TreeSet<Clause>(clauses);
+		this.clauses = copy(clauses);
 		if (clauses.size() == 0)
 			this.ifTrue = false;
 		else
 			this.ifTrue = true;
 	}
 
+	private static SortedSet<Clause> copy(SortedSet<Clause> clauses) {
+		SortedSet<Clause> ret = new TreeSet<Clause>(clauses.comparator());
+		for (Clause c : clauses)
+			ret.add(c.intern());
+		return ret;
+	}
+
+	/**
+	 * Return the canonical instance of this DNF, which is read-only.
+	 * 
+	 * @return
+	 */
+	public DNF intern() {
+		if (interned)
+			return this;
+		synchronized (dnfs) {
+			DNF ret = dnfs.intern(this);
+			if (ret == this) {
+				clauses = Collections.unmodifiableSortedSet(clauses);
+				interned = true;
+			}
+			return ret;
+		}
+	}
+
 	/**
 	 * How to abbreviate the disjunction is a problem here. Currently I only use
 	 * a simple optimization: detecting containing relations between clauses.
@@ -94,6 +130,8 @@ public class DNF implements Cloneable {
 	 * @param s
 	 */
 	public void addClause(Clause s) {
+		if (interned)
+			throw new IllegalStateException("Interned DNFs cannot be changed");
 		if(this.isTrue())//Here actually add is like a join function
 			return;
 		if (s.isFalse())
@@ -103,13 +141,15 @@ public class DNF implements Cloneable {
 			ifTrue = true;
 			return;
 		}
-		Set<Clause> clsRmv = new HashSet<Clause>();
+		s = s.intern();
+		// Clause.contains filters on clause sizes and literal signatures
+		// before looking at literals, so most pairs are ruled out cheaply
 		for (Clause s1 : clauses)
 			if (s1.contains(s))
 				return;
-			else if (s.contains(s1))
-				clsRmv.add(s1);
-		clauses.removeAll(clsRmv);
+		for (Iterator<Clause> it = clauses.iterator(); it.hasNext();)
+			if (s.contains(it.next()))
+				it.remove();
 		clauses.add(s);
 		ifTrue = false;
 	}
@@ -196,7 +236,7 @@ public class DNF implements Cloneable {
 		return ret;
 	}
 
-	// TODO This is not a deep clone, could there be bugs?
+	// Not a deep clone, but clauses are interned and never changed
 	public DNF clone() {
 		return new DNF(this.clauses, ifTrue);
 	}
@@ -207,10 +247,15 @@ public class DNF implements Cloneable {
 
 	@Override
 	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result + ((clauses == null) ? 0 : clauses.hashCode());
-		result = prime * result + (ifTrue ? 1231 : 1237);
+		int result = hash;
+		if (result == 0) {
+			final int prime = 31;
+			result = 1;
+			result = prime * result + ((clauses == null) ? 0 : clauses.hashCode());
+			result = prime * result + (ifTrue ? 1231 : 1237);
+			if (interned)
+				hash = result;
+		}
 		return result;
 	}
 
@@ -223,6 +268,8 @@ public class DNF implements Cloneable {
 		if (getClass() != obj.getClass())
 			return false;
 		DNF other = (DNF) obj;
+		if (interned && other.interned)
+			return false;
 		if (clauses == null) {
 			if (other.clauses != null)
 				return false;
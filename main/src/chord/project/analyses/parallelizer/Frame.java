@@ -0,0 +1,137 @@
+package chord.project.analyses.parallelizer;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * A message exchanged between the Master and a worker over a persistent connection.
+ *
+ * On the wire, a frame is its length in bytes followed by its kind, the ID of the
+ * worker, an integer argument, and a list of (scenario ID, text) pairs, where each
+ * text is itself its length in bytes followed by its UTF-8 encoding.
+ *
+ * Protocol (worker request => master reply):
+ * - ID => ID with the worker ID, or EXIT
+ * - GET with the number of jobs wanted => APPLY with up to that many jobs, WAIT, or EXIT
+ * - PUT with the results of the jobs last applied => OK
+ * - HEARTBEAT, sent periodically while the worker is connected => no reply
+ */
+final class Frame {
+	static final byte ID = 0;
+	static final byte GET = 1;
+	static final byte PUT = 2;
+	static final byte APPLY = 3;
+	static final byte WAIT = 4;
+	static final byte EXIT = 5;
+	static final byte OK = 6;
+	static final byte HEARTBEAT = 7;
+
+	private static final int[] NO_IDS = new int[0];
+	private static final String[] NO_TEXTS = new String[0];
+
+	final byte kind;
+	final int wID;
+	final int arg;
+	final int[] ids;
+	final String[] texts;
+
+	Frame(byte kind, int wID, int arg) {
+		this(kind, wID, arg, NO_IDS, NO_TEXTS);
+	}
+
+	Frame(byte kind, int wID, int arg, int[] ids, String[] texts) {
+		assert (ids.length == texts.length);
+		this.kind = kind;
+		this.wID = wID;
+		this.arg = arg;
+		this.ids = ids;
+		this.texts = texts;
+	}
+
+	int size() { return ids.length; }
+
+	byte[] toBytes() {
+		byte[][] bytes = new byte[texts.length][];
+		int len = 1 + 4 + 4 + 4;
+		for (int i = 0; i < texts.length; i++) {
+			bytes[i] = utf8(texts[i]);
+			len += 4 + 4 + bytes[i].length;
+		}
+		byte[] buf = new byte[4 + len];
+		int pos = putInt(buf, 0, len);
+		buf[pos++] = kind;
+		pos = putInt(buf, pos, wID);
+		pos = putInt(buf, pos, arg);
+		pos = putInt(buf, pos, ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			pos = putInt(buf, pos, ids[i]);
+			pos = putInt(buf, pos, bytes[i].length);
+			System.arraycopy(bytes[i], 0, buf, pos, bytes[i].length);
+			pos += bytes[i].length;
+		}
+		return buf;
+	}
+
+	void write(DataOutputStream out) throws IOException {
+		out.write(toBytes());
+		out.flush();
+	}
+
+	static Frame read(DataInputStream in) throws IOException {
+		int len = in.readInt();
+		if (len < 13)
+			throw new IOException("Malformed frame of length " + len);
+		byte[] buf = new byte[len];
+		in.readFully(buf);
+		return fromBytes(buf);
+	}
+
+	/**
+	 * Decodes a frame from its bytes, excluding the leading length.
+	 */
+	static Frame fromBytes(byte[] buf) throws IOException {
+		try {
+			int pos = 0;
+			byte kind = buf[pos++];
+			int wID = getInt(buf, pos); pos += 4;
+			int arg = getInt(buf, pos); pos += 4;
+			int n = getInt(buf, pos); pos += 4;
+			if (n < 0)
+				throw new IOException("Malformed frame with " + n + " entries");
+			int[] ids = new int[n];
+			String[] texts = new String[n];
+			for (int i = 0; i < n; i++) {
+				ids[i] = getInt(buf, pos); pos += 4;
+				int m = getInt(buf, pos); pos += 4;
+				texts[i] = new String(buf, pos, m, "UTF-8");
+				pos += m;
+			}
+			return new Frame(kind, wID, arg, ids, texts);
+		} catch (IndexOutOfBoundsException e) {
+			throw new IOException("Truncated frame");
+		}
+	}
+
+	private static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static int putInt(byte[] buf, int pos, int v) {
+		buf[pos] = (byte) (v >>> 24);
+		buf[pos + 1] = (byte) (v >>> 16);
+		buf[pos + 2] = (byte) (v >>> 8);
+		buf[pos + 3] = (byte) v;
+		return pos + 4;
+	}
+
+	static int getInt(byte[] buf, int pos) {
+		return ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16) |
+			((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+	}
+}
@@ -1,33 +1,97 @@
 package chord.project.analyses.parallelizer;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import chord.util.Execution;
-import chord.util.Utils;
 
 /**
  * Class implementing Master functionality.
+ *
+ * Each worker keeps a single connection to the Master for its whole lifetime, over
+ * which it exchanges frames (see {@link Frame}) with the Master.  The Master runs two
+ * threads:
+ * - an event loop, which multiplexes all connections with a selector, and queues each
+ *   frame read from a worker as a request for the dispatcher thread, and
+ * - the dispatcher thread, which alone calls the dispatcher and keeps the state of
+ *   workers and scenarios, and queues each reply on the connection of its worker.
+ * So a slow worker never holds up the others.  A GET for which the dispatcher has no
+ * job is held till a job becomes available (typically when another worker returns a
+ * result) or waitTimeOut milliseconds elapse.
+ *
+ * Workers send heartbeats while they run jobs; a worker that sends nothing for
+ * workerDeadTimeOut milliseconds is declared dead, its connection is closed, and its
+ * scenarios are reported to the dispatcher as errors.  A worker that takes longer than
+ * workerDataTransferTimeOut milliseconds to send the rest of a frame once it has begun
+ * is disconnected likewise.
+ *
+ * Throughput metrics (jobs/sec, queue depth, mean latency per worker) are written into
+ * the Execution output every second.
+ *
+ * If the Master was given the local workers it started (see setLocalWorkers()), it fails
+ * once no worker is connected and all of them have exited, since no other worker will
+ * ever connect.
  */
 public class Master {
 	boolean shouldExit;
 	Execution X = Execution.v();
 	int port; // Port that Master listens on
 	JobDispatcher dispatcher;
-	int workerDataTransferTimeOut, workerDeadTimeOut; 
+	int workerDataTransferTimeOut, workerDeadTimeOut;
+
+	// State of workers and scenarios, only accessed by the dispatcher thread
 	HashMap<Integer,Scenario> inprogress = new HashMap<Integer,Scenario>(); // Map from Scenario ID to Scenario
 	HashMap<Integer,Long> lastContact = new HashMap<Integer, Long>();
-	HashMap<Integer,Integer> workerToScenarioMap = new HashMap<Integer, Integer>(); // Map from Worker ID to assigned Scenario ID
+	HashMap<Integer,Set<Integer>> workerToScenarioMap = new HashMap<Integer, Set<Integer>>(); // Map from Worker ID to assigned Scenario IDs
+	private HashMap<Integer,Conn> workerToConn = new HashMap<Integer, Conn>();
+	private List<Request> heldGets = new LinkedList<Request>();
+	private int contactID = 0;
 
 	final boolean waitForWorkersToExit = true; // Wait for all workers to exit, before exiting
 
-	int numWorkers() { return lastContact.size(); }
+	// Max number of milliseconds a GET is held when there is no job for the worker
+	int waitTimeOut = 1000;
+
+	// Max size in bytes of a frame sent by a worker
+	static final int MAX_FRAME_SIZE = 1 << 30;
+
+	private ServerSocketChannel server;
+	private Selector selector;
+	private final BlockingQueue<Request> requests = new LinkedBlockingQueue<Request>();
+	private final ConcurrentLinkedQueue<Conn> toFlush = new ConcurrentLinkedQueue<Conn>();
+	private final List<Conn> conns = new ArrayList<Conn>(); // only accessed by the event loop
+	private volatile boolean finished;
+	private volatile int numWorkers;
+	private volatile RuntimeException failure;
+
+	// Workers started by the Master's own JVM in local mode, as processes or threads
+	private List<Process> localProcs = new ArrayList<Process>();
+	private List<Thread> localThreads = new ArrayList<Thread>();
+
+	// Throughput metrics, only accessed by the dispatcher thread
+	private int numJobs = 0;
+	private long startTime;
+	private HashMap<Integer,Long> applyTime = new HashMap<Integer, Long>(); // Map from Worker ID to time of last APPLY
+	private HashMap<Integer,long[]> latency = new HashMap<Integer, long[]>(); // Map from Worker ID to {total ms, number} of APPLY-PUT round trips
+
+	int numWorkers() { return numWorkers; }
 
 	public Master(int port, JobDispatcher dispatcher, int workerDataTranferTimeOut, int workerDeadTimeOut) {
 		this.port = port;
@@ -37,168 +101,504 @@ public class Master {
 	}
 
 	/**
-	 *  Master run method. Spins continuously till JobDispatcher declares that its done.
+	 * Starts listening for workers, if not already listening.
+	 * If the port is 0, the Master listens on a free port, which is provided by getPort() afterwards.
 	 */
-	public void run() {
-		X.logs("MASTER: listening at port %s", port);
+	public void listen() {
+		if (server != null)
+			return;
 		try {
-			ServerSocket socket = new ServerSocket(port);
-			commController(socket);
-			socket.close();
-			dispatcher.saveState();
+			selector = Selector.open();
+			server = ServerSocketChannel.open();
+			server.socket().setReuseAddress(true);
+			server.socket().bind(new InetSocketAddress(port));
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
+		port = server.socket().getLocalPort();
+		X.logs("MASTER: listening at port %s", port);
+	}
+
+	public int getPort() { return port; }
+
+	/**
+	 * Provides the workers started for this Master in local mode, before run() is called.
+	 */
+	public void setLocalWorkers(List<Process> procs, List<Thread> threads) {
+		localProcs = procs;
+		localThreads = threads;
 	}
 
 	/**
-	 * Master-Worker communication protocol enabler
+	 *  Master run method. Spins continuously till JobDispatcher declares that its done.
 	 */
-	void commController(ServerSocket socket) {
-		boolean exitFlag = false;
-		int contactID = 0;
-		while (true) {
+	public void run() {
+		listen();
+		Thread t = new Thread("master-dispatcher") {
+			public void run() { dispatchLoop(); }
+		};
+		t.start();
+		try {
+			eventLoop();
+		} catch (IOException e) {
+			throw new RuntimeException(e);
+		} finally {
+			finished = true;
+			for (Conn c : conns)
+				c.close();
 			try {
-				if (exitFlag && (!waitForWorkersToExit || numWorkers() == 0)) break;
-				X.putOutput("numWorkers", numWorkers());
-				X.flushOutput();
-				X.logs("============================================================");
-				boolean dispatcherIsDone = dispatcher.isDone();
-				if (dispatcherIsDone) {
-					if (!waitForWorkersToExit || numWorkers() == 0) break;
-					X.logs("Dispatcher is done but still waiting for %s workers to exit...", numWorkers());
+				server.close();
+				selector.close();
+			} catch (IOException e) { }
+		}
+		try {
+			t.join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+		if (failure != null)
+			throw failure;
+		dispatcher.saveState();
+	}
+
+	////////////////////////////////////////////////////////////////////////////////////
+	// Event loop
+	////////////////////////////////////////////////////////////////////////////////////
+
+	private void eventLoop() throws IOException {
+		while (!finished) {
+			selector.select(waitTimeOut);
+			for (Conn c; (c = toFlush.poll()) != null;) {
+				if (c.key.isValid())
+					c.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+			}
+			Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+			while (it.hasNext()) {
+				SelectionKey key = it.next();
+				it.remove();
+				if (!key.isValid())
+					continue;
+				if (key.isAcceptable()) {
+					SocketChannel ch = server.accept();
+					if (ch == null)
+						continue;
+					ch.configureBlocking(false);
+					ch.socket().setTcpNoDelay(true);
+					Conn c = new Conn(ch);
+					c.key = ch.register(selector, SelectionKey.OP_READ, c);
+					conns.add(c);
+					X.logs("MASTER: Got connection from worker %s", ch.socket());
+					continue;
 				}
-				Socket worker = socket.accept();
-				String hostname = worker.getInetAddress().getHostAddress() /*+ ":" + worker.getPort()*/;
-				BufferedReader in = new BufferedReader(new InputStreamReader(worker.getInputStream()));
-				PrintWriter out = new PrintWriter(worker.getOutputStream(), true);
-
-				worker.setSoTimeout(workerDataTransferTimeOut);
-
-				X.logs("MASTER: Got connection from worker %s [hostname=%s]", worker, hostname);
-				String cmd = in.readLine();
-				
-				if (cmd.equals("ID")) { //New worker request for a unique ID
-					
-					if (dispatcherIsDone || numWorkers() > dispatcher.maxWorkersNeeded() + 1) { // 1 for extra buffer
-						// If dispatcher is done or we have more workers than we need, then quit
-						out.println("EXIT");
-					} else {
-						lastContact.put(contactID, System.currentTimeMillis()); // Only add if it's getting stuff
-						out.println("ID " + contactID);
-						contactID++;
-					}
-					
-				} else if (cmd.startsWith("GET")) { //Worker request for a new job
-					
-					String[] tokens = Utils.split(cmd, " ", false, false, 2);
-					int wID = Integer.parseInt(tokens[1]);
-					X.logs("MASTER: Worker ID %s", wID);
-					lastContact.put(wID, System.currentTimeMillis()); // Only add if it's getting stuff
-					
-					if (dispatcherIsDone || numWorkers() > dispatcher.maxWorkersNeeded() + 1) { // 1 for extra buffer
-						// If dispatcher is done or we have more workers than we need, then quit
-						out.println("EXIT");
-						workerToScenarioMap.remove(wID);
-						lastContact.remove(wID);
-					} else if (workerToScenarioMap.containsKey(wID)) { //Worker already has a pending job, report error to dispatcher
-						int sID = workerToScenarioMap.remove(wID);
-						Scenario scenario = inprogress.remove(sID);
-						dispatcher.onError(sID);
-						out.println("WAIT");
-					} else if (!workerToScenarioMap.containsKey(wID)) {  //Generate new job for worker
-						Scenario reqScenario = dispatcher.createJob();   
-						if (reqScenario == null) {
-							X.logs("  No job, waiting (%s workers, %s workers needed)", numWorkers(), dispatcher.maxWorkersNeeded());
-							out.println("WAIT");
-						} else {
-							inprogress.put(reqScenario.id, reqScenario);
-							workerToScenarioMap.put(wID, reqScenario.id);
-							out.println("APPLY " + reqScenario.id + " " + reqScenario.encode()); // Response: <ID> <task spec>
-							X.logs("  GET => id=%s", reqScenario.id);
-							reqScenario.clear();
-						}
-					}
-					
-				} else if (cmd.startsWith("CLEAR")) { //Not used currently
-					
-					lastContact.clear();
-					X.logs("Cleared workers");
-					
-				} else if (cmd.startsWith("SAVE")) { //Not used currently
-					
-					dispatcher.saveState();
-					X.logs("Saved");
-					
-				} else if (cmd.startsWith("EXIT")) { //Not used currently
-					
-					exitFlag = true;
-					X.logs("Going to exit...");
-					
-				} else if (cmd.startsWith("FLUSH")) { //Not used currently
-					
-					flushDeadWorkers();
-					X.logs("%d workers", lastContact.size());
-					//out.println(lastContact.size()+" workers left");
-					
-				} else if (cmd.startsWith("PUT")) { //Worker replies with the result of running a job
-					
-					String[] tokens = Utils.split(cmd, " ", false, false, 4);
-					int wID = Integer.parseInt(tokens[1]);
-					int sID = Integer.parseInt(tokens[2]);
-					X.logs("MASTER: Worker ID %s",wID);
-					
-					Integer sIDinMap = workerToScenarioMap.get(wID);
-					
-					if (sIDinMap != null) { //Worker is mapped to some scenario
-						if (sIDinMap.intValue() == sID){ //Mapped worker scenario matches the reply scenario 
-							workerToScenarioMap.remove(wID);
-							Scenario scenario = inprogress.remove(sID);
-							if (scenario == null) {
-								X.logs("  PUT id=%s, but doesn't exist", sID);
-								dispatcher.onError(sID);
-								out.println("INVALID");
-							} else {
-								X.logs("  PUT id=%s", sID);
-								scenario.decode(tokens[3]);
-								dispatcher.onJobResult(scenario);
-								out.println("OK");
-							}
-						} else {
-							dispatcher.onError(sIDinMap.intValue());
-						}
+				Conn c = (Conn) key.attachment();
+				try {
+					if (key.isReadable() && !c.read()) {
+						c.close();
+						continue;
 					}
+					if (key.isValid() && key.isWritable())
+						c.write();
+				} catch (IOException e) {
+					X.logs("Some error in socket comm with worker %s. Continuing with other workers", c.ch.socket());
+					c.close();
+				}
+			}
+			long now = System.currentTimeMillis();
+			for (Iterator<Conn> ci = conns.iterator(); ci.hasNext();) {
+				Conn c = ci.next();
+				if (c.frameStart != 0 && now - c.frameStart > workerDataTransferTimeOut) {
+					X.logs("Socket read from worker %s timed out", c.ch.socket());
+					c.close();
+				}
+				if (c.closed)
+					ci.remove();
+			}
+		}
+	}
+
+	/**
+	 * A request of a worker for the dispatcher thread: a frame read from its
+	 * connection, or null if the connection is closed.
+	 */
+	private static class Request {
+		final Conn conn;
+		final Frame frame;
+		final long time;
+		Request(Conn conn, Frame frame) {
+			this.conn = conn;
+			this.frame = frame;
+			this.time = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * The connection of a worker.  Reads and writes are done by the event loop; frames
+	 * are queued for writing by the dispatcher thread.
+	 */
+	private class Conn {
+		final SocketChannel ch;
+		SelectionKey key;
+		final ByteBuffer lenBuf = ByteBuffer.allocate(4);
+		ByteBuffer body;
+		long frameStart; // time when reading the current frame began, 0 if none
+		final LinkedList<ByteBuffer> out = new LinkedList<ByteBuffer>();
+		boolean closeAfterFlush;
+		volatile boolean closed;
+		int wID = -1; // only accessed by the dispatcher thread
+
+		Conn(SocketChannel ch) { this.ch = ch; }
+
+		/**
+		 * Reads all available frames, queueing them as requests.
+		 * Returns false iff the worker closed the connection.
+		 */
+		boolean read() throws IOException {
+			while (true) {
+				if (body == null) {
+					int n = ch.read(lenBuf);
+					if (n < 0)
+						return false;
+					if (lenBuf.position() > 0 && frameStart == 0)
+						frameStart = System.currentTimeMillis();
+					if (lenBuf.hasRemaining())
+						return true;
+					lenBuf.flip();
+					int len = lenBuf.getInt();
+					lenBuf.clear();
+					if (len < 13 || len > MAX_FRAME_SIZE)
+						throw new IOException("Malformed frame of length " + len);
+					body = ByteBuffer.allocate(len);
 				}
-				
-				in.close();
-				out.close();
-				
-				flushDeadWorkers(); // Flush all workers that haven't contacted for workerDeadTimeOut milliseconds.
-									// Report error to the dispatcher for all corresponding mapped scenarios
-				
-			} catch(SocketTimeoutException e) {
-				X.logs("Socket read from worker timed out");
-			} catch(IOException e) {
-				X.logs("Some error in socket comm with a worker. Continuing with other workers");
+				int n = ch.read(body);
+				if (n < 0)
+					return false;
+				if (body.hasRemaining())
+					return true;
+				Frame f = Frame.fromBytes(body.array());
+				body = null;
+				frameStart = 0;
+				requests.add(new Request(this, f));
+			}
+		}
+
+		synchronized void send(Frame f, boolean closeAfter) {
+			if (closed)
+				return;
+			out.add(ByteBuffer.wrap(f.toBytes()));
+			if (closeAfter)
+				closeAfterFlush = true;
+			toFlush.add(this);
+			selector.wakeup();
+		}
+
+		synchronized void write() throws IOException {
+			while (!out.isEmpty()) {
+				ByteBuffer buf = out.getFirst();
+				ch.write(buf);
+				if (buf.hasRemaining())
+					return;
+				out.removeFirst();
 			}
+			if (closeAfterFlush)
+				close();
+			else
+				key.interestOps(SelectionKey.OP_READ);
+		}
+
+		/**
+		 * Requests the event loop to close this connection once all queued frames are written.
+		 */
+		synchronized void shutdown() {
+			closeAfterFlush = true;
+			toFlush.add(this);
+			selector.wakeup();
+		}
+
+		void close() {
+			if (closed)
+				return;
+			closed = true;
+			key.cancel();
+			try { ch.close(); } catch (IOException e) { }
+			requests.add(new Request(this, null));
 		}
-		return;
 	}
-	
-	void flushDeadWorkers() {
-		HashMap<Integer,Long> newLastContact = new HashMap<Integer, Long>();
-		for (Integer wID : lastContact.keySet()) {
-			long t = lastContact.get(wID);
-			if (System.currentTimeMillis() - t < 12*60*60*1000)
-				newLastContact.put(wID, t);
-			else{
-				if(workerToScenarioMap.containsKey(wID)){
-					int sID = workerToScenarioMap.remove(wID);
-					Scenario scenario = inprogress.remove(sID); 
+
+	////////////////////////////////////////////////////////////////////////////////////
+	// Dispatcher thread
+	////////////////////////////////////////////////////////////////////////////////////
+
+	private void dispatchLoop() {
+		startTime = System.currentTimeMillis();
+		long lastStats = 0;
+		try {
+			while (true) {
+				if (shouldExit && (!waitForWorkersToExit || numWorkers() == 0)) break;
+				if (dispatcher.isDone() && (!waitForWorkersToExit || numWorkers() == 0)) break;
+				Request req = requests.poll(100, TimeUnit.MILLISECONDS);
+				boolean changed = false;
+				while (req != null) {
+					changed |= process(req);
+					req = requests.poll();
+				}
+				long now = System.currentTimeMillis();
+				changed |= flushDeadWorkers(now);
+				serveHeldGets(now, changed);
+				numWorkers = lastContact.size();
+				if (numWorkers == 0 && !dispatcher.isDone())
+					checkLocalWorkersAlive();
+				if (now - lastStats >= 1000) {
+					putStats(now);
+					lastStats = now;
+				}
+			}
+		} catch (InterruptedException e) {
+			failure = new RuntimeException(e);
+		} catch (RuntimeException e) {
+			failure = e;
+		} finally {
+			putStats(System.currentTimeMillis());
+			finished = true;
+			selector.wakeup();
+		}
+	}
+
+	/**
+	 * Processes the given request of a worker.
+	 * Returns true iff it may have made new jobs available.
+	 */
+	private boolean process(Request req) {
+		Conn conn = req.conn;
+		Frame f = req.frame;
+		if (f == null) { // connection closed
+			if (conn.wID != -1)
+				return workerExited(conn.wID);
+			return false;
+		}
+		switch (f.kind) {
+		case Frame.ID: { //New worker request for a unique ID
+			if (dispatcher.isDone() || lastContact.size() > dispatcher.maxWorkersNeeded() + 1) { // 1 for extra buffer
+				// If dispatcher is done or we have more workers than we need, then quit
+				conn.send(new Frame(Frame.EXIT, -1, 0), true);
+				return false;
+			}
+			int wID = contactID++;
+			conn.wID = wID;
+			workerToConn.put(wID, conn);
+			lastContact.put(wID, req.time); // Only add if it's getting stuff
+			numWorkers = lastContact.size();
+			conn.send(new Frame(Frame.ID, wID, 0), false);
+			return false;
+		}
+		case Frame.HEARTBEAT: {
+			if (lastContact.containsKey(f.wID))
+				lastContact.put(f.wID, req.time);
+			return false;
+		}
+		case Frame.GET: { //Worker request for new jobs
+			int wID = f.wID;
+			boolean changed = false;
+			lastContact.put(wID, req.time);
+			Set<Integer> pending = workerToScenarioMap.remove(wID);
+			if (pending != null) { //Worker already has pending jobs, report error to dispatcher
+				for (int sID : pending) {
+					inprogress.remove(sID);
 					dispatcher.onError(sID);
 				}
+				changed = true;
 			}
+			if (!tryApply(req))
+				heldGets.add(req);
+			return changed;
+		}
+		case Frame.PUT: { //Worker replies with the results of running its jobs
+			int wID = f.wID;
+			lastContact.put(wID, req.time);
+			Set<Integer> pending = workerToScenarioMap.get(wID);
+			for (int i = 0; i < f.size(); i++) {
+				int sID = f.ids[i];
+				if (pending == null || !pending.remove(sID)) { //Worker isn't mapped to the reply scenario
+					X.logs("  PUT id=%s, but not assigned to worker %s", sID, wID);
+					continue;
+				}
+				Scenario scenario = inprogress.remove(sID);
+				X.logs("  PUT id=%s", sID);
+				scenario.decode(f.texts[i]);
+				dispatcher.onJobResult(scenario);
+				numJobs++;
+			}
+			if (pending != null && pending.isEmpty())
+				workerToScenarioMap.remove(wID);
+			Long t = applyTime.remove(wID);
+			if (t != null) {
+				long[] l = latency.get(wID);
+				if (l == null)
+					latency.put(wID, l = new long[2]);
+				l[0] += req.time - t;
+				l[1]++;
+			}
+			conn.send(new Frame(Frame.OK, wID, 0), false);
+			return true;
+		}
+		default:
+			X.logs("Incorrect command %s issued by worker %s", f.kind, f.wID);
+			conn.send(new Frame(Frame.WAIT, f.wID, 0), false);
+			return false;
+		}
+	}
+
+	/**
+	 * Replies to the given GET with jobs or EXIT if possible.
+	 * Returns false iff the dispatcher has no job for the worker right now.
+	 */
+	private boolean tryApply(Request req) {
+		int wID = req.frame.wID;
+		Conn conn = req.conn;
+		if (dispatcher.isDone() || lastContact.size() > dispatcher.maxWorkersNeeded() + 1) { // 1 for extra buffer
+			// If dispatcher is done or we have more workers than we need, then quit
+			lastContact.remove(wID);
+			workerToConn.remove(wID);
+			numWorkers = lastContact.size();
+			conn.send(new Frame(Frame.EXIT, wID, 0), true);
+			return true;
+		}
+		List<Scenario> jobs = new ArrayList<Scenario>();
+		int batch = Math.max(1, req.frame.arg);
+		while (jobs.size() < batch) {
+			Scenario reqScenario = dispatcher.createJob();
+			if (reqScenario == null)
+				break;
+			jobs.add(reqScenario);
+		}
+		if (jobs.isEmpty())
+			return false;
+		int n = jobs.size();
+		int[] ids = new int[n];
+		String[] texts = new String[n];
+		Set<Integer> pending = new HashSet<Integer>();
+		for (int i = 0; i < n; i++) {
+			Scenario reqScenario = jobs.get(i);
+			inprogress.put(reqScenario.id, reqScenario);
+			pending.add(reqScenario.id);
+			ids[i] = reqScenario.id;
+			texts[i] = reqScenario.encode();
+			X.logs("  GET => id=%s", reqScenario.id);
+			reqScenario.clear();
+		}
+		workerToScenarioMap.put(wID, pending);
+		applyTime.put(wID, System.currentTimeMillis());
+		conn.send(new Frame(Frame.APPLY, wID, 0, ids, texts), false);
+		return true;
+	}
+
+	/**
+	 * Replies to held GETs: with jobs, if the state of the dispatcher has changed
+	 * since they were last tried, or with WAIT, if they have been held long enough.
+	 */
+	private void serveHeldGets(long now, boolean changed) {
+		for (Iterator<Request> it = heldGets.iterator(); it.hasNext();) {
+			Request req = it.next();
+			int wID = req.frame.wID;
+			if (req.conn.closed || !lastContact.containsKey(wID)) {
+				it.remove();
+			} else if ((changed || dispatcher.isDone()) && tryApply(req)) {
+				it.remove();
+			} else if (now - req.time >= waitTimeOut) {
+				X.logs("  No job, waiting (%s workers, %s workers needed)", lastContact.size(), dispatcher.maxWorkersNeeded());
+				req.conn.send(new Frame(Frame.WAIT, wID, 0), false);
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Forgets the given worker, reporting an error to the dispatcher for each scenario
+	 * assigned to it.  Returns true iff it had any.
+	 */
+	private boolean workerExited(int wID) {
+		lastContact.remove(wID);
+		applyTime.remove(wID);
+		Conn conn = workerToConn.remove(wID);
+		if (conn != null)
+			conn.shutdown();
+		Set<Integer> pending = workerToScenarioMap.remove(wID);
+		if (pending == null)
+			return false;
+		for (int sID : pending) {
+			inprogress.remove(sID);
+			dispatcher.onError(sID);
+		}
+		return true;
+	}
+
+	/**
+	 * Flushes all workers that haven't contacted the Master, not even with a heartbeat,
+	 * for workerDeadTimeOut milliseconds.  Returns true iff any of them had scenarios.
+	 */
+	boolean flushDeadWorkers(long now) {
+		List<Integer> dead = null;
+		for (Map.Entry<Integer,Long> e : lastContact.entrySet()) {
+			if (now - e.getValue() >= workerDeadTimeOut) {
+				if (dead == null)
+					dead = new ArrayList<Integer>();
+				dead.add(e.getKey());
+			}
+		}
+		if (dead == null)
+			return false;
+		boolean changed = false;
+		for (int wID : dead) {
+			X.logs("MASTER: Worker %s sent no heartbeat for %s ms, declaring it dead", wID, workerDeadTimeOut);
+			changed |= workerExited(wID);
+		}
+		return changed;
+	}
+
+	/**
+	 * Throws an exception if local workers were started and all of them have exited,
+	 * reporting their exit codes.  Called when no worker is connected.
+	 */
+	private void checkLocalWorkersAlive() {
+		if (localProcs.isEmpty() && localThreads.isEmpty())
+			return;
+		for (Thread t : localThreads) {
+			if (t.isAlive())
+				return;
+		}
+		List<Integer> exitCodes = new ArrayList<Integer>();
+		for (Process p : localProcs) {
+			try {
+				exitCodes.add(p.exitValue());
+			} catch (IllegalThreadStateException e) { // still running
+				return;
+			}
+		}
+		String msg = "MASTER: All " + (localProcs.size() + localThreads.size()) +
+			" local workers exited with no worker connected and jobs left";
+		if (!exitCodes.isEmpty())
+			msg += "; exit codes of the worker JVMs: " + exitCodes;
+		throw new RuntimeException(msg);
+	}
+
+	private void putStats(long now) {
+		double secs = Math.max(1, now - startTime) / 1000.0;
+		X.putOutput("numWorkers", lastContact.size());
+		X.putOutput("numJobs", numJobs);
+		X.putOutput("jobsPerSec", String.format("%.3f", numJobs / secs));
+		X.putOutput("queueDepth", requests.size());
+		X.putOutput("heldGets", heldGets.size());
+		X.putOutput("inprogress", inprogress.size());
+		long total = 0, num = 0;
+		for (Map.Entry<Integer,long[]> e : latency.entrySet()) {
+			long[] l = e.getValue();
+			total += l[0];
+			num += l[1];
+			X.putOutput("latencyMs.worker" + e.getKey(), l[0] / l[1]);
 		}
-		lastContact = newLastContact;
+		if (num > 0)
+			X.putOutput("latencyMs", total / num);
+		X.flushOutput();
 	}
 }
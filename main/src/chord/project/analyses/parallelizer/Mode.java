@@ -2,6 +2,7 @@ package chord.project.analyses.parallelizer;
 
 public enum Mode {
 	MASTER,
-	WORKER
+	WORKER,
+	LOCAL
 }
 
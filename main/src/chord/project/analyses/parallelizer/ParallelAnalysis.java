@@ -1,16 +1,22 @@
 package chord.project.analyses.parallelizer;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
 import java.net.InetAddress;
 import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
+import chord.project.Config;
+import chord.project.Messages;
 import chord.project.analyses.JavaAnalysis;
 import chord.util.Execution;
-import chord.util.Utils;
+import chord.util.ProcessExecutor;
 
 /**
  * Basic framework to parallelize a client analysis.
@@ -22,8 +28,16 @@ import chord.util.Utils;
  *
  * Recognized system properties:
  * - chord.parallel.host (default = localhost)
- * - chord.parallel.port (default = 8888)
- * - chord.parallel.mode (default = null; must be [master|worker])
+ * - chord.parallel.port (default = 8888; default = 0, meaning any free port, in local mode)
+ * - chord.parallel.mode (default = null; must be [master|worker|local])
+ * - chord.parallel.workers (default = number of processors; number of workers started in local mode)
+ * - chord.parallel.threads (default = false; run the workers in local mode as threads of this JVM
+ *   instead of separate JVMs, provided isThreadSafe() holds)
+ * - chord.parallel.batch (default = 1; number of jobs a worker asks the Master for at a time)
+ *
+ * In local mode, this JVM runs the Master and itself starts the workers, each of which
+ * is either a fresh JVM running Chord with the same properties in worker mode (and with
+ * output directory [chord.out.dir]/worker[i]), or a thread of this JVM.
  */
 public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox {
 	protected Execution X;
@@ -40,15 +54,23 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 	// Number of milliseconds before worker deems a master to have timed out while requesting a new job.
 	protected int masterReplyTimeOut = 1000 *60 * 60; 
 	
-	// Max number of milliseconds allowed from the time that a worker connection is accepted to the time
-	// when data is available on the connection.
+	// Max number of milliseconds allowed from the time that the Master begins to receive a message
+	// from a worker to the time when it has received the whole message.
 	protected int workerDataTransferTimeOut = 1000 * 60 * 60;
 
-	// Number of milliseconds from last contact after which a worker is declared dead.
-	protected int workerDeadTimeOut = 24*1000 * 60 * 60;
+	// Number of milliseconds between heartbeats sent by a worker to the Master.
+	protected int heartbeatInterval = 1000 * 10;
+
+	// Number of milliseconds from last contact (including heartbeats) after which a worker is declared dead.
+	protected int workerDeadTimeOut = 1000 * 60 * 2;
 
 	protected JobDispatcher dispatcher = null;
 
+	// Workers started by the Master in local mode
+	private List<Process> workerProcs = new ArrayList<Process>();
+	private List<Thread> workerThreads = new ArrayList<Thread>();
+	private int numLocalWorkers;
+
 	////////////////////////////////////////////////////////////////////////////////////
 	// Methods that client analyses extending this class must implement.
 	////////////////////////////////////////////////////////////////////////////////////
@@ -78,6 +100,14 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 		// do nothing by default
 	}
 
+	/**
+	 * Whether apply() may be invoked concurrently by several threads of the same JVM.
+	 * Only then are workers in local mode run as threads if so requested.
+	 */
+	public boolean isThreadSafe() {
+		return false;
+	}
+
 	public String getMasterHost() {
 		if (masterHost == null)
 			masterHost = System.getProperty("chord.parallel.host", "localhost");
@@ -86,7 +116,7 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 
 	public int getMasterPort() {
 		if (masterPort == -1)
-			masterPort = Integer.getInteger("chord.parallel.port", 8888);
+			masterPort = Integer.getInteger("chord.parallel.port", getMode() == Mode.LOCAL ? 0 : 8888);
 		return masterPort;
 	}
 
@@ -94,19 +124,22 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 		if (mode == null) {
 			String s = System.getProperty("chord.parallel.mode", null);
 			if (s == null)
-				throw new RuntimeException("Property chord.parallel.mode=[master|worker] expected by analysis " + getName());
+				throw new RuntimeException("Property chord.parallel.mode=[master|worker|local] expected by analysis " + getName());
 			if (s.equals("master"))
 				mode = Mode.MASTER;
 			else if (s.equals("worker"))
 				mode = Mode.WORKER;
+			else if (s.equals("local"))
+				mode = Mode.LOCAL;
 			else
-				throw new RuntimeException("Unknown value '" + mode + "' for property chord.parallel.mode=[master|worker]");
+				throw new RuntimeException("Unknown value '" + s + "' for property chord.parallel.mode=[master|worker|local]");
 		}
 		return mode;
 	}
 
 	public int getNumWorkers(){
-		return master.numWorkers();
+		// In local mode, count the workers started but not yet connected
+		return Math.max(master.numWorkers(), numLocalWorkers);
 	}
 	
 	/**
@@ -122,7 +155,7 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 		mode = getMode();
 
 		if (mode == Mode.WORKER)
-			runWorker();
+			runWorker(false);
 		else {
 			dispatcher = getJobDispatcher();
 			if (dispatcher == null) {
@@ -130,7 +163,15 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 				throw new RuntimeException(e);
 			}
 			master = new Master(masterPort, dispatcher, workerDataTransferTimeOut, workerDeadTimeOut);
+			if (mode == Mode.LOCAL) {
+				master.listen();
+				masterPort = master.getPort();
+				startLocalWorkers();
+				master.setLocalWorkers(workerProcs, workerThreads);
+			}
 			master.run();
+			if (mode == Mode.LOCAL)
+				stopLocalWorkers();
 		}
 
 		done();
@@ -145,96 +186,216 @@ public abstract class ParallelAnalysis extends JavaAnalysis implements BlackBox
 		try { Thread.sleep(seconds*1000); } catch(InterruptedException e) { }
 	}
 
+	/**
+	 * Starts the workers of local mode, after the Master has started listening.
+	 */
+	private void startLocalWorkers() {
+		numLocalWorkers = Integer.getInteger("chord.parallel.workers", Runtime.getRuntime().availableProcessors());
+		boolean useThreads = Boolean.getBoolean("chord.parallel.threads");
+		if (useThreads && !isThreadSafe()) {
+			Messages.log("WARN: Analysis %s is not thread-safe; starting worker JVMs instead of threads.", getName());
+			useThreads = false;
+		}
+		X.logs("Starting %s local workers (%s) for master at port %s", numLocalWorkers,
+			useThreads ? "threads" : "JVMs", masterPort);
+		for (int i = 0; i < numLocalWorkers; i++) {
+			if (useThreads) {
+				Thread t = new Thread("worker-" + i) {
+					public void run() { runWorker(true); }
+				};
+				t.setDaemon(true);
+				t.start();
+				workerThreads.add(t);
+			} else {
+				try {
+					workerProcs.add(ProcessExecutor.executeAsynch(getWorkerCmd(i), null, new File(Config.workDirName)));
+				} catch (Throwable e) {
+					Messages.fatal(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Provides the command line running Chord in worker mode for the i-th local worker:
+	 * this JVM's arguments and properties, except that the worker connects to the Master
+	 * on this host and writes its output to its own directory.
+	 */
+	private String[] getWorkerCmd(int i) {
+		String outDir = (new File(Config.outDirName, "worker" + i)).getAbsolutePath();
+		List<String> cmdList = new ArrayList<String>();
+		cmdList.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+		String jvmargs = System.getProperty("chord.jvmargs");
+		if (jvmargs != null) {
+			for (String s : jvmargs.trim().split(" +"))
+				cmdList.add(s);
+		}
+		for (Map.Entry<Object, Object> e : System.getProperties().entrySet()) {
+			String k = (String) e.getKey();
+			String v = (String) e.getValue();
+			// no need to pass standard params
+			if (k.startsWith("sun") || k.startsWith("jikes"))
+				continue;
+			if (k.equals("chord.parallel.mode") || k.equals("chord.parallel.host") ||
+					k.equals("chord.parallel.port") || k.equals("chord.out.dir") ||
+					k.equals("chord.out.file") || k.equals("chord.err.file"))
+				continue;
+			cmdList.add("-D" + k + "=" + v);
+		}
+		cmdList.add("-Dchord.parallel.mode=worker");
+		cmdList.add("-Dchord.parallel.host=localhost");
+		cmdList.add("-Dchord.parallel.port=" + masterPort);
+		cmdList.add("-Dchord.out.dir=" + outDir);
+		cmdList.add("chord.project.Main");
+		return cmdList.toArray(new String[cmdList.size()]);
+	}
+
+	/**
+	 * Waits for the workers of local mode, which the Master has told to exit.
+	 */
+	private void stopLocalWorkers() {
+		for (Process p : workerProcs) {
+			try {
+				p.waitFor();
+			} catch (InterruptedException e) {
+				p.destroy();
+			}
+		}
+		for (Thread t : workerThreads) {
+			try {
+				t.join();
+			} catch (InterruptedException e) { }
+		}
+		workerProcs.clear();
+		workerThreads.clear();
+		numLocalWorkers = 0;
+	}
+
 	/**
 	 * Method implementing worker functionality.
 	 * Spins continuously till Master explicitly commands it to EXIT or Master times out.
+	 * A worker run as a thread of the Master's JVM does not write its status into the
+	 * Execution output, which belongs to the Master.
 	 */
-	private void runWorker() {
+	private void runWorker(boolean inProcess) {
 		int failCount = 0;
-		Integer ID = null;
 		X.logs("Starting worker...");
 		int numJobs = 0;
+		int batch = Integer.getInteger("chord.parallel.batch", 1);
 
 		while (true) {
-			X.logs("============================================================");
-			// Get a job
-			String line;
+			Socket socket = null;
+			Thread heartbeat = null;
+			try {
+				socket = connect();
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 
-			if (ID == null) { //First, ask Master for a unique ID
-				line = callMaster("ID");
-			} else {
-				line = callMaster("GET " + ID.intValue()); //Ask master for a new job
-			}
+				//First, ask Master for a unique ID
+				send(out, new Frame(Frame.ID, -1, 0));
+				Frame reply = Frame.read(in);
+				if (reply.kind == Frame.EXIT) {
+					X.logs("Exiting...");
+					break;
+				}
+				int ID = reply.wID;
+				failCount = 0;
+				heartbeat = startHeartbeat(out, ID);
 
-			if (line == null) { //Master failed to reply, increase failure count
-				X.logs("Got null, something bad happened to master..."); 
+				while (true) {
+					X.logs("============================================================");
+					send(out, new Frame(Frame.GET, ID, batch)); //Ask master for new jobs
+					reply = Frame.read(in);
+					if (reply.kind == Frame.WAIT) {
+						// Master already held the request for a while; ask again
+						X.logs("Waiting...");
+						if (!inProcess) {
+							X.putOutput("exec.status", "waiting");
+							X.flushOutput();
+						}
+					} else if (reply.kind == Frame.EXIT) { // Exit
+						break;
+					} else if (reply.kind == Frame.APPLY) {
+						// Invoke client analysis with the Master provided parameters and
+						// reply back to the Master with the outputs of the analysis.
+						if (!inProcess) {
+							X.putOutput("exec.status", "running");
+							X.flushOutput();
+						}
+						String[] outputs = new String[reply.size()];
+						for (int i = 0; i < reply.size(); i++)
+							outputs[i] = apply(reply.texts[i]);
+						send(out, new Frame(Frame.PUT, ID, 0, reply.ids, outputs));
+						reply = Frame.read(in);
+						X.logs("Sent %s results to master, got reply: %s", outputs.length, reply.kind);
+						numJobs += outputs.length;
+						if (!inProcess) {
+							X.putOutput("numJobs", numJobs);
+							X.flushOutput();
+						}
+					} else
+						X.logs("Incorrect command issued by master. Try again...");
+				}
+				X.logs("Exiting...");
+				break;
+			} catch (IOException e) { //Master failed to reply, increase failure count
+				X.logs("Lost connection to master (%s), something bad happened to master...", e);
 				failCount++;
-				this.sleep(5);
 				if (failCount == masterFailureLimit) {
 					X.logs("Master probably exited, exiting...");
 					break;
 				}
-			} else if (line.equals("WAIT")) {
-				// Wait for 5 seconds before pinging Master again
-				failCount = 0;
-				X.logs("Waiting...");
 				this.sleep(5);
-				X.putOutput("exec.status", "waiting");
-				X.flushOutput();
-			} else if (line.equals("EXIT")) { // Exit
-				X.logs("Exiting...");
-				break;
-			} else if (line.startsWith("ID")) { //Set ID
-				failCount = 0;
-				String[] tokens = Utils.split(line, " ", false, false, 2);
-				ID = new Integer(tokens[1]);
-			} else if (line.startsWith("APPLY") && ID != null) {
-				// Invoke client analysis with the Master provided parameters and
-				// reply back to the Master with the output of the analysis.
-				failCount = 0;
-				X.putOutput("exec.status", "running");
-				X.flushOutput();
-				String[] tokens = Utils.split(line, " ", false, false, 3);
-				String id = tokens[1];
-				String input = tokens[2];
-				String output = apply(input);
-				line = callMaster("PUT "+ID.intValue()+" "+id+" "+ output);
-				X.logs("Sent result to master, got reply: %s", line);
-				numJobs++;
-				X.putOutput("numJobs", numJobs);
-				X.flushOutput();
-			} else {
-				if (ID == null)
-					X.logs("ID not set for worker. Try again...");
-				else
-					X.logs("Incorrect command issued by master. Try again...");
+			} finally {
+				if (heartbeat != null)
+					heartbeat.interrupt();
+				if (socket != null) {
+					try { socket.close(); } catch (IOException e) { }
+				}
 			}
 		}
 	}
-	
+
 	/**
-	 * Worker to Master communication
+	 * Sends the given frame to the Master; the heartbeat thread of this worker sends
+	 * frames on the same stream.
 	 */
-	private String callMaster(String line) {
-		try {
-			InetAddress addrM = InetAddress.getByName(masterHost);
-			Socket socket = new Socket(addrM, masterPort);
-			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-			socket.setSoTimeout(masterReplyTimeOut);
-			out.println(line);
-			out.flush();
-			line = in.readLine();
-			in.close();
-			out.close();
-			socket.close();
-			return line;
-		} catch(SocketTimeoutException e) {
-			X.logs("Read from master timed out");
-			return null;
-		} catch (IOException e) {
-			return null;
+	private static void send(DataOutputStream out, Frame f) throws IOException {
+		synchronized (out) {
+			f.write(out);
 		}
 	}
-}
 
+	/**
+	 * Starts a thread sending heartbeats of the given worker to the Master every
+	 * heartbeatInterval milliseconds, till interrupted or the connection fails.
+	 */
+	private Thread startHeartbeat(final DataOutputStream out, final int ID) {
+		Thread t = new Thread("heartbeat-" + ID) {
+			public void run() {
+				try {
+					while (!isInterrupted()) {
+						Thread.sleep(heartbeatInterval);
+						send(out, new Frame(Frame.HEARTBEAT, ID, 0));
+					}
+				} catch (InterruptedException e) {
+				} catch (IOException e) {
+				}
+			}
+		};
+		t.setDaemon(true);
+		t.start();
+		return t;
+	}
+
+	/**
+	 * Opens the persistent connection of this worker to the Master.
+	 */
+	private Socket connect() throws IOException {
+		InetAddress addrM = InetAddress.getByName(masterHost);
+		Socket socket = new Socket(addrM, masterPort);
+		socket.setSoTimeout(masterReplyTimeOut);
+		socket.setTcpNoDelay(true);
+		return socket;
+	}
+}
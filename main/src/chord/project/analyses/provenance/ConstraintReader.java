@@ -5,7 +5,6 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Scanner;
 import java.util.Set;
@@ -66,16 +65,13 @@ public class ConstraintReader extends JavaAnalysis {
 			} while (changed);
 			pw.flush();
 			pw.close();
-		}else{//Example 2: This example will dump all the constraints
+		}else{//Example 2: This example will dump all the constraints, without duplicate or subsumed ones
 			String outFile = Config.outDirName + File.separator + "constraints"
 					+ ".out";
 			try {
 				PrintWriter pw = new PrintWriter(new File(outFile));
-				for(LookUpRule r: rules){
-					Iterator<ConstraintItem> iter = r.getAllConstrIterator();
-					while(iter.hasNext())
-					pw.println(iter.next());
-				}
+				for(int[] cons : ConstraintSet.load(rules))
+					pw.println(ConstraintSet.toString(cons));
 				pw.flush();
 				pw.close();
 			} catch (FileNotFoundException e) {
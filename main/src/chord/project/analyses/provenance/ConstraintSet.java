@@ -0,0 +1,317 @@
+package chord.project.analyses.provenance;
+
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The ground constraints of a set of rules, each of the form
+ * head = subTuple1 * subTuple2...subTupleN over the ids given to tuples by
+ * {@link TupleIndex}, without duplicates and without subsumed constraints.
+ *
+ * A constraint h = b1*...*bn is kept as its head followed by its sorted
+ * subgoals, and it subsumes every constraint with the same head and more
+ * subgoals: as a clause h \/ !b1 \/ ... \/ !bn, it implies them. Constraints
+ * are looked up by head through a chain per head, and a 64-bit signature of
+ * the subgoals rules out most subset checks without looking at them, as in
+ * chord.project.analyses.metaback.dnf.Clause.
+ *
+ * The chains per head are also a backward-reachability index of the
+ * provenance graph, from a tuple to the constraints deriving it and from
+ * those to their subgoals, which is kept up to date as constraints are added
+ * and removed: {@link #slice(int[])} uses it to get the constraints in the
+ * cone of influence of a set of tuples. The index lives as long as the set,
+ * and MaxSatGenerator loads a new set from all the ground instances of the
+ * rules on each update(), so it is rebuilt once per refinement iteration.
+ *
+ * The subgoals of every constraint streamed in, including the ones dropped,
+ * are recorded as well, so that the tuples a constraint mentions are known
+ * even if the constraint itself is implied by the ones kept.
+ */
+public class ConstraintSet implements Iterable<int[]> {
+	// the constraints one after another, each as its head, its number of subgoals and its subgoals
+	private int[] data = new int[4096];
+	private int dataSize = 0;
+	// constraint => offset of the constraint in data
+	private int[] offsets = new int[1024];
+	private long[] sigs = new long[1024];
+	// constraint => previous constraint with the same head, or -1
+	private int[] prevOfHead = new int[1024];
+	private int numConstraints = 0;
+	// head => last constraint with that head, plus one
+	private final TIntIntHashMap headToLast = new TIntIntHashMap();
+	private final BitSet removed = new BitSet();
+	private int numRemoved = 0;
+	// the subgoals of all constraints added, kept or not
+	private final BitSet subgoals = new BitSet();
+
+	private int numDuplicates = 0;
+	private int numSubsumed = 0;
+	private int numTautologies = 0;
+
+	/**
+	 * Stream the constraints of the given rules into a new set.
+	 */
+	public static ConstraintSet load(List<LookUpRule> rules) {
+		ConstraintSet ret = new ConstraintSet();
+		for (LookUpRule r : rules) {
+			Iterator<int[]> iter = r.getAllConstrIdIterator();
+			while (iter.hasNext())
+				ret.add(iter.next());
+		}
+		return ret;
+	}
+
+	/**
+	 * Add the constraint given by the head followed by the subgoals, which
+	 * may be reordered.
+	 *
+	 * @return whether the constraint is kept
+	 */
+	public boolean add(int[] cons) {
+		int head = cons[0];
+		for (int i = 1; i < cons.length; i++)
+			subgoals.set(cons[i]);
+		Arrays.sort(cons, 1, cons.length);
+		int n = 1;
+		for (int i = 1; i < cons.length; i++) {
+			if (cons[i] == head) {
+				numTautologies++;
+				return false;
+			}
+			if (n == 1 || cons[n - 1] != cons[i])
+				cons[n++] = cons[i];
+		}
+		int size = n - 1;
+		long sig = 0;
+		for (int i = 1; i < n; i++)
+			sig |= sigBit(cons[i]);
+		// is it subsumed by a kept constraint?
+		int last = headToLast.get(head) - 1;
+		for (int c = last; c >= 0; c = prevOfHead[c]) {
+			if (removed.get(c) || (sigs[c] & ~sig) != 0)
+				continue;
+			int off = offsets[c];
+			int csize = data[off + 1];
+			if (csize <= size && isSubset(off + 2, csize, cons, 1, size)) {
+				if (csize == size)
+					numDuplicates++;
+				else
+					numSubsumed++;
+				return false;
+			}
+		}
+		// does it subsume kept constraints?
+		for (int c = last; c >= 0; c = prevOfHead[c]) {
+			if (removed.get(c) || (sig & ~sigs[c]) != 0)
+				continue;
+			int off = offsets[c];
+			int csize = data[off + 1];
+			if (size < csize && isSuperset(off + 2, csize, cons, 1, size)) {
+				removed.set(c);
+				numRemoved++;
+				numSubsumed++;
+			}
+		}
+		int c = numConstraints++;
+		if (c == offsets.length) {
+			offsets = Arrays.copyOf(offsets, c * 2);
+			sigs = Arrays.copyOf(sigs, c * 2);
+			prevOfHead = Arrays.copyOf(prevOfHead, c * 2);
+		}
+		if (dataSize + 2 + size > data.length)
+			data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + 2 + size));
+		offsets[c] = dataSize;
+		sigs[c] = sig;
+		prevOfHead[c] = last;
+		headToLast.put(head, c + 1);
+		data[dataSize++] = head;
+		data[dataSize++] = size;
+		System.arraycopy(cons, 1, data, dataSize, size);
+		dataSize += size;
+		return true;
+	}
+
+	private static long sigBit(int id) {
+		int h = id * 0x9E3779B9;
+		return 1L << (h >>> 26);
+	}
+
+	// whether the sorted data[off..off+n) is a subset of the sorted b[from..from+m)
+	private boolean isSubset(int off, int n, int[] b, int from, int m) {
+		int j = from, end = from + m;
+		for (int i = off; i < off + n; i++) {
+			int x = data[i];
+			while (j < end && b[j] < x)
+				j++;
+			if (j == end || b[j] != x)
+				return false;
+			j++;
+		}
+		return true;
+	}
+
+	// whether the sorted data[off..off+n) is a superset of the sorted b[from..from+m)
+	private boolean isSuperset(int off, int n, int[] b, int from, int m) {
+		int i = off, end = off + n;
+		for (int j = from; j < from + m; j++) {
+			int x = b[j];
+			while (i < end && data[i] < x)
+				i++;
+			if (i == end || data[i] != x)
+				return false;
+			i++;
+		}
+		return true;
+	}
+
+	/**
+	 * The number of constraints kept.
+	 */
+	public int size() {
+		return numConstraints - numRemoved;
+	}
+
+	public int getNumDuplicates() {
+		return numDuplicates;
+	}
+
+	public int getNumSubsumed() {
+		return numSubsumed;
+	}
+
+	public int getNumTautologies() {
+		return numTautologies;
+	}
+
+	/**
+	 * The ids of the tuples that are subgoals of any constraint added,
+	 * including the duplicate, subsumed and trivial ones that are not kept.
+	 * The returned set must not be modified.
+	 */
+	public BitSet getAllSubgoals() {
+		return subgoals;
+	}
+
+	/**
+	 * Iterate over the constraints kept, each as its head followed by its
+	 * subgoals.
+	 */
+	public Iterator<int[]> iterator() {
+		return new Iterator<int[]>() {
+			int c = removed.nextClearBit(0);
+
+			public boolean hasNext() {
+				return c < numConstraints;
+			}
+
+			public int[] next() {
+				if (c >= numConstraints)
+					throw new NoSuchElementException();
+				int[] ret = get(c);
+				c = removed.nextClearBit(c + 1);
+				return ret;
+			}
+
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/**
+	 * The constraints kept that the given tuples depend on: the constraints
+	 * whose heads are among the given tuples or the subgoals of constraints
+	 * they depend on.
+	 */
+	public Slice slice(int[] roots) {
+		Slice ret = new Slice();
+		TIntArrayList worklist = new TIntArrayList();
+		for (int t : roots) {
+			if (!ret.tuples.get(t)) {
+				ret.tuples.set(t);
+				worklist.add(t);
+			}
+		}
+		while (!worklist.isEmpty()) {
+			int t = worklist.removeAt(worklist.size() - 1);
+			for (int c = headToLast.get(t) - 1; c >= 0; c = prevOfHead[c]) {
+				if (removed.get(c))
+					continue;
+				ret.cons.add(c);
+				int off = offsets[c];
+				int end = off + 2 + data[off + 1];
+				for (int i = off + 2; i < end; i++) {
+					int s = data[i];
+					if (!ret.tuples.get(s)) {
+						ret.tuples.set(s);
+						worklist.add(s);
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * A subset of the constraints kept, see {@link ConstraintSet#slice(int[])}.
+	 */
+	public class Slice implements Iterable<int[]> {
+		private final TIntArrayList cons = new TIntArrayList();
+		private final BitSet tuples = new BitSet();
+
+		/**
+		 * The number of constraints in this slice.
+		 */
+		public int size() {
+			return cons.size();
+		}
+
+		public Iterator<int[]> iterator() {
+			return new Iterator<int[]>() {
+				int i = 0;
+
+				public boolean hasNext() {
+					return i < cons.size();
+				}
+
+				public int[] next() {
+					if (i >= cons.size())
+						throw new NoSuchElementException();
+					return get(cons.get(i++));
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+
+	private int[] get(int c) {
+		int off = offsets[c];
+		int size = data[off + 1];
+		int[] ret = new int[size + 1];
+		ret[0] = data[off];
+		System.arraycopy(data, off + 2, ret, 1, size);
+		return ret;
+	}
+
+	public static String toString(int[] cons) {
+		TupleIndex tuples = TupleIndex.g();
+		StringBuilder sb = new StringBuilder();
+		sb.append(tuples.get(cons[0]));
+		sb.append(":=");
+		for (int i = 1; i < cons.length; i++) {
+			if (i != 1)
+				sb.append("*");
+			sb.append(tuples.get(cons[i]));
+		}
+		return sb.toString();
+	}
+}
@@ -1,7 +1,5 @@
 package chord.project.analyses.provenance;
 
-import java.util.List;
-
 public class FormatedConstraint{
 	int weight;
 	int[] constraint;
@@ -18,7 +16,7 @@ public class FormatedConstraint{
 		return sb.toString();
 	}
 	
-	public String toExplicitString(List<Tuple> tuplePool){
+	public String toExplicitString(TupleIndex tuplePool){
 		StringBuffer sb = new StringBuffer();
 		for(int i : constraint){
 			if(i > 0)
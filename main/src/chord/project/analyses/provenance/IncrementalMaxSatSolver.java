@@ -0,0 +1,249 @@
+package chord.project.analyses.provenance;
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import org.sat4j.core.Vec;
+import org.sat4j.core.VecInt;
+import org.sat4j.pb.IPBSolver;
+import org.sat4j.pb.SolverFactory;
+import org.sat4j.specs.ContradictionException;
+import org.sat4j.specs.IVec;
+import org.sat4j.specs.IVecInt;
+import org.sat4j.specs.TimeoutException;
+
+/**
+ * A weighted MaxSat solver that runs in the JVM and keeps its clauses across
+ * the iterations of a refinement, so that each iteration only pays for the
+ * clauses it has not seen before.
+ *
+ * Clauses are over the indices of tuples given by a MaxSatGenerator, a
+ * negative index standing for the negation of the tuple. An iteration is a
+ * round: beginRound(), then addHard()/addSoft() for every clause of the
+ * iteration, then solve().
+ *
+ * Every hard clause C is added to the underlying sat4j solver once, as
+ * C \/ !a, where a is a fresh activation variable, and a round switches on
+ * the hard clauses it adds by assuming their activation variables, so hard
+ * clauses of previous rounds that are absent from the current one are
+ * retracted without being removed (clauses learnt from them mention their
+ * activation variables and are retracted with them). Every soft clause C is
+ * added once as C \/ r, where r is a fresh relaxation variable; a round
+ * minimizes the sum of the weights of the relaxation variables of its soft
+ * clauses that are true, and the relaxation variables of the other soft
+ * clauses are left free, which retracts them. The minimum is found by linear
+ * search: each bound on the cost is added under the activation variable of
+ * the round, so it is dropped along with the round.
+ */
+public class IncrementalMaxSatSolver {
+	private final IPBSolver solver;
+	// tuple index => solver variable
+	private final TIntIntHashMap tupleToVar = new TIntIntHashMap();
+	// hard clause => its activation variable
+	private final TObjectIntHashMap<ClauseKey> hardToVar = new TObjectIntHashMap<ClauseKey>();
+	// soft clause => its relaxation variable
+	private final TObjectIntHashMap<ClauseKey> softToVar = new TObjectIntHashMap<ClauseKey>();
+
+	// the current round
+	private final TIntHashSet roundTuples = new TIntHashSet();
+	private final VecInt assumps = new VecInt();
+	private final TIntIntHashMap objective = new TIntIntHashMap();
+
+	private int numNewClauses;
+
+	public IncrementalMaxSatSolver() {
+		solver = SolverFactory.newDefault();
+		// no time limit, but avoid the timer thread used for limits in seconds
+		solver.setTimeoutOnConflicts(Integer.MAX_VALUE);
+	}
+
+	public void beginRound() {
+		roundTuples.clear();
+		assumps.clear();
+		objective.clear();
+		numNewClauses = 0;
+	}
+
+	/**
+	 * Add a hard clause to the current round.
+	 */
+	public void addHard(int[] clause) {
+		ClauseKey key = new ClauseKey(clause);
+		int a = hardToVar.get(key);
+		if (a == 0) {
+			a = newVar();
+			addClause(clause, -a);
+			hardToVar.put(key, a);
+			numNewClauses++;
+		} else
+			addTuples(clause);
+		assumps.push(a);
+	}
+
+	/**
+	 * Add a soft clause of the given weight to the current round.
+	 */
+	public void addSoft(int weight, int[] clause) {
+		if (weight <= 0)
+			return;
+		ClauseKey key = new ClauseKey(clause);
+		int r = softToVar.get(key);
+		if (r == 0) {
+			r = newVar();
+			addClause(clause, r);
+			softToVar.put(key, r);
+			numNewClauses++;
+		} else
+			addTuples(clause);
+		objective.adjustOrPutValue(r, weight, weight);
+	}
+
+	/**
+	 * The number of clauses the current round added to the underlying solver.
+	 */
+	public int getNumNewClauses() {
+		return numNewClauses;
+	}
+
+	public int getNumClauses() {
+		return hardToVar.size() + softToVar.size();
+	}
+
+	/**
+	 * Solve the current round.
+	 *
+	 * @return an optimal assignment to the tuples of the current round, as the
+	 *         index of each tuple assigned true and the negated index of each
+	 *         tuple assigned false, or null if the hard clauses of the round
+	 *         cannot be satisfied
+	 */
+	public int[] solve() {
+		int[] objVars = objective.keys();
+		Arrays.sort(objVars);
+		IVecInt lits = new VecInt(objVars.length + 1);
+		IVec<BigInteger> coeffs = new Vec<BigInteger>(objVars.length + 1);
+		long total = 0;
+		for (int r : objVars) {
+			int w = objective.get(r);
+			lits.push(r);
+			coeffs.push(BigInteger.valueOf(w));
+			total += w;
+		}
+		// the bounds on the cost only hold when the activation variable of the round is true
+		int b = newVar();
+		BigInteger big = BigInteger.valueOf(total + 1);
+		lits.push(b);
+		coeffs.push(big);
+		VecInt roundAssumps = new VecInt(assumps.size() + 1);
+		assumps.copyTo(roundAssumps);
+		roundAssumps.push(b);
+		try {
+			boolean[] best = null;
+			while (solver.isSatisfiable(roundAssumps)) {
+				best = getValues();
+				long cost = 0;
+				for (int r : objVars)
+					if (best[r])
+						cost += objective.get(r);
+				if (cost == 0)
+					break;
+				try {
+					solver.addAtMost(lits, coeffs, big.add(BigInteger.valueOf(cost - 1)));
+				} catch (ContradictionException e) {
+					break;
+				}
+			}
+			if (best == null)
+				return null;
+			int[] ret = new int[roundTuples.size()];
+			int i = 0;
+			for (TIntIterator it = roundTuples.iterator(); it.hasNext();) {
+				int t = it.next();
+				ret[i++] = best[tupleToVar.get(t)] ? t : -t;
+			}
+			return ret;
+		} catch (TimeoutException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean[] getValues() {
+		boolean[] ret = new boolean[solver.nVars() + 1];
+		for (int l : solver.model())
+			if (l > 0 && l < ret.length)
+				ret[l] = true;
+		return ret;
+	}
+
+	private int newVar() {
+		return solver.nextFreeVarId(true);
+	}
+
+	private int getVar(int tupleIdx) {
+		int v = tupleToVar.get(tupleIdx);
+		if (v == 0) {
+			v = newVar();
+			tupleToVar.put(tupleIdx, v);
+		}
+		roundTuples.add(tupleIdx);
+		return v;
+	}
+
+	private void addTuples(int[] clause) {
+		for (int l : clause)
+			roundTuples.add(l > 0 ? l : -l);
+	}
+
+	private void addClause(int[] clause, int extra) {
+		VecInt c = new VecInt(clause.length + 1);
+		for (int l : clause)
+			c.push(l > 0 ? getVar(l) : -getVar(-l));
+		c.push(extra);
+		try {
+			solver.addClause(c);
+		} catch (ContradictionException e) {
+			// impossible, as extra is a fresh variable
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * A clause as a set of literals, so the order and repetition of literals
+	 * do not matter.
+	 */
+	private static class ClauseKey {
+		private final int[] lits;
+		private final int hash;
+
+		ClauseKey(int[] clause) {
+			int[] a = clause.clone();
+			Arrays.sort(a);
+			int n = 0;
+			for (int i = 0; i < a.length; i++)
+				if (n == 0 || a[n - 1] != a[i])
+					a[n++] = a[i];
+			lits = n == a.length ? a : Arrays.copyOf(a, n);
+			hash = Arrays.hashCode(lits);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof ClauseKey))
+				return false;
+			ClauseKey other = (ClauseKey) obj;
+			return hash == other.hash && Arrays.equals(lits, other.lits);
+		}
+	}
+}
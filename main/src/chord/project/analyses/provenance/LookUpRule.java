@@ -22,6 +22,9 @@ public class LookUpRule {
 	private List<Term> subGoalTerm = new ArrayList<Term>();
 	private ProgramRel instRelation;
 	private boolean ifNeg = false;
+	// the subgoals that are not negated
+	private Term[] posSubGoalTerms;
+	private int maxArity;
 
 	public LookUpRule(String line) {
 		Scanner sc = new Scanner(line);
@@ -32,6 +35,21 @@ public class LookUpRule {
 		}
 		instRelation = (ProgramRel) ClassicProject.g().getTrgt(instrName);
 		instRelation.load();
+		List<Term> posTerms = new ArrayList<Term>();
+		resolve(headTerm);
+		for (Term term : subGoalTerm) {
+			if (!term.name.startsWith("!")) {
+				resolve(term);
+				posTerms.add(term);
+			}
+		}
+		posSubGoalTerms = posTerms.toArray(new Term[posTerms.size()]);
+	}
+
+	private void resolve(Term t) {
+		t.rel = (ProgramRel) ClassicProject.g().getTrgt(t.name);
+		t.relId = TupleIndex.g().getRelId(t.rel);
+		maxArity = Math.max(maxArity, t.attrIdx.size());
 	}
 
 	public void update(){
@@ -79,6 +97,19 @@ public class LookUpRule {
 		return new ConstraintItemIterator(null);
 	}
 
+	/**
+	 * To get all the constraints in current rule, each as the id given by
+	 * {@link TupleIndex} to its head tuple followed by the ids of the tuples of
+	 * its subgoals that are not negated. It reads the ground instances of the
+	 * rule one by one from the BDD of the instrumented relation, without
+	 * creating any Tuple.
+	 *
+	 * @return
+	 */
+	public Iterator<int[]> getAllConstrIdIterator() {
+		return new ConstraintIdIterator();
+	}
+
 	/**
 	 * Generate the tuple from a view with selectAndDelete on
 	 * @param headTuple
@@ -104,15 +135,18 @@ public class LookUpRule {
 	}
 
 	private Tuple getTuple(int[] instrRel, Term t) {
-		ProgramRel tRel = (ProgramRel) ClassicProject.g().getTrgt(t.name);
 		int indices[] = new int[t.attrIdx.size()];
+		fillIndices(instrRel, t, indices);
+		Tuple ret = new Tuple(t.rel, indices);
+		return ret;
+	}
+
+	private static void fillIndices(int[] instrRel, Term t, int[] indices) {
 		for (int i = 0; i < t.attrIdx.size(); i++)
 			if (t.isConstant.get(i))
 				indices[i] = t.attrIdx.get(i);
 			else
 				indices[i] = instrRel[t.attrIdx.get(i)];
-		Tuple ret = new Tuple(tRel, indices);
-		return ret;
 	}
 
 	private Term readTerm(Scanner sc) {
@@ -207,12 +241,53 @@ public class LookUpRule {
 
 	}
 
+	class ConstraintIdIterator implements Iterator<int[]> {
+		Iterator<int[]> iter = instRelation.getAryNIntTuples().iterator();
+		int[] indices = new int[maxArity];
+
+		ConstraintIdIterator() {
+			if (!ifNeg && posSubGoalTerms.length < subGoalTerm.size()) {
+				System.out.println("Negation detected in the datalog rules. Pay attention for unwanted errors.");
+				ifNeg = true;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return iter.hasNext();
+		}
+
+		@Override
+		public int[] next() {
+			int[] instRel = iter.next();
+			int[] ret = new int[posSubGoalTerms.length + 1];
+			ret[0] = getTupleId(instRel, headTerm);
+			for (int i = 0; i < posSubGoalTerms.length; i++)
+				ret[i + 1] = getTupleId(instRel, posSubGoalTerms[i]);
+			return ret;
+		}
+
+		private int getTupleId(int[] instRel, Term t) {
+			fillIndices(instRel, t, indices);
+			return TupleIndex.g().getOrAdd(t.relId, indices, t.attrIdx.size());
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
 }
 
 class Term {
 	public String name;
 	public List<Integer> attrIdx = new ArrayList<Integer>();
 	public List<Boolean> isConstant = new ArrayList<Boolean>();
+	// the relation of the term and its number in TupleIndex, unless the term is negated
+	public ProgramRel rel;
+	public int relId;
 
 	public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -2,8 +2,9 @@ package chord.project.analyses.provenance;
 
 import static chord.util.ExceptionUtil.fail;
 import static chord.util.StringUtil.path;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -11,11 +12,11 @@ import java.io.FileNotFoundException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
 import java.util.TimerTask;
@@ -26,8 +27,10 @@ import chord.util.Timer;
 import chord.util.tuple.object.Pair;
 
 /**
- * Generate the constraint file within one iteration. TODO: implement the method
- * to merge constraints across iterations together
+ * Generate the MaxSat constraints within one iteration and solve them, either
+ * with the in-process solver, which keeps the constraints of previous iterations
+ * (chord.provenance.solver=sat4j, the default), or by writing them to a file for
+ * the mifumax binary (chord.provenance.solver=mifumax).
  * 
  * @author xin
  * 
@@ -41,14 +44,24 @@ public class MaxSatGenerator {
 	// The way to get the correct constaintItem is consPool.get(idx)
 //	private TObjectIntMap<ConstraintItem> consDic;
 //	private ArrayList<ConstraintItem> consPool;
-	private TObjectIntMap<Tuple> tupleDic;
+	// Tuples are numbered by TupleIndex.g(), which is shared by all generators
+	private TupleIndex tuplePool;
 //	private Set<ConstraintItem> consPool;
-	private ArrayList<Tuple> tuplePool;
+	// The ground constraints of the rules, reloaded by update()
+	private ConstraintSet constraints;
+	// tuple => the transformed tuple, negated if the tuple is transformed to its negation,
+	// or NOT_TRANSFORMED if it cannot be eliminated
+	private TIntIntHashMap transformed;
+	// tuple => IS_PARAM or NOT_PARAM
+	private TIntIntHashMap paramKinds;
 	private ParamTupleConsHandler paramHandler;
-	private Map<Tuple, Set<Integer>> consMap;
 	private boolean tuplePoolChanged = false;
 	private int queryWeight;
 	private String mifuPath;
+	// the in-process solver, or null if the mifumax binary is used instead
+	private IncrementalMaxSatSolver maxSatSolver;
+	// whether to encode only the constraints in the cone of influence of the queries
+	private boolean sliceQueries;
 	
 	// model: It points to a model that will put a bias in our MaxSat encoding.
 	// Intuitively, this model object identifies derived tuples that are likely to hold.
@@ -58,17 +71,20 @@ public class MaxSatGenerator {
 	public final static int QUERY_HARD = -1;
 	public final static int QUERY_MAX = 0;
 
+	private final static int NOT_TRANSFORMED = Integer.MIN_VALUE;
+	private final static int IS_PARAM = 1;
+	private final static int NOT_PARAM = 2;
+
 	public MaxSatGenerator(String configFiles[], String queryR, ParamTupleConsHandler paramHandler, Model model, int queryWeight) {
 		this.queryR = queryR;
 		this.configFiles = configFiles;
-		tupleDic = new TObjectIntHashMap<Tuple>();
 //		consDic = new TObjectIntHashMap<ConstraintItem>();
-		consMap = new HashMap<Tuple, Set<Integer>>();
 //		consPool = new ArrayList<ConstraintItem>();
 //		consPool = new HashSet<ConstraintItem>();
-		tuplePool = new ArrayList<Tuple>();
+		tuplePool = TupleIndex.g();
 //		consPool.add(null);// add null to make the index aligned with the Dic
-		tuplePool.add(null);// add null to make the index aligned with the Dic
+		transformed = new TIntIntHashMap();
+		paramKinds = new TIntIntHashMap();
 		this.paramHandler = paramHandler;
 		this.model = model;
 		this.queryWeight = queryWeight;
@@ -76,6 +92,12 @@ public class MaxSatGenerator {
 		this.mifuPath = System.getenv("CHORD_MAIN") + File.separator + "src" + File.separator +
 				"chord" + File.separator + "project" + File.separator + "analyses" + File.separator +
 				"provenance" + File.separator + mifuFileName;
+		sliceQueries = Boolean.parseBoolean(System.getProperty("chord.provenance.slice", "true"));
+		String solverName = System.getProperty("chord.provenance.solver", "sat4j");
+		if (solverName.equals("sat4j"))
+			maxSatSolver = new IncrementalMaxSatSolver();
+		else if (!solverName.equals("mifumax"))
+			fail("Unknown MaxSat solver: " + solverName + "; expected sat4j or mifumax.");
 	}
 	
 	private void initRules() {
@@ -101,6 +123,8 @@ public class MaxSatGenerator {
 
 	public void setParamHandler(ParamTupleConsHandler softWeight) {
 		this.paramHandler = softWeight;
+		transformed.clear();
+		paramKinds.clear();
 	}
 
 	public void update(Set<Tuple> queryTs) {
@@ -122,12 +146,165 @@ public class MaxSatGenerator {
 //				consPool.add(it);
 //			}
 		}
+		constraints = ConstraintSet.load(rules);
+		System.out.println("Constraints: " + constraints.size() + " kept, " + constraints.getNumDuplicates() +
+			" duplicate, " + constraints.getNumSubsumed() + " subsumed, " + constraints.getNumTautologies() +
+			" trivial; tuples: " + tuplePool.size());
+	}
+
+	/**
+	 * The literal of the tuple with the given id after transformation by the
+	 * ParamTupleConsHandler, or NOT_TRANSFORMED if it is transformed to null.
+	 */
+	private int transform(int id) {
+		int ret = transformed.get(id);
+		if (ret == 0) {
+			Pair<Tuple, Boolean> p = paramHandler.transform(tuplePool.get(id));
+			if (p == null)
+				ret = NOT_TRANSFORMED;
+			else {
+				ret = getOrAddTupleIdx(p.val0);
+				if (!p.val1)
+					ret = 0 - ret;
+			}
+			transformed.put(id, ret);
+		}
+		return ret;
+	}
+
+	private boolean isParam(int id) {
+		int kind = paramKinds.get(id);
+		if (kind == 0) {
+			kind = paramHandler.isParam(tuplePool.get(id)) ? IS_PARAM : NOT_PARAM;
+			paramKinds.put(id, kind);
+		}
+		return kind == IS_PARAM;
+	}
+
+	/**
+	 * The clause encoding the given constraint, head followed by subgoals, after
+	 * transformation.
+	 */
+	private int[] toClause(int[] cons) {
+		int[] clause = new int[cons.length];
+		int n = 0;
+		clause[n++] = transform(cons[0]);
+		if (clause[0] == NOT_TRANSFORMED)
+			throw new RuntimeException("Cannot transform the head of " + ConstraintSet.toString(cons));
+		for (int i = 1; i < cons.length; i++) {
+			int sidx = transform(cons[i]);
+			if (sidx != NOT_TRANSFORMED)
+				clause[n++] = 0 - sidx;
+		}
+		return n < clause.length ? Arrays.copyOf(clause, n) : clause;
+	}
+
+	/**
+	 * The parameterized tuples among the transformed subgoals of all the
+	 * constraints streamed in, including those dropped as implied by the
+	 * ones kept: dropping a constraint must not drop the soft constraint of
+	 * a parameter, nor the constraints among parameters it takes part in.
+	 */
+	private Set<Tuple> getParamSet() {
+		TIntHashSet paramIds = new TIntHashSet();
+		BitSet subgoals = constraints.getAllSubgoals();
+		for (int id = subgoals.nextSetBit(0); id >= 0; id = subgoals.nextSetBit(id + 1)) {
+			int sidx = transform(id);
+			if (sidx != NOT_TRANSFORMED) {
+				int t = Math.abs(sidx);
+				if (isParam(t))
+					paramIds.add(t);
+			}
+		}
+		Set<Tuple> ret = new HashSet<Tuple>();
+		for (TIntIterator it = paramIds.iterator(); it.hasNext();)
+			ret.add(tuplePool.get(it.next()));
+		return ret;
 	}
 
 	public Set<Tuple> solve(Set<Tuple> tSet, String dFPost) {
 		if(DEBUG){
 			iterCount++;
 		}
+		if (constraints == null)
+			constraints = ConstraintSet.load(rules);
+		// The parameters come from all the constraints, not only from the slice: the
+		// constraints among parameters relate parameters in the cone to parameters
+		// outside it, so leaving the latter out could change the optimum
+		Set<Tuple> paramSet = getParamSet();//parameterized tuples
+		Iterable<int[]> cons = constraints;
+		if (sliceQueries) {
+			// Constraints whose heads the queries do not depend on can be satisfied by
+			// setting their heads, which nothing else constrains, to true
+			int[] roots = new int[tSet.size()];
+			int i = 0;
+			for (Tuple t : tSet)
+				roots[i++] = getOrAddTupleIdx(t);
+			ConstraintSet.Slice slice = constraints.slice(roots);
+			System.out.println("Constraints in the cone of " + tSet.size() + " queries: " + slice.size() +
+				" out of " + constraints.size());
+			cons = slice;
+		}
+		if (maxSatSolver != null)
+			return solveInProcess(tSet, cons, paramSet);
+		return solveWithMifumax(tSet, cons, paramSet, dFPost);
+	}
+
+	/**
+	 * Solve the constraints of the current iteration with the in-process solver,
+	 * which keeps the constraints of the previous iterations, so that only the
+	 * constraints new to this iteration are added to it, and the constraints of
+	 * the previous iterations that are absent from this one are retracted.
+	 */
+	private Set<Tuple> solveInProcess(Set<Tuple> tSet, Iterable<int[]> constraints, Set<Tuple> paramSet) {
+		maxSatSolver.beginRound();
+		int hardConsNum = 0;
+		// First, normal hard constraints
+		for (int[] cons : constraints) {
+			maxSatSolver.addHard(toClause(cons));
+			hardConsNum++;
+		}
+		// Second, constraints among input tuples
+		Set<FormatedConstraint> paramCons = paramHandler.getHardCons(0, paramSet, this);
+		for (FormatedConstraint con : paramCons)
+			maxSatSolver.addHard(con.getConstraint());
+		hardConsNum += paramCons.size();
+		int softSum = 0;
+		for (Tuple t : paramSet)
+			softSum += paramHandler.getWeight(t);
+		// Third, query constraints
+		int qw = queryWeight == QUERY_MAX ? softSum + 1 : queryWeight;
+		for (Tuple t : tSet) {
+			int[] clause = new int[] { 0 - getOrAddTupleIdx(t) };
+			if (queryWeight == QUERY_HARD) {
+				maxSatSolver.addHard(clause);
+				hardConsNum++;
+			} else
+				maxSatSolver.addSoft(qw, clause);
+		}
+		// Fourth, soft constraints from the model
+		model.build(rules);
+		for (Pair<Tuple,Integer> pair : model.getWeightedTuples())
+			maxSatSolver.addSoft(pair.val1, new int[] { getOrAddTupleIdx(pair.val0) });
+		// Final, soft constraints
+		for (Tuple t : paramSet)
+			maxSatSolver.addSoft(paramHandler.getWeight(t), new int[] { getOrAddTupleIdx(t) });
+		System.out.println("Start the solver: " + hardConsNum + " hard constraints, " +
+			maxSatSolver.getNumNewClauses() + " new out of " + maxSatSolver.getNumClauses() + " constraints.");
+
+		Timer timer = new Timer();
+		timer.init();
+		int[] result = maxSatSolver.solve();
+		timer.done();
+		System.out.println("Solver exclusive time: "+timer.getExclusiveTimeStr());
+
+		if (result == null)
+			return null;
+		return interpreteModel(result, tSet);
+	}
+
+	private Set<Tuple> solveWithMifumax(Set<Tuple> tSet, Iterable<int[]> constraints, Set<Tuple> paramSet,
+			String dFPost) {
 		File consFile = new File(Config.outDirName + File.separator + "all.maxsat"+(DEBUG?dFPost:""));
 		File expConsFile = new File(Config.outDirName + File.separator + "all.explicit"+(DEBUG?dFPost:""));
 		try {
@@ -139,29 +316,15 @@ public class MaxSatGenerator {
 //			int hardConsNum = allCons.size();
 //			int hardConsNum = consPool.size();
 			int hardConsNum = 0;
-			Set<Tuple> paramSet = new HashSet<Tuple>();//parameterized tuples
-			Set<Tuple> tupleSet = new HashSet<Tuple>();//all the tuples
+			// the clauses are over tuple ids, so the number of variables is the largest id
+			int numVars = 0;
 //			for (ConstraintItem it : consPool) {
 //				ConstraintItem it = consPool.get(i);
-			for(LookUpRule r : rules){
-				Iterator<ConstraintItem> iter = r.getAllConstrIterator();
-				while (iter.hasNext()) {
-					ConstraintItem it = iter.next();
-					Pair<Tuple, Boolean> ht = paramHandler.transform(it.headTuple);
-					if (ht != null)
-						tupleSet.add(ht.val0);
-					for (Tuple st : it.subTuples) {
-						Pair<Tuple, Boolean> st1 = paramHandler.transform(st);
-						if (st1 != null) {
-							tupleSet.add(st1.val0);
-							if (paramHandler.isParam(st1.val0))
-								paramSet.add(st1.val0);
-						}
-					}
-					hardConsNum++;
-				}
+			for (int[] cons : constraints) {
+				for (int l : toClause(cons))
+					numVars = Math.max(numVars, Math.abs(l));
+				hardConsNum++;
 			}
-//			}
 			Set<FormatedConstraint> paramCons = paramHandler.getHardCons(0, paramSet, this);// This is to specify constraints
 																							// like !(k=1 and k=0)
 			hardConsNum += paramCons.size();
@@ -191,6 +354,11 @@ public class MaxSatGenerator {
 			softConsNum += model.getNumConstraints();
 			
 			int top = softSum + 1;
+			for (Tuple t : tSet)
+				getOrAddTupleIdx(t);
+			for (Pair<Tuple,Integer> pair : model.getWeightedTuples())
+				getOrAddTupleIdx(pair.val0);
+			numVars = Math.max(numVars, tuplePool.size());
 
 			if(queryWeight == QUERY_HARD)
 				qw = top;
@@ -204,7 +372,7 @@ public class MaxSatGenerator {
 			pw.print("p wcnf");
 			if(DEBUG)
 			pw1.println("=================================");
-			pw.print(" " + tupleSet.size());
+			pw.print(" " + numVars);
 			pw.print(" " + (hardConsNum + softConsNum));
 			pw.println(" " + top);
 
@@ -219,30 +387,14 @@ public class MaxSatGenerator {
 			// Second, normal hard constraints
 //			for (ConstraintItem it : consPool) {
 //				ConstraintItem it = consPool.get(i);
-			for (LookUpRule r : rules) {
-				Iterator<ConstraintItem> iter = r.getAllConstrIterator();
-				while (iter.hasNext()) {
-					ConstraintItem it = iter.next();
-					pw.print(top + " ");
-					Pair<Tuple, Boolean> tht = paramHandler.transform(it.headTuple);
-					int hidx = getOrAddTupleIdx(tht.val0);
-					if (!tht.val1)
-						hidx = 0 - hidx;
-					pw.print(hidx);
-					for (Tuple st : it.subTuples) {
-						Pair<Tuple, Boolean> tst = paramHandler.transform(st);
-						if (tst != null) {
-							int sidx = getOrAddTupleIdx(tst.val0);
-							if (!tst.val1)
-								sidx = 0 - sidx;
-							pw.print(" " + (0 - sidx));
-						}
-					}
-					pw.println(" 0");
-					if (DEBUG)
-						pw1.println(it);
-					consNumberPrinted++;
-				}
+			for (int[] cons : constraints) {
+				pw.print(top);
+				for (int l : toClause(cons))
+					pw.print(" " + l);
+				pw.println(" 0");
+				if (DEBUG)
+					pw1.println(ConstraintSet.toString(cons));
+				consNumberPrinted++;
 			}
 			
 			// Third, constraints among input tuples
@@ -276,9 +428,8 @@ public class MaxSatGenerator {
 			if(DEBUG && tuplePoolChanged){
 				File tupleFile = new File(Config.outDirName + File.separator + "tuple.map");
 				PrintWriter pwTemp = new PrintWriter(tupleFile);
-				for(Tuple t : tuplePool)
-					if(t!=null)
-					   pwTemp.println(t.toVerboseString());
+				for(int i = 1; i <= tuplePool.size(); i++)
+					pwTemp.println(tuplePool.get(i).toVerboseString());
 				pwTemp.flush();
 				pwTemp.close();
 				tuplePoolChanged = false;
@@ -327,24 +478,8 @@ public class MaxSatGenerator {
 					String c = lineSc.next();
 					if (!c.trim().equals("v"))
 						throw new RuntimeException("Expected char of a solution line: " + c);
-					while (lineSc.hasNext()) {
-						int i = lineSc.nextInt();
-						if (i < 0) {
-							Tuple t = tuplePool.get(0 - i);
-//							System.out.println("========");
-//							System.out.println(t.toVerboseString());
-							if (paramHandler.isParam(t))
-								ret.add(t);
-						}
-						else{
-							Tuple t = tuplePool.get(i);
-							if(queries.contains(t)){
-								if(queryWeight == QUERY_HARD)
-									throw new RuntimeException("Check the query encoding, it is supposed to be hard constraints");
-								ret.add(t);
-							}
-						}
-					}
+					while (lineSc.hasNext())
+						interpreteLiteral(lineSc.nextInt(), queries, ret);
 				}
 			}
 			System.out.println("Tuples to eliminate: "+ret);
@@ -355,12 +490,36 @@ public class MaxSatGenerator {
 		}
 	}
 
+	private Set<Tuple> interpreteModel(int[] lits, Set<Tuple> queries) {
+		Set<Tuple> ret = new HashSet<Tuple>();
+		for (int i : lits)
+			interpreteLiteral(i, queries, ret);
+		System.out.println("Tuples to eliminate: "+ret);
+		return ret;
+	}
+
+	private void interpreteLiteral(int i, Set<Tuple> queries, Set<Tuple> ret) {
+		if (i < 0) {
+			Tuple t = tuplePool.get(0 - i);
+//			System.out.println("========");
+//			System.out.println(t.toVerboseString());
+			if (paramHandler.isParam(t))
+				ret.add(t);
+		}
+		else{
+			Tuple t = tuplePool.get(i);
+			if(queries.contains(t)){
+				if(queryWeight == QUERY_HARD)
+					throw new RuntimeException("Check the query encoding, it is supposed to be hard constraints");
+				ret.add(t);
+			}
+		}
+	}
+
 	public int getOrAddTupleIdx(Tuple t) {
-		int ret = tupleDic.get(t);
-		if (ret <= 0) {
-			ret = tuplePool.size();
-			tupleDic.put(t, ret);
-			tuplePool.add(t);
+		int ret = tuplePool.getId(t);
+		if (ret == 0) {
+			ret = tuplePool.getOrAdd(t);
 			tuplePoolChanged = true;
 		}
 		return ret;
@@ -0,0 +1,158 @@
+package chord.project.analyses.provenance;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import chord.project.analyses.ProgramRel;
+
+/**
+ * A global numbering of tuples, which gives each distinct tuple a positive
+ * int id the first time it is seen.
+ *
+ * A tuple is stored as the number of its relation followed by its indices
+ * in one int array, and is only materialized as a Tuple object on demand,
+ * so ground constraints can be kept as arrays of ids.
+ */
+public class TupleIndex {
+	private static TupleIndex instance;
+
+	private final List<ProgramRel> rels = new ArrayList<ProgramRel>();
+	private final TObjectIntHashMap<ProgramRel> relToId = new TObjectIntHashMap<ProgramRel>();
+	// tuple id => offset of the tuple in data
+	private int[] offsets = new int[1024];
+	// relation id followed by the indices of each tuple
+	private int[] data = new int[4096];
+	private int dataSize = 0;
+	private int numTuples = 0;
+	// open addressing hash table of tuple ids, 0 denoting an empty slot
+	private int[] table = new int[2048];
+
+	public static TupleIndex g() {
+		if (instance == null)
+			instance = new TupleIndex();
+		return instance;
+	}
+
+	/**
+	 * The number of tuples seen so far, which is also the largest id.
+	 */
+	public int size() {
+		return numTuples;
+	}
+
+	public int getRelId(ProgramRel rel) {
+		int r = relToId.get(rel);
+		if (r == 0) {
+			rels.add(rel);
+			r = rels.size();
+			relToId.put(rel, r);
+		}
+		return r;
+	}
+
+	public ProgramRel getRel(int id) {
+		return rels.get(data[offsets[id]] - 1);
+	}
+
+	public int getArity(int id) {
+		return getRel(id).getDoms().length;
+	}
+
+	public int getIndex(int id, int attr) {
+		return data[offsets[id] + 1 + attr];
+	}
+
+	public Tuple get(int id) {
+		int off = offsets[id];
+		ProgramRel rel = rels.get(data[off] - 1);
+		int n = rel.getDoms().length;
+		return new Tuple(rel, Arrays.copyOfRange(data, off + 1, off + 1 + n));
+	}
+
+	/**
+	 * The id of the given tuple, or 0 if it has not been seen.
+	 */
+	public int getId(Tuple t) {
+		int r = relToId.get(t.getRel());
+		if (r == 0)
+			return 0;
+		int[] indices = t.getIndices();
+		return table[find(r, indices, indices.length)];
+	}
+
+	public int getOrAdd(Tuple t) {
+		int[] indices = t.getIndices();
+		return getOrAdd(getRelId(t.getRel()), indices, indices.length);
+	}
+
+	/**
+	 * The id of the tuple of the relation numbered relId with the first n
+	 * elements of indices, adding it if it has not been seen.
+	 */
+	public int getOrAdd(int relId, int[] indices, int n) {
+		int slot = find(relId, indices, n);
+		int id = table[slot];
+		if (id != 0)
+			return id;
+		id = ++numTuples;
+		if (id == offsets.length)
+			offsets = Arrays.copyOf(offsets, offsets.length * 2);
+		if (dataSize + 1 + n > data.length)
+			data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + 1 + n));
+		offsets[id] = dataSize;
+		data[dataSize++] = relId;
+		System.arraycopy(indices, 0, data, dataSize, n);
+		dataSize += n;
+		table[slot] = id;
+		if (numTuples * 2 > table.length)
+			rehash();
+		return id;
+	}
+
+	private static int hash(int relId, int[] indices, int from, int n) {
+		int h = relId;
+		for (int i = 0; i < n; i++)
+			h = 31 * h + indices[from + i];
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	// the slot holding the given tuple, or the empty slot where it belongs
+	private int find(int relId, int[] indices, int n) {
+		int mask = table.length - 1;
+		int slot = hash(relId, indices, 0, n) & mask;
+		while (true) {
+			int id = table[slot];
+			if (id == 0 || matches(id, relId, indices, n))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private boolean matches(int id, int relId, int[] indices, int n) {
+		int off = offsets[id];
+		if (data[off] != relId)
+			return false;
+		for (int i = 0; i < n; i++)
+			if (data[off + 1 + i] != indices[i])
+				return false;
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int id = 1; id <= numTuples; id++) {
+			int off = offsets[id];
+			int relId = data[off];
+			int n = rels.get(relId - 1).getDoms().length;
+			int slot = hash(relId, data, off + 1, n) & mask;
+			while (table[slot] != 0)
+				slot = (slot + 1) & mask;
+			table[slot] = id;
+		}
+	}
+}
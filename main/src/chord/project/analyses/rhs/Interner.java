@@ -0,0 +1,55 @@
+package chord.project.analyses.rhs;
+
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * A table of canonical instances of immutable abstract states (or parts
+ * of abstract states) of an RHS analysis.
+ * <p>
+ * Path and summary edges of an RHS analysis typically hold very many
+ * states that are equal but separately allocated.  Interning each state
+ * as it is created makes all equal states share a single instance, so
+ * that equal interned states can be compared by reference and results
+ * of operations on them can be memoized by reference (see
+ * {@link MemoCache}).
+ * <p>
+ * An interned state must not be mutated, and should cache its hash code
+ * as it is hashed at least once.  The table does not keep a canonical
+ * instance alive: it is dropped once no longer referenced from elsewhere,
+ * so a table need never be cleared between passes of an analysis.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <T> The type of the states.
+ */
+public class Interner<T> {
+    private final WeakHashMap<T, WeakReference<T>> table =
+        new WeakHashMap<T, WeakReference<T>>();
+
+    /**
+     * Provides the canonical instance of the given state, making it the
+     * canonical instance if no state equal to it is interned.
+     *
+     * @param t A state.
+     *
+     * @return The interned state equal to the given state.
+     */
+    public T intern(T t) {
+        WeakReference<T> ref = table.get(t);
+        if (ref != null) {
+            T u = ref.get();
+            if (u != null)
+                return u;
+        }
+        table.put(t, new WeakReference<T>(t));
+        return t;
+    }
+
+    /**
+     * Provides the number of states currently interned.
+     */
+    public int size() {
+        return table.size();
+    }
+}
@@ -0,0 +1,83 @@
+package chord.project.analyses.rhs;
+
+/**
+ * A cache of the results of a binary operation, such as the merge or join
+ * of two abstract states, on interned states (see {@link Interner}).
+ * <p>
+ * Operands are compared by reference, so the cache must only be used for
+ * an operation whose result depends only upon the contents of its
+ * operands and whose operands are immutable.  The cache is direct-mapped,
+ * like the operation caches of a BDD package: each pair of operands maps
+ * to a single slot, which holds the most recent result computed for any
+ * pair mapping to it.  It therefore takes bounded space and need never be
+ * cleared.
+ * <p>
+ * This class is not thread-safe.
+ *
+ * @param <T> The type of the operands.
+ * @param <R> The type of the results.
+ */
+public class MemoCache<T, R> {
+    private final Object[] fsts;
+    private final Object[] snds;
+    private final Object[] results;
+    private final int mask;
+    private int numHits;
+    private int numMisses;
+
+    /**
+     * Creates a cache with the given number of slots.
+     *
+     * @param size The number of slots, rounded up to a power of 2.
+     */
+    public MemoCache(int size) {
+        int n = 1;
+        while (n < size)
+            n <<= 1;
+        fsts = new Object[n];
+        snds = new Object[n];
+        results = new Object[n];
+        mask = n - 1;
+    }
+
+    private int slot(T a, T b) {
+        int h = System.identityHashCode(a) * 31 + System.identityHashCode(b);
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+
+    /**
+     * Provides the cached result of the operation on the given operands, if
+     * any.
+     *
+     * @return The cached result, or null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public R get(T a, T b) {
+        int i = slot(a, b);
+        if (fsts[i] == a && snds[i] == b) {
+            numHits++;
+            return (R) results[i];
+        }
+        numMisses++;
+        return null;
+    }
+
+    /**
+     * Caches the given result of the operation on the given operands.
+     */
+    public void put(T a, T b, R r) {
+        int i = slot(a, b);
+        fsts[i] = a;
+        snds[i] = b;
+        results[i] = r;
+    }
+
+    public int getNumHits() {
+        return numHits;
+    }
+
+    public int getNumMisses() {
+        return numMisses;
+    }
+}
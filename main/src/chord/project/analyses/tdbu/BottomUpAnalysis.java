@@ -7,10 +7,15 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import joeq.Class.jq_Method;
 import joeq.Compiler.Quad.BasicBlock;
@@ -21,6 +26,7 @@ import joeq.Compiler.Quad.Quad;
 import chord.analyses.alias.ICICG;
 import chord.program.Loc;
 import chord.project.analyses.rhs.IEdge;
+import chord.project.analyses.rhs.RHSAnalysis;
 import chord.util.ArraySet;
 import chord.util.tuple.object.Pair;
 
@@ -49,9 +55,12 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 	// protected Map<Set<jq_Method>, Integer> buCountMap = new
 	// HashMap<Set<jq_Method>, Integer>();
 	/**
-	 * The map that maps each method to its set of summaries
+	 * The map that maps each method to its set of summaries. When SCCs are
+	 * summarized in parallel, it only holds the summaries of committed SCCs
+	 * (see {@link SCCJob}), so the top-down analysis can read it while other
+	 * SCCs are still being summarized.
 	 */
-	protected Map<jq_Method, Set<BUSE>> summEdges = new HashMap<jq_Method, Set<BUSE>>();
+	protected Map<jq_Method, Set<BUSE>> summEdges = new ConcurrentHashMap<jq_Method, Set<BUSE>>();
 
 	/**
 	 * The strong connected components in the call graph sorted by topological
@@ -95,7 +104,34 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 	/**
 	 * A cache to speed up the callee query
 	 */
-	protected Map<Quad, Set<jq_Method>> targetsMap = new HashMap<Quad, Set<jq_Method>>();
+	protected Map<Quad, Set<jq_Method>> targetsMap = new ConcurrentHashMap<Quad, Set<jq_Method>>();
+
+	/**
+	 * The number of threads summarizing SCCs in parallel. If it is 1, runBU
+	 * summarizes the SCCs one after another before it returns.
+	 */
+	private int numThreads = 1;
+
+	private ExecutorService pool;
+
+	/**
+	 * The top-down analysis whose summaries are handed to runBU, used to copy
+	 * them before they are read by other threads
+	 */
+	private RHSAnalysis<TDPE, TDSE> td;
+
+	/**
+	 * The parallel bottom-up run in progress, if any
+	 */
+	private SCCJob curJob;
+
+	/**
+	 * The roots of the parallel bottom-up runs requested while curJob was in
+	 * progress
+	 */
+	private Set<jq_Method> deferredRoots = new LinkedHashSet<jq_Method>();
+
+	private volatile Throwable workerError;
 
 	/**
 	 * The transfer function over quad q
@@ -200,6 +236,43 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 		return caseExplode;
 	}
 
+	/**
+	 * Set the number of threads summarizing independent SCCs in parallel. With
+	 * more than one thread, runBU only schedules the SCCs and returns; each
+	 * SCC is summarized once all the SCCs it calls are, and the summaries are
+	 * committed to summEdges in the same order, and with the same outcome on
+	 * failure, as if the SCCs were summarized one after another.
+	 * 
+	 * @param numThreads
+	 */
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+		if (numThreads > 1 && pool == null) {
+			pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "bu-worker");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Set the top-down analysis whose summaries are handed to runBU. Its
+	 * summary edges may be merged in place, so they are copied (see
+	 * {@link RHSAnalysis#getSECopy}) before other threads read them.
+	 * 
+	 * @param td
+	 */
+	public void setTopDown(RHSAnalysis<TDPE, TDSE> td) {
+		this.td = td;
+	}
+
 	/**
 	 * Use BU summary to get the path edges after the function
 	 * 
@@ -252,11 +325,44 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 	 * @param tdSumms
 	 */
 	public void runBU(jq_Method root, Map<jq_Method, Set<TDSE>> tdSumms) {
+		if (pool != null) {
+			poll(tdSumms);
+			if (curJob != null)
+				deferredRoots.add(root);
+			else
+				startJob(root, tdSumms);
+			return;
+		}
 		if (DEBUG) {
 			System.out.println("Start bu with " + root + " as the root");
 		}
 		BUTimes++;
 		int sccIndex = getSCCIndex(root);
+		Set<jq_Method> rootScc = sccs.get(sccIndex);
+		List<Set<jq_Method>> reachSccs = getReachSCCs(root, sccIndex);
+		int i = reachSccs.size() - 1;
+		try {
+			// analyze the sccs in a reverse topological order
+			for (; i >= 0; i--)
+				summarizeSCC(reachSccs.get(i), tdSumms, summEdges);
+		} catch (Exception e) {
+			giveUp(e, reachSccs.get(i), rootScc, summEdges);
+		}
+		// for(jq_Method m: rootScc){
+		// increaseBUCount(m);
+		// }
+	}
+
+	/**
+	 * Get the sccs to analyze for a bottom-up run from root: the scc of root
+	 * and the sccs it reaches that have no summaries yet, sorted in
+	 * topological order
+	 * 
+	 * @param root
+	 * @param sccIndex
+	 * @return
+	 */
+	private List<Set<jq_Method>> getReachSCCs(jq_Method root, int sccIndex) {
 		Set<jq_Method> rootScc = sccs.get(sccIndex);
 		// int curCount = Utilities.getCount(buCountMap, rootScc);
 		// curCount++;
@@ -285,105 +391,327 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 					break;
 			}
 		}
+		return reachSccs;
+	}
 
-		int i = reachSccs.size() - 1;
-		try {
-			// analyze the sccs in a reverse topological order
-			for (; i >= 0; i--) {
-				Set<jq_Method> scci = reachSccs.get(i);
+	/**
+	 * Summarize the methods in scci, whose callees outside scci must have
+	 * been summarized already
+	 * 
+	 * @param scci
+	 * @param tdSumms
+	 * @param summs
+	 *            the table to read the summaries of the callees from and to
+	 *            write the summaries of scci to
+	 * @throws NoCaseMatchException
+	 * @throws BUPESizeOverflowException
+	 * @throws TDSummaryNotReadyException
+	 */
+	private void summarizeSCC(Set<jq_Method> scci,
+			Map<jq_Method, Set<TDSE>> tdSumms, Map<jq_Method, Set<BUSE>> summs)
+			throws NoCaseMatchException, BUPESizeOverflowException,
+			TDSummaryNotReadyException {
+		for (jq_Method m : scci)
+			summs.put(m, new HashSet<BUSE>());
+		boolean changed = true;
+		// Repeatedly analyze the scc util the summaries reach a fixed
+		// point
+//		if (scci.size() < 5)
+			while (changed) {
+				changed = false;
 				for (jq_Method m : scci) {
-					Set<BUSE> summs = summEdges.get(m);
-					if (summs == null) {
-						summs = new HashSet<BUSE>();
-						summEdges.put(m, summs);
+					Set<TDSE> tdses = tdSumms.get(m);
+					if (this.countEffectiveTDSE(tdses) == 0) {
+						if (!noTDSEMs.contains(m))
+//							tdses = getDefaultTDSESet(m,tdSumms.get(root));
+						 throw new TDSummaryNotReadyException();
+						else
+							tdses = null;
 					}
-					summs.clear();
+					changed |= runBUonMethod(m, tdses, summs);
 				}
-				boolean changed = true;
-				// Repeatedly analyze the scc util the summaries reach a fixed
-				// point
-//				if (scci.size() < 5)
-					while (changed) {
-						changed = false;
-						for (jq_Method m : scci) {
-							Set<TDSE> tdses = tdSumms.get(m);
-							if (this.countEffectiveTDSE(tdses) == 0) {
-								if (!noTDSEMs.contains(m))
-//									tdses = getDefaultTDSESet(m,tdSumms.get(root));
-								 throw new TDSummaryNotReadyException();
-								else
-									tdses = null;
-							}
-							changed |= runBUonMethod(m, tdses);
-						}
-						if (!isRecursive(scci.iterator().next()))
-							break;
-					}
-//				else {
-//					Set<jq_Method> workList = new ArraySet<jq_Method>(scci);
-//					while(!workList.isEmpty()){
-//						jq_Method wm = workList.iterator().next();
-//						workList.remove(wm);
-//						Set<TDSE> tdses = tdSumms.get(wm);
-//						if (this.countEffectiveTDSE(tdses) == 0) {
-//							if (!noTDSEMs.contains(wm))
-//							 throw new TDSummaryNotReadyException();
-//							else
-//								tdses = null;
-//						}
-//						changed = runBUonMethod(wm, tdses);
-//						if(changed){
-//							for(jq_Method caller:callerMap.get(wm))
-//								if(scci.contains(caller))
-//									workList.add(caller);
-//						}
-//					}
-//				}
+				if (!isRecursive(scci.iterator().next()))
+					break;
 			}
-		} catch (Exception e) {
-			// In the analyze, a case mismatch happens at the invoke site. Give
-			// up on all the summaries of current SCC and the SCCs unanalyzed
-			if (!((e instanceof NoCaseMatchException)
-					|| (e instanceof BUPESizeOverflowException) || (e instanceof TDSummaryNotReadyException))) {
-				e.printStackTrace();
-				throw new RuntimeException(e);
+//		else {
+//			Set<jq_Method> workList = new ArraySet<jq_Method>(scci);
+//			while(!workList.isEmpty()){
+//				jq_Method wm = workList.iterator().next();
+//				workList.remove(wm);
+//				Set<TDSE> tdses = tdSumms.get(wm);
+//				if (this.countEffectiveTDSE(tdses) == 0) {
+//					if (!noTDSEMs.contains(wm))
+//					 throw new TDSummaryNotReadyException();
+//					else
+//						tdses = null;
+//				}
+//				changed = runBUonMethod(wm, tdses);
+//				if(changed){
+//					for(jq_Method caller:callerMap.get(wm))
+//						if(scci.contains(caller))
+//							workList.add(caller);
+//				}
+//			}
+//		}
+	}
+
+	/**
+	 * In the analyze, a case mismatch happens at the invoke site. Give up on
+	 * all the summaries of scci and the SCCs unanalyzed
+	 * 
+	 * @param e
+	 * @param scci
+	 *            the scc whose analysis threw e
+	 * @param rootScc
+	 * @param summs
+	 */
+	private void giveUp(Exception e, Set<jq_Method> scci,
+			Set<jq_Method> rootScc, Map<jq_Method, Set<BUSE>> summs) {
+		if (!((e instanceof NoCaseMatchException)
+				|| (e instanceof BUPESizeOverflowException) || (e instanceof TDSummaryNotReadyException))) {
+			e.printStackTrace();
+			throw new RuntimeException(e);
+		}
+		if (e instanceof NoCaseMatchException) {
+			noCase++;
+		}
+		if (e instanceof BUPESizeOverflowException) {
+			caseExplode++;
+		}
+		if (e instanceof TDSummaryNotReadyException)
+			TDSENotReady++;
+		if (DEBUG) {
+			System.out.println("Terminate because of exception: " + e);
+		}
+		for (jq_Method m : scci)
+			summs.put(m, new HashSet<BUSE>());
+		for (jq_Method m : rootScc) {
+			if (e instanceof TDSummaryNotReadyException) {
+				waitMap.put(m, waitMap.get(m) + waitValue);
+			} else {
+				waitMap.put(m, -1);
 			}
-			if (e instanceof NoCaseMatchException) {
-				noCase++;
+		}
+	}
+
+	/*****************************************************************
+	 * Parallel bottom-up runs
+	 *****************************************************************/
+
+	/**
+	 * A bottom-up run from a root method whose sccs are summarized in
+	 * parallel. The summaries of each scc go to a table private to the run,
+	 * and are committed to summEdges in the order in which runBU analyzes the
+	 * sccs one after another: an scc is committed once it and all the sccs
+	 * analyzed before it are done. When an scc fails, it is given up on as
+	 * by runBU, and no scc is committed after it.
+	 */
+	private class SCCJob {
+		final Set<jq_Method> rootScc;
+		final Map<jq_Method, Set<TDSE>> tdSumms;
+		final Map<jq_Method, Set<BUSE>> summs = new ConcurrentHashMap<jq_Method, Set<BUSE>>();
+		// the sccs of the run in topological order, committed from the last
+		final List<SCCTask> tasks = new ArrayList<SCCTask>();
+		int nextToCommit;
+		int numUnfinished;
+		volatile boolean stopped;
+		volatile boolean done;
+
+		SCCJob(Set<jq_Method> rootScc, Map<jq_Method, Set<TDSE>> tdSumms) {
+			this.rootScc = rootScc;
+			this.tdSumms = tdSumms;
+		}
+	}
+
+	private class SCCTask implements Runnable {
+		final SCCJob job;
+		final Set<jq_Method> scc;
+		// the tasks of the sccs calling this one, which wait for it
+		final List<SCCTask> callers = new ArrayList<SCCTask>();
+		int numCallees;
+		boolean finished;
+		boolean skipped;
+		Throwable error;
+
+		SCCTask(SCCJob job, Set<jq_Method> scc) {
+			this.job = job;
+			this.scc = scc;
+		}
+
+		public void run() {
+			try {
+				if (!skipped && !job.stopped)
+					summarizeSCC(scc, job.tdSumms, job.summs);
+				else
+					skipped = true;
+			} catch (Throwable e) {
+				error = e;
+			} finally {
+				taskFinished(this);
 			}
-			if (e instanceof BUPESizeOverflowException) {
-				caseExplode++;
-				for (jq_Method m : rootScc) {
+		}
+	}
+
+	/**
+	 * Start a parallel bottom-up run from root. Called on the thread of the
+	 * top-down analysis, which is the only one touching tdSumms and the call
+	 * graph.
+	 */
+	private void startJob(jq_Method root, Map<jq_Method, Set<TDSE>> tdSumms) {
+		if (DEBUG) {
+			System.out.println("Start parallel bu with " + root + " as the root");
+		}
+		BUTimes++;
+		int sccIndex = getSCCIndex(root);
+		Set<jq_Method> rootScc = sccs.get(sccIndex);
+		List<Set<jq_Method>> reachSccs = getReachSCCs(root, sccIndex);
+		SCCJob job = new SCCJob(rootScc, copyTDSummaries(reachSccs, tdSumms));
+		Map<Set<jq_Method>, SCCTask> sccToTask = new HashMap<Set<jq_Method>, SCCTask>();
+		for (Set<jq_Method> scc : reachSccs) {
+			SCCTask task = new SCCTask(job, scc);
+			job.tasks.add(task);
+			sccToTask.put(scc, task);
+		}
+		// resolve the callees of all the methods here: the call graph must
+		// not be queried concurrently
+		for (SCCTask task : job.tasks) {
+			Set<SCCTask> callees = new HashSet<SCCTask>();
+			for (jq_Method m : task.scc) {
+				if (m.isAbstract())
+					continue;
+				for (BasicBlock bb : m.getCFG().reversePostOrder()) {
+					for (int j = 0; j < bb.size(); j++) {
+						Quad q = bb.getQuad(j);
+						if (!(q.getOperator() instanceof Invoke))
+							continue;
+						for (jq_Method m2 : getTargets(q)) {
+							SCCTask callee = sccToTask.get(sccMap.get(m2));
+							if (callee != null && callee != task)
+								callees.add(callee);
+						}
+					}
 				}
 			}
-			if (e instanceof TDSummaryNotReadyException)
-				TDSENotReady++;
-			if (DEBUG) {
-				System.out.println("Terminate because of exception: " + e);
+			for (SCCTask callee : callees)
+				callee.callers.add(task);
+			task.numCallees = callees.size();
+		}
+		synchronized (this) {
+			job.nextToCommit = job.tasks.size() - 1;
+			job.numUnfinished = job.tasks.size();
+			curJob = job;
+			for (SCCTask task : job.tasks) {
+				if (task.numCallees == 0)
+					pool.execute(task);
 			}
-			// for (; i >= 0; i--) {
-			Set<jq_Method> scci = reachSccs.get(i);
-			for (jq_Method m : scci) {
-				Set<BUSE> summs = summEdges.get(m);
-				if (summs == null) {
-					summs = new HashSet<BUSE>();
-					summEdges.put(m, summs);
-				}
-				summs.clear();
+		}
+	}
+
+	private Map<jq_Method, Set<TDSE>> copyTDSummaries(
+			List<Set<jq_Method>> reachSccs, Map<jq_Method, Set<TDSE>> tdSumms) {
+		Map<jq_Method, Set<TDSE>> ret = new HashMap<jq_Method, Set<TDSE>>();
+		for (Set<jq_Method> scc : reachSccs) {
+			for (jq_Method m : scc) {
+				Set<TDSE> tdses = tdSumms.get(m);
+				if (tdses == null)
+					continue;
+				Set<TDSE> copy = new ArraySet<TDSE>(tdses.size());
+				for (TDSE se : tdses)
+					copy.add(td == null ? se : td.getSECopy(se));
+				ret.put(m, copy);
 			}
-			for (jq_Method m : rootScc) {
-				if (e instanceof TDSummaryNotReadyException) {
-					waitMap.put(m, waitMap.get(m) + waitValue);
-				} else {
-					waitMap.put(m, -1);
-				}
+		}
+		return ret;
+	}
+
+	private synchronized void taskFinished(SCCTask task) {
+		SCCJob job = task.job;
+		task.finished = true;
+		for (SCCTask caller : task.callers) {
+			if (task.error != null || task.skipped)
+				caller.skipped = true;
+			if (--caller.numCallees == 0)
+				pool.execute(caller);
+		}
+		while (!job.stopped && job.nextToCommit >= 0) {
+			SCCTask next = job.tasks.get(job.nextToCommit);
+			if (!next.finished)
+				break;
+			if (next.error != null) {
+				job.stopped = true;
+				if (next.error instanceof Exception) {
+					try {
+						giveUp((Exception) next.error, next.scc, job.rootScc,
+								summEdges);
+					} catch (Throwable e) {
+						workerError = e;
+					}
+				} else
+					workerError = next.error;
+				break;
 			}
-			// }
+			// the callees of next were committed before it, so it cannot
+			// have been skipped
+			assert (!next.skipped);
+			for (jq_Method m : next.scc)
+				summEdges.put(m, job.summs.get(m));
+			job.nextToCommit--;
+		}
+		if (--job.numUnfinished == 0) {
+			job.done = true;
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Finish the parallel bottom-up run that is done, if any, and start the
+	 * ones requested meanwhile. Called on the thread of the top-down analysis.
+	 * 
+	 * @param tdSumms
+	 */
+	public void poll(Map<jq_Method, Set<TDSE>> tdSumms) {
+		if (pool == null || curJob == null || !curJob.done)
 			return;
+		curJob = null;
+		rethrowWorkerError();
+		while (curJob == null && !deferredRoots.isEmpty()) {
+			jq_Method root = deferredRoots.iterator().next();
+			deferredRoots.remove(root);
+			if (!isMethodAnalyzed(root))
+				startJob(root, tdSumms);
 		}
-		// for(jq_Method m: rootScc){
-		// increaseBUCount(m);
-		// }
+	}
+
+	/**
+	 * Wait for the parallel bottom-up run in progress, if any, to finish, and
+	 * drop the ones requested meanwhile.
+	 */
+	public void waitForCompletion() {
+		if (pool == null)
+			return;
+		synchronized (this) {
+			while (curJob != null && !curJob.done) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		}
+		curJob = null;
+		deferredRoots.clear();
+		rethrowWorkerError();
+	}
+
+	private void rethrowWorkerError() {
+		Throwable e = workerError;
+		if (e == null)
+			return;
+		if (e instanceof RuntimeException)
+			throw (RuntimeException) e;
+		if (e instanceof Error)
+			throw (Error) e;
+		throw new RuntimeException(e);
 	}
 
 	protected abstract Set<TDSE> getDefaultTDSESet(jq_Method m,
@@ -438,6 +766,22 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 	 */
 	protected boolean runBUonMethod(jq_Method m, Set<TDSE> tdses)
 			throws NoCaseMatchException, BUPESizeOverflowException {
+		return runBUonMethod(m, tdses, summEdges);
+	}
+
+	/**
+	 * Run bottom-up analysis on a single method, reading the summaries of its
+	 * callees from and writing its own summaries to summs
+	 * 
+	 * @param m
+	 * @param tdses
+	 * @param summs
+	 * @throws NoCaseMatchException
+	 * @throws BUPESizeOverflowException
+	 */
+	protected boolean runBUonMethod(jq_Method m, Set<TDSE> tdses,
+			Map<jq_Method, Set<BUSE>> summs) throws NoCaseMatchException,
+			BUPESizeOverflowException {
 		if (DEBUG) {
 			System.out.println("Run BU on " + m);
 		}
@@ -458,6 +802,7 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 		mt.trackedCases = constraints;
 		mt.tdses = tdses;
 		mt.m = m;
+		mt.summs = summs;
 
 		Pair<Loc, Set<BUPE>> initialPESet = getInitialBUEdge(m);
 
@@ -525,7 +870,7 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 			if (buse != null)
 				newSumms.add(buse);
 		}
-		Set<BUSE> oldSumms = summEdges.get(m);
+		Set<BUSE> oldSumms = summs.get(m);
 		newSumms = join(newSumms,oldSumms);
 		if (DEBUG) {
 			System.out.println("old summs: " + oldSumms);
@@ -538,7 +883,7 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 			System.out.println("BU: "+newSumms);
 			System.out.println();
 		}
-		summEdges.put(m, newSumms);
+		summs.put(m, newSumms);
 		return true;
 	}
 	
@@ -692,7 +1037,9 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 			propagatePEtoPE(loc, createSingleton(bupe), bupe, null, mt);
 		} else {
 			for (jq_Method m2 : targets) {
-				Set<BUSE> seSet = summEdges.get(m2);
+				Set<BUSE> seSet = mt.summs.get(m2);
+				if (seSet == null && mt.summs != summEdges)
+					seSet = summEdges.get(m2);
 				if (seSet == null) {// Well, I've created an empty set for every
 									// method at least
 					throw new RuntimeException(
@@ -852,9 +1199,11 @@ public abstract class BottomUpAnalysis<TDPE extends IEdge, TDSE extends IEdge, B
 		public Map<Inst, Set<BUPE>> pathEdges;
 		public Queue<Pair<Loc, BUPE>> worklist;
 		public SortedSet<Constraint> trackedCases;
+		// the table of summaries of the current bottom-up run
+		public Map<jq_Method, Set<BUSE>> summs;
 	}
 
-	public int getWait(jq_Method m) {
+	public synchronized int getWait(jq_Method m) {
 		return waitMap.get(m);
 	}
 
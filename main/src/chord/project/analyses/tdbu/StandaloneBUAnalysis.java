@@ -124,6 +124,7 @@ extends BottomUpAnalysis<TDPE, TDSE , BUPE, BUSE>
 		mt.worklist = workList;
 		mt.pathEdges = pathEdges;
 		mt.m = m;
+		mt.summs = summEdges;
 
 		Pair<Loc, Set<BUPE>> initialPESet = getInitialBUEdge(m);
 
@@ -58,6 +58,7 @@ public abstract class TopDownAnalysis<TDPE extends IEdge, TDSE extends IEdge, BU
 	
 	public void setBU(BottomUpAnalysis<TDPE, TDSE, BUPE, BUSE> bu) {
 		this.bu = bu;
+		bu.setTopDown(this);
 	}
 
 	public void setBUMethods(Set<jq_Method> buMethods) {
@@ -77,6 +78,9 @@ public abstract class TopDownAnalysis<TDPE extends IEdge, TDSE extends IEdge, BU
 	protected void processInvk(Loc loc, TDPE pe) {
 		final Quad q = (Quad) loc.i;
 		final Set<jq_Method> targets = getTargets(q);
+		// pick up the bottom-up summaries committed by parallel runs meanwhile
+		if (bu != null)
+			bu.poll(summEdges);
 //		Set<TDPE> hackPEs = hack(loc,pe);
 //		if(hackPEs!=null){
 //			for(TDPE pe2 : hackPEs)
@@ -256,6 +260,13 @@ public abstract class TopDownAnalysis<TDPE extends IEdge, TDSE extends IEdge, BU
 		}
 	}
 	
+	@Override
+	public void done() {
+		if (bu != null)
+			bu.waitForCompletion();
+		super.done();
+	}
+
 	public void printSummStats(){
 		int totalMethods = tmpMap.size();
 		System.out.println("Total number of methods: "+totalMethods);
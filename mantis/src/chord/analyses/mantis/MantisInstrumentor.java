@@ -18,6 +18,7 @@ import chord.project.Config;
 import javassist.CtClass;
 import javassist.CtField;
 import javassist.CtMethod;
+import javassist.CtNewConstructor;
 import javassist.CtNewMethod;
 import javassist.expr.MethodCall;
 import javassist.CannotCompileException;
@@ -156,6 +157,33 @@ import joeq.Compiler.Quad.ControlFlowGraph;
  *
  * Finally, a call to MantisPrinter.done() is inserted at the end of the
  * main method of the program.
+ *
+ * ======
+ *
+ * If property chord.mantis.counters is "striped" then no Mantis<K> classes
+ * are generated; instead, each thread counts features in its own instance of
+ * a generated class MantisCounters, so that threads neither lose updates nor
+ * contend on the same counters:
+ *
+ * class MantisCounters {
+ *     public long[] ctrl;      // <C>_b<Bid>m<Mid>_[bef|aft]
+ *     public long[] bool;      // <C>_b<Bid>m<Mid>_[true|false]
+ *     public long[] lng;       // <C>_b<Bid>m<Mid>_long_[sum|freq]
+ *     public double[] realSum; // <C>_b<Bid>m<Mid>_double_sum
+ *     public long[] realFrq;   // <C>_b<Bid>m<Mid>_double_freq
+ *     public static MantisCounters get() { ... } // of the current thread
+ *     public static void write(String fileName) { ... }
+ * }
+ *
+ * where the i-th element of ctrl, bool, and lng is the feature on line i of
+ * the corresponding *_feature_name.txt file, and the i-th elements of
+ * realSum and realFrq are the features on lines 2i and 2i+1 of
+ * real_feature_name.txt.  For instance, case 3 above instead inserts:
+ *    { MantisCounters c = MantisCounters.get(); c.lng[2i] += V; c.lng[2i+1]++; }
+ * MantisPrinter.done() sums the counters of all threads and writes them to
+ * file feature_data.bin in the current directory, in the binary format
+ * described at FEATURE_DATA_MAGIC, which PostProcessor reads instead of the
+ * *_feature_data.txt files.
  */
 public class MantisInstrumentor extends BasicInstrumentor {
 	private static final String dataDirName =
@@ -164,6 +192,20 @@ public class MantisInstrumentor extends BasicInstrumentor {
 		Integer.getInteger("chord.mantis.max.flds.class", 8000);
     private static final int maxFldsPerMantisPrintMethod = 
 		Integer.getInteger("chord.mantis.max.flds.method", 1000);
+    private static final boolean useStripedCounters =
+		System.getProperty("chord.mantis.counters", "fields").equals("striped");
+	/**
+	 * Format of file feature_data.bin, all big-endian:
+	 * int FEATURE_DATA_MAGIC;
+	 * int numCtrl, numBool, numLong, numReal; // lines in the *_feature_name.txt files
+	 * long ctrl[numCtrl];
+	 * long bool[numBool];
+	 * long lng[numLong];
+	 * double realSum[numReal/2];
+	 * long realFrq[numReal/2];
+	 */
+	public static final int FEATURE_DATA_MAGIC = 0x4D4E5453;
+	public static final String FEATURE_DATA_FILE_NAME = "feature_data.bin";
 	private final DomM domM;
 	// index in domain M of currently instrumented method
 	private int mIdx;
@@ -173,6 +215,9 @@ public class MantisInstrumentor extends BasicInstrumentor {
 	private CtClass[] mantisClasses;
     private int currMantisClassId;
     private int numFldsInCurrMantisClass;
+	private CtClass countersClass;
+	// number of lines in each of the *_feature_name.txt files so far
+	private int numCtrlFlds, numBoolFlds, numLongFlds, numRealFlds;
 
     private CtClass createClass(String name) {
         return getPool().getPool().makeClass(name);
@@ -184,6 +229,95 @@ public class MantisInstrumentor extends BasicInstrumentor {
 		ClassicProject.g().runTask(domM);
 	}
 
+    private CtClass getCountersClass() throws CannotCompileException {
+		if (countersClass == null) {
+			CtClass c = createClass("MantisCounters");
+			c.addField(CtField.make("private static final java.lang.ThreadLocal local = " +
+				"new java.lang.ThreadLocal();", c));
+			c.addField(CtField.make("private static final java.util.List all = " +
+				"new java.util.ArrayList();", c));
+			c.addField(CtField.make("private static int numCtrl;", c));
+			c.addField(CtField.make("private static int numBool;", c));
+			c.addField(CtField.make("private static int numLong;", c));
+			c.addField(CtField.make("private static int numReal;", c));
+			c.addField(CtField.make("public long[] ctrl;", c));
+			c.addField(CtField.make("public long[] bool;", c));
+			c.addField(CtField.make("public long[] lng;", c));
+			c.addField(CtField.make("public double[] realSum;", c));
+			c.addField(CtField.make("public long[] realFrq;", c));
+			c.addConstructor(CtNewConstructor.make("private MantisCounters() { " +
+				"ctrl = new long[numCtrl]; " +
+				"bool = new long[numBool]; " +
+				"lng = new long[numLong]; " +
+				"realSum = new double[numReal / 2]; " +
+				"realFrq = new long[numReal / 2]; " +
+			"}", c));
+			c.addMethod(CtNewMethod.make("private static synchronized void register(MantisCounters c) { " +
+				"all.add(c); " +
+			"}", c));
+			c.addMethod(CtNewMethod.make("public static MantisCounters get() { " +
+				"MantisCounters c = (MantisCounters) local.get(); " +
+				"if (c == null) { " +
+					"c = new MantisCounters(); " +
+					"local.set(c); " +
+					"register(c); " +
+				"} " +
+				"return c; " +
+			"}", c));
+			c.addMethod(CtNewMethod.make("private static void writeSum(java.io.DataOutputStream out, " +
+					"long[][] stripes) throws java.io.IOException { " +
+				"int n = stripes.length == 0 ? 0 : stripes[0].length; " +
+				"for (int i = 0; i < n; i++) { " +
+					"long v = 0; " +
+					"for (int j = 0; j < stripes.length; j++) v += stripes[j][i]; " +
+					"out.writeLong(v); " +
+				"} " +
+			"}", c));
+			c.addMethod(CtNewMethod.make("private static void writeSum(java.io.DataOutputStream out, " +
+					"double[][] stripes) throws java.io.IOException { " +
+				"int n = stripes.length == 0 ? 0 : stripes[0].length; " +
+				"for (int i = 0; i < n; i++) { " +
+					"double v = 0; " +
+					"for (int j = 0; j < stripes.length; j++) v += stripes[j][i]; " +
+					"out.writeDouble(v); " +
+				"} " +
+			"}", c));
+			c.addMethod(CtNewMethod.make("public static synchronized void write(java.lang.String fileName) " +
+					"throws java.io.IOException { " +
+				"get(); " + // so that there is at least one stripe
+				"int n = all.size(); " +
+				"long[][] ctrls = new long[n][]; " +
+				"long[][] bools = new long[n][]; " +
+				"long[][] lngs = new long[n][]; " +
+				"double[][] realSums = new double[n][]; " +
+				"long[][] realFrqs = new long[n][]; " +
+				"for (int i = 0; i < n; i++) { " +
+					"MantisCounters c = (MantisCounters) all.get(i); " +
+					"ctrls[i] = c.ctrl; " +
+					"bools[i] = c.bool; " +
+					"lngs[i] = c.lng; " +
+					"realSums[i] = c.realSum; " +
+					"realFrqs[i] = c.realFrq; " +
+				"} " +
+				"java.io.DataOutputStream out = new java.io.DataOutputStream(" +
+					"new java.io.BufferedOutputStream(new java.io.FileOutputStream(fileName))); " +
+				"out.writeInt(" + FEATURE_DATA_MAGIC + "); " +
+				"out.writeInt(numCtrl); " +
+				"out.writeInt(numBool); " +
+				"out.writeInt(numLong); " +
+				"out.writeInt(numReal); " +
+				"writeSum(out, ctrls); " +
+				"writeSum(out, bools); " +
+				"writeSum(out, lngs); " +
+				"writeSum(out, realSums); " +
+				"writeSum(out, realFrqs); " +
+				"out.close(); " +
+			"}", c));
+			countersClass = c;
+		}
+		return countersClass;
+	}
+
     private void ensure(int nf) {
 		if (mantisClasses == null)
 			mantisClasses = new CtClass[2];
@@ -254,6 +388,14 @@ public class MantisInstrumentor extends BasicInstrumentor {
 		String befFldName = fldBaseName + "_bef";
 		String aftFldName = fldBaseName + "_aft";
 		String javaPos = "(" + q.toJavaLocStr() + ")";
+		if (useStripedCounters) {
+			getCountersClass();
+			fldInfosList.add(new FldInfo(FldKind.CTRL, fldBaseName, javaPos));
+			putInstrBefBCI(bci, "MantisCounters.get().ctrl[" + numCtrlFlds + "]++;");
+			putInstrBefBCI(bci + 3, "MantisCounters.get().ctrl[" + (numCtrlFlds + 1) + "]++;");
+			numCtrlFlds += 2;
+			return;
+		}
         ensure(2);
         CtClass mantisClass = mantisClasses[currMantisClassId];
         String mantisClassName = "Mantis" + currMantisClassId + ".";
@@ -292,6 +434,14 @@ public class MantisInstrumentor extends BasicInstrumentor {
 		String truFldName = fldBaseName + "_true";
 		String flsFldName = fldBaseName + "_false";
 		String javaPos = getJavaPos(e);
+		if (useStripedCounters) {
+			getCountersClass();
+			fldInfosList.add(new FldInfo(FldKind.DATA_BOOL, fldBaseName, javaPos));
+			String instr = "if ($_) MantisCounters.get().bool[" + numBoolFlds + "]++; " +
+				"else MantisCounters.get().bool[" + (numBoolFlds + 1) + "]++;";
+			numBoolFlds += 2;
+			return instr;
+		}
         ensure(2);
         CtClass mantisClass = mantisClasses[currMantisClassId];
         String mantisClassName = "Mantis" + currMantisClassId + ".";
@@ -311,6 +461,15 @@ public class MantisInstrumentor extends BasicInstrumentor {
 		String sumFldName = fldBaseName + "_sum";
 		String frqFldName = fldBaseName + "_freq";
 		String javaPos = getJavaPos(e);
+		if (useStripedCounters) {
+			getCountersClass();
+			fldInfosList.add(new FldInfo(FldKind.DATA_LONG, fldBaseName, javaPos));
+			String instr = "MantisCounters c = MantisCounters.get(); " +
+				"c.lng[" + numLongFlds + "] += $_; " +
+				"c.lng[" + (numLongFlds + 1) + "]++;";
+			numLongFlds += 2;
+			return instr;
+		}
         ensure(2);
         CtClass mantisClass = mantisClasses[currMantisClassId];
         String mantisClassName = "Mantis" + currMantisClassId + ".";
@@ -330,6 +489,15 @@ public class MantisInstrumentor extends BasicInstrumentor {
 		String sumFldName = fldBaseName + "_sum";
 		String frqFldName = fldBaseName + "_freq";
 		String javaPos = getJavaPos(e);
+		if (useStripedCounters) {
+			getCountersClass();
+			fldInfosList.add(new FldInfo(FldKind.DATA_DOUBLE, fldBaseName, javaPos));
+			String instr = "MantisCounters c = MantisCounters.get(); " +
+				"c.realSum[" + (numRealFlds / 2) + "] += $_; " +
+				"c.realFrq[" + (numRealFlds / 2) + "]++;";
+			numRealFlds += 2;
+			return instr;
+		}
         ensure(2);
         CtClass mantisClass = mantisClasses[currMantisClassId];
         String mantisClassName = "Mantis" + currMantisClassId + ".";
@@ -372,17 +540,19 @@ public class MantisInstrumentor extends BasicInstrumentor {
 
 	public void done() {
         CtClass mantisPrinterClass = createClass("MantisPrinter");
-        try {
-            CtField ctrlOutFld = CtField.make("public static java.io.PrintWriter ctrlOut;", mantisPrinterClass);
-            CtField boolOutFld = CtField.make("public static java.io.PrintWriter boolOut;", mantisPrinterClass);
-            CtField longOutFld = CtField.make("public static java.io.PrintWriter longOut;", mantisPrinterClass);
-            CtField realOutFld = CtField.make("public static java.io.PrintWriter realOut;", mantisPrinterClass);
-            mantisPrinterClass.addField(ctrlOutFld);
-            mantisPrinterClass.addField(boolOutFld);
-            mantisPrinterClass.addField(longOutFld);
-            mantisPrinterClass.addField(realOutFld);
-        } catch (CannotCompileException ex) {
-            Messages.fatal(ex);
+        if (!useStripedCounters) {
+            try {
+                CtField ctrlOutFld = CtField.make("public static java.io.PrintWriter ctrlOut;", mantisPrinterClass);
+                CtField boolOutFld = CtField.make("public static java.io.PrintWriter boolOut;", mantisPrinterClass);
+                CtField longOutFld = CtField.make("public static java.io.PrintWriter longOut;", mantisPrinterClass);
+                CtField realOutFld = CtField.make("public static java.io.PrintWriter realOut;", mantisPrinterClass);
+                mantisPrinterClass.addField(ctrlOutFld);
+                mantisPrinterClass.addField(boolOutFld);
+                mantisPrinterClass.addField(longOutFld);
+                mantisPrinterClass.addField(realOutFld);
+            } catch (CannotCompileException ex) {
+                Messages.fatal(ex);
+            }
         }
 
         File ctrlFeatureNameFileName = new File(dataDirName, "ctrl_feature_name.txt");
@@ -451,6 +621,8 @@ public class MantisInstrumentor extends BasicInstrumentor {
                 }
             }
 			++i;
+            if (useStripedCounters)
+                continue;
             if (i % maxFldsPerMantisPrintMethod == 0 || i == numFldInfos) {
                 String mName = "print" + currMantisPrintMethodId;
                 try {
@@ -476,32 +648,51 @@ public class MantisInstrumentor extends BasicInstrumentor {
         String realFeatureDataFileName = "real_feature_data.txt";
         String outDir = Config.userClassesDirName;
         try {
-            for (int i = 0; i < mantisClasses.length; i++) {
-                CtClass c = mantisClasses[i];
-                if (c == null)
-                    break;
+            CtMethod doneMethod;
+            if (useStripedCounters) {
+                CtClass c = getCountersClass();
+                c.makeClassInitializer().insertAfter(
+                    "numCtrl = " + numCtrlFlds + "; " +
+                    "numBool = " + numBoolFlds + "; " +
+                    "numLong = " + numLongFlds + "; " +
+                    "numReal = " + numRealFlds + ";");
                 c.writeFile(outDir);
+                doneMethod = CtNewMethod.make("public static void done() { " +
+                    "try { " +
+                        "MantisCounters.write(\"" + FEATURE_DATA_FILE_NAME + "\"); " +
+                    "} catch (java.io.IOException ex) { " +
+                        "ex.printStackTrace(); " +
+                        "System.exit(1); " +
+                    "}" +
+                "}", mantisPrinterClass);
+            } else {
+                for (int i = 0; mantisClasses != null && i < mantisClasses.length; i++) {
+                    CtClass c = mantisClasses[i];
+                    if (c == null)
+                        break;
+                    c.writeFile(outDir);
+                }
+                doneMethod = CtNewMethod.make("public static void done() { " +
+                    "try { " +
+                        "ctrlOut = new java.io.PrintWriter(" +
+                            "new java.io.FileWriter(\"" + ctrlFeatureDataFileName + "\")); " +
+                        "boolOut = new java.io.PrintWriter(" +
+                            "new java.io.FileWriter(\"" + boolFeatureDataFileName + "\")); " +
+                        "longOut = new java.io.PrintWriter(" +
+                            "new java.io.FileWriter(\"" + longFeatureDataFileName + "\")); " +
+                        "realOut = new java.io.PrintWriter(" +
+                            "new java.io.FileWriter(\"" + realFeatureDataFileName + "\")); " +
+                         globalInstr +
+                        " ctrlOut.close(); " +
+                        " boolOut.close(); " +
+                        " longOut.close(); " +
+                        " realOut.close(); " +
+                    "} catch (java.io.IOException ex) { " + 
+                        "ex.printStackTrace(); " +
+                        "System.exit(1); " +
+                    "}" +
+                "}", mantisPrinterClass);
             }
-			CtMethod doneMethod = CtNewMethod.make("public static void done() { " +
-                "try { " +
-                    "ctrlOut = new java.io.PrintWriter(" +
-                        "new java.io.FileWriter(\"" + ctrlFeatureDataFileName + "\")); " +
-                    "boolOut = new java.io.PrintWriter(" +
-                        "new java.io.FileWriter(\"" + boolFeatureDataFileName + "\")); " +
-                    "longOut = new java.io.PrintWriter(" +
-                        "new java.io.FileWriter(\"" + longFeatureDataFileName + "\")); " +
-                    "realOut = new java.io.PrintWriter(" +
-                        "new java.io.FileWriter(\"" + realFeatureDataFileName + "\")); " +
-                     globalInstr +
-                    " ctrlOut.close(); " +
-                    " boolOut.close(); " +
-                    " longOut.close(); " +
-                    " realOut.close(); " +
-                "} catch (java.io.IOException ex) { " + 
-                    "ex.printStackTrace(); " +
-                    "System.exit(1); " +
-                "}" +
-			"}", mantisPrinterClass);
 			mantisPrinterClass.addMethod(doneMethod);
 			CtClass mainClass = getPool().get(Config.mainClassName);
 			if (mainClass.isFrozen())
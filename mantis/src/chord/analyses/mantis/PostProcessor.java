@@ -2,27 +2,58 @@ package chord.analyses.mantis;
 
 import java.util.List;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.PrintWriter;
 import java.io.IOException;
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /*
  * Relevant system properties;
  * - chord.mantis.data.dir
  * - chord.mantis.out.dir
  * - chord.mantis.num.runs
+ * - chord.mantis.num.threads (default: number of available processors)
+ * - chord.mantis.chunk.size (number of feature pairs processed at a time;
+ *   default: as many as fit in a quarter of the heap)
  *
  * Reads the following files from the directory specified by property chord.mantis.data.dir:
  * 1. [ctrl|bool|long|real]_feature_name.txt
- * 2. [ctrl|bool|long|real]_feature_data.txt from sub-directories
- *    0, 1, ..., [chord.mantis.num.runs]-1.
+ * 2. [ctrl|bool|long|real]_feature_data.txt, or feature_data.bin if the
+ *    program was instrumented with chord.mantis.counters=striped, from
+ *    sub-directories 0, 1, ..., [chord.mantis.num.runs]-1.
  * Writes aggregated results to files feature_name.txt, feature_data.txt, and
  * feature_cost.txt in the directory specified by property chord.mantis.out.dir.
+ *
+ * Runs with text data are first converted, in parallel, to temporary files in
+ * the format of feature_data.bin, and all runs are then memory-mapped.  The
+ * features of each kind come in pairs (before/after counts, true/false counts,
+ * sum/frequency), which are processed a chunk at a time: the two columns of
+ * each pair in the chunk, holding one value per run, are loaded from all runs,
+ * the pairs are classified and formatted in parallel, and the results are
+ * appended to the output files in order before the next chunk is loaded.
  */
 public class PostProcessor {
 	static final boolean keepSum = true;
+	private static final String NL = System.getProperty("line.separator");
+
+	// kinds of features
+	private static final int CTRL = 0, BOOL = 1, LONG = 2, REAL = 3;
+
+	private static ExecutorService executor;
+	private static int numThreads;
+
 	public static void main(String[] args) throws IOException {
 		String dataDirName = System.getProperty("chord.mantis.data.dir");
 		assert (dataDirName != null);
@@ -34,198 +65,299 @@ public class PostProcessor {
 		List<String> boolFeatureNames = readStrings(new File(dataDirName, "bool_feature_name.txt"));
 		List<String> longFeatureNames = readStrings(new File(dataDirName, "long_feature_name.txt"));
 		List<String> realFeatureNames = readStrings(new File(dataDirName, "real_feature_name.txt"));
-		int numCtrlFeatures = ctrlFeatureNames.size();
-		int numBoolFeatures = boolFeatureNames.size();
-		int numLongFeatures = longFeatureNames.size();
-		int numRealFeatures = realFeatureNames.size();
-		int   [][] ctrlData    = new int   [numData][numCtrlFeatures];
-		int   [][] boolData    = new int   [numData][numBoolFeatures];
-		long  [][] longSumData = new long  [numData][numLongFeatures/2];
-		int   [][] longFrqData = new int   [numData][numLongFeatures/2];
-		double[][] realSumData = new double[numData][numRealFeatures/2];
-		int   [][] realFrqData = new int   [numData][numRealFeatures/2];
-		boolean[] ignoreData = new boolean[numData];
-		for (int i = 0; i < numData; i++) {
-			File dir = new File(dataDirName, Integer.toString(i));
-			if (!dir.exists()) {
-				System.err.println("WARN: Skipping data: " + dir);
-				ignoreData[i] = true;
-				continue;
-			}
-			readIntData (new File(dir, "ctrl_feature_data.txt"), ctrlData[i]);
-			readIntData (new File(dir, "bool_feature_data.txt"), boolData[i]);
-			readLongData(new File(dir, "long_feature_data.txt"), longSumData[i], longFrqData[i]);
-			readRealData(new File(dir, "real_feature_data.txt"), realSumData[i], realFrqData[i]);
-		}
+		final int numCtrlFeatures = ctrlFeatureNames.size();
+		final int numBoolFeatures = boolFeatureNames.size();
+		final int numLongFeatures = longFeatureNames.size();
+		final int numRealFeatures = realFeatureNames.size();
 
-		PrintWriter featureNameOut = new PrintWriter(new File(outDirName, "feature_name.txt"));
-		PrintWriter featureDataOut = new PrintWriter(new File(outDirName, "feature_data.txt"));
-		PrintWriter featureCostOut = new PrintWriter(new File(outDirName, "feature_cost.txt"));
-
-		for (int i = 0; i < numCtrlFeatures; i += 2) {
-			int befIdx = i, aftIdx = i + 1;
-			boolean isLoop = true;
-			for (int j = 0; j < numData; j++) {
-				if (ignoreData[j]) continue;
-				int bef = ctrlData[j][befIdx];
-				int aft = ctrlData[j][aftIdx];
-				if (bef - aft != 1) {
-					isLoop = false;
-					break;
-				}
-			}
-			if (isLoop) {
-				featureNameOut.println(ctrlFeatureNames.get(aftIdx));
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					featureDataOut.print(ctrlData[j][aftIdx] + " ");
-				}
-				featureDataOut.println();
-				featureCostOut.println("2");
-			} else {
-				featureNameOut.println(ctrlFeatureNames.get(befIdx));
-				featureNameOut.println(ctrlFeatureNames.get(aftIdx));
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					int bef = ctrlData[j][befIdx];
-					int aft = ctrlData[j][aftIdx];
-					featureDataOut.print((bef - aft) + " ");
+		numThreads = Integer.getInteger("chord.mantis.num.threads",
+			Runtime.getRuntime().availableProcessors());
+		executor = Executors.newFixedThreadPool(numThreads);
+		final File outDir = new File(outDirName);
+		final List<File> tmpFiles = new ArrayList<File>();
+		try {
+			List<Callable<File>> tasks = new ArrayList<Callable<File>>();
+			for (int i = 0; i < numData; i++) {
+				final File dir = new File(dataDirName, Integer.toString(i));
+				if (!dir.exists()) {
+					System.err.println("WARN: Skipping data: " + dir);
+					continue;
 				}
-				featureDataOut.println();
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					featureDataOut.print(ctrlData[j][aftIdx] + " ");
+				final File binFile = new File(dir, MantisInstrumentor.FEATURE_DATA_FILE_NAME);
+				if (binFile.exists()) {
+					tasks.add(new Callable<File>() {
+						public File call() { return binFile; }
+					});
+					continue;
 				}
-				featureDataOut.println();
-				featureCostOut.println("2");
-				featureCostOut.println("2");
+				final File tmpFile = File.createTempFile("run" + i + "_", ".bin", outDir);
+				tmpFile.deleteOnExit();
+				tmpFiles.add(tmpFile);
+				tasks.add(new Callable<File>() {
+					public File call() throws IOException {
+						convertTextData(dir, tmpFile, numCtrlFeatures, numBoolFeatures,
+							numLongFeatures, numRealFeatures);
+						return tmpFile;
+					}
+				});
+			}
+			List<File> runFiles = invokeAll(tasks);
+			List<ByteBuffer> runs = new ArrayList<ByteBuffer>(runFiles.size());
+			for (File file : runFiles) {
+				runs.add(mapData(file, numCtrlFeatures, numBoolFeatures,
+					numLongFeatures, numRealFeatures));
 			}
+
+			int numRuns = Math.max(runs.size(), 1);
+			int defaultChunkSize = (int) Math.min(Integer.MAX_VALUE,
+				Runtime.getRuntime().maxMemory() / 4 / (48L * numRuns));
+			int chunkSize = Math.max(Integer.getInteger("chord.mantis.chunk.size", defaultChunkSize), 1);
+
+			PrintWriter featureNameOut = new PrintWriter(new File(outDirName, "feature_name.txt"));
+			PrintWriter featureDataOut = new PrintWriter(new File(outDirName, "feature_data.txt"));
+			PrintWriter featureCostOut = new PrintWriter(new File(outDirName, "feature_cost.txt"));
+
+			int ctrlBase = 20;
+			int boolBase = ctrlBase + 8 * numCtrlFeatures;
+			int longBase = boolBase + 8 * numBoolFeatures;
+			int realSumBase = longBase + 8 * numLongFeatures;
+			int realFrqBase = realSumBase + 8 * (numRealFeatures / 2);
+			process(CTRL, ctrlFeatureNames, runs, ctrlBase, ctrlBase + 8, 16, chunkSize,
+				featureNameOut, featureDataOut, featureCostOut);
+			process(BOOL, boolFeatureNames, runs, boolBase, boolBase + 8, 16, chunkSize,
+				featureNameOut, featureDataOut, featureCostOut);
+			process(LONG, longFeatureNames, runs, longBase, longBase + 8, 16, chunkSize,
+				featureNameOut, featureDataOut, featureCostOut);
+			process(REAL, realFeatureNames, runs, realSumBase, realFrqBase, 8, chunkSize,
+				featureNameOut, featureDataOut, featureCostOut);
+
+			featureNameOut.close();
+			featureDataOut.close();
+			featureCostOut.close();
+		} finally {
+			executor.shutdown();
+			for (File file : tmpFiles)
+				file.delete();
 		}
+	}
 
-		for (int i = 0; i < numBoolFeatures; i += 2) {
-			int truIdx = i, flsIdx = i + 1;
-			boolean isSingle = true;
-			for (int j = 0; j < numData; j++) {
-				if (ignoreData[j]) continue;
-				int sum = boolData[j][truIdx] + boolData[j][flsIdx];
-				if (sum != 1) {
-					isSingle = false;
-					break;
-				}
+	/*
+	 * Processes the features of the given kind, chunkSize pairs at a time.
+	 * The first and second columns of pair i are at offsets aBase + i*step
+	 * and bBase + i*step in the data of each run; the first column holds
+	 * doubles for real features and all other columns hold longs.
+	 */
+	private static void process(final int kind, final List<String> names,
+			final List<ByteBuffer> runs, final int aBase, final int bBase, final int step,
+			int chunkSize, PrintWriter featureNameOut, PrintWriter featureDataOut,
+			PrintWriter featureCostOut) throws IOException {
+		final int numPairs = names.size() / 2;
+		final int numRuns = runs.size();
+		for (int lo = 0; lo < numPairs; lo += chunkSize) {
+			final int first = lo;
+			final int n = Math.min(chunkSize, numPairs - lo);
+			final long[][] a = (kind == REAL) ? null : new long[n][numRuns];
+			final double[][] ra = (kind == REAL) ? new double[n][numRuns] : null;
+			final long[][] b = new long[n][numRuns];
+
+			// load the columns of the chunk, each thread from its own runs
+			List<Callable<Object>> loadTasks = new ArrayList<Callable<Object>>(numThreads);
+			for (int t = 0; t < numThreads; t++) {
+				final int runLo = (int) ((long) numRuns * t / numThreads);
+				final int runHi = (int) ((long) numRuns * (t + 1) / numThreads);
+				loadTasks.add(new Callable<Object>() {
+					public Object call() {
+						for (int j = runLo; j < runHi; j++) {
+							ByteBuffer buf = runs.get(j);
+							int aPos = aBase + first * step;
+							int bPos = bBase + first * step;
+							for (int k = 0; k < n; k++, aPos += step, bPos += step) {
+								if (ra != null)
+									ra[k][j] = buf.getDouble(aPos);
+								else
+									a[k][j] = buf.getLong(aPos);
+								b[k][j] = buf.getLong(bPos);
+							}
+						}
+						return null;
+					}
+				});
 			}
-			featureNameOut.println(boolFeatureNames.get(truIdx));
-			featureNameOut.println(boolFeatureNames.get(flsIdx));
-			for (int j = 0; j < numData; j++) {
-				if (ignoreData[j]) continue;
-				featureDataOut.print(boolData[j][truIdx] + " ");
+			invokeAll(loadTasks);
+
+			// classify and format the pairs, each thread a contiguous range of them
+			List<Callable<StringBuilder[]>> formatTasks =
+				new ArrayList<Callable<StringBuilder[]>>(numThreads);
+			for (int t = 0; t < numThreads; t++) {
+				final int kLo = (int) ((long) n * t / numThreads);
+				final int kHi = (int) ((long) n * (t + 1) / numThreads);
+				formatTasks.add(new Callable<StringBuilder[]>() {
+					public StringBuilder[] call() {
+						StringBuilder nameOut = new StringBuilder();
+						StringBuilder dataOut = new StringBuilder();
+						StringBuilder costOut = new StringBuilder();
+						for (int k = kLo; k < kHi; k++) {
+							String aName = names.get(2 * (first + k));
+							String bName = names.get(2 * (first + k) + 1);
+							switch (kind) {
+							case CTRL:
+								formatCtrl(aName, bName, a[k], b[k], nameOut, dataOut, costOut);
+								break;
+							case BOOL:
+								formatBool(aName, bName, a[k], b[k], nameOut, dataOut, costOut);
+								break;
+							case LONG:
+								formatLong(aName, bName, a[k], b[k], nameOut, dataOut, costOut);
+								break;
+							case REAL:
+								formatReal(aName, bName, ra[k], b[k], nameOut, dataOut, costOut);
+								break;
+							}
+						}
+						return new StringBuilder[] { nameOut, dataOut, costOut };
+					}
+				});
 			}
-			featureDataOut.println();
-			for (int j = 0; j < numData; j++) {
-				if (ignoreData[j]) continue;
-				featureDataOut.print(boolData[j][flsIdx] + " ");
+			for (StringBuilder[] out : invokeAll(formatTasks)) {
+				featureNameOut.append(out[0]);
+				featureDataOut.append(out[1]);
+				featureCostOut.append(out[2]);
 			}
-			featureDataOut.println();
-			if (isSingle) {
-				featureCostOut.println("1");
-				featureCostOut.println("1");
-			} else {
-				featureCostOut.println("2");
-				featureCostOut.println("2");
+			featureNameOut.flush();
+			featureDataOut.flush();
+			featureCostOut.flush();
+		}
+	}
+
+	private static void formatCtrl(String befName, String aftName, long[] bef, long[] aft,
+			StringBuilder nameOut, StringBuilder dataOut, StringBuilder costOut) {
+		int numRuns = bef.length;
+		boolean isLoop = true;
+		for (int j = 0; j < numRuns; j++) {
+			if (bef[j] - aft[j] != 1) {
+				isLoop = false;
+				break;
 			}
 		}
+		if (isLoop) {
+			nameOut.append(aftName).append(NL);
+			for (int j = 0; j < numRuns; j++)
+				dataOut.append(aft[j]).append(' ');
+			dataOut.append(NL);
+			costOut.append("2").append(NL);
+		} else {
+			nameOut.append(befName).append(NL);
+			nameOut.append(aftName).append(NL);
+			for (int j = 0; j < numRuns; j++)
+				dataOut.append(bef[j] - aft[j]).append(' ');
+			dataOut.append(NL);
+			for (int j = 0; j < numRuns; j++)
+				dataOut.append(aft[j]).append(' ');
+			dataOut.append(NL);
+			costOut.append("2").append(NL);
+			costOut.append("2").append(NL);
+		}
+	}
 
-		for (int i = 0; i < numLongFeatures / 2; i++) {
-			boolean isSingle = true;
-			for (int j = 0; j < numData; j++) {
-				if (ignoreData[j]) continue;
-				int frq = longFrqData[j][i];
-				if (frq != 1) {
-					isSingle = false;
-					break;
-				}
+	private static void formatBool(String truName, String flsName, long[] tru, long[] fls,
+			StringBuilder nameOut, StringBuilder dataOut, StringBuilder costOut) {
+		int numRuns = tru.length;
+		boolean isSingle = true;
+		for (int j = 0; j < numRuns; j++) {
+			if (tru[j] + fls[j] != 1) {
+				isSingle = false;
+				break;
 			}
-			if (isSingle) {
-				featureNameOut.println(longFeatureNames.get(i*2));
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					featureDataOut.print(longSumData[j][i] + " ");
-				}
-				featureDataOut.println();
-				featureCostOut.println("1");
-			} else {
-				if (keepSum)
-					featureNameOut.println(longFeatureNames.get(i*2));
-				featureNameOut.println(longFeatureNames.get(i*2 + 1));
-				if (keepSum) {
-					for (int j = 0; j < numData; j++) {
-						if (ignoreData[j]) continue;
-						featureDataOut.print(longSumData[j][i] + " ");
-					}
-					featureDataOut.println();
-				}
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					long sum = longSumData[j][i];
-					int frq = longFrqData[j][i];
-					long avg = (frq == 0) ? -99999 : sum / frq;
-					featureDataOut.print(avg + " ");
-				}
-				featureDataOut.println();
-				if (keepSum)
-					featureCostOut.println("2");
-				featureCostOut.println("2");
+		}
+		nameOut.append(truName).append(NL);
+		nameOut.append(flsName).append(NL);
+		for (int j = 0; j < numRuns; j++)
+			dataOut.append(tru[j]).append(' ');
+		dataOut.append(NL);
+		for (int j = 0; j < numRuns; j++)
+			dataOut.append(fls[j]).append(' ');
+		dataOut.append(NL);
+		String cost = isSingle ? "1" : "2";
+		costOut.append(cost).append(NL);
+		costOut.append(cost).append(NL);
+	}
+
+	private static void formatLong(String sumName, String frqName, long[] sum, long[] frq,
+			StringBuilder nameOut, StringBuilder dataOut, StringBuilder costOut) {
+		int numRuns = sum.length;
+		boolean isSingle = true;
+		for (int j = 0; j < numRuns; j++) {
+			if (frq[j] != 1) {
+				isSingle = false;
+				break;
+			}
+		}
+		if (isSingle || keepSum) {
+			nameOut.append(sumName).append(NL);
+			for (int j = 0; j < numRuns; j++)
+				dataOut.append(sum[j]).append(' ');
+			dataOut.append(NL);
+			costOut.append(isSingle ? "1" : "2").append(NL);
+		}
+		if (!isSingle) {
+			nameOut.append(frqName).append(NL);
+			for (int j = 0; j < numRuns; j++) {
+				long avg = (frq[j] == 0) ? -99999 : sum[j] / frq[j];
+				dataOut.append(avg).append(' ');
 			}
+			dataOut.append(NL);
+			costOut.append("2").append(NL);
 		}
+	}
 
-		for (int i = 0; i < numRealFeatures / 2; i++) {
-			boolean isSingle = true;
-			for (int j = 0; j < numData; j++) {
-				if (ignoreData[j]) continue;
-				int frq = realFrqData[j][i];
-				if (frq != 1) {
-					isSingle = false;
-					break;
-				}
+	private static void formatReal(String sumName, String frqName, double[] sum, long[] frq,
+			StringBuilder nameOut, StringBuilder dataOut, StringBuilder costOut) {
+		int numRuns = sum.length;
+		boolean isSingle = true;
+		for (int j = 0; j < numRuns; j++) {
+			if (frq[j] != 1) {
+				isSingle = false;
+				break;
 			}
-			if (isSingle) {
-				featureNameOut.println(realFeatureNames.get(i*2));
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					featureDataOut.print(realSumData[j][i] + " ");
-				}
-				featureDataOut.println();
-				featureCostOut.println("1");
-			} else {
-				if (keepSum)
-					featureNameOut.println(realFeatureNames.get(i*2));
-				featureNameOut.println(realFeatureNames.get(i*2 + 1));
-				if (keepSum) {
-					for (int j = 0; j < numData; j++) {
-						if (ignoreData[j]) continue;
-						featureDataOut.print(realSumData[j][i] + " ");
-					}
-					featureDataOut.println();
-				}
-				for (int j = 0; j < numData; j++) {
-					if (ignoreData[j]) continue;
-					double sum = realSumData[j][i];
-					int frq = realFrqData[j][i];
-					double avg = (frq == 0) ? -99999 : sum / frq;
-					featureDataOut.print(avg + " ");
-				}
-				featureDataOut.println();
-				if (keepSum)
-					featureCostOut.println("2");
-				featureCostOut.println("2");
+		}
+		if (isSingle || keepSum) {
+			nameOut.append(sumName).append(NL);
+			for (int j = 0; j < numRuns; j++)
+				dataOut.append(sum[j]).append(' ');
+			dataOut.append(NL);
+			costOut.append(isSingle ? "1" : "2").append(NL);
+		}
+		if (!isSingle) {
+			nameOut.append(frqName).append(NL);
+			for (int j = 0; j < numRuns; j++) {
+				double avg = (frq[j] == 0) ? -99999 : sum[j] / frq[j];
+				dataOut.append(avg).append(' ');
 			}
+			dataOut.append(NL);
+			costOut.append("2").append(NL);
 		}
+	}
 
-		featureNameOut.close();
-		featureDataOut.close();
-		featureCostOut.close();
+	// runs the given tasks on the executor and provides their results in order
+	private static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+		List<T> results = new ArrayList<T>(tasks.size());
+		try {
+			for (Future<T> f : executor.invokeAll(tasks))
+				results.add(f.get());
+		} catch (InterruptedException ex) {
+			throw new RuntimeException(ex);
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new RuntimeException(cause);
+		}
+		return results;
 	}
 
-    private static List<String> readStrings(File file) throws IOException {
+	private static List<String> readStrings(File file) throws IOException {
 		List<String> list = new ArrayList<String>();
 		BufferedReader in = new BufferedReader(new FileReader(file));
 		String s;
@@ -236,52 +368,81 @@ public class PostProcessor {
 		return list;
 	}
 
-    private static void readIntData(File file, int[] data) throws IOException {
-		BufferedReader in = new BufferedReader(new FileReader(file));
-		String s;
-		int i = 0;
-		while ((s = in.readLine()) != null) {
-			int v = Integer.parseInt(s);
-			data[i++] = v;
+	/*
+	 * Writes the text data of a run in directory dir to binFile in the format
+	 * of MantisInstrumentor.FEATURE_DATA_FILE_NAME.
+	 */
+	private static void convertTextData(File dir, File binFile, int numCtrl, int numBool,
+			int numLong, int numReal) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+			new FileOutputStream(binFile), 1 << 16));
+		try {
+			out.writeInt(MantisInstrumentor.FEATURE_DATA_MAGIC);
+			out.writeInt(numCtrl);
+			out.writeInt(numBool);
+			out.writeInt(numLong);
+			out.writeInt(numReal);
+			copyLongs(new File(dir, "ctrl_feature_data.txt"), numCtrl, out);
+			copyLongs(new File(dir, "bool_feature_data.txt"), numBool, out);
+			copyLongs(new File(dir, "long_feature_data.txt"), numLong, out);
+			// real sums and frequencies alternate in the text file
+			File file = new File(dir, "real_feature_data.txt");
+			long[] frqData = new long[numReal / 2];
+			BufferedReader in = new BufferedReader(new FileReader(file));
+			try {
+				String s;
+				int i = 0;
+				for (; (s = in.readLine()) != null; i++) {
+					if (i >= numReal)
+						throw new IOException(file + ": more than " + numReal + " lines");
+					if (i % 2 == 0)
+						out.writeDouble(Double.parseDouble(s));
+					else
+						frqData[i/2] = Long.parseLong(s);
+				}
+				if (i != numReal)
+					throw new IOException(file + ": " + i + " != " + numReal);
+			} finally {
+				in.close();
+			}
+			for (long v : frqData)
+				out.writeLong(v);
+		} finally {
+			out.close();
 		}
-		assert (i == data.length) : (file + ": " + i + " != " + data.length);
-		in.close();
-    }
+	}
 
-    private static void readLongData(File file, long[] sumData, int[] frqData) throws IOException {
+	private static void copyLongs(File file, int numLines, DataOutputStream out) throws IOException {
 		BufferedReader in = new BufferedReader(new FileReader(file));
-		String s;
-		int numLines = 0;
-		for (int i = 0; (s = in.readLine()) != null; i++) {
-			if (i % 2 == 0) {
-				long v = Long.parseLong(s);
-				sumData[i/2] = v;
-			} else {
-				int v = Integer.parseInt(s);
-				frqData[i/2] = v;
+		try {
+			String s;
+			int i = 0;
+			for (; (s = in.readLine()) != null; i++) {
+				if (i >= numLines)
+					throw new IOException(file + ": more than " + numLines + " lines");
+				out.writeLong(Long.parseLong(s));
 			}
-			numLines++;
+			if (i != numLines)
+				throw new IOException(file + ": " + i + " != " + numLines);
+		} finally {
+			in.close();
 		}
-		assert (numLines/2 == sumData.length) : (file + ": " + (numLines/2) + " != " + sumData.length);
-		assert (numLines/2 == frqData.length) : (file + ": " + (numLines/2) + " != " + frqData.length);
-		in.close();
-    }
+	}
 
-    private static void readRealData(File file, double[] sumData, int[] frqData) throws IOException {
-		BufferedReader in = new BufferedReader(new FileReader(file));
-		String s;
-		int numLines = 0;
-		for (int i = 0; (s = in.readLine()) != null; i++) {
-			if (i % 2 == 0) {
-				double v = Double.parseDouble(s);
-				sumData[i/2] = v;
-			} else {
-				int v = Integer.parseInt(s);
-				frqData[i/2] = v;
-			}
+	private static ByteBuffer mapData(File file, int numCtrl, int numBool, int numLong,
+			int numReal) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buf.getInt(0) != MantisInstrumentor.FEATURE_DATA_MAGIC)
+				throw new IOException(file + ": not a Mantis feature data file");
+			if (buf.getInt(4) != numCtrl || buf.getInt(8) != numBool ||
+					buf.getInt(12) != numLong || buf.getInt(16) != numReal)
+				throw new IOException(file + ": feature counts do not match *_feature_name.txt");
+			return buf;
+		} finally {
+			in.close();
 		}
-		assert (numLines/2 == sumData.length) : (file + ": " + (numLines/2) + " != " + sumData.length);
-		assert (numLines/2 == frqData.length) : (file + ": " + (numLines/2) + " != " + frqData.length);
-		in.close();
-    }
+	}
 }
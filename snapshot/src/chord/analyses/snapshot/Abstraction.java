@@ -53,6 +53,10 @@ public abstract class Abstraction {
 	// Whether we're going to get edgeCreated/edgeDeleted calls.
 	public abstract boolean requireGraph();
 
+	// Apply any graph updates whose effect on the abstraction is deferred, so that
+	// the listener has been told of every change.  Override if updates are batched.
+	public void flush() { }
+
 	public void init(AbstractionInitializer initializer) {
 		initializer.initAbstraction(this);
 		if (require_a2o) a2os = new HashMap<Object, TIntArrayList>(); 
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2008-2010, Intel Corporation.
+ * Copyright (c) 2006-2007, The Trustees of Stanford University.
+ * All rights reserved.
+ * Licensed under the terms of the New BSD License.
+ */
+package chord.analyses.snapshot;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIntIterator;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectIterator;
+import gnu.trove.TObjectIntHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Writes graph events as fixed-width binary records, without any cap on their number.
+ *
+ * Files, all sharing the prefix <code>path</code>:
+ * <ul>
+ * <li><code>path</code>: the events, {@link #RECORD_SIZE} bytes each (kind, a, b, label), so that event
+ * <code>i</code> is at offset <code>i*RECORD_SIZE</code>.</li>
+ * <li><code>path.strings</code>: the labels and colors, each a modified UTF-8 string as written by
+ * <code>DataOutput.writeUTF</code>; records refer to them by their position in this file, and -1 stands for
+ * <code>null</code>.</li>
+ * <li><code>path.checkpoints</code>: every <code>checkpointInterval</code> events, the whole graph as the
+ * records that rebuild it from scratch.</li>
+ * <li><code>path.index</code>: for each checkpoint, the number of events it covers, its offset in
+ * <code>path.checkpoints</code>, and its number of records, as three longs.</li>
+ * </ul>
+ * Records are buffered and written by a background thread through NIO; at most {@link #NUM_BUFFERS} buffers
+ * are in flight, so a slow disk slows down the analysis rather than filling up memory.
+ * See {@link GraphReplay} for reading the files back.
+ */
+public class BinaryGraphMonitor implements GraphMonitor {
+  public static final int RECORD_SIZE = 16;
+  public static final int INDEX_ENTRY_SIZE = 24;
+
+  // Record kinds
+  public static final int ADD_NODE = 1;       // a, label
+  public static final int ADD_EDGE = 2;       // a, b, label
+  public static final int DELETE_EDGE = 3;    // a, b, label
+  public static final int SET_NODE_LABEL = 4; // a, label
+  public static final int SET_NODE_COLOR = 5; // a, label (the color)
+  public static final int SET_NODE_COLOR_INT = 6; // a, b (the color)
+
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int NUM_BUFFERS = 8;
+
+  // A buffer to write to a channel; a chunk with a null channel tells the writer to stop.
+  private static class Chunk {
+    final FileChannel channel;
+    final ByteBuffer buf;
+    Chunk(FileChannel channel, ByteBuffer buf) { this.channel = channel; this.buf = buf; }
+  }
+
+  private final FileChannel eventsChannel, stringsChannel, checkpointsChannel, indexChannel;
+  private final BlockingQueue<Chunk> full = new ArrayBlockingQueue<Chunk>(NUM_BUFFERS);
+  private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<ByteBuffer>(NUM_BUFFERS);
+  private final Thread writer;
+  private volatile IOException writeError;
+
+  private ByteBuffer events;
+  private ByteBuffer strings = ByteBuffer.allocate(1 << 12);
+  private final TObjectIntHashMap<String> stringIds = new TObjectIntHashMap<String>();
+  private int stringsSize; // Offset of the next string in path.strings
+
+  private final int checkpointInterval;
+  private long numEvents;
+  private long checkpointsSize;
+
+  // The current graph, for the checkpoints
+  private final TIntIntHashMap nodeLabels = new TIntIntHashMap(); // node -> label
+  private final TIntIntHashMap nodeColors = new TIntIntHashMap(); // node -> color string
+  private final TIntIntHashMap nodeIntColors = new TIntIntHashMap(); // node -> int color
+  private final TIntObjectHashMap<TIntArrayList> outEdges = new TIntObjectHashMap<TIntArrayList>(); // a -> b, label, b, label, ...
+
+  public BinaryGraphMonitor(String path, int checkpointInterval) {
+    if (checkpointInterval <= 0)
+      throw new IllegalArgumentException("graph.checkpointInterval must be positive, not "+checkpointInterval);
+    this.checkpointInterval = checkpointInterval;
+    try {
+      eventsChannel = new FileOutputStream(path).getChannel();
+      stringsChannel = new FileOutputStream(path+".strings").getChannel();
+      checkpointsChannel = new FileOutputStream(path+".checkpoints").getChannel();
+      indexChannel = new FileOutputStream(path+".index").getChannel();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    for (int i = 0; i < NUM_BUFFERS - 1; i++)
+      free.add(ByteBuffer.allocateDirect(BUFFER_SIZE));
+    events = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    writer = new Thread("graph-writer") {
+      public void run() {
+        try {
+          while (true) {
+            Chunk chunk = full.take();
+            if (chunk.channel == null) break;
+            if (writeError == null) {
+              try {
+                while (chunk.buf.hasRemaining())
+                  chunk.channel.write(chunk.buf);
+              } catch (IOException e) {
+                writeError = e;
+              }
+            }
+            // Keep recycling buffers after an error, so that the analysis does not block waiting for them
+            // before it notices the error.
+            if (chunk.buf.isDirect()) {
+              chunk.buf.clear();
+              free.add(chunk.buf);
+            }
+          }
+        } catch (InterruptedException e) {
+          writeError = new IOException("Interrupted");
+        }
+      }
+    };
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  public void finish() {
+    try {
+      flushEvents();
+    } finally {
+      // Stop the writer and close the files even if it failed.
+      try {
+        full.put(new Chunk(null, null));
+        writer.join();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } finally {
+        IOException closeError = null;
+        for (FileChannel channel : new FileChannel[] { eventsChannel, stringsChannel, checkpointsChannel, indexChannel }) {
+          try {
+            channel.close();
+          } catch (IOException e) {
+            if (closeError == null) closeError = e;
+          }
+        }
+        if (writeError == null) writeError = closeError;
+      }
+    }
+    if (writeError != null) throw new RuntimeException(writeError);
+  }
+
+  public void addNode(int a, String label) {
+    int l = stringId(label);
+    nodeLabels.put(a, l);
+    record(ADD_NODE, a, 0, l);
+  }
+  public void deleteEdge(int a, int b, String label) {
+    int l = stringId(label);
+    TIntArrayList L = outEdges.get(a);
+    if (L != null) {
+      for (int i = 0; i < L.size(); i += 2) {
+        if (L.get(i) == b && L.get(i+1) == l) {
+          L.remove(i, 2);
+          break;
+        }
+      }
+    }
+    record(DELETE_EDGE, a, b, l);
+  }
+  public void addEdge(int a, int b, String label) {
+    int l = stringId(label);
+    TIntArrayList L = outEdges.get(a);
+    if (L == null) outEdges.put(a, L = new TIntArrayList(2));
+    L.add(b);
+    L.add(l);
+    record(ADD_EDGE, a, b, l);
+  }
+  public void setNodeLabel(int a, String label) {
+    int l = stringId(label);
+    nodeLabels.put(a, l);
+    record(SET_NODE_LABEL, a, 0, l);
+  }
+  public void setNodeColor(int a, String color) {
+    int c = stringId(color);
+    nodeIntColors.remove(a);
+    nodeColors.put(a, c);
+    record(SET_NODE_COLOR, a, 0, c);
+  }
+  public void setNodeColor(int a, int color) {
+    nodeColors.remove(a);
+    nodeIntColors.put(a, color);
+    record(SET_NODE_COLOR_INT, a, color, -1);
+  }
+
+  private void record(int kind, int a, int b, int label) {
+    put(events, kind, a, b, label);
+    if (!events.hasRemaining()) flushEvents();
+    if (++numEvents % checkpointInterval == 0) checkpoint();
+  }
+
+  private static void put(ByteBuffer buf, int kind, int a, int b, int label) {
+    buf.putInt(kind);
+    buf.putInt(a);
+    buf.putInt(b);
+    buf.putInt(label);
+  }
+
+  // Strings go out before the events that refer to them.
+  private void flushEvents() {
+    if (strings.position() > 0) {
+      strings.flip();
+      enqueue(new Chunk(stringsChannel, strings));
+      strings = ByteBuffer.allocate(1 << 12);
+    }
+    if (events.position() > 0) {
+      events.flip();
+      enqueue(new Chunk(eventsChannel, events));
+      try {
+        events = free.take();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
+  private void enqueue(Chunk chunk) {
+    if (writeError != null) throw new RuntimeException(writeError);
+    try {
+      full.put(chunk);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private int stringId(String s) {
+    if (s == null) return -1;
+    if (stringIds.containsKey(s)) return stringIds.get(s);
+    int id = stringsSize;
+    stringIds.put(s, id);
+    byte[] bytes;
+    try {
+      ByteArrayOutputStream bout = new ByteArrayOutputStream(s.length() + 2);
+      new DataOutputStream(bout).writeUTF(s);
+      bytes = bout.toByteArray();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    if (strings.remaining() < bytes.length) {
+      ByteBuffer newStrings = ByteBuffer.allocate(Math.max(2 * strings.capacity(), strings.position() + bytes.length));
+      strings.flip();
+      newStrings.put(strings);
+      strings = newStrings;
+    }
+    strings.put(bytes);
+    stringsSize += bytes.length;
+    return id;
+  }
+
+  private void checkpoint() {
+    int n = nodeLabels.size() + nodeColors.size() + nodeIntColors.size();
+    for (TIntObjectIterator<TIntArrayList> it = outEdges.iterator(); it.hasNext();) {
+      it.advance();
+      n += it.value().size() / 2;
+    }
+    ByteBuffer buf = ByteBuffer.allocate(n * RECORD_SIZE);
+    for (TIntIntIterator it = nodeLabels.iterator(); it.hasNext();) {
+      it.advance();
+      put(buf, ADD_NODE, it.key(), 0, it.value());
+    }
+    for (TIntIntIterator it = nodeColors.iterator(); it.hasNext();) {
+      it.advance();
+      put(buf, SET_NODE_COLOR, it.key(), 0, it.value());
+    }
+    for (TIntIntIterator it = nodeIntColors.iterator(); it.hasNext();) {
+      it.advance();
+      put(buf, SET_NODE_COLOR_INT, it.key(), it.value(), -1);
+    }
+    for (TIntObjectIterator<TIntArrayList> it = outEdges.iterator(); it.hasNext();) {
+      it.advance();
+      TIntArrayList L = it.value();
+      for (int i = 0; i < L.size(); i += 2)
+        put(buf, ADD_EDGE, it.key(), L.get(i), L.get(i+1));
+    }
+    buf.flip();
+    ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+    entry.putLong(numEvents);
+    entry.putLong(checkpointsSize);
+    entry.putLong(n);
+    entry.flip();
+    checkpointsSize += buf.limit();
+    // The checkpoint may refer to strings not yet flushed.
+    flushEvents();
+    enqueue(new Chunk(checkpointsChannel, buf));
+    enqueue(new Chunk(indexChannel, entry));
+  }
+}
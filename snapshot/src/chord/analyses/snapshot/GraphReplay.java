@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2008-2010, Intel Corporation.
+ * Copyright (c) 2006-2007, The Trustees of Stanford University.
+ * All rights reserved.
+ * Licensed under the terms of the New BSD License.
+ */
+package chord.analyses.snapshot;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntIntIterator;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectIterator;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Rebuilds the graph written by {@link BinaryGraphMonitor} as it was after a given number of events, starting
+ * from the last checkpoint before it.
+ *
+ * Usage: <code>java chord.analyses.snapshot.GraphReplay path [numEvents]</code> prints the graph after
+ * <code>numEvents</code> events (by default, all of them) in the text format of
+ * <code>SerializingGraphMonitor</code>.
+ */
+public class GraphReplay {
+  private final String path;
+  private final byte[] strings;
+  private final long numEvents;
+
+  private final TIntIntHashMap nodeLabels = new TIntIntHashMap();
+  private final TIntIntHashMap nodeColors = new TIntIntHashMap();
+  private final TIntIntHashMap nodeIntColors = new TIntIntHashMap();
+  private final TIntObjectHashMap<TIntArrayList> outEdges = new TIntObjectHashMap<TIntArrayList>();
+
+  public GraphReplay(String path) throws IOException {
+    this.path = path;
+    this.strings = readFully(new File(path+".strings"));
+    this.numEvents = new File(path).length() / BinaryGraphMonitor.RECORD_SIZE;
+  }
+
+  public long getNumEvents() { return numEvents; }
+
+  /**
+   * Rebuilds the graph after the first <code>n</code> events.
+   */
+  public void seek(long n) throws IOException {
+    if (n < 0 || n > numEvents)
+      throw new IllegalArgumentException("Event index "+n+" not in [0,"+numEvents+"]");
+    nodeLabels.clear();
+    nodeColors.clear();
+    nodeIntColors.clear();
+    outEdges.clear();
+
+    // Find the last checkpoint covering at most n events.
+    long start = 0, offset = 0, size = 0;
+    FileChannel index = new FileInputStream(path+".index").getChannel();
+    try {
+      long lo = 0, hi = index.size() / BinaryGraphMonitor.INDEX_ENTRY_SIZE - 1;
+      ByteBuffer entry = ByteBuffer.allocate(BinaryGraphMonitor.INDEX_ENTRY_SIZE);
+      while (lo <= hi) {
+        long mid = (lo + hi) >>> 1;
+        entry.clear();
+        read(index, entry, mid * BinaryGraphMonitor.INDEX_ENTRY_SIZE);
+        long covered = entry.getLong(0);
+        if (covered <= n) {
+          start = covered;
+          offset = entry.getLong(8);
+          size = entry.getLong(16);
+          lo = mid + 1;
+        } else
+          hi = mid - 1;
+      }
+    } finally {
+      index.close();
+    }
+    if (size > 0) {
+      FileChannel checkpoints = new FileInputStream(path+".checkpoints").getChannel();
+      try {
+        apply(checkpoints, offset, size);
+      } finally {
+        checkpoints.close();
+      }
+    }
+    FileChannel events = new FileInputStream(path).getChannel();
+    try {
+      apply(events, start * BinaryGraphMonitor.RECORD_SIZE, n - start);
+    } finally {
+      events.close();
+    }
+  }
+
+  private void apply(FileChannel channel, long offset, long numRecords) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(BinaryGraphMonitor.RECORD_SIZE * 4096);
+    while (numRecords > 0) {
+      int k = (int) Math.min(numRecords, 4096);
+      buf.clear();
+      buf.limit(k * BinaryGraphMonitor.RECORD_SIZE);
+      read(channel, buf, offset);
+      buf.flip();
+      for (int i = 0; i < k; i++)
+        apply(buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt());
+      offset += buf.limit();
+      numRecords -= k;
+    }
+  }
+
+  private void apply(int kind, int a, int b, int label) {
+    switch (kind) {
+    case BinaryGraphMonitor.ADD_NODE:
+    case BinaryGraphMonitor.SET_NODE_LABEL:
+      nodeLabels.put(a, label);
+      break;
+    case BinaryGraphMonitor.ADD_EDGE: {
+      TIntArrayList L = outEdges.get(a);
+      if (L == null) outEdges.put(a, L = new TIntArrayList(2));
+      L.add(b);
+      L.add(label);
+      break;
+    }
+    case BinaryGraphMonitor.DELETE_EDGE: {
+      TIntArrayList L = outEdges.get(a);
+      if (L != null) {
+        for (int i = 0; i < L.size(); i += 2) {
+          if (L.get(i) == b && L.get(i+1) == label) {
+            L.remove(i, 2);
+            break;
+          }
+        }
+      }
+      break;
+    }
+    case BinaryGraphMonitor.SET_NODE_COLOR:
+      nodeIntColors.remove(a);
+      nodeColors.put(a, label);
+      break;
+    case BinaryGraphMonitor.SET_NODE_COLOR_INT:
+      nodeColors.remove(a);
+      nodeIntColors.put(a, b);
+      break;
+    default:
+      throw new RuntimeException("Bad record kind "+kind+" in "+path);
+    }
+  }
+
+  public String getString(int id) {
+    if (id < 0) return null;
+    try {
+      return new DataInputStream(new ByteArrayInputStream(strings, id, strings.length - id)).readUTF();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Prints the current graph in the text format of <code>SerializingGraphMonitor</code>.
+   */
+  public void print(PrintWriter out) {
+    for (TIntIntIterator it = nodeLabels.iterator(); it.hasNext();) {
+      it.advance();
+      String label = getString(it.value());
+      out.printf("n %s%s\n", it.key(), label == null ? "" : " "+label);
+    }
+    for (TIntIntIterator it = nodeColors.iterator(); it.hasNext();) {
+      it.advance();
+      out.printf("nc %s %s\n", it.key(), getString(it.value()));
+    }
+    for (TIntIntIterator it = nodeIntColors.iterator(); it.hasNext();) {
+      it.advance();
+      out.printf("nc %s %s\n", it.key(), it.value());
+    }
+    for (TIntObjectIterator<TIntArrayList> it = outEdges.iterator(); it.hasNext();) {
+      it.advance();
+      TIntArrayList L = it.value();
+      for (int i = 0; i < L.size(); i += 2) {
+        String label = getString(L.get(i+1));
+        out.printf("e %s %s%s\n", it.key(), L.get(i), label == null ? "" : " "+label);
+      }
+    }
+    out.flush();
+  }
+
+  private static void read(FileChannel channel, ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      int k = channel.read(buf, offset);
+      if (k < 0) throw new IOException("Unexpected end of file");
+      offset += k;
+    }
+  }
+
+  private static byte[] readFully(File file) throws IOException {
+    byte[] bytes = new byte[(int) file.length()];
+    DataInputStream in = new DataInputStream(new FileInputStream(file));
+    try {
+      in.readFully(bytes);
+    } finally {
+      in.close();
+    }
+    return bytes;
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: GraphReplay path [numEvents]");
+      System.exit(1);
+    }
+    GraphReplay replay = new GraphReplay(args[0]);
+    replay.seek(args.length > 1 ? Long.parseLong(args[1]) : replay.getNumEvents());
+    replay.print(new PrintWriter(System.out));
+  }
+}
@@ -9,27 +9,37 @@ package chord.analyses.snapshot;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntIntHashMap;
-import gnu.trove.TIntIntProcedure;
+import gnu.trove.TIntIntIterator;
 import gnu.trove.TIntIterator;
 import gnu.trove.TIntObjectHashMap;
-import gnu.trove.TIntProcedure;
+import gnu.trove.TIntObjectIterator;
 
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Set;
 
 import chord.project.Messages;
 import chord.util.ArraySet;
+import chord.util.IndexMap;
 
 /**
- * 
- * The abstraction of concrete node <code>o</code> is a set of {@link Label}s. {@link LabelBasedAbstraction} 
- * enforces and maintains the following invariant: If <code>o2</code> is reachable from <code>o1</code>, then the set 
+ *
+ * The abstraction of concrete node <code>o</code> is a set of {@link Label}s. {@link LabelBasedAbstraction}
+ * enforces and maintains the following invariant: If <code>o2</code> is reachable from <code>o1</code>, then the set
  * of labels associated with <code>o2</code> is a superset of the set of labels associated with <code>o1</code>.
- * An invariant resulting from the above invariant is that the set of labels associated with node <code>o</code> is 
- * the union of the sets of labels associated with <code>o</code>'s parents, plus the labels rooted at <code>o</code>.   
- * 
+ * An invariant resulting from the above invariant is that the set of labels associated with node <code>o</code> is
+ * the union of the sets of labels associated with <code>o</code>'s parents, plus the labels rooted at <code>o</code>
+ * and the fresh labels of the edges into <code>o</code>.
+ *
+ * Labels are numbered and label sets are kept as bitsets.  Changes to the heap graph are recorded as they happen
+ * and applied to the label sets in a batch when the abstraction is next read (or when too many are pending):
+ * labels that may have been lost through deleted edges are first removed from everything they reach, then the
+ * objects that lost labels are rederived from the edges into them that remain, and finally all gained labels are
+ * propagated forward along with those of the created edges.  Objects with equal label sets share one abstract
+ * value.
+ *
  * @author omertripp (omertrip@post.tau.ac.il)
  *
  */
@@ -37,126 +47,50 @@ public abstract class LabelBasedAbstraction extends Abstraction {
 	protected static interface Label {
 	}
 
-	private static class EfficientUpdateResult {
-		protected final static EfficientUpdateResult FALSE = new EfficientUpdateResult(false, true);
-		protected final static EfficientUpdateResult TRUE_FALSE = new EfficientUpdateResult(true, false);
-		protected final static EfficientUpdateResult TRUE_TRUE = new EfficientUpdateResult(true, true);
-		
-		protected final boolean succeeded;
-		protected final boolean changed;
-		
-		private EfficientUpdateResult(boolean succeeded, boolean changed) {
-			this.succeeded = succeeded;
-			this.changed = changed;
-		}
-	}
-	
-	private class Procedure implements TIntIntProcedure {
-		private final TIntHashSet worklist;
-		private final TIntHashSet visited;
-		private final Set<Label> labels;
-		private final boolean isPos;
-		private final boolean propagateOnlyOnChanged;
-
-		public Procedure(TIntHashSet worklist, TIntHashSet visited,
-				Set<Label> labels, boolean isPos, boolean propagateOnlyOnChanged) {
-			// The invariant does not guarantee the correctness of propagating
-			// only on changes in case of negative propagation.
-			assert (!(!isPos && propagateOnlyOnChanged));
-			this.worklist = worklist;
-			this.visited = visited;
-			this.labels = labels;
-			this.isPos = isPos;
-			this.propagateOnlyOnChanged = propagateOnlyOnChanged;
-		}
+	private static final boolean VERBOSE = false;
+	// Number of pending edge updates beyond which they are applied even if the abstraction is not read.
+	private static final int MAX_PENDING_UPDATES = 1 << 14;
+	private static final BitSet NO_LABELS = new BitSet(0);
 
-		// @Override
-		public boolean execute(int arg0, int arg1) {
-			if (arg1 != 0) {
-				for (Label label : labels) {
-					boolean hasChanged;
-					if (isPos) {
-						hasChanged = posLabel(arg1, label);
-					} else {
-						hasChanged = negLabel(arg1, label);
-					}
-					if (hasChanged || !propagateOnlyOnChanged) {
-						if (!visited.contains(arg1)) {
-							worklist.add(arg1);
-						}
-					}
-				}
-			}
-			return true;
-		}
-	}
+	// o -> f -> o' for every edge o.f = o'
+	private final TIntObjectHashMap<TIntIntHashMap> heapGraph = new TIntObjectHashMap<TIntIntHashMap>();
+	// o -> the sources of the edges into o, one entry per edge
+	private final TIntObjectHashMap<TIntArrayList> object2predecessors = new TIntObjectHashMap<TIntArrayList>();
 
-	private static final boolean VERBOSE = false;
-	private static final int THRESHOLD = 3;
+	private final IndexMap<Label> labels = new IndexMap<Label>();
+	// o -> labels rooted at o
+	private final TIntObjectHashMap<BitSet> object2roots = new TIntObjectHashMap<BitSet>();
+	// o -> labels of o, up to date with the heap graph but for the pending updates
+	private final TIntObjectHashMap<BitSet> object2labels = new TIntObjectHashMap<BitSet>();
+	// label set -> the abstract value of the objects with that label set
+	private final HashMap<BitSet, Set<Label>> labels2value = new HashMap<BitSet, Set<Label>>();
 
-	// private final static int ARRAY_CONTENT = Integer.MIN_VALUE;
-	protected final TIntObjectHashMap<TIntArrayList> object2predecessors = new TIntObjectHashMap<TIntArrayList>();
-	protected final TIntObjectHashMap<TIntIntHashMap> heapGraph = new TIntObjectHashMap<TIntIntHashMap>();
-	protected final TIntObjectHashMap<Set<Label>> object2labels = new TIntObjectHashMap<Set<Label>>();
+	// Pending updates: (b, f, o) triples of the edges deleted and created since the last flush.
+	private final TIntArrayList deletedEdges = new TIntArrayList();
+	private final TIntArrayList createdEdges = new TIntArrayList();
+	private boolean isFlushing;
 
 	/* Used for debugging. */
 	private int numEdgesCreated;
 	private int numEdgesDeleted;
 
-	/*
-	 * This method *must not* rely on <code>object2labels</code>, which might
-	 * temporarily remove the association between the roots of a label and a
-	 * label while performing negative propagation!
+	/**
+	 * Associates a newly created object with the labels rooted at it.  To be called by subclasses from
+	 * {@link #nodeCreated(ThreadInfo, int)}.
 	 */
-	protected abstract TIntHashSet getRootsImpl(Label l);
-	protected abstract Set<Label> getLabelsRootedAt(int o);
-
-	private TIntHashSet getRoots(Label l, TIntHashSet visited) {
-		TIntHashSet result = getRootsImpl(l);
-		if (result.size() > THRESHOLD) {
-			result = refine(visited, result);
-		}
-		if (VERBOSE) {
-			Messages.log("The number of roots for label " + l
-					+ " is: " + result.size() + ".");
-		}
-		return result;
+	protected void setRootLabels(int o, Collection<Label> S) {
+		BitSet roots = toBits(S);
+		object2roots.put(o, roots);
+		BitSet L = (BitSet) roots.clone();
+		object2labels.put(o, L);
+		setValue(o, valueOf(L));
 	}
 
-	// Check which roots actually reach the set of explored objects.
-	private TIntHashSet refine(TIntHashSet explored, TIntHashSet roots) {
-		final TIntHashSet result = new TIntHashSet(); 
-		final TIntHashSet visited = new TIntHashSet(explored.size());
-		TIntHashSet worklist = new TIntHashSet(explored);
-		L: while (!worklist.isEmpty()) {
-			TIntIterator it = worklist.iterator();
-			final TIntHashSet templist = new TIntHashSet();
-			while (it.hasNext()) {
-				int next = it.next();
-				visited.add(next);
-				if (roots.contains(next)) {
-					result.add(next);
-					// We've added all the roots already.
-					if (result.equals(roots)) {
-						break L;
-					}
-				}
-				TIntArrayList L = object2predecessors.get(next);
-				if (L != null) {
-					L.forEach(new TIntProcedure() {
-						// @Override
-						public boolean execute(int arg0) {
-							if (!visited.contains(arg0)) {
-								templist.add(arg0);
-							}
-							return true;
-						}
-					});
-				}
-			}
-			worklist = templist;
-		}
-		return result;
+	/**
+	 * Provides the labels that edge <code>b.f = o</code> adds to <code>o</code> besides those of <code>b</code>.
+	 */
+	protected Collection<Label> freshLabels(int b, int f, int o) {
+		return Collections.emptySet();
 	}
 
 	@Override
@@ -165,8 +99,24 @@ public abstract class LabelBasedAbstraction extends Abstraction {
 			Messages.log("So far " + (++numEdgesCreated)
 					+ " edges were created.");
 		}
-		if (b != 0 && f >= 0) {
-			updateHeapGraph(b, f, o);
+		if (b != 0 && f >= 0 && o != 0) {
+			TIntIntHashMap M = heapGraph.get(b);
+			if (M == null) {
+				heapGraph.put(b, M = new TIntIntHashMap());
+			} else if (M.containsKey(f)) {
+				int old = M.get(f);
+				if (old == o) {
+					return;
+				}
+				removeEdge(b, f, old, M);
+			}
+			M.put(f, o);
+			TIntArrayList L = object2predecessors.get(o);
+			if (L == null) {
+				object2predecessors.put(o, L = new TIntArrayList(1));
+			}
+			L.add(b);
+			addPending(createdEdges, b, f, o);
 		}
 	}
 
@@ -177,251 +127,211 @@ public abstract class LabelBasedAbstraction extends Abstraction {
 					+ " edges were deleted.");
 		}
 		if (b != 0 && f >= 0) {
-			updateHeapGraph(b, f, 0);
+			TIntIntHashMap M = heapGraph.get(b);
+			if (M != null && M.containsKey(f) && M.get(f) == o) {
+				removeEdge(b, f, o, M);
+			}
 		}
 	}
 
-	private Set<Label> getLabels(int b) {
-		return object2labels.get(b);
+	private void removeEdge(int b, int f, int o, TIntIntHashMap M) {
+		M.remove(f);
+		TIntArrayList L = object2predecessors.get(o);
+		assert (L != null);
+		int i = L.indexOf(b);
+		assert (i >= 0);
+		//In trove 3.02, TIntArrayList.remove(i) removes the value=i, rather than the ith element
+		L.removeAt(i);
+		addPending(deletedEdges, b, f, o);
 	}
 
-  public void setFreshValue(int o, Set<Label> S) {
-    setValue(o, new ArraySet<Label>(S));
-  }
-
-	private boolean posLabel(int o, Label l) {
-		Set<Label> S = object2labels.get(o);
-		if (S == null) {
-			object2labels.put(o, S = new HashSet<Label>(1));
+	private void addPending(TIntArrayList edges, int b, int f, int o) {
+		edges.add(b);
+		edges.add(f);
+		edges.add(o);
+		if (deletedEdges.size() + createdEdges.size() >= 3 * MAX_PENDING_UPDATES) {
+			flush();
 		}
-		boolean hasChanged = S.add(l);
-		if (hasChanged) setFreshValue(o, S);
-		return hasChanged;
 	}
 
-	private boolean negLabel(int o, Label l) {
-		Set<Label> S = object2labels.get(o);
-		boolean hasChanged = false;
-		if (S != null) {
-			hasChanged |= S.remove(l);
-		}
-		if (hasChanged) setFreshValue(o, S);
-		return hasChanged;
+	@Override
+	public Object getValue(int o) {
+		flush();
+		return super.getValue(o);
 	}
 
-	private void updateHeapGraph(final int b, final int f, final int o) {
-		EfficientUpdateResult efficientUpdateResult = efficientUpdateLabels(b, f, o);
-		if (efficientUpdateResult.succeeded) {
-			// Now <code>o</code>'s labels are consistent, and we need to recurse on its children.
-			if (efficientUpdateResult.changed) {
-				TIntIntHashMap M = heapGraph.get(o);
-				if (M != null) {
-					M.forEachEntry(new TIntIntProcedure() {
-						// @Override
-						public boolean execute(int arg0, int arg1) {
-							if (arg1 != 0) {
-								updateHeapGraph(o, arg0, arg1);
-							}
-							return true;
-						}
-					});
-				}
-			}
-		} else {
-			if (VERBOSE) {
-				Messages.log("Entered updateHeapGraph with arguments <" + b + "," + f + "," + o + ">.");
+	@Override
+	public TIntArrayList getObjects(Object a) {
+		flush();
+		return super.getObjects(a);
+	}
+
+	@Override
+	public Set<Object> getAbstractValues() {
+		flush();
+		return super.getAbstractValues();
+	}
+
+	/**
+	 * Applies the pending edge updates to the label sets, and updates the abstract values of the objects whose
+	 * labels changed.
+	 */
+	@Override
+	public void flush() {
+		if (isFlushing || (deletedEdges.isEmpty() && createdEdges.isEmpty())) {
+			return;
+		}
+		isFlushing = true;
+		TIntHashSet changed = new TIntHashSet();
+
+		// Remove the labels that the deleted edges carried from everything they reach.
+		TIntObjectHashMap<BitSet> worklist = new TIntObjectHashMap<BitSet>();
+		for (int i = 0; i < deletedEdges.size(); i += 3) {
+			int b = deletedEdges.get(i), f = deletedEdges.get(i + 1), o = deletedEdges.get(i + 2);
+			addTo(worklist, o, getEdgeLabels(b, f, o));
+		}
+		TIntHashSet lost = new TIntHashSet();
+		propagate(worklist, false, lost);
+		changed.addAll(lost.toArray());
+
+		// Rederive the objects that lost labels from their roots and the edges into them that remain, and add the
+		// labels of the created edges.
+		worklist = new TIntObjectHashMap<BitSet>();
+		for (TIntIterator it = lost.iterator(); it.hasNext();) {
+			int o = it.next();
+			BitSet S = new BitSet();
+			BitSet roots = object2roots.get(o);
+			if (roots != null) {
+				S.or(roots);
 			}
-			doBookKeeping(b, f, o);
-			Set<Label> labels = collectLabels(b, f, o);
-			if (labels != null) {
-				if (o == 0) {
-					// We cannot propagate only on changes as this is a negative
-					// propagation process.
-					TIntHashSet visited = propagateLabels(o, labels, false, false);
-					for (Label l : labels) {
-						TIntHashSet roots = getRoots(l, visited);
-						if (VERBOSE) {
-							Messages.log("About to restart propagation of a label with "
-								+ roots.size() + " roots.");
-						}
-						for (TIntIterator it = roots.iterator(); it.hasNext();) {
-							int next = it.next();
-							// assert (object2labels.get(next).contains(l)); // The
-							// root should be associated with the label supposedly
-							// originating from it.
-							/*
-							 * Here too we must propagate all the time as the
-							 * invariant
-							 * 
-							 * x -> y => labels(x) \subset labels(y)
-							 * 
-							 * is temporarily violated.
-							 */
-							propagateLabels(next, Collections.<Label> singleton(l),
-									true, false);
+			TIntArrayList preds = object2predecessors.get(o);
+			if (preds != null) {
+				TIntHashSet visited = new TIntHashSet(preds.size());
+				for (int i = 0; i < preds.size(); i++) {
+					int b = preds.get(i);
+					if (!visited.add(b)) {
+						continue;
+					}
+					for (TIntIntIterator it2 = heapGraph.get(b).iterator(); it2.hasNext();) {
+						it2.advance();
+						if (it2.value() == o) {
+							S.or(getEdgeLabels(b, it2.key(), o));
 						}
 					}
-				} else {
-					/*
-					 * Since this is a positive propagation process, we are
-					 * guaranteed that the invariant
-					 * 
-					 * x -> y => labels(x) \subset labels(y)
-					 * 
-					 * holds, which means that if x is already associated with all
-					 * the labels we attempt to propagate to it, then it is
-					 * redundant to propagate them to its descendants.
-					 */
-					propagateLabels(o, labels, true, true);
 				}
 			}
-			if (VERBOSE) {
-				Messages.log("Left updateHeapGraph with arguments <" + b + "," + f + "," + o + ">.");
+			addTo(worklist, o, S);
+		}
+		for (int i = 0; i < createdEdges.size(); i += 3) {
+			int b = createdEdges.get(i), f = createdEdges.get(i + 1), o = createdEdges.get(i + 2);
+			TIntIntHashMap M = heapGraph.get(b);
+			if (M.containsKey(f) && M.get(f) == o) {
+				addTo(worklist, o, getEdgeLabels(b, f, o));
 			}
 		}
-	}
+		propagate(worklist, true, changed);
 
-	private void doBookKeeping(final int b, final int f, final int o) {
-		TIntIntHashMap M = heapGraph.get(b);
-		if (M == null) {
-			heapGraph.put(b, M = new TIntIntHashMap());
+		deletedEdges.clear();
+		createdEdges.clear();
+		for (TIntIterator it = changed.iterator(); it.hasNext();) {
+			int o = it.next();
+			Set<Label> a = valueOf(object2labels.get(o));
+			if (super.getValue(o) != a) {
+				setValue(o, a);
+			}
 		}
-		updateObject2predecessors(b, f, o, M);
-		M.put(f, o);
+		isFlushing = false;
 	}
 
-	private EfficientUpdateResult efficientUpdateLabels(int b, int f, int o) {
-		// We're only interested in optimizing the hard case, where an edge is deleted.
-		if (o == 0) {
-			// We first retrieve the value that was overwritten by null, and only then update the heap graph.
-			TIntIntHashMap M = heapGraph.get(b);
-			if (M.containsKey(f)) {
-				int old = M.get(f);
-				assert (old != 0);
-				Set<Label> oldLabels = getLabels(old);
-				doBookKeeping(b, f, o);
-				// Now the heap graph is up-to-date, and we can traverse the parents of <code>old</code>.
-				final Set<Label> labels = getLabelsRootedAt(old);
-				final TIntArrayList preds = object2predecessors.get(old);
-				final boolean[] result = new boolean[] { true };
-				/* 
-				 * <code>newLabels</code> consists of the labels rooted at <code>old</code>, plus those associated
-				 * with its immediate predecessors.
-				 */
-				final Set<Label> newLabels = new HashSet<Label>(labels);
-				/*
-				 * Iterate over all the predecessors of 
-				 */
-				preds.forEach(new TIntProcedure() {
-					// @Override
-					public boolean execute(int arg0) {
-						final Set<Label> predLabels = getLabelsRootedAt(arg0);
-						for (Label l : labels) {
-							if (predLabels.contains(l)) {
-								result[0] = false;
-								return false;
-							}
-						}
-						newLabels.addAll(predLabels);
-						return true;
-					}
-				});
-				if (result[0]) {
-					if (newLabels.equals(oldLabels)) {
-						return EfficientUpdateResult.TRUE_FALSE;
-					} else {
-						object2labels.put(old, newLabels);
-            setFreshValue(old, newLabels);
-						return EfficientUpdateResult.TRUE_TRUE;
+	/*
+	 * Adds (resp. removes) the given labels to (resp. from) the given objects and to (resp. from) everything
+	 * reachable from them, recording the objects whose labels changed.  Only labels that are actually added
+	 * (resp. removed) at an object are propagated to its successors, and labels rooted at an object are never
+	 * removed from it.
+	 */
+	private void propagate(TIntObjectHashMap<BitSet> worklist, boolean isPos, TIntHashSet changed) {
+		while (!worklist.isEmpty()) {
+			TIntObjectHashMap<BitSet> next = new TIntObjectHashMap<BitSet>();
+			for (TIntObjectIterator<BitSet> it = worklist.iterator(); it.hasNext();) {
+				it.advance();
+				int o = it.key();
+				BitSet delta = it.value();
+				BitSet L = object2labels.get(o);
+				if (isPos) {
+					if (L == null) {
+						object2labels.put(o, L = new BitSet());
 					}
+					delta.andNot(L);
+					L.or(delta);
 				} else {
-					return EfficientUpdateResult.FALSE;
+					if (L == null) {
+						continue;
+					}
+					delta.and(L);
+					BitSet roots = object2roots.get(o);
+					if (roots != null) {
+						delta.andNot(roots);
+					}
+					L.andNot(delta);
 				}
-			} 
-		}
-		return EfficientUpdateResult.FALSE;
-	}
-
-	private void updateObject2predecessors(final int b, final int f,
-			final int o, final TIntIntHashMap M) {
-		if (M.containsKey(f)) {
-			final int val = M.get(f);
-			if (val != 0) {
-				// Is <code>val</code> pointed to by any other field?
-				final boolean[] isPointedToByAnotherField = new boolean[] { false };
-				M.forEachEntry(new TIntIntProcedure() {
-					// @Override
-					public boolean execute(int arg0, int arg1) {
-						if (arg0 != f) {
-							if (arg1 == val) {
-								isPointedToByAnotherField[0] = true;
-								return false;
-							}
-						}
-						return true;
+				if (delta.isEmpty()) {
+					continue;
+				}
+				changed.add(o);
+				TIntIntHashMap M = heapGraph.get(o);
+				if (M != null) {
+					for (TIntIntIterator it2 = M.iterator(); it2.hasNext();) {
+						it2.advance();
+						addTo(next, it2.value(), delta);
 					}
-				});
-				if (!isPointedToByAnotherField[0]) {
-					TIntArrayList L = object2predecessors.get(val);
-					assert (L != null);
-					int i = L.indexOf(b);
-					assert (i >= 0);
-					//In trove 3.02, TIntArrayList.remove(i) removes the value=i, rather than the ith element
-					L.removeAt(i);
 				}
 			}
+			worklist = next;
 		}
-		if (o != 0) {
-			TIntArrayList L = object2predecessors.get(o);
-			if (L == null) {
-				object2predecessors.put(o, L = new TIntArrayList(1));
-			}
-			L.add(b);
+	}
+
+	private static void addTo(TIntObjectHashMap<BitSet> worklist, int o, BitSet S) {
+		BitSet T = worklist.get(o);
+		if (T == null) {
+			worklist.put(o, (BitSet) S.clone());
+		} else {
+			T.or(S);
 		}
 	}
 
-	private Set<Label> collectLabels(int b, int f, int o) {
-		Set<Label> labels = getLabels(b);
-		Collection<Label> L = freshLabels(b, f, o);
-		if (!L.isEmpty()) {
-			if (labels == null) {
-				labels = new HashSet<Label>(L.size());
-			}
-			labels.addAll(L);
+	// The labels that edge b.f = o adds to o.
+	private BitSet getEdgeLabels(int b, int f, int o) {
+		BitSet L = object2labels.get(b);
+		BitSet S = (L == null) ? new BitSet() : (BitSet) L.clone();
+		for (Label l : freshLabels(b, f, o)) {
+			S.set(labels.getOrAdd(l));
 		}
-		return labels;
+		return S;
 	}
 
-	protected Collection<Label> freshLabels(int b, int f, int o) {
-		return Collections.emptySet();
+	private BitSet toBits(Collection<Label> S) {
+		BitSet result = new BitSet();
+		for (Label l : S) {
+			result.set(labels.getOrAdd(l));
+		}
+		return result;
 	}
 
-	private TIntHashSet propagateLabels(int o, Set<Label> labels,
-			boolean isPos, boolean propagateOnlyOnChanged) {
-		TIntHashSet worklist = new TIntHashSet();
-		TIntHashSet visited = new TIntHashSet();
-		for (Label l : labels) {
-			if (isPos)
-				posLabel(o, l);
-			else
-				negLabel(o, l);
+	// The abstract value shared by all objects with the given label set.
+	private Set<Label> valueOf(BitSet L) {
+		if (L == null) {
+			L = NO_LABELS;
 		}
-		worklist.add(o);
-		while (!worklist.isEmpty()) {
-			TIntIterator it = worklist.iterator();
-			worklist = new TIntHashSet();
-			Procedure proc = new Procedure(worklist, visited, labels, isPos,
-					propagateOnlyOnChanged);
-			while (it.hasNext()) {
-				final int next = it.next();
-				visited.add(next);
-				TIntIntHashMap M = heapGraph.get(next);
-				if (M != null) {
-					M.forEachEntry(proc);
-				}
+		Set<Label> a = labels2value.get(L);
+		if (a == null) {
+			ArraySet<Label> S = new ArraySet<Label>(L.cardinality());
+			for (int i = L.nextSetBit(0); i >= 0; i = L.nextSetBit(i + 1)) {
+				S.addForcibly(labels.get(i));
 			}
+			labels2value.put((BitSet) L.clone(), S);
+			a = S;
 		}
-		return visited;
+		return a;
 	}
 
   @Override public boolean requireGraph() { return true; }
@@ -6,12 +6,7 @@
  */
 package chord.analyses.snapshot;
 
-import gnu.trove.TIntHashSet;
-import gnu.trove.TIntObjectHashMap;
-
 import java.util.Collections;
-import java.util.HashSet;
-import java.util.Set;
 
 /**
  * 
@@ -56,44 +51,16 @@ public class ReachableFromAllocAbstraction extends LabelBasedAbstraction {
 		}
 	}
 
-	private final TIntObjectHashMap<TIntHashSet> alloc2objects = new TIntObjectHashMap<TIntHashSet>();
-
 	@Override
 	public String toString() {
 		return "alloc-reachability";
 	}
 
-	@Override
-	protected TIntHashSet getRootsImpl(Label l) {
-		assert (l instanceof AllocationSiteLabel);
-		AllocationSiteLabel allocLabel = (AllocationSiteLabel) l;
-		return alloc2objects.get(allocLabel.h);
-	}
-
 	@Override
 	public void nodeCreated(ThreadInfo info, int o) {
 		int h = state.o2h.get(o);
 		if (o != 0 && h >= 0) {
-			Set<Label> S = new HashSet<Label>(1);
-			S.add(new AllocationSiteLabel(h));
-			object2labels.put(o, S);
-			setFreshValue(o, S);
-			TIntHashSet T = alloc2objects.get(h);
-			if (T == null) {
-				T = new TIntHashSet();
-				alloc2objects.put(h, T);
-			}
-			T.add(o);
-		}
-	}
-
-	@Override
-	protected Set<Label> getLabelsRootedAt(int o) {
-		int h = state.o2h.get(o);
-		if (h >= 0) {
-			return Collections.<Label> singleton(new AllocationSiteLabel(h));
-		} else {
-			return Collections.emptySet();
+			setRootLabels(o, Collections.<Label> singleton(new AllocationSiteLabel(h)));
 		}
 	}
 }
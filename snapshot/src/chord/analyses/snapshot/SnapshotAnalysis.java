@@ -127,7 +127,7 @@ public abstract class SnapshotAnalysis extends DynamicAnalysis implements Abstra
 		domM = (DomM)ClassicProject.g().getTrgt("M"); ClassicProject.g().runTask(domM);
 
 		X = new Execution("partition");
-		X.addSaveFiles("queries.out", "graph", "fieldAccessed", "snapshot-abstractions");
+		X.addSaveFiles("queries.out", "graph", "graph.strings", "graph.checkpoints", "graph.index", "fieldAccessed", "snapshot-abstractions");
 		boolean success = false;
 		try {
 			// Parse options
@@ -145,8 +145,12 @@ public abstract class SnapshotAnalysis extends DynamicAnalysis implements Abstra
 
 			// For debugging
 			maxCommands = X.getIntArg("graph.maxCommands", 100000);
-			if (X.getBooleanArg("outputGraph", false))
-				graphMonitor = new SerializingGraphMonitor(X.path("graph"), maxCommands);
+			if (X.getBooleanArg("outputGraph", false)) {
+				if (X.getStringArg("graph.format", "binary").equals("text"))
+					graphMonitor = new SerializingGraphMonitor(X.path("graph"), maxCommands);
+				else
+					graphMonitor = new BinaryGraphMonitor(X.path("graph"), X.getIntArg("graph.checkpointInterval", 1<<20));
+			}
 			maxFieldAccessesToPrint = X.getIntArg("maxFieldAccessesToPrint", 0);
 			if (maxFieldAccessesToPrint > 0)
 				fieldAccessOut = new PrintWriter(X.path("fieldAccesses"));
@@ -105,6 +105,7 @@ public class ThreadEscapeAnalysis extends SnapshotAnalysis {
 	@Override
 	public void fieldAccessed(int e, int t, int b, int f, int o) {
 		super.fieldAccessed(e, t, b, f, o);
+		abstraction.flush(); // escapedNodes must reflect all abstraction changes so far
 		Query query = new ProgramPointQuery(e);
 		if (!statementIsExcluded(e))
 			answerQuery(query, escapedNodes.contains(b)); // Query is already computed for us
@@ -1,7 +1,9 @@
 package chord.slicer;
 
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 
 import joeq.Class.jq_Class;
 import joeq.Class.jq_Field;
@@ -37,49 +39,68 @@ import chord.util.Utils;
 public class SeedReader extends ProgramRel {
 
 	// set of registers that reference the seed of array type
-	HashSet<Integer> registerSet = new HashSet<Integer>();
-	boolean arrayTypeSeed = false;
+	private final HashSet<Integer> registerSet = new HashSet<Integer>();
+	private boolean arrayTypeSeed = false;
+	private Set<Quad> seeds;
 
 	public void fill() {
 		List<String> fStrList = Utils.readFileToList("seeds.txt");
 		int n = fStrList.size();
 		assert (n > 0);
-		Program program = Program.g();
 
-		String methodSignStr = fStrList.get(0);
+		jq_Method m = getMethod(fStrList.get(0));
+		for (int i = 1; i < n; i++) {
+			jq_Field f = getField(fStrList.get(i));
+			System.out.println("AAA: searching " + f + " in " + m);
+			for (Quad q : findSeeds(m, f)) {
+				System.out.println("ADDING: " + q);
+				add(q);
+			}
+		}
+
+	}
+
+	public static jq_Method getMethod(String methodSignStr) {
 		MethodSign mSign = MethodSign.parse(methodSignStr);
-		jq_Method m = program.getMethod(mSign);
+		jq_Method m = Program.g().getMethod(mSign);
 		if (m == null) {
 			Messages.fatal("Failed to find method %s", methodSignStr);
 		}
+		return m;
+	}
 
-		for (int i = 1; i < n; i++) {
-			String fStr = fStrList.get(i);				
-			MethodSign sign = MethodSign.parse(fStr);
-			jq_Reference r = program.getClass(sign.cName);
-			if (r == null) {
-				Messages.fatal("ERROR: Cannot slice on field %s: " +
-						" its declaring class was not found.", fStr);
-				continue;
-			}
+	public static jq_Field getField(String fStr) {
+		MethodSign sign = MethodSign.parse(fStr);
+		jq_Reference r = Program.g().getClass(sign.cName);
+		if (r == null) {
+			Messages.fatal("ERROR: Cannot slice on field %s: " +
+					" its declaring class was not found.", fStr);
+		}
 
-			assert (r instanceof jq_Class);
-			jq_Class c = (jq_Class) r;
-			jq_Field f = (jq_Field) c.getDeclaredMember(sign.mName, sign.mDesc);
-			if (f == null) {
-				Messages.fatal("ERROR: Cannot slice on field %s: " +
-						"it was not found in its declaring class.", fStr);
-			}
-			assert(f.isStatic());				
-			if (f.getType().isArrayType()) {
-				arrayTypeSeed = true;
-				registerSet.clear();
-			}
-			System.out.println("AAA: searching " + f + " in " + m);
-			searchFieldAccess(m,f);
-			arrayTypeSeed = false;
+		assert (r instanceof jq_Class);
+		jq_Class c = (jq_Class) r;
+		jq_Field f = (jq_Field) c.getDeclaredMember(sign.mName, sign.mDesc);
+		if (f == null) {
+			Messages.fatal("ERROR: Cannot slice on field %s: " +
+					"it was not found in its declaring class.", fStr);
 		}
+		assert(f.isStatic());
+		return f;
+	}
 
+	/**
+	 * Provides the quads in method m, and in the static methods of its class that it calls,
+	 * that are seeds for static field f.
+	 */
+	public Set<Quad> findSeeds(jq_Method m, jq_Field f) {
+		seeds = new LinkedHashSet<Quad>();
+		arrayTypeSeed = f.getType().isArrayType();
+		registerSet.clear();
+		searchFieldAccess(m, f);
+		arrayTypeSeed = false;
+		Set<Quad> ret = seeds;
+		seeds = null;
+		return ret;
 	}
 
 	private void searchFieldAccess(jq_Method m, jq_Field f) {
@@ -101,8 +122,7 @@ public class SeedReader extends ProgramRel {
 							// store the register
 							registerSet.add(Getstatic.getDest(q).getRegister().getNumber());
 						} else {
-							System.out.println("ADDING: " + q);
-							add(q);
+							seeds.add(q);
 						}
 					}
 				} else if (q.getOperator() instanceof Operator.ALoad) {
@@ -111,8 +131,7 @@ public class SeedReader extends ProgramRel {
 						if (base instanceof Operand.RegisterOperand) {
 							int regNum = ((Operand.RegisterOperand)base).getRegister().getNumber();
 							if (registerSet.contains(regNum)) {
-								System.out.println("ADDING: " + q);
-								add(q);
+								seeds.add(q);
 							}
 						}
 					}
@@ -0,0 +1,346 @@
+package chord.slicer;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Set;
+
+import joeq.Class.jq_Field;
+import joeq.Class.jq_Method;
+import joeq.Compiler.Quad.Quad;
+
+import chord.analyses.invk.DomI;
+import chord.analyses.method.DomM;
+import chord.analyses.point.DomP;
+import chord.bddbddb.Rel.IntPairIterable;
+import chord.project.Chord;
+import chord.project.ClassicProject;
+import chord.project.Messages;
+import chord.project.OutDirUtils;
+import chord.project.analyses.JavaAnalysis;
+import chord.project.analyses.ProgramRel;
+import chord.util.tuple.integer.IntPair;
+
+/**
+ * Computes the slices of many criteria from a single solution of the SDG.
+ * The SDG computed by sdg.dlog and datadep.dlog is loaded once into adjacency
+ * arrays over domains P and X, and the two passes of twoPass.dlog are then run
+ * for each criterion by graph traversal.  Summary edges are taken from relation
+ * SummaryEdge, so they are computed once and shared by all criteria.
+ *
+ * Criteria are read from the file named by property chord.slicer.criteria
+ * (criteria.txt by default), or from standard input until it is closed if it
+ * is "-", one per line:
+ *   field [method]
+ * where field is a static field and method the method in which it is read,
+ * in the format of seeds.txt; if method is omitted, that of the previous
+ * criterion is used.  Empty lines and lines starting with '#' are skipped.
+ * The slice of the k-th criterion is written to slice[k].txt in the output
+ * directory, and a line describing it is appended to slices.txt.
+ */
+@Chord(
+		name = "bslice-java",
+		consumes = { "P", "X", "M", "I", "PPDataDep", "XPDataDep", "PXDataDep", "XXDataDep",
+			"PPCtrlDep", "PXCtrlDep", "SummaryEdge", "linkageEntry", "linkageExit",
+			"instInvkArg0", "PI", "actualArgIX", "MPhead", "MP", "IM" }
+)
+public class SliceService extends JavaAnalysis {
+	// Nodes 0 .. numP-1 are the program points in domain P, and node numP+x is vertex x in domain X.
+	private int numP;
+	private int numNodes;
+	private DomP domP;
+	private DomM domM;
+	// the edges followed by both passes, by the first pass only, and by the second pass only;
+	// there is an edge from n1 to n2 if n2 is in the slice whenever n1 is
+	private Graph bothPasses, firstPass, secondPass;
+	// the actual-in vertices of the call site at each program point
+	private Graph actualArgs;
+	// program point -> containing method, or -1
+	private int[] pToM;
+
+	// marks and work lists of the two passes, reused across criteria:
+	// node n is marked by the pass for criterion k iff mark[n] == k
+	private int[] mark1, mark2;
+	private int[] queue1, queue2;
+
+	public void run() {
+		long start = System.currentTimeMillis();
+		buildGraphs();
+		System.out.println("SDG with " + numNodes + " nodes loaded in " +
+			(System.currentTimeMillis() - start) + " ms");
+
+		String criteriaFileName = System.getProperty("chord.slicer.criteria", "criteria.txt");
+		SeedReader seedFinder = (SeedReader) ClassicProject.g().getTrgt("Seeds");
+		PrintWriter summaryOut = OutDirUtils.newPrintWriter("slices.txt");
+		try {
+			BufferedReader in = criteriaFileName.equals("-") ?
+				new BufferedReader(new InputStreamReader(System.in)) :
+				new BufferedReader(new FileReader(criteriaFileName));
+			String line;
+			String mStr = null;
+			int k = 0;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				String[] parts = line.split("\\s+");
+				String fStr = parts[0];
+				if (parts.length > 1)
+					mStr = parts[1];
+				if (mStr == null) {
+					Messages.fatal("No method given for criterion %s", fStr);
+				}
+				jq_Method m = SeedReader.getMethod(mStr);
+				jq_Field f = SeedReader.getField(fStr);
+				k++;
+				long time = System.currentTimeMillis();
+				Set<Quad> seeds = seedFinder.findSeeds(m, f);
+				int[] seedPoints = new int[seeds.size()];
+				int numSeeds = 0;
+				for (Quad q : seeds) {
+					int p = domP.indexOf(q);
+					if (p >= 0)
+						seedPoints[numSeeds++] = p;
+				}
+				int size = slice(k, seedPoints, numSeeds);
+				int numMethods = printSlice(k, fStr, mStr, size);
+				summaryOut.println(k + " " + fStr + " " + mStr + " seeds=" + numSeeds +
+					" methods=" + numMethods + " nodes=" + size +
+					" time=" + (System.currentTimeMillis() - time) + "ms");
+				summaryOut.flush();
+			}
+			in.close();
+		} catch (IOException ex) {
+			Messages.fatal(ex);
+		}
+		summaryOut.close();
+	}
+
+	/*
+	 * Computes the slice of criterion k from the given seed program points,
+	 * leaving its nodes in queue2[0 .. size-1], and provides its size.
+	 */
+	private int slice(int k, int[] seedPoints, int numSeeds) {
+		// first pass: Pmarked/Xmarked
+		int tail = 0;
+		for (int i = 0; i < numSeeds; i++) {
+			int p = seedPoints[i];
+			tail = visit(p, k, mark1, queue1, tail);
+			for (int j = actualArgs.offsets[p]; j < actualArgs.offsets[p + 1]; j++)
+				tail = visit(actualArgs.succs[j], k, mark1, queue1, tail);
+		}
+		for (int head = 0; head < tail; head++) {
+			int n = queue1[head];
+			tail = visitSuccs(bothPasses, n, k, mark1, queue1, tail);
+			tail = visitSuccs(firstPass, n, k, mark1, queue1, tail);
+		}
+		int numMarked = tail;
+
+		// second pass: PSlice/XSlice
+		tail = 0;
+		for (int i = 0; i < numMarked; i++)
+			tail = visit(queue1[i], k, mark2, queue2, tail);
+		for (int head = 0; head < tail; head++) {
+			int n = queue2[head];
+			tail = visitSuccs(bothPasses, n, k, mark2, queue2, tail);
+			tail = visitSuccs(secondPass, n, k, mark2, queue2, tail);
+		}
+		return tail;
+	}
+
+	private static int visitSuccs(Graph g, int n, int k, int[] mark, int[] queue, int tail) {
+		int[] succs = g.succs;
+		for (int j = g.offsets[n], end = g.offsets[n + 1]; j < end; j++)
+			tail = visit(succs[j], k, mark, queue, tail);
+		return tail;
+	}
+
+	private static int visit(int n, int k, int[] mark, int[] queue, int tail) {
+		if (mark[n] != k) {
+			mark[n] = k;
+			queue[tail++] = n;
+		}
+		return tail;
+	}
+
+	// writes the program points and methods in the slice of criterion k and provides the number of methods
+	private int printSlice(int k, String fStr, String mStr, int size) {
+		int[] nodes = Arrays.copyOf(queue2, size);
+		Arrays.sort(nodes);
+		boolean[] inSlice = new boolean[domM.size()];
+		int numMethods = 0;
+		for (int n : nodes) {
+			if (n >= numP)
+				break;
+			int m = pToM[n];
+			if (m >= 0 && !inSlice[m]) {
+				inSlice[m] = true;
+				numMethods++;
+			}
+		}
+		PrintWriter out = OutDirUtils.newPrintWriter("slice" + k + ".txt");
+		out.println("# " + fStr + " " + mStr);
+		out.println("# methods: " + numMethods);
+		for (int m = 0; m < inSlice.length; m++) {
+			if (inSlice[m])
+				out.println(domM.toUniqueString(m));
+		}
+		out.println("# program points");
+		for (int n : nodes) {
+			if (n >= numP)
+				break;
+			out.println(domP.toUniqueString(n));
+		}
+		out.close();
+		return numMethods;
+	}
+
+	private void buildGraphs() {
+		domP = (DomP) ClassicProject.g().getTrgt("P");
+		domM = (DomM) ClassicProject.g().getTrgt("M");
+		DomX domX = (DomX) ClassicProject.g().getTrgt("X");
+		DomI domI = (DomI) ClassicProject.g().getTrgt("I");
+		numP = domP.size();
+		numNodes = numP + domX.size();
+
+		GraphBuilder both = new GraphBuilder();
+		addEdges(both, "PPDataDep", 0, 0);
+		addEdges(both, "PXDataDep", 0, numP);
+		addEdges(both, "PPCtrlDep", 0, 0);
+		addEdges(both, "PXCtrlDep", 0, numP);
+		addEdges(both, "XPDataDep", numP, 0);
+		addEdges(both, "XXDataDep", numP, numP);
+		addEdges(both, "SummaryEdge", numP, numP);
+		// Xmarked(x) :- Pmarked(p), instInvkArg0(p,x).
+		addEdges(both, "instInvkArg0", 0, numP, true);
+		bothPasses = both.build(numNodes);
+
+		GraphBuilder second = new GraphBuilder();
+		addEdges(second, "linkageExit", numP, numP);
+		secondPass = second.build(numNodes);
+
+		// program point -> invocation at that point
+		int[] iToP = new int[domI.size()];
+		Arrays.fill(iToP, -1);
+		ProgramRel relPI = load("PI");
+		GraphBuilder args = new GraphBuilder();
+		int[] pToI = new int[numP];
+		Arrays.fill(pToI, -1);
+		for (IntPair t : relPI.getAry2IntTuples()) {
+			pToI[t.idx0] = t.idx1;
+			iToP[t.idx1] = t.idx0;
+		}
+		relPI.close();
+		// Xmarked(x) :- Seeds(p), PI(p,i), actualArgIX(i,x).
+		ProgramRel relArgs = load("actualArgIX");
+		GraphBuilder invkArgs = new GraphBuilder();
+		for (IntPair t : relArgs.getAry2IntTuples())
+			invkArgs.add(t.idx0, numP + t.idx1);
+		relArgs.close();
+		Graph argsOfI = invkArgs.build(domI.size());
+		for (int p = 0; p < numP; p++) {
+			int i = pToI[p];
+			if (i < 0)
+				continue;
+			for (int j = argsOfI.offsets[i]; j < argsOfI.offsets[i + 1]; j++)
+				args.add(p, argsOfI.succs[j]);
+		}
+		actualArgs = args.build(numP);
+
+		GraphBuilder first = new GraphBuilder();
+		addEdges(first, "linkageEntry", numP, numP);
+		// Pmarked(p) :- Pmarked(p1), MPhead(m,p1), IM(i,m), PI(p,i).
+		int[] mToHead = new int[domM.size()];
+		Arrays.fill(mToHead, -1);
+		ProgramRel relMPhead = load("MPhead");
+		for (IntPair t : relMPhead.getAry2IntTuples())
+			mToHead[t.idx0] = t.idx1;
+		relMPhead.close();
+		ProgramRel relIM = load("IM");
+		for (IntPair t : relIM.getAry2IntTuples()) {
+			int head = mToHead[t.idx1];
+			int p = iToP[t.idx0];
+			if (head >= 0 && p >= 0)
+				first.add(head, p);
+		}
+		relIM.close();
+		firstPass = first.build(numNodes);
+
+		pToM = new int[numP];
+		Arrays.fill(pToM, -1);
+		ProgramRel relMP = load("MP");
+		for (IntPair t : relMP.getAry2IntTuples())
+			pToM[t.idx1] = t.idx0;
+		relMP.close();
+
+		mark1 = new int[numNodes];
+		mark2 = new int[numNodes];
+		queue1 = new int[numNodes];
+		queue2 = new int[numNodes];
+	}
+
+	private static ProgramRel load(String name) {
+		ProgramRel rel = (ProgramRel) ClassicProject.g().getTrgt(name);
+		rel.load();
+		return rel;
+	}
+
+	// adds an edge from the second to the first element of each tuple in the given relation,
+	// or from the first to the second if forward is true
+	private static void addEdges(GraphBuilder g, String relName, int offset0, int offset1) {
+		addEdges(g, relName, offset0, offset1, false);
+	}
+
+	private static void addEdges(GraphBuilder g, String relName, int offset0, int offset1,
+			boolean forward) {
+		ProgramRel rel = load(relName);
+		IntPairIterable tuples = rel.getAry2IntTuples();
+		for (IntPair t : tuples) {
+			if (forward)
+				g.add(offset0 + t.idx0, offset1 + t.idx1);
+			else
+				g.add(offset1 + t.idx1, offset0 + t.idx0);
+		}
+		rel.close();
+	}
+
+	// The successors of node n are succs[offsets[n]] .. succs[offsets[n+1]-1].
+	private static class Graph {
+		final int[] offsets;
+		final int[] succs;
+		Graph(int[] offsets, int[] succs) {
+			this.offsets = offsets;
+			this.succs = succs;
+		}
+	}
+
+	private static class GraphBuilder {
+		private int[] srcs = new int[1024];
+		private int[] dsts = new int[1024];
+		private int size;
+		void add(int src, int dst) {
+			if (size == srcs.length) {
+				srcs = Arrays.copyOf(srcs, size * 2);
+				dsts = Arrays.copyOf(dsts, size * 2);
+			}
+			srcs[size] = src;
+			dsts[size] = dst;
+			size++;
+		}
+		Graph build(int numNodes) {
+			int[] offsets = new int[numNodes + 1];
+			for (int i = 0; i < size; i++)
+				offsets[srcs[i] + 1]++;
+			for (int n = 0; n < numNodes; n++)
+				offsets[n + 1] += offsets[n];
+			int[] next = Arrays.copyOf(offsets, numNodes);
+			int[] succs = new int[size];
+			for (int i = 0; i < size; i++)
+				succs[next[srcs[i]]++] = dsts[i];
+			return new Graph(offsets, succs);
+		}
+	}
+}